@@ -127,6 +127,9 @@ public class BlogCompanion {
     } finally {
       IOUtils.closeQuietly(writer);
     }
+
+    PageCache.getInstance().removeBlog(blog);
+    ValidatorCache.getInstance().removeBlog(blog);
   }
 
 }
\ No newline at end of file
@@ -48,6 +48,14 @@ public class Configuration {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(Configuration.class);
 
+  /**
+   * the default Cache-Control directives for files, by content type, as a
+   * semicolon separated list of type=directives pairs, where the type can
+   * end with a wildcard
+   */
+  public static final String DEFAULT_FILE_CACHE_CONTROL =
+      "image/*=max-age=2592000;audio/*=max-age=2592000;video/*=max-age=2592000;*=max-age=86400";
+
   private String dataDirectory = evaluateDirectory("${user.home}/pebble");
   private String url;
   private String secureUrl;
@@ -59,6 +67,11 @@ public class Configuration {
   private String smtpHost = "java:comp/env/mail/Session";
   private long fileUploadSize = 2048;
   private long fileUploadQuota = -1;
+  private int contentCacheItemsPerBlog = ContentCache.DEFAULT_MAX_ITEMS_PER_BLOG;
+  private long contentCacheWeightPerBlog = ContentCache.DEFAULT_MAX_WEIGHT_PER_BLOG;
+  private boolean pageCacheEnabled = false;
+  private long pageCacheSize = PageCache.DEFAULT_MAX_SIZE;
+  private String fileCacheControl = DEFAULT_FILE_CACHE_CONTROL;
   private DAOFactory daoFactory = new FileDAOFactory();
   private SecurityRealm securityRealm;
 
@@ -133,6 +146,76 @@ public class Configuration {
     this.fileUploadQuota = fileUploadQuota;
   }
 
+  public int getContentCacheItemsPerBlog() {
+    return contentCacheItemsPerBlog;
+  }
+
+  /**
+   * Sets the maximum number of blog entries and static pages cached per blog.
+   *
+   * @param contentCacheItemsPerBlog    the number of items, 0 to disable caching
+   */
+  public void setContentCacheItemsPerBlog(int contentCacheItemsPerBlog) {
+    this.contentCacheItemsPerBlog = contentCacheItemsPerBlog;
+  }
+
+  public long getContentCacheWeightPerBlog() {
+    return contentCacheWeightPerBlog;
+  }
+
+  /**
+   * Sets the maximum combined weight of the blog entries and static pages
+   * cached per blog, which is roughly the number of characters of content.
+   *
+   * @param contentCacheWeightPerBlog   the weight
+   */
+  public void setContentCacheWeightPerBlog(long contentCacheWeightPerBlog) {
+    this.contentCacheWeightPerBlog = contentCacheWeightPerBlog;
+  }
+
+  public boolean isPageCacheEnabled() {
+    return pageCacheEnabled;
+  }
+
+  /**
+   * Sets whether pages rendered for anonymous readers are cached.
+   *
+   * @param pageCacheEnabled    true if pages should be cached,
+   *                            false otherwise
+   */
+  public void setPageCacheEnabled(boolean pageCacheEnabled) {
+    this.pageCacheEnabled = pageCacheEnabled;
+  }
+
+  public long getPageCacheSize() {
+    return pageCacheSize;
+  }
+
+  /**
+   * Sets the maximum number of bytes held by the page cache, which is
+   * shared between all blogs.
+   *
+   * @param pageCacheSize   the size in bytes
+   */
+  public void setPageCacheSize(long pageCacheSize) {
+    this.pageCacheSize = pageCacheSize;
+  }
+
+  public String getFileCacheControl() {
+    return fileCacheControl;
+  }
+
+  /**
+   * Sets the Cache-Control directives used when serving files and images,
+   * as a semicolon separated list of type=directives pairs, for example
+   * image/*=max-age=2592000;*=max-age=86400.
+   *
+   * @param fileCacheControl    the directives by content type
+   */
+  public void setFileCacheControl(String fileCacheControl) {
+    this.fileCacheControl = fileCacheControl;
+  }
+
   public DAOFactory getDaoFactory() {
     return daoFactory;
   }
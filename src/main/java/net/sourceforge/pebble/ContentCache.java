@@ -31,103 +31,367 @@
  */
 package net.sourceforge.pebble;
 
+import net.sourceforge.pebble.domain.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.Date;
-import java.util.Properties;
-import java.io.InputStream;
-import java.io.IOException;
-import java.net.URL;
-
-import net.sourceforge.pebble.util.RelativeDate;
-import net.sourceforge.pebble.domain.*;
-import net.sf.ehcache.Element;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.CacheManager;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A wrapper for a cache used to store blog entries and static pages.
+ * A cache used to store blog entries and static pages. Each blog has its own
+ * shard, which is bounded both by the number of items and by their combined
+ * weight (roughly the number of characters of content they hold). Reads don't
+ * take any locks, and items stay in the cache until they are evicted to make
+ * room or are removed because they have changed.
+ * <p />
+ * Because items stay put, a reader that loads an item while it is being
+ * changed mustn't put its (now stale) copy back after the writer has removed
+ * it. Readers take the generation number before loading and pass it back
+ * when putting; every removal moves it on, so stale puts are refused.
+ * <p />
+ * The items in the cache are read-only snapshots that are never handed out
+ * to anybody who might modify them; callers that need to modify an item
+ * should clone it first.
  *
  * @author    Simon Brown
  */
 public class ContentCache {
 
+  /** the default maximum number of items cached per blog */
+  public static final int DEFAULT_MAX_ITEMS_PER_BLOG = 200;
+
+  /** the default maximum combined weight of items cached per blog */
+  public static final long DEFAULT_MAX_WEIGHT_PER_BLOG = 2 * 1024 * 1024;
+
+  /** the weight added to every item, over and above its content */
+  private static final int ITEM_OVERHEAD = 256;
+
   private static final ContentCache instance = new ContentCache();
 
   /** the log used by this class */
   private static Log log = LogFactory.getLog(ContentCache.class);
 
-  private Cache cache;
+  /** the source of generation numbers, shared so that they're never reused by a new shard */
+  private static final AtomicLong generations = new AtomicLong();
 
-  private ContentCache() {
-    URL url = BlogService.class.getResource("/ehcache.xml");
-    CacheManager cacheManager = new CacheManager(url);
-    cache = cacheManager.getCache("contentCache");
+  /** the shards, keyed on blog ID */
+  private final ConcurrentMap<String,Shard> shards = new ConcurrentHashMap<String,Shard>();
 
-    // size the cache (number of blogs * max elements in memory configured in the ehcache.xml file)
-    // Fix: Previously the number of blogs was calculated through blogManager.getBlogs().getSize() which
-    // caused the blog to load and access the Cache that is just now being initialized.
-    // This lead to NPE because instance is not yet set to this instance.
-    cache.getCacheConfiguration().setMaxElementsInMemory(cache.getCacheConfiguration().getMaxElementsInMemory() * BlogManager.getInstance().getNumberOfBlogs());
+  private ContentCache() {
   }
 
   public static ContentCache getInstance() {
     return instance;
   }
 
-  public synchronized void putBlogEntry(BlogEntry blogEntry) {
-    Element element = new Element(getCompositeKeyForBlogEntry(blogEntry), blogEntry);
-    cache.put(element);
+  /**
+   * Puts a blog entry into the cache. The cache takes ownership of the
+   * instance, which must not be modified afterwards.
+   *
+   * @param blogEntry   the BlogEntry snapshot to cache
+   */
+  public void putBlogEntry(BlogEntry blogEntry) {
+    getShard(blogEntry.getBlog()).put(getKeyForBlogEntry(blogEntry.getId()), blogEntry, getWeight(blogEntry));
   }
 
-  public synchronized BlogEntry getBlogEntry(Blog blog, String blogEntryId) {
-    BlogEntry blogEntry = null;
-    Element element = cache.get(getCompositeKeyForBlogEntry(blog, blogEntryId));
-    if (element != null) {
-      blogEntry = (BlogEntry)element.getValue(); 
+  /**
+   * Puts a blog entry into the cache, provided nothing has been removed
+   * from the blog's cache since the generation number was taken.
+   *
+   * @param blogEntry     the BlogEntry snapshot to cache
+   * @param generation    the generation number taken before loading the blog entry
+   * @return  true if the blog entry was cached, false otherwise
+   */
+  public boolean putBlogEntry(BlogEntry blogEntry, long generation) {
+    return getShard(blogEntry.getBlog()).put(getKeyForBlogEntry(blogEntry.getId()), blogEntry, getWeight(blogEntry), generation);
+  }
+
+  /**
+   * Gets a blog entry from the cache. The returned instance is shared, so
+   * it must be cloned before being modified.
+   *
+   * @param blog          the owning Blog
+   * @param blogEntryId   the ID of the blog entry
+   * @return  a read-only BlogEntry, or null if it isn't cached
+   */
+  public BlogEntry getBlogEntry(Blog blog, String blogEntryId) {
+    BlogEntry blogEntry = (BlogEntry)getShard(blog).get(getKeyForBlogEntry(blogEntryId));
+
+    // the blog may have been reloaded since the entry was cached
+    if (blogEntry != null && blogEntry.getBlog() != blog) {
+      blogEntry = null;
     }
 
     return blogEntry;
   }
 
-  public synchronized void removeBlogEntry(BlogEntry blogEntry) {
-    cache.remove(getCompositeKeyForBlogEntry(blogEntry));
+  public void removeBlogEntry(BlogEntry blogEntry) {
+    getShard(blogEntry.getBlog()).remove(getKeyForBlogEntry(blogEntry.getId()));
   }
 
-  private String getCompositeKeyForBlogEntry(BlogEntry blogEntry) {
-    return getCompositeKeyForBlogEntry(blogEntry.getBlog(), blogEntry.getId());
+  private String getKeyForBlogEntry(String blogEntryId) {
+    return "blogEntry/" + blogEntryId;
   }
 
-  private String getCompositeKeyForBlogEntry(Blog blog, String blogEntryId) {
-    return blog.getId() + "/blogEntry/" + blogEntryId;
+  /**
+   * Puts a static page into the cache. The cache takes ownership of the
+   * instance, which must not be modified afterwards.
+   *
+   * @param staticPage    the StaticPage snapshot to cache
+   */
+  public void putStaticPage(StaticPage staticPage) {
+    getShard(staticPage.getBlog()).put(getKeyForStaticPage(staticPage.getId()), staticPage, getWeight(staticPage));
   }
 
-  public synchronized void putStaticPage(StaticPage staticPage) {
-    Element element = new Element(getCompositeKeyForStaticPage(staticPage), staticPage);
-    cache.put(element);
+  /**
+   * Puts a static page into the cache, provided nothing has been removed
+   * from the blog's cache since the generation number was taken.
+   *
+   * @param staticPage    the StaticPage snapshot to cache
+   * @param generation    the generation number taken before loading the static page
+   * @return  true if the static page was cached, false otherwise
+   */
+  public boolean putStaticPage(StaticPage staticPage, long generation) {
+    return getShard(staticPage.getBlog()).put(getKeyForStaticPage(staticPage.getId()), staticPage, getWeight(staticPage), generation);
   }
 
-  public synchronized StaticPage getStaticPage(Blog blog, String staticPageId) {
-    StaticPage staticPage = null;
-    Element element = cache.get(getCompositeKeyForStaticPage(blog, staticPageId));
-    if (element != null) {
-      staticPage = (StaticPage)element.getValue();
+  /**
+   * Gets a static page from the cache. The returned instance is shared, so
+   * it must be cloned before being modified.
+   *
+   * @param blog            the owning Blog
+   * @param staticPageId    the ID of the static page
+   * @return  a read-only StaticPage, or null if it isn't cached
+   */
+  public StaticPage getStaticPage(Blog blog, String staticPageId) {
+    StaticPage staticPage = (StaticPage)getShard(blog).get(getKeyForStaticPage(staticPageId));
+
+    // the blog may have been reloaded since the page was cached
+    if (staticPage != null && staticPage.getBlog() != blog) {
+      staticPage = null;
     }
 
     return staticPage;
   }
 
-  public synchronized void removeStaticPage(StaticPage staticPage) {
-    cache.remove(getCompositeKeyForStaticPage(staticPage));
+  public void removeStaticPage(StaticPage staticPage) {
+    getShard(staticPage.getBlog()).remove(getKeyForStaticPage(staticPage.getId()));
+  }
+
+  private String getKeyForStaticPage(String staticPageId) {
+    return "staticPage/" + staticPageId;
+  }
+
+  /**
+   * Gets the current generation number for the specified blog, which
+   * should be taken before loading an item and passed back when it is put.
+   *
+   * @param blog    a Blog instance
+   * @return  the generation number
+   */
+  public long getGeneration(Blog blog) {
+    return getShard(blog).generation;
+  }
+
+  /**
+   * Removes everything cached for the specified blog, for example because
+   * it has been stopped or reindexed.
+   *
+   * @param blog    a Blog instance
+   */
+  public void removeBlog(Blog blog) {
+    Shard shard = shards.remove(blog.getId());
+    if (shard != null) {
+      shard.generation = generations.incrementAndGet();
+      log.debug("Removed cached content for " + blog.getId());
+    }
+  }
+
+  /**
+   * Gets the number of items currently cached for the specified blog.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of blog entries and static pages in the cache
+   */
+  public int getSize(Blog blog) {
+    Shard shard = shards.get(blog.getId());
+    return shard != null ? shard.items.size() : 0;
+  }
+
+  private Shard getShard(Blog blog) {
+    Shard shard = shards.get(blog.getId());
+    if (shard == null) {
+      int maxItems = DEFAULT_MAX_ITEMS_PER_BLOG;
+      long maxWeight = DEFAULT_MAX_WEIGHT_PER_BLOG;
+      Configuration configuration = PebbleContext.getInstance().getConfiguration();
+      if (configuration != null) {
+        maxItems = configuration.getContentCacheItemsPerBlog();
+        maxWeight = configuration.getContentCacheWeightPerBlog();
+      }
+
+      Shard newShard = new Shard(maxItems, maxWeight);
+      shard = shards.putIfAbsent(blog.getId(), newShard);
+      if (shard == null) {
+        shard = newShard;
+      }
+    }
+
+    return shard;
+  }
+
+  private long getWeight(BlogEntry blogEntry) {
+    long weight = ITEM_OVERHEAD + length(blogEntry.getTitle()) + length(blogEntry.getExcerpt()) + length(blogEntry.getBody());
+    for (Response response : blogEntry.getResponses()) {
+      weight += ITEM_OVERHEAD + length(response.getContent());
+    }
+
+    return weight;
+  }
+
+  private long getWeight(StaticPage staticPage) {
+    return ITEM_OVERHEAD + length(staticPage.getTitle()) + length(staticPage.getBody());
   }
 
-  private String getCompositeKeyForStaticPage(StaticPage staticPage) {
-    return getCompositeKeyForStaticPage(staticPage.getBlog(), staticPage.getId());
+  private int length(String s) {
+    return s != null ? s.length() : 0;
   }
 
-  private String getCompositeKeyForStaticPage(Blog blog, String staticPageId) {
-    return blog.getId() + "/staticPage/" + staticPageId;
+  /**
+   * The cached content for a single blog. Items are evicted using the CLOCK
+   * algorithm, which approximates least recently used without reads having
+   * to reorder anything; an item that has been read since it was last
+   * considered for eviction gets a second chance.
+   */
+  private static class Shard {
+
+    private final int maxItems;
+    private final long maxWeight;
+
+    private final ConcurrentMap<String,Item> items = new ConcurrentHashMap<String,Item>();
+    private final ConcurrentLinkedQueue<Item> clock = new ConcurrentLinkedQueue<Item>();
+    private final AtomicInteger clockSize = new AtomicInteger();
+    private final AtomicLong weight = new AtomicLong();
+    private volatile long generation = generations.incrementAndGet();
+
+    Shard(int maxItems, long maxWeight) {
+      this.maxItems = Math.max(maxItems, 0);
+      this.maxWeight = Math.max(maxWeight, 0);
+    }
+
+    Object get(String key) {
+      Item item = items.get(key);
+      if (item != null) {
+        item.referenced = true;
+        return item.value;
+      } else {
+        return null;
+      }
+    }
+
+    void put(String key, Object value, long itemWeight) {
+      if (maxItems == 0 || itemWeight > maxWeight) {
+        discard(key);
+        return;
+      }
+
+      Item item = new Item(key, value, itemWeight);
+      weight.addAndGet(itemWeight);
+      Item previous = items.put(key, item);
+      if (previous != null) {
+        weight.addAndGet(-previous.weight);
+      }
+
+      clock.offer(item);
+      clockSize.incrementAndGet();
+      evict();
+    }
+
+    boolean put(String key, Object value, long itemWeight, long generation) {
+      if (generation != this.generation) {
+        return false;
+      }
+
+      put(key, value, itemWeight);
+
+      // a removal may have slipped in between the check and the put
+      if (generation != this.generation) {
+        Item item = items.get(key);
+        if (item != null && item.value == value && items.remove(key, item)) {
+          weight.addAndGet(-item.weight);
+        }
+        return false;
+      }
+
+      return true;
+    }
+
+    void remove(String key) {
+      generation = generations.incrementAndGet();
+      discard(key);
+    }
+
+    private void discard(String key) {
+      Item item = items.remove(key);
+      if (item != null) {
+        weight.addAndGet(-item.weight);
+      }
+    }
+
+    /**
+     * Evicts items until the shard is back within its limits. Items that
+     * have been replaced or removed are still on the clock, so these are
+     * also discarded once they start to outnumber the live items; live items
+     * are only ever evicted when the shard is over one of its limits.
+     */
+    private void evict() {
+      while (items.size() > maxItems || weight.get() > maxWeight || clockSize.get() > maxItems * 2) {
+        Item item = clock.poll();
+        if (item == null) {
+          break;
+        }
+        clockSize.decrementAndGet();
+
+        if (items.get(item.key) != item) {
+          // already replaced or removed
+          continue;
+        }
+
+        if (items.size() <= maxItems && weight.get() <= maxWeight) {
+          // only tidying up the clock, so keep this one where it is
+          clock.offer(item);
+          clockSize.incrementAndGet();
+          continue;
+        }
+
+        if (item.referenced) {
+          item.referenced = false;
+          clock.offer(item);
+          clockSize.incrementAndGet();
+        } else if (items.remove(item.key, item)) {
+          weight.addAndGet(-item.weight);
+        }
+      }
+    }
+
+  }
+
+  private static class Item {
+
+    private final String key;
+    private final Object value;
+    private final long weight;
+    private volatile boolean referenced;
+
+    Item(String key, Object value, long weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.index.FacetQuery;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of rendered newsfeeds. Feeds are rendered the first time they are
+ * asked for after something they show has changed, and served from here
+ * until then. Each feed knows which blog entries it shows and which blog
+ * entries it could show (for example, those with a particular tag), so
+ * that a change to one blog entry only removes the feeds it affects.
+ *
+ * @author    Simon Brown
+ */
+public class FeedCache {
+
+  /** the maximum number of feeds cached per blog */
+  public static final int MAX_FEEDS_PER_BLOG = 100;
+
+  private static final FeedCache instance = new FeedCache();
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(FeedCache.class);
+
+  /** the feeds for each blog, keyed on blog ID */
+  private final Map<String,Map<String,Feed>> feeds = new HashMap<String,Map<String,Feed>>();
+
+  /** the generation numbers, keyed on blog ID */
+  private final Map<String,Long> generations = new HashMap<String,Long>();
+
+  private FeedCache() {
+  }
+
+  public static FeedCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the current generation number for the specified blog, which
+   * should be taken before a feed is rendered and passed back when it is
+   * stored.
+   *
+   * @param blog    a Blog instance
+   * @return  the generation number
+   */
+  public synchronized long getGeneration(Blog blog) {
+    Long generation = generations.get(blog.getId());
+    return generation != null ? generation : 0;
+  }
+
+  /**
+   * Gets a feed from the cache.
+   *
+   * @param blog    the Blog that the feed belongs to
+   * @param key     the key identifying the feed
+   * @return  a Feed, or null if it isn't cached
+   */
+  public synchronized Feed getFeed(Blog blog, String key) {
+    Map<String,Feed> feedsForBlog = feeds.get(blog.getId());
+    return feedsForBlog != null ? feedsForBlog.get(key) : null;
+  }
+
+  /**
+   * Puts a feed into the cache, provided that nothing has been removed
+   * from the cache for the blog since the feed started being rendered.
+   *
+   * @param blog          the Blog that the feed belongs to
+   * @param key           the key identifying the feed
+   * @param feed          the rendered Feed
+   * @param generation    the generation number taken before rendering
+   * @return  true if the feed was stored, false otherwise
+   */
+  public synchronized boolean putFeed(Blog blog, String key, Feed feed, long generation) {
+    if (generation != getGeneration(blog)) {
+      return false;
+    }
+
+    Map<String,Feed> feedsForBlog = feeds.get(blog.getId());
+    if (feedsForBlog == null) {
+      feedsForBlog = new LinkedHashMap<String,Feed>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String,Feed> eldest) {
+          return size() > MAX_FEEDS_PER_BLOG;
+        }
+      };
+      feeds.put(blog.getId(), feedsForBlog);
+    }
+    feedsForBlog.put(key, feed);
+
+    return true;
+  }
+
+  /**
+   * Removes the feeds that show, or could now show, the specified blog entry
+   * or its responses.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void removeBlogEntry(BlogEntry blogEntry) {
+    Blog blog = blogEntry.getBlog();
+    nextGeneration(blog);
+
+    Map<String,Feed> feedsForBlog = feeds.get(blog.getId());
+    if (feedsForBlog != null) {
+      Iterator<Feed> it = feedsForBlog.values().iterator();
+      while (it.hasNext()) {
+        Scope scope = it.next().getScope();
+        if (scope.shows(blogEntry) || scope.couldShow(blogEntry)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes the feeds that show, or could now show, the specified response.
+   *
+   * @param response    a Response instance
+   */
+  public synchronized void removeResponse(Response response) {
+    Blog blog = response.getBlogEntry().getBlog();
+    nextGeneration(blog);
+
+    Map<String,Feed> feedsForBlog = feeds.get(blog.getId());
+    if (feedsForBlog != null) {
+      Iterator<Feed> it = feedsForBlog.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().getScope().couldShow(response)) {
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all of the feeds for the specified blog, for example because
+   * the blog's name or description has changed.
+   *
+   * @param blog    a Blog instance
+   */
+  public synchronized void removeBlog(Blog blog) {
+    nextGeneration(blog);
+    if (feeds.remove(blog.getId()) != null) {
+      log.debug("Removed cached feeds for " + blog.getId());
+    }
+  }
+
+  /**
+   * Gets the number of feeds currently cached for the specified blog.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of feeds
+   */
+  public synchronized int getSize(Blog blog) {
+    Map<String,Feed> feedsForBlog = feeds.get(blog.getId());
+    return feedsForBlog != null ? feedsForBlog.size() : 0;
+  }
+
+  private void nextGeneration(Blog blog) {
+    generations.put(blog.getId(), getGeneration(blog) + 1);
+  }
+
+  /**
+   * Describes what a feed contains, and therefore which changes affect it.
+   */
+  public static class Scope {
+
+    private final boolean responses;
+    private final Set<String> blogEntryIds = new HashSet<String>();
+    private String tag;
+    private Category category;
+    private String author;
+    private String blogEntryId;
+    private FacetQuery facetQuery;
+
+    private Scope(boolean responses) {
+      this.responses = responses;
+    }
+
+    /**
+     * Creates a scope for a feed of blog entries, optionally restricted to
+     * those with a tag, in a category or by an author.
+     *
+     * @param tag         the Tag, or null
+     * @param category    the Category, or null
+     * @param author      the author's username, or null
+     * @param blogEntries the blog entries shown in the feed
+     * @return  a Scope instance
+     */
+    public static Scope forBlogEntries(Tag tag, Category category, String author, Collection<BlogEntry> blogEntries) {
+      Scope scope = new Scope(false);
+      scope.tag = tag != null ? tag.getName() : null;
+      scope.category = category;
+      scope.author = author;
+      for (BlogEntry blogEntry : blogEntries) {
+        scope.blogEntryIds.add(blogEntry.getId());
+      }
+
+      return scope;
+    }
+
+    /**
+     * Creates a scope for a feed of blog entries matching a facet query.
+     *
+     * @param facetQuery  the FacetQuery
+     * @param blogEntries the blog entries shown in the feed
+     * @return  a Scope instance
+     */
+    public static Scope forBlogEntries(FacetQuery facetQuery, Collection<BlogEntry> blogEntries) {
+      Scope scope = forBlogEntries(null, null, null, blogEntries);
+      scope.facetQuery = facetQuery;
+
+      return scope;
+    }
+
+    /**
+     * Creates a scope for a feed of responses, optionally restricted to
+     * those for a single blog entry.
+     *
+     * @param blogEntryId   the ID of the blog entry, or null
+     * @param responses     the responses shown in the feed
+     * @return  a Scope instance
+     */
+    public static Scope forResponses(String blogEntryId, Collection<Response> responses) {
+      Scope scope = new Scope(true);
+      scope.blogEntryId = blogEntryId;
+      for (Response response : responses) {
+        scope.blogEntryIds.add(response.getBlogEntry().getId());
+      }
+
+      return scope;
+    }
+
+    /**
+     * Determines whether the feed shows the specified blog entry, or the
+     * title of the blog entry alongside one of its responses.
+     */
+    boolean shows(BlogEntry blogEntry) {
+      return blogEntryIds.contains(blogEntry.getId()) || blogEntry.getId().equals(blogEntryId);
+    }
+
+    /**
+     * Determines whether the specified blog entry belongs in the feed,
+     * regardless of whether it's recent enough to be shown.
+     */
+    boolean couldShow(BlogEntry blogEntry) {
+      if (responses) {
+        return false;
+      } else if (facetQuery != null) {
+        return facetQuery.matches(blogEntry);
+      } else if (tag != null) {
+        return blogEntry.getAllTags().contains(new Tag(tag, blogEntry.getBlog()));
+      } else if (category != null) {
+        for (Category c : blogEntry.getCategories()) {
+          if (c.equals(category) || c.hasParent(category)) {
+            return true;
+          }
+        }
+        return false;
+      } else if (author != null) {
+        return author.equals(blogEntry.getAuthor());
+      } else {
+        return true;
+      }
+    }
+
+    /**
+     * Determines whether the specified response belongs in the feed.
+     */
+    boolean couldShow(Response response) {
+      return responses && (blogEntryId == null || blogEntryId.equals(response.getBlogEntry().getId()));
+    }
+
+  }
+
+  /**
+   * A rendered feed, held both as it was written and gzipped, along with a
+   * strong entity tag derived from the content.
+   */
+  public static class Feed {
+
+    private final Scope scope;
+    private final String contentType;
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final String eTag;
+    private final Date lastModified;
+
+    /**
+     * Creates a new feed.
+     *
+     * @param scope         the Scope describing what the feed contains
+     * @param contentType   the content type of the feed
+     * @param content       the content of the feed
+     * @param lastModified  the date that the blog was last modified
+     * @throws IOException    if the content can't be gzipped
+     */
+    public Feed(Scope scope, String contentType, byte[] content, Date lastModified) throws IOException {
+      this.scope = scope;
+      this.contentType = contentType;
+      this.content = content;
+      this.lastModified = lastModified;
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(content);
+      gzip.close();
+      this.gzippedContent = out.toByteArray();
+
+      try {
+        MessageDigest digest = MessageDigest.getInstance("MD5");
+        this.eTag = "\"" + new String(Hex.encodeHex(digest.digest(content))) + "\"";
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public Scope getScope() {
+      return scope;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    public byte[] getGzippedContent() {
+      return gzippedContent;
+    }
+
+    public String getETag() {
+      return eTag;
+    }
+
+    public Date getLastModified() {
+      return lastModified;
+    }
+
+  }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of fully rendered pages, served to anonymous readers without
+ * going through the actions and JSPs. Each page records the IDs of the blog
+ * entries it displays, so that changing a blog entry only throws away the
+ * pages that show it, and the cache as a whole is bounded by the number of
+ * bytes it holds. As with the ContentCache, reads don't take any locks and
+ * pages are evicted using the CLOCK algorithm, so a page that has been read
+ * since it was last considered for eviction gets a second chance.
+ * <p />
+ * Pages are rendered in the blog's locale rather than the reader's, so
+ * there is one copy of each page per blog whatever the reader asks for.
+ * <p />
+ * Because a page might be rendered while the content it shows is being
+ * changed, callers take a generation number for the blog before rendering
+ * and the page is only stored if nothing has been invalidated since.
+ *
+ * @author    Simon Brown
+ */
+public class PageCache {
+
+  /** the default maximum number of bytes held by the cache */
+  public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+  /** the size added to every page, over and above its content */
+  private static final int PAGE_OVERHEAD = 512;
+
+  private static final PageCache instance = new PageCache();
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(PageCache.class);
+
+  /** the cached pages, keyed on blog, locale and URI */
+  private final ConcurrentMap<String,Item> pages = new ConcurrentHashMap<String,Item>();
+
+  /** the cached pages, in the order that they are considered for eviction */
+  private final ConcurrentLinkedQueue<Item> clock = new ConcurrentLinkedQueue<Item>();
+  private final AtomicInteger clockSize = new AtomicInteger();
+
+  /** the generation numbers, keyed on blog ID */
+  private final ConcurrentMap<String,AtomicLong> generations = new ConcurrentHashMap<String,AtomicLong>();
+
+  private final AtomicLong size = new AtomicLong();
+
+  private PageCache() {
+  }
+
+  public static PageCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Determines whether pages should be cached.
+   *
+   * @return  true if the page cache has been enabled, false otherwise
+   */
+  public boolean isEnabled() {
+    Configuration configuration = PebbleContext.getInstance().getConfiguration();
+    return configuration != null && configuration.isPageCacheEnabled() && configuration.getPageCacheSize() > 0;
+  }
+
+  /**
+   * Gets the current generation number for the specified blog, which
+   * should be taken before a page is rendered and passed back when it is
+   * stored.
+   *
+   * @param blog    a Blog instance
+   * @return  the generation number
+   */
+  public long getGeneration(Blog blog) {
+    return getGenerationCounter(blog).get();
+  }
+
+  /**
+   * Gets a page from the cache.
+   *
+   * @param blog    the Blog that the page belongs to
+   * @param uri     the external URI of the page, including any query string
+   * @return  a Page, or null if it isn't cached
+   */
+  public Page getPage(Blog blog, String uri) {
+    Item item = pages.get(getKey(blog, uri));
+    if (item != null) {
+      item.referenced = true;
+      return item.page;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Puts a page into the cache, provided that the blog hasn't been
+   * invalidated since the page started being rendered.
+   *
+   * @param blog          the Blog that the page belongs to
+   * @param uri           the external URI of the page, including any query string
+   * @param page          the rendered Page
+   * @param generation    the generation number taken before rendering
+   * @return  true if the page was stored, false otherwise
+   */
+  public boolean putPage(Blog blog, String uri, Page page, long generation) {
+    long maxSize = getMaxSize();
+    if (generation != getGeneration(blog) || page.getSize() > maxSize) {
+      return false;
+    }
+
+    page.blogId = blog.getId();
+    Item item = new Item(getKey(blog, uri), page);
+    size.addAndGet(page.getSize());
+    Item previous = pages.put(item.key, item);
+    if (previous != null) {
+      size.addAndGet(-previous.page.getSize());
+    }
+    clock.offer(item);
+    clockSize.incrementAndGet();
+
+    // an invalidation may have slipped in between the check and the put
+    if (generation != getGeneration(blog)) {
+      remove(item);
+      return false;
+    }
+
+    evict(maxSize);
+    return true;
+  }
+
+  /**
+   * Removes the pages that display the specified blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public void removeBlogEntry(BlogEntry blogEntry) {
+    Blog blog = blogEntry.getBlog();
+    getGenerationCounter(blog).incrementAndGet();
+
+    for (Item item : pages.values()) {
+      if (item.page.blogId.equals(blog.getId()) && item.page.blogEntryIds.contains(blogEntry.getId())) {
+        remove(item);
+      }
+    }
+  }
+
+  /**
+   * Removes all of the pages for the specified blog, for example because
+   * something shown on every page has changed.
+   *
+   * @param blog    a Blog instance
+   */
+  public void removeBlog(Blog blog) {
+    getGenerationCounter(blog).incrementAndGet();
+
+    int count = 0;
+    for (Item item : pages.values()) {
+      if (item.page.blogId.equals(blog.getId()) && remove(item)) {
+        count++;
+      }
+    }
+
+    if (count > 0) {
+      log.debug("Removed " + count + " cached pages for " + blog.getId());
+    }
+  }
+
+  /**
+   * Gets the number of pages currently cached for the specified blog.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of pages
+   */
+  public int getSize(Blog blog) {
+    int count = 0;
+    for (Item item : pages.values()) {
+      if (item.page.blogId.equals(blog.getId())) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Gets the largest page worth caching, which is a quarter of the total
+   * size of the cache.
+   *
+   * @return  the size in bytes
+   */
+  public int getMaxPageSize() {
+    return (int)Math.min(getMaxSize() / 4, Integer.MAX_VALUE);
+  }
+
+  private AtomicLong getGenerationCounter(Blog blog) {
+    AtomicLong generation = generations.get(blog.getId());
+    if (generation == null) {
+      AtomicLong newGeneration = new AtomicLong();
+      generation = generations.putIfAbsent(blog.getId(), newGeneration);
+      if (generation == null) {
+        generation = newGeneration;
+      }
+    }
+
+    return generation;
+  }
+
+  private boolean remove(Item item) {
+    if (pages.remove(item.key, item)) {
+      size.addAndGet(-item.page.getSize());
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Evicts pages until the cache is back within its size. Pages that have
+   * been replaced or removed are still on the clock, so these are also
+   * discarded once they start to outnumber the live pages.
+   */
+  private void evict(long maxSize) {
+    while (size.get() > maxSize || clockSize.get() > pages.size() * 2 + 16) {
+      Item item = clock.poll();
+      if (item == null) {
+        break;
+      }
+      clockSize.decrementAndGet();
+
+      if (pages.get(item.key) != item) {
+        // already replaced or removed
+        continue;
+      }
+
+      if (size.get() <= maxSize) {
+        // only tidying up the clock, so keep this one where it is
+        clock.offer(item);
+        clockSize.incrementAndGet();
+      } else if (item.referenced) {
+        item.referenced = false;
+        clock.offer(item);
+        clockSize.incrementAndGet();
+      } else {
+        remove(item);
+      }
+    }
+  }
+
+  private long getMaxSize() {
+    Configuration configuration = PebbleContext.getInstance().getConfiguration();
+    return configuration != null ? configuration.getPageCacheSize() : DEFAULT_MAX_SIZE;
+  }
+
+  private String getKey(Blog blog, String uri) {
+    return blog.getId() + "|" + blog.getLocale() + "|" + uri;
+  }
+
+  /**
+   * A page in the cache, along with whether it has been read since it was
+   * last considered for eviction.
+   */
+  private static class Item {
+
+    private final String key;
+    private final Page page;
+    private volatile boolean referenced;
+
+    Item(String key, Page page) {
+      this.key = key;
+      this.page = page;
+    }
+
+  }
+
+  /**
+   * A rendered page, held both as it was written and gzipped.
+   */
+  public static class Page {
+
+    private final String contentType;
+    private final List<String[]> headers;
+    private final byte[] content;
+    private final byte[] gzippedContent;
+    private final Set<String> blogEntryIds;
+    private String blogId;
+
+    /**
+     * Creates a new page.
+     *
+     * @param contentType     the content type of the page
+     * @param headers         the headers to send with the page, as name/value pairs
+     * @param content         the content of the page
+     * @param blogEntryIds    the IDs of the blog entries shown on the page
+     * @throws IOException    if the content can't be gzipped
+     */
+    public Page(String contentType, List<String[]> headers, byte[] content, Set<String> blogEntryIds) throws IOException {
+      this.contentType = contentType;
+      this.headers = headers;
+      this.content = content;
+      this.blogEntryIds = blogEntryIds;
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(content);
+      gzip.close();
+      this.gzippedContent = out.toByteArray();
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public List<String[]> getHeaders() {
+      return headers;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    public byte[] getGzippedContent() {
+      return gzippedContent;
+    }
+
+    public Set<String> getBlogEntryIds() {
+      return blogEntryIds;
+    }
+
+    long getSize() {
+      return PAGE_OVERHEAD + content.length + gzippedContent.length;
+    }
+
+  }
+
+}
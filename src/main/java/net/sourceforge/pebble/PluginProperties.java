@@ -171,6 +171,10 @@ public class PluginProperties {
     } catch (IOException e) {
       log.error(e.getMessage());
     }
+
+    PageCache.getInstance().removeBlog(blog);
+    FeedCache.getInstance().removeBlog(blog);
+    ValidatorCache.getInstance().removeBlog(blog);
   }
 
 }
\ No newline at end of file
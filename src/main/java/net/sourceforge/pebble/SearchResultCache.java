@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.search.SearchResults;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of search results, so that the same query isn't run against the
+ * search index over and over again. Results are keyed on the query (with
+ * its whitespace normalized), the sort order and the page of hits, and each
+ * blog keeps its most recently used results. Only results holding at most
+ * {@link #MAX_HITS_PER_RESULTS} hits are cached, so that the memory used is
+ * bounded as well as the number of results. Everything cached for a blog
+ * is removed whenever its search index changes, or something that could
+ * change its search index (a blog entry or response) changes.
+ * <p />
+ * The cached results are never handed out, only copies of them.
+ *
+ * @author    Simon Brown
+ */
+public class SearchResultCache {
+
+  /** the maximum number of search results cached per blog */
+  public static final int MAX_RESULTS_PER_BLOG = 200;
+
+  /** the maximum number of hits in a single cached search result */
+  public static final int MAX_HITS_PER_RESULTS = 100;
+
+  private static final SearchResultCache instance = new SearchResultCache();
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(SearchResultCache.class);
+
+  /** the search results for each blog, keyed on blog ID */
+  private final Map<String,Map<String,SearchResults>> results = new HashMap<String,Map<String,SearchResults>>();
+
+  /** the generation numbers, keyed on blog ID */
+  private final Map<String,Long> generations = new HashMap<String,Long>();
+
+  /** the number of hits and misses, keyed on blog ID */
+  private final Map<String,long[]> counts = new HashMap<String,long[]>();
+
+  private SearchResultCache() {
+  }
+
+  public static SearchResultCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the key identifying a page of search results.
+   *
+   * @param query     the Lucene query
+   * @param sort      the sort order
+   * @param offset    the number of hits skipped
+   * @param limit     the maximum number of hits
+   * @return  a key for use with getSearchResults and putSearchResults
+   */
+  public static String getKey(String query, String sort, int offset, int limit) {
+    StringBuffer buf = new StringBuffer();
+    boolean space = false;
+    for (char c : query.trim().toCharArray()) {
+      if (Character.isWhitespace(c)) {
+        space = true;
+      } else {
+        if (space) {
+          buf.append(' ');
+          space = false;
+        }
+        buf.append(c);
+      }
+    }
+
+    // the query is last, as it can contain anything
+    return (sort != null ? sort.toLowerCase() : "") + "/" + offset + "/" + limit + "/" + buf;
+  }
+
+  /**
+   * Gets the current generation number for the specified blog, which
+   * should be taken before searching and passed back when the results are
+   * stored.
+   *
+   * @param blog    a Blog instance
+   * @return  the generation number
+   */
+  public synchronized long getGeneration(Blog blog) {
+    Long generation = generations.get(blog.getId());
+    return generation != null ? generation : 0;
+  }
+
+  /**
+   * Gets search results from the cache.
+   *
+   * @param blog    the Blog that was searched
+   * @param key     the key identifying the results
+   * @return  a copy of the SearchResults, or null if they aren't cached
+   */
+  public SearchResults getSearchResults(Blog blog, String key) {
+    SearchResults searchResults;
+    synchronized (this) {
+      Map<String,SearchResults> resultsForBlog = results.get(blog.getId());
+      searchResults = resultsForBlog != null ? resultsForBlog.get(key) : null;
+
+      long[] countsForBlog = getCounts(blog);
+      if (searchResults != null) {
+        countsForBlog[0]++;
+      } else {
+        countsForBlog[1]++;
+      }
+    }
+
+    return searchResults != null ? searchResults.copy() : null;
+  }
+
+  /**
+   * Puts search results into the cache, provided that nothing has been
+   * removed from the cache for the blog since the search started. The cache
+   * takes a copy of the results.
+   *
+   * @param blog            the Blog that was searched
+   * @param key             the key identifying the results
+   * @param searchResults   the SearchResults
+   * @param generation      the generation number taken before searching
+   * @return  true if the results were stored, false otherwise (including
+   *          when they hold more than MAX_HITS_PER_RESULTS hits)
+   */
+  public boolean putSearchResults(Blog blog, String key, SearchResults searchResults, long generation) {
+    if (searchResults.getHits().size() > MAX_HITS_PER_RESULTS) {
+      return false;
+    }
+
+    SearchResults copy = searchResults.copy();
+
+    synchronized (this) {
+      if (generation != getGeneration(blog)) {
+        return false;
+      }
+
+      Map<String,SearchResults> resultsForBlog = results.get(blog.getId());
+      if (resultsForBlog == null) {
+        resultsForBlog = new LinkedHashMap<String,SearchResults>(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry<String,SearchResults> eldest) {
+            return size() > MAX_RESULTS_PER_BLOG;
+          }
+        };
+        results.put(blog.getId(), resultsForBlog);
+      }
+      resultsForBlog.put(key, copy);
+
+      return true;
+    }
+  }
+
+  /**
+   * Removes all of the search results for the specified blog, for example
+   * because its search index has changed.
+   *
+   * @param blog    a Blog instance
+   */
+  public synchronized void removeBlog(Blog blog) {
+    generations.put(blog.getId(), getGeneration(blog) + 1);
+    if (results.remove(blog.getId()) != null) {
+      log.debug("Removed cached search results for " + blog.getId());
+    }
+  }
+
+  /**
+   * Gets the number of search results currently cached for the specified
+   * blog.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of search results
+   */
+  public synchronized int getSize(Blog blog) {
+    Map<String,SearchResults> resultsForBlog = results.get(blog.getId());
+    return resultsForBlog != null ? resultsForBlog.size() : 0;
+  }
+
+  /**
+   * Gets the number of searches of the specified blog answered from the
+   * cache.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of hits
+   */
+  public synchronized long getHits(Blog blog) {
+    return getCounts(blog)[0];
+  }
+
+  /**
+   * Gets the number of searches of the specified blog that weren't answered
+   * from the cache.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of misses
+   */
+  public synchronized long getMisses(Blog blog) {
+    return getCounts(blog)[1];
+  }
+
+  private long[] getCounts(Blog blog) {
+    long[] countsForBlog = counts.get(blog.getId());
+    if (countsForBlog == null) {
+      countsForBlog = new long[2];
+      counts.put(blog.getId(), countsForBlog);
+    }
+
+    return countsForBlog;
+  }
+
+}
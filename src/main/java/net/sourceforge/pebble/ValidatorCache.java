@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.Blog;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A cache of the validators (a strong entity tag and a last modified date)
+ * for the pages and feeds that readers ask for, so that conditional GETs can
+ * be answered without loading any content. Each blog has a last modified
+ * date that moves on whenever something readers can see changes, and the
+ * entity tag for a resource is a hash of its URI, that date and the Pebble
+ * version. Invalidation is therefore blog-wide: any such change gives every
+ * page and feed of the blog a new entity tag, because the sidebar, archives
+ * and feeds show most changes anyway. Where the GZIPFilter compresses a
+ * page, it adds a suffix to the entity tag.
+ * <p />
+ * The last modified date is kept in the blog's indexes directory, so that
+ * validators survive a restart. If it can't be read, the time at which it
+ * was first needed is used instead.
+ *
+ * @author    Simon Brown
+ */
+public class ValidatorCache {
+
+  private static final Log log = LogFactory.getLog(ValidatorCache.class);
+
+  static final String VALIDATORS_FILE = "validators.properties";
+  private static final String LAST_MODIFIED_KEY = "lastModified";
+
+  /** the maximum number of validators cached per blog */
+  public static final int MAX_VALIDATORS_PER_BLOG = 1000;
+
+  private static final ValidatorCache instance = new ValidatorCache();
+
+  /** the state of each blog, keyed on blog ID */
+  private final Map<String,BlogState> blogs = new HashMap<String,BlogState>();
+
+  ValidatorCache() {
+  }
+
+  public static ValidatorCache getInstance() {
+    return instance;
+  }
+
+  /**
+   * Gets the validator for a resource, computing it if necessary.
+   *
+   * @param blog        the Blog that the resource belongs to
+   * @param resource    the key identifying the resource, such as its URI
+   * @return  a Validator instance
+   */
+  public synchronized Validator getValidator(Blog blog, String resource) {
+    BlogState state = getState(blog);
+    Validator validator = state.validators.get(resource);
+    if (validator == null) {
+      validator = new Validator(getETag(blog, state, resource), new Date(state.lastModified));
+      state.validators.put(resource, validator);
+    }
+
+    return validator;
+  }
+
+  /**
+   * Gets the date on which something that readers can see last changed.
+   *
+   * @param blog    a Blog instance
+   * @return  a Date instance
+   */
+  public synchronized Date getLastModified(Blog blog) {
+    return new Date(getState(blog).lastModified);
+  }
+
+  /**
+   * Removes all of the validators for the specified blog, because something
+   * that readers can see has changed.
+   *
+   * @param blog    a Blog instance
+   */
+  public synchronized void removeBlog(Blog blog) {
+    BlogState state = getState(blog);
+    state.validators.clear();
+
+    // HTTP dates only go down to the second, so make sure that the new
+    // date is later than any that might already have been sent
+    state.lastModified = Math.max(System.currentTimeMillis(), (state.lastModified / 1000 + 1) * 1000);
+    write(blog, state.lastModified);
+  }
+
+  /**
+   * Gets the number of validators currently cached for the specified blog.
+   *
+   * @param blog    a Blog instance
+   * @return  the number of validators
+   */
+  public synchronized int getSize(Blog blog) {
+    BlogState state = blogs.get(blog.getId());
+    return state != null ? state.validators.size() : 0;
+  }
+
+  private BlogState getState(Blog blog) {
+    BlogState state = blogs.get(blog.getId());
+    if (state == null) {
+      state = new BlogState();
+      state.lastModified = read(blog);
+      if (state.lastModified <= 0) {
+        state.lastModified = System.currentTimeMillis();
+        write(blog, state.lastModified);
+      }
+      blogs.put(blog.getId(), state);
+    }
+
+    return state;
+  }
+
+  private long read(Blog blog) {
+    File file = new File(blog.getIndexesDirectory(), VALIDATORS_FILE);
+    if (!file.exists()) {
+      return 0;
+    }
+
+    try {
+      Properties properties = new Properties();
+      InputStream in = new FileInputStream(file);
+      try {
+        properties.load(in);
+      } finally {
+        in.close();
+      }
+
+      return Long.parseLong(properties.getProperty(LAST_MODIFIED_KEY, "0"));
+    } catch (Exception e) {
+      log.warn("Error while reading " + file.getAbsolutePath(), e);
+      return 0;
+    }
+  }
+
+  private void write(Blog blog, long lastModified) {
+    File file = new File(blog.getIndexesDirectory(), VALIDATORS_FILE);
+    try {
+      Properties properties = new Properties();
+      properties.setProperty(LAST_MODIFIED_KEY, "" + lastModified);
+      OutputStream out = new FileOutputStream(file);
+      try {
+        properties.store(out, "Validators");
+      } finally {
+        out.close();
+      }
+    } catch (IOException ioe) {
+      log.warn("Error while writing " + file.getAbsolutePath(), ioe);
+    }
+  }
+
+  private String getETag(Blog blog, BlogState state, String resource) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      // the version is included so that pages are fetched again after an upgrade
+      String s = blog.getId() + "/" + PebbleContext.getInstance().getBuildVersion() + "/" + state.lastModified + "/" + resource;
+      return "\"" + new String(Hex.encodeHex(digest.digest(s.getBytes("UTF-8")))) + "\"";
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * The validators and last modified date for a single blog.
+   */
+  private static class BlogState {
+
+    private long lastModified;
+
+    private final Map<String,Validator> validators = new LinkedHashMap<String,Validator>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,Validator> eldest) {
+        return size() > MAX_VALIDATORS_PER_BLOG;
+      }
+    };
+
+  }
+
+  /**
+   * The validators for a single resource.
+   */
+  public static class Validator {
+
+    private final String eTag;
+    private final Date lastModified;
+
+    public Validator(String eTag, Date lastModified) {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+    }
+
+    public String getETag() {
+      return eTag;
+    }
+
+    public Date getLastModified() {
+      return lastModified;
+    }
+
+  }
+
+}
@@ -75,7 +75,7 @@ public interface PermalinkProvider {
    * Gets the blog entry referred to by the specified URI.
    *
    * @param uri   a relative URI
-   * @return  a BlogEntry instance, or null if one can't be found
+   * @return  a read-only BlogEntry instance, or null if one can't be found
    */
   public BlogEntry getBlogEntry(String uri);
 
@@ -33,6 +33,7 @@ package net.sourceforge.pebble.dao;
 
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Response;
 
 import java.util.List;
 import java.util.Collection;
@@ -67,6 +68,18 @@ public interface BlogEntryDAO {
    */
   public void storeBlogEntry(BlogEntry blogEntry) throws PersistenceException;
 
+  /**
+   * Stores changes to the responses of a blog entry whose other properties
+   * haven't changed. Responses that still belong to the blog entry are
+   * stored as they are (whether they are new or have changed state),
+   * whereas those that don't are removed.
+   *
+   * @param blogEntry   the blog entry that owns the responses
+   * @param responses   the responses that have been added, changed or removed
+   * @throws PersistenceException   if something goes wrong storing the responses
+   */
+  public void storeResponses(BlogEntry blogEntry, Collection<Response> responses) throws PersistenceException;
+
   /**
    * Removes the specified blog entry.
    *
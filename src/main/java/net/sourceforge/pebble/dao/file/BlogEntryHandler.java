@@ -75,6 +75,8 @@ public class BlogEntryHandler extends DefaultHandler {
   private static final int TIME_ZONE = 21;
   private static final int AUTHENTICATED = 22;
   private static final int AVATAR = 23;
+  private static final int REMOVED_COMMENT = 24;
+  private static final int REMOVED_TRACKBACK = 25;
 
   private static final int IN_BLOG_ENTRY = 100;
   private static final int IN_COMMENT = 101;
@@ -82,6 +84,7 @@ public class BlogEntryHandler extends DefaultHandler {
   private static final int IN_ATTACHMENT = 103;
 
   private BlogEntry blogEntry;
+  private boolean replayingJournal;
   private int groupStatus = IN_BLOG_ENTRY;
   private int elementStatus = NOT_DEFINED;
   private SimpleDateFormat dateTimeFormats[];
@@ -113,7 +116,20 @@ public class BlogEntryHandler extends DefaultHandler {
   private State trackBackState = State.APPROVED;
 
   public BlogEntryHandler(BlogEntry blogEntry) {
+    this(blogEntry, false);
+  }
+
+  /**
+   * Creates a handler that, when replaying a response journal, treats
+   * comments and TrackBacks that already exist on the blog entry as state
+   * changes rather than as new responses.
+   *
+   * @param blogEntry           the BlogEntry to populate
+   * @param replayingJournal    true if a response journal is being parsed
+   */
+  public BlogEntryHandler(BlogEntry blogEntry, boolean replayingJournal) {
     this.blogEntry = blogEntry;
+    this.replayingJournal = replayingJournal;
 
     // create all date/time formats, for backwards compatibility
     SimpleDateFormat format;
@@ -195,6 +211,10 @@ public class BlogEntryHandler extends DefaultHandler {
       elementStatus = SIZE;
     } else if (name.equals("type")) {
       elementStatus = TYPE;
+    } else if (name.equals("removedComment")) {
+      elementStatus = REMOVED_COMMENT;
+    } else if (name.equals("removedTrackBack")) {
+      elementStatus = REMOVED_TRACKBACK;
     } else if (name.equals("attachment")) {
       groupStatus = IN_ATTACHMENT;
       elementStatus = NOT_DEFINED;
@@ -256,6 +276,19 @@ public class BlogEntryHandler extends DefaultHandler {
         case TRACKBACKS_ENABLED :
           blogEntry.setTrackBacksEnabled(Boolean.valueOf(elementContent.toString()).booleanValue());
           break;
+        case REMOVED_COMMENT :
+          // replies are removed along with their parent, so may have gone already
+          long commentId = Long.parseLong(elementContent.toString());
+          if (blogEntry.getComment(commentId) != null) {
+            blogEntry.removeComment(commentId);
+          }
+          break;
+        case REMOVED_TRACKBACK :
+          long trackBackId = Long.parseLong(elementContent.toString());
+          if (blogEntry.getTrackBack(trackBackId) != null) {
+            blogEntry.removeTrackBack(trackBackId);
+          }
+          break;
       }
     } else if (groupStatus == IN_ATTACHMENT && name.equals("attachment")) {
       Attachment attachment = new Attachment();
@@ -281,12 +314,17 @@ public class BlogEntryHandler extends DefaultHandler {
           break;
       }
     } else if (groupStatus == IN_COMMENT && name.equals("comment")) {
-      Comment comment = blogEntry.createComment(commentTitle, commentBody, commentAuthor, commentEmail, commentWebsite, commentAvatar, commentIpAddress, commentDate, commentState);
-      if (commentParent != -1) {
-        comment.setParent(blogEntry.getComment(commentParent));
+      Comment existing = replayingJournal ? blogEntry.getComment(commentDate.getTime()) : null;
+      if (existing != null) {
+        setState(existing, commentState);
+      } else {
+        Comment comment = blogEntry.createComment(commentTitle, commentBody, commentAuthor, commentEmail, commentWebsite, commentAvatar, commentIpAddress, commentDate, commentState);
+        if (commentParent != -1) {
+          comment.setParent(blogEntry.getComment(commentParent));
+        }
+        comment.setAuthenticated(commentAuthenticated);
+        blogEntry.addComment(comment);
       }
-      comment.setAuthenticated(commentAuthenticated);
-      blogEntry.addComment(comment);
       groupStatus = IN_BLOG_ENTRY;
 
       // and blank all the comment variables
@@ -338,8 +376,13 @@ public class BlogEntryHandler extends DefaultHandler {
           break;
       }
     } else if (groupStatus == IN_TRACKBACK && name.equals("trackback")) {
-      TrackBack trackBack = blogEntry.createTrackBack(trackBackTitle, trackBackExcerpt, trackBackUrl, trackBackBlogName, trackBackIpAddress, trackBackDate, trackBackState);
-      blogEntry.addTrackBack(trackBack);
+      TrackBack existing = replayingJournal ? blogEntry.getTrackBack(trackBackDate.getTime()) : null;
+      if (existing != null) {
+        setState(existing, trackBackState);
+      } else {
+        TrackBack trackBack = blogEntry.createTrackBack(trackBackTitle, trackBackExcerpt, trackBackUrl, trackBackBlogName, trackBackIpAddress, trackBackDate, trackBackState);
+        blogEntry.addTrackBack(trackBack);
+      }
       groupStatus = IN_BLOG_ENTRY;
 
       // and blank all the TrackBack variables
@@ -396,6 +439,16 @@ public class BlogEntryHandler extends DefaultHandler {
     log.fatal("Exception encountered", e);
   }
 
+  private void setState(Response response, State state) {
+    if (State.APPROVED.equals(state)) {
+      response.setApproved();
+    } else if (State.REJECTED.equals(state)) {
+      response.setRejected();
+    } else if (State.PENDING.equals(state)) {
+      response.setPending();
+    }
+  }
+
   private Date getDate(String s) {
     for (int i = 0; i < dateTimeFormats.length; i++) {
       try {
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.file;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Streams a blog entry, along with its comments and trackbacks, out as XML.
+ * The output is identical to that previously produced by building a DOM and
+ * running it through an indenting Transformer, but nothing is buffered
+ * beyond the supplied Writer.
+ *
+ * @author Simon Brown
+ */
+public class BlogEntryWriter {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+  private static final String INDENT = "    ";
+
+  private static final String CDATA_START = "<![CDATA[";
+  private static final String CDATA_END = "]]>";
+
+  private final Writer out;
+  private final SimpleDateFormat dateFormat;
+
+  /**
+   * Creates a new instance that writes to the specified Writer, which
+   * should be encoding characters as UTF-8.
+   *
+   * @param out   the Writer to write to
+   */
+  public BlogEntryWriter(Writer out) {
+    this.out = out;
+    this.dateFormat = new SimpleDateFormat(FileBlogEntryDAO.NEW_PERSISTENT_DATETIME_FORMAT, Locale.ENGLISH);
+    this.dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+  }
+
+  /**
+   * Writes the specified blog entry.
+   *
+   * @param blogEntry   the BlogEntry to write
+   * @throws IOException    if something goes wrong writing the XML
+   */
+  public void write(BlogEntry blogEntry) throws IOException {
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+    out.write(LINE_SEPARATOR);
+    startElement(0, "blogEntry");
+
+    writeText(1, "title", blogEntry.getTitle());
+    writeText(1, "subtitle", blogEntry.getSubtitle());
+    writeCDATA(1, "excerpt", blogEntry.getExcerpt());
+    writeCDATA(1, "body", blogEntry.getBody());
+    writeText(1, "date", dateFormat.format(blogEntry.getDate()));
+    writeText(1, "timeZone", blogEntry.getTimeZoneId());
+    writeText(1, "state", blogEntry.getState().getName());
+    writeText(1, "author", blogEntry.getAuthor());
+    writeText(1, "staticName", null);
+
+    if (blogEntry.isAggregated()) {
+      writeText(1, "originalPermalink", blogEntry.getOriginalPermalink());
+    }
+
+    writeText(1, "commentsEnabled", "" + blogEntry.isCommentsEnabled());
+    writeText(1, "trackBacksEnabled", "" + blogEntry.isTrackBacksEnabled());
+
+    for (Category category : blogEntry.getCategories()) {
+      writeText(1, "category", category.getId());
+    }
+
+    if (blogEntry.getTags() != null) {
+      writeText(1, "tags", blogEntry.getTags());
+    }
+
+    Attachment attachment = blogEntry.getAttachment();
+    if (attachment != null) {
+      startElement(1, "attachment");
+      writeText(2, "url", attachment.getUrl());
+      writeText(2, "size", "" + attachment.getSize());
+      writeText(2, "type", attachment.getType());
+      endElement(1, "attachment");
+    }
+
+    for (Comment comment : blogEntry.getComments()) {
+      write(comment, 1);
+    }
+
+    for (TrackBack trackBack : blogEntry.getTrackBacks()) {
+      write(trackBack, 1);
+    }
+
+    endElement(0, "blogEntry");
+    out.flush();
+  }
+
+  /**
+   * Writes a single response as a record in a response journal. Replaying
+   * the record adds the response to its blog entry or, if the blog entry
+   * already has a response with the same ID, updates its state.
+   *
+   * @param response    the Response to write
+   * @throws IOException    if something goes wrong writing the XML
+   */
+  public void writeResponse(Response response) throws IOException {
+    if (response instanceof Comment) {
+      write((Comment)response, 0);
+    } else if (response instanceof TrackBack) {
+      write((TrackBack)response, 0);
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes a record to a response journal indicating that the specified
+   * response has been removed from its blog entry.
+   *
+   * @param response    the Response that has been removed
+   * @throws IOException    if something goes wrong writing the XML
+   */
+  public void writeRemovedResponse(Response response) throws IOException {
+    if (response instanceof Comment) {
+      writeText(0, "removedComment", "" + response.getId());
+    } else if (response instanceof TrackBack) {
+      writeText(0, "removedTrackBack", "" + response.getId());
+    }
+    out.flush();
+  }
+
+  /**
+   * Writes an individual comment.
+   *
+   * @param comment   the Comment to write
+   * @param depth     the depth of the comment element
+   * @throws IOException    if something goes wrong writing the XML
+   */
+  private void write(Comment comment, int depth) throws IOException {
+    startElement(depth, "comment");
+    writeText(depth+1, "title", comment.getTitle());
+    writeCDATA(depth+1, "body", comment.getBody());
+    writeText(depth+1, "author", comment.getAuthor());
+    writeText(depth+1, "email", comment.getEmail());
+    writeText(depth+1, "website", comment.getWebsite());
+    writeText(depth+1, "avatar", comment.getAvatar());
+    writeText(depth+1, "ipAddress", comment.getIpAddress());
+    writeText(depth+1, "date", dateFormat.format(comment.getDate()));
+    writeText(depth+1, "state", comment.getState().getName());
+    writeText(depth+1, "authenticated", "" + comment.isAuthenticated());
+
+    if (comment.getParent() != null) {
+      writeText(depth+1, "parent", "" + comment.getParent().getId());
+    }
+    endElement(depth, "comment");
+  }
+
+  /**
+   * Writes an individual trackback.
+   *
+   * @param trackBack   the TrackBack to write
+   * @param depth       the depth of the trackback element
+   * @throws IOException    if something goes wrong writing the XML
+   */
+  private void write(TrackBack trackBack, int depth) throws IOException {
+    startElement(depth, "trackback");
+    writeText(depth+1, "title", trackBack.getTitle());
+    writeCDATA(depth+1, "excerpt", trackBack.getExcerpt());
+    writeText(depth+1, "url", trackBack.getUrl());
+    writeText(depth+1, "blogName", trackBack.getBlogName());
+    writeText(depth+1, "ipAddress", trackBack.getIpAddress());
+    writeText(depth+1, "date", dateFormat.format(trackBack.getDate()));
+    writeText(depth+1, "state", trackBack.getState().getName());
+    endElement(depth, "trackback");
+  }
+
+  private void indent(int depth) throws IOException {
+    for (int i = 0; i < depth; i++) {
+      out.write(INDENT);
+    }
+  }
+
+  private void startElement(int depth, String name) throws IOException {
+    indent(depth);
+    out.write('<');
+    out.write(name);
+    out.write('>');
+    out.write(LINE_SEPARATOR);
+  }
+
+  private void endElement(int depth, String name) throws IOException {
+    indent(depth);
+    out.write("</");
+    out.write(name);
+    out.write('>');
+    out.write(LINE_SEPARATOR);
+  }
+
+  private void emptyElement(int depth, String name) throws IOException {
+    indent(depth);
+    out.write('<');
+    out.write(name);
+    out.write("/>");
+    out.write(LINE_SEPARATOR);
+  }
+
+  /**
+   * Writes an element containing character data, escaped in the same way
+   * as the JDK serializer.
+   */
+  private void writeText(int depth, String name, String text) throws IOException {
+    text = filter(text);
+    if (text.length() == 0) {
+      emptyElement(depth, name);
+      return;
+    }
+
+    indent(depth);
+    out.write('<');
+    out.write(name);
+    out.write('>');
+
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          out.write("&amp;");
+          break;
+        case '<':
+          out.write("&lt;");
+          break;
+        case '>':
+          out.write("&gt;");
+          break;
+        case '\r':
+          out.write("&#13;");
+          break;
+        default:
+          if (c >= 0x7f && c <= 0x9f) {
+            writeCharacterReference(c);
+          } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+            writeCharacterReference(Character.toCodePoint(c, text.charAt(i + 1)));
+            i++;
+          } else {
+            out.write(c);
+          }
+      }
+    }
+
+    out.write("</");
+    out.write(name);
+    out.write('>');
+    out.write(LINE_SEPARATOR);
+  }
+
+  /**
+   * Writes an element containing a CDATA section, splitting the section
+   * wherever the content contains the CDATA terminator.
+   */
+  private void writeCDATA(int depth, String name, String text) throws IOException {
+    text = filter(text);
+    if (text.length() == 0) {
+      emptyElement(depth, name);
+      return;
+    }
+
+    indent(depth);
+    out.write('<');
+    out.write(name);
+    out.write('>');
+    out.write(CDATA_START);
+
+    int start = 0;
+    int index = text.indexOf(CDATA_END);
+    while (index > -1) {
+      out.write(text, start, index + 2 - start);
+      out.write(CDATA_END);
+      out.write(CDATA_START);
+      start = index + 2;
+      index = text.indexOf(CDATA_END, start);
+    }
+    out.write(text, start, text.length() - start);
+
+    out.write(CDATA_END);
+    out.write("</");
+    out.write(name);
+    out.write('>');
+    out.write(LINE_SEPARATOR);
+  }
+
+  private void writeCharacterReference(int codePoint) throws IOException {
+    out.write("&#");
+    out.write(Integer.toString(codePoint));
+    out.write(';');
+  }
+
+  private String filter(String text) {
+    if (text == null) {
+      return "";
+    } else {
+      return XmlStringFilter.filter(text);
+    }
+  }
+
+}
@@ -37,22 +37,18 @@ import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import java.io.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileBlogEntryDAO implements BlogEntryDAO {
 
@@ -64,7 +60,49 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
    */
   private static Log log = LogFactory.getLog(FileBlogEntryDAO.class);
 
+  /**
+   * SAX parsers are expensive to create, so idle ones are kept for reuse.
+   * They belong to this instance rather than to a thread, so nothing is left
+   * behind on pool or container threads when the webapp is redeployed.
+   */
+  private final Queue<SAXParser> parsers = new ConcurrentLinkedQueue<SAXParser>();
+
+  /** the size (in bytes) beyond which a response journal is folded back into its blog entry */
+  static final long JOURNAL_COMPACTION_THRESHOLD = 64 * 1024;
+
+  /** the number of threads used to load all blog entries */
+  private final int loaderThreads;
+
+  /** the pool used to load all blog entries, created on first use */
+  private ExecutorService loaderPool;
+
+  /** the single thread used to compact response journals, created on first use */
+  private ExecutorService compactionPool;
+
+  /** the journals (blog ID and blog entry ID) waiting to be compacted */
+  private final Set<String> pendingCompactions = Collections.synchronizedSet(new HashSet<String>());
+
+  /** the journals (blog ID and blog entry ID) known to end with an incomplete record */
+  private final Set<String> tornJournals = Collections.synchronizedSet(new HashSet<String>());
+
+  /**
+   * Creates a new instance that loads all blog entries on the calling thread.
+   * Note that {@link FileDAOFactory} doesn't use this, and instead creates an
+   * instance with one loader thread per available processor.
+   */
   public FileBlogEntryDAO() {
+    this(1);
+  }
+
+  /**
+   * Creates a new instance that uses the specified number of threads to
+   * load all blog entries.
+   *
+   * @param loaderThreads   the number of threads, 1 or less meaning that
+   *                        entries are loaded on the calling thread
+   */
+  public FileBlogEntryDAO(int loaderThreads) {
+    this.loaderThreads = loaderThreads;
   }
 
   /** the date/time format used when persisting dates */
@@ -98,18 +136,23 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
       log.debug("Loading " + source.getAbsolutePath());
       BlogEntry blogEntry = new BlogEntry(blog);
 
+      SAXParser parser = null;
       try {
         DefaultHandler handler = new BlogEntryHandler(blogEntry);
-        SAXParserFactory saxFactory = SAXParserFactory.newInstance();
-        saxFactory.setValidating(false);
-        saxFactory.setNamespaceAware(true);
-        SAXParser parser = saxFactory.newSAXParser();
+        parser = getParser();
         parser.parse(source, handler);
 
       } catch (Exception e) {
         log.error(e.getMessage() + " while loading blog enty from " + source.getAbsolutePath(), e);
         e.printStackTrace();
         throw new PersistenceException(e.getMessage());
+      } finally {
+        releaseParser(parser);
+      }
+
+      File journal = getJournalFile(source);
+      if (journal.exists()) {
+        replayJournal(blogEntry, journal);
       }
 
       return blogEntry;
@@ -119,34 +162,246 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
   }
 
   /**
-   * Loads all blog entries.
+   * Applies the response journal for a blog entry, on top of the state that
+   * has been loaded from the blog entry file. The journal is a sequence of
+   * comment, trackback, removedComment and removedTrackBack elements with no
+   * root element, so one is supplied here. If the last record is incomplete
+   * (e.g. the server stopped part way through appending it) everything up to
+   * that point is kept and the journal is compacted to remove it. Until then
+   * the journal is marked as torn, so that nothing is appended after the
+   * incomplete record.
+   *
+   * @param blogEntry   the BlogEntry loaded from the blog entry file
+   * @param journal     the File pointing to the journal
+   * @throws PersistenceException   if the journal can't be read
+   */
+  private void replayJournal(BlogEntry blogEntry, File journal) throws PersistenceException {
+    log.debug("Replaying " + journal.getAbsolutePath());
+
+    InputStream in = null;
+    SAXParser parser = null;
+    try {
+      in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+          new ByteArrayInputStream("<journal>".getBytes("UTF-8")),
+          new BufferedInputStream(new FileInputStream(journal)),
+          new ByteArrayInputStream("</journal>".getBytes("UTF-8")))));
+      InputSource source = new InputSource(in);
+      source.setEncoding("UTF-8");
+      parser = getParser();
+      parser.parse(source, new BlogEntryHandler(blogEntry, true));
+    } catch (SAXParseException spe) {
+      log.warn("Incomplete response journal " + journal.getAbsolutePath() + ", it will be compacted", spe);
+      tornJournals.add(getKey(blogEntry.getBlog(), blogEntry.getId()));
+      scheduleCompaction(blogEntry.getBlog(), blogEntry.getId());
+    } catch (Exception e) {
+      log.error(e.getMessage() + " while replaying response journal " + journal.getAbsolutePath(), e);
+      throw new PersistenceException(e.getMessage());
+    } finally {
+      releaseParser(parser);
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ioe) {
+          log.warn(ioe.getMessage(), ioe);
+        }
+      }
+    }
+  }
+
+  private File getJournalFile(File blogEntryFile) {
+    return new File(blogEntryFile.getParentFile(), blogEntryFile.getName() + ".journal");
+  }
+
+  private String getKey(Blog blog, String blogEntryId) {
+    return blog.getId() + "/" + blogEntryId;
+  }
+
+  /**
+   * Takes an idle SAX parser, creating one if there are none. Callers must
+   * hand the parser back with {@link #releaseParser(SAXParser)} when they
+   * have finished with it.
+   *
+   * @return  a SAXParser instance
+   * @throws Exception  if the parser can't be created
+   */
+  private SAXParser getParser() throws Exception {
+    SAXParser parser = parsers.poll();
+    if (parser == null) {
+      SAXParserFactory saxFactory = SAXParserFactory.newInstance();
+      saxFactory.setValidating(false);
+      saxFactory.setNamespaceAware(true);
+      parser = saxFactory.newSAXParser();
+    }
+
+    return parser;
+  }
+
+  /**
+   * Resets a SAX parser and makes it available for reuse. At most one
+   * parser per loader thread (plus the calling thread) is kept.
+   *
+   * @param parser    the SAXParser, may be null
+   */
+  private void releaseParser(SAXParser parser) {
+    if (parser == null) {
+      return;
+    }
+
+    try {
+      parser.reset();
+    } catch (Exception e) {
+      log.warn(e.getMessage(), e);
+      return;
+    }
+
+    if (parsers.size() <= Math.max(loaderThreads, 1)) {
+      parsers.offer(parser);
+    }
+  }
+
+  /**
+   * Loads all blog entries. Each day directory is scanned and parsed as a
+   * separate task, so these are spread across the loader threads if more
+   * than one has been configured. Either way, blog entries are returned in
+   * the order of the yyyy/MM/dd directory structure and then filename.
    *
    * @param blog the Blog to load all entries for
    * @return a List of BlogEntry objects
    * @throws net.sourceforge.pebble.dao.PersistenceException
    *          if the blog entries cannot be loaded
    */
-  public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException {
+  public Collection<BlogEntry> loadBlogEntries(final Blog blog) throws PersistenceException {
+    List<File> days = getDayDirectories(blog);
     List<BlogEntry> list = new ArrayList<BlogEntry>();
 
-    File root = new File(blog.getRoot());
-    File years[] = root.listFiles(new FourDigitFilenameFilter());
-    for (File year : years) {
-      File months[] = year.listFiles(new TwoDigitFilenameFilter());
-      for (File month : months) {
-        File days[] = month.listFiles(new TwoDigitFilenameFilter());
-        for (File day : days) {
-          File blogEntryFiles[] = day.listFiles(new BlogEntryFilenameFilter());
-          for (File blogEntryFile : blogEntryFiles) {
-            list.add(loadBlogEntry(blog, blogEntryFile));
-          }
+    if (loaderThreads <= 1 || days.size() <= 1) {
+      for (File day : days) {
+        list.addAll(loadBlogEntries(blog, day));
+      }
+
+      return list;
+    }
+
+    ExecutorService pool = getLoaderPool();
+    List<Future<List<BlogEntry>>> tasks = new ArrayList<Future<List<BlogEntry>>>(days.size());
+    for (final File day : days) {
+      tasks.add(pool.submit(new Callable<List<BlogEntry>>() {
+        public List<BlogEntry> call() throws Exception {
+          return loadBlogEntries(blog, day);
         }
+      }));
+    }
+
+    try {
+      for (Future<List<BlogEntry>> task : tasks) {
+        list.addAll(task.get());
+      }
+    } catch (InterruptedException ie) {
+      cancel(tasks);
+      Thread.currentThread().interrupt();
+      throw new PersistenceException("Interrupted while loading blog entries for " + blog.getId());
+    } catch (ExecutionException ee) {
+      cancel(tasks);
+      Throwable cause = ee.getCause();
+      if (cause instanceof PersistenceException) {
+        throw (PersistenceException)cause;
+      } else {
+        log.error(cause.getMessage(), cause);
+        throw new PersistenceException(cause.getMessage());
       }
     }
 
     return list;
   }
 
+  /**
+   * Loads all of the blog entries in a single day directory.
+   *
+   * @param blog    the owning Blog
+   * @param day     the yyyy/MM/dd directory
+   * @return  a List of BlogEntry objects, ordered by filename
+   * @throws PersistenceException   if the blog entries cannot be loaded
+   */
+  private List<BlogEntry> loadBlogEntries(Blog blog, File day) throws PersistenceException {
+    List<BlogEntry> list = new ArrayList<BlogEntry>();
+    for (File blogEntryFile : listFiles(day, new BlogEntryFilenameFilter())) {
+      list.add(loadBlogEntry(blog, blogEntryFile));
+    }
+
+    return list;
+  }
+
+  /**
+   * Gets all of the yyyy/MM/dd directories for the specified blog, in order.
+   *
+   * @param blog    the Blog
+   * @return  a List of File instances
+   */
+  private List<File> getDayDirectories(Blog blog) {
+    List<File> list = new ArrayList<File>();
+
+    File root = new File(blog.getRoot());
+    for (File year : listFiles(root, new FourDigitFilenameFilter())) {
+      for (File month : listFiles(year, new TwoDigitFilenameFilter())) {
+        list.addAll(Arrays.asList(listFiles(month, new TwoDigitFilenameFilter())));
+      }
+    }
+
+    return list;
+  }
+
+  private File[] listFiles(File directory, FilenameFilter filter) {
+    File files[] = directory.listFiles(filter);
+    if (files == null) {
+      return new File[0];
+    }
+
+    Arrays.sort(files);
+    return files;
+  }
+
+  private void cancel(List<Future<List<BlogEntry>>> tasks) {
+    for (Future<List<BlogEntry>> task : tasks) {
+      task.cancel(true);
+    }
+  }
+
+  /**
+   * Gets the pool used to load blog entries. The threads are daemons and
+   * time out when idle, so the pool doesn't need to be shut down.
+   *
+   * @return  an ExecutorService instance
+   */
+  private synchronized ExecutorService getLoaderPool() {
+    if (loaderPool == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          loaderThreads, loaderThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "pebble-blog-entry-loader-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      loaderPool = executor;
+    }
+
+    return loaderPool;
+  }
+
+  /**
+   * Gets the number of threads used to load all blog entries.
+   *
+   * @return  the number of threads
+   */
+  public int getLoaderThreads() {
+    return loaderThreads;
+  }
+
   /**
    * Stores the specified blog entry.
    *
@@ -165,7 +420,9 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
 
 
   /**
-   * Stores a blog entry to the specified file.
+   * Stores a blog entry to the specified file. The XML is streamed to a
+   * temporary file first and only moved into place once it has been written
+   * successfully, so a failure part way through doesn't corrupt the entry.
    *
    * @param blogEntry   the BlogEntry that is being stored
    * @param destination the File pointing to the destination
@@ -173,256 +430,217 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
    */
   private void storeBlogEntry(BlogEntry blogEntry, File destination) throws PersistenceException {
     File backupFile = new File(destination.getParentFile(), destination.getName() + ".bak");
+    File tempFile = new File(destination.getParentFile(), destination.getName() + ".tmp");
+    Writer writer = null;
     try {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setValidating(false);
-      factory.setNamespaceAware(true);
-      factory.setIgnoringElementContentWhitespace(true);
-      factory.setIgnoringComments(true);
-
-      DocumentBuilder builder = factory.newDocumentBuilder();
-      Document doc = builder.newDocument();
-
-      Element root = doc.createElement("blogEntry");
-      doc.appendChild(root);
-
-      Element titleNode = doc.createElement("title");
-      Element subtitleNode = doc.createElement("subtitle");
-      Element excerptNode = doc.createElement("excerpt");
-      Element bodyNode = doc.createElement("body");
-      Element categoryNode;
-      Element tagsNode = doc.createElement("tags");
-      Element dateNode = doc.createElement("date");
-      Element timeZoneNode = doc.createElement("timeZone");
-      Element stateNode = doc.createElement("state");
-      Element authorNode = doc.createElement("author");
-      Element staticNameNode = doc.createElement("staticName");
-      Element commentsEnabledNode = doc.createElement("commentsEnabled");
-      Element trackBacksEnabledNode = doc.createElement("trackBacksEnabled");
-      Element attachmentNode = doc.createElement("attachment");
-
-      root.appendChild(titleNode);
-      root.appendChild(subtitleNode);
-      root.appendChild(excerptNode);
-      root.appendChild(bodyNode);
-      root.appendChild(dateNode);
-      root.appendChild(timeZoneNode);
-      root.appendChild(stateNode);
-      root.appendChild(authorNode);
-      root.appendChild(staticNameNode);
-
-      if (blogEntry.isAggregated()) {
-        Element permalinkNode = doc.createElement("originalPermalink");
-        permalinkNode.appendChild(createTextNode(doc, blogEntry.getOriginalPermalink()));
-        root.appendChild(permalinkNode);
-      }
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+      new BlogEntryWriter(writer).write(blogEntry);
+      writer.close();
+      writer = null;
 
-      titleNode.appendChild(createTextNode(doc, blogEntry.getTitle()));
-      subtitleNode.appendChild(createTextNode(doc, blogEntry.getSubtitle()));
-      bodyNode.appendChild(createCDATASection(doc, blogEntry.getBody()));
-
-      if (blogEntry.getExcerpt() != null) {
-        excerptNode.appendChild(createCDATASection(doc, blogEntry.getExcerpt()));
+      // now take a backup of the correct file
+      if (destination.exists() && destination.length() > 0) {
+        log.debug("Backing up to " + backupFile.getAbsolutePath());
+        backupFile.delete();
+        destination.renameTo(backupFile);
       }
 
-      root.appendChild(commentsEnabledNode);
-      commentsEnabledNode.appendChild(createTextNode(doc, "" + blogEntry.isCommentsEnabled()));
-
-      root.appendChild(trackBacksEnabledNode);
-      trackBacksEnabledNode.appendChild(createTextNode(doc, "" + blogEntry.isTrackBacksEnabled()));
-
-      Iterator it = blogEntry.getCategories().iterator();
-      Category category;
-      while (it.hasNext()) {
-        category = (Category) it.next();
-        categoryNode = doc.createElement("category");
-        categoryNode.appendChild(createTextNode(doc, category.getId()));
-        root.appendChild(categoryNode);
+      log.debug("Saving to " + destination.getAbsolutePath());
+      if (!tempFile.renameTo(destination)) {
+        destination.delete();
+        if (!tempFile.renameTo(destination)) {
+          throw new IOException("Could not rename " + tempFile.getAbsolutePath() + " to " + destination.getAbsolutePath());
+        }
       }
 
-      if (blogEntry.getTags() != null) {
-        root.appendChild(tagsNode);
-        tagsNode.appendChild(createTextNode(doc, blogEntry.getTags()));
+      // the blog entry file now includes everything that was in the journal
+      getJournalFile(destination).delete();
+      tornJournals.remove(getKey(blogEntry.getBlog(), blogEntry.getId()));
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+      tempFile.delete();
+      throw new PersistenceException(e.getMessage());
+    } finally {
+      if (writer != null) {
+        try {
+          writer.close();
+        } catch (IOException ioe) {
+          log.warn(ioe.getMessage(), ioe);
+        }
+        tempFile.delete();
       }
+    }
+  }
 
-      if (blogEntry.getAuthor() != null) {
-        authorNode.appendChild(createTextNode(doc, blogEntry.getAuthor()));
-      }
+  /**
+   * Stores changes to the responses of a blog entry by appending them to
+   * the response journal that sits alongside the blog entry file, rather
+   * than rewriting the whole blog entry. Once the journal grows beyond
+   * {@link #JOURNAL_COMPACTION_THRESHOLD} it is folded back into the blog
+   * entry file in the background. A journal that is known to end with an
+   * incomplete record is compacted first, because records appended after
+   * it would be lost when the journal is next replayed. Likewise, if the
+   * append fails the journal is truncated back to its previous length.
+   *
+   * @param blogEntry   the blog entry that owns the responses
+   * @param responses   the responses that have been added, changed or removed
+   * @throws PersistenceException   if something goes wrong storing the responses
+   */
+  public void storeResponses(BlogEntry blogEntry, Collection<Response> responses) throws PersistenceException {
+    File path = new File(getPath(blogEntry.getBlog(), blogEntry.getId(), GMT));
+    File file = new File(path, blogEntry.getId() + ".xml");
+    if (!file.exists()) {
+      // nothing to append to
+      storeBlogEntry(blogEntry);
+      return;
+    }
 
-      SimpleDateFormat sdf = new SimpleDateFormat(NEW_PERSISTENT_DATETIME_FORMAT, Locale.ENGLISH);
-      sdf.setTimeZone(GMT);
-      dateNode.appendChild(createTextNode(doc, sdf.format(blogEntry.getDate())));
-
-      timeZoneNode.appendChild(createTextNode(doc, blogEntry.getTimeZoneId()));
-
-      stateNode.appendChild(createTextNode(doc, blogEntry.getState().getName()));
-
-      Attachment attachment = blogEntry.getAttachment();
-      if (attachment != null) {
-        root.appendChild(attachmentNode);
-        Element attachmentUrlNode = doc.createElement("url");
-        attachmentUrlNode.appendChild(createTextNode(doc, attachment.getUrl()));
-        attachmentNode.appendChild(attachmentUrlNode);
-        Element attachmentSizeNode = doc.createElement("size");
-        attachmentSizeNode.appendChild(createTextNode(doc, "" + attachment.getSize()));
-        attachmentNode.appendChild(attachmentSizeNode);
-        Element attachmentTypeNode = doc.createElement("type");
-        attachmentTypeNode.appendChild(createTextNode(doc, attachment.getType()));
-        attachmentNode.appendChild(attachmentTypeNode);
-      }
+    if (responses.isEmpty()) {
+      return;
+    }
 
-      // and now store the comments
-      it = blogEntry.getComments().iterator();
-      while (it.hasNext()) {
-        Comment comment = (Comment) it.next();
-        storeComment(comment, doc, root);
-      }
+    File journal = getJournalFile(file);
 
-      // and finally the trackbacks
-      it = blogEntry.getTrackBacks().iterator();
-      while (it.hasNext()) {
-        TrackBack trackBack = (TrackBack) it.next();
-        storeTrackBack(trackBack, doc, root);
+    // the same lock as BlogService uses when storing blog entries
+    synchronized (blogEntry.getBlog()) {
+      if (tornJournals.contains(getKey(blogEntry.getBlog(), blogEntry.getId()))) {
+        compactResponses(blogEntry.getBlog(), blogEntry.getId());
       }
 
-      // write the XMl to a String, and then write this string to a file
-      // (if the XML format fails, we don't corrupt the file)
-      StringWriter sw = new StringWriter();
-      Source source = new DOMSource(doc);
-      Result result = new StreamResult(sw);
-      Transformer xformer = TransformerFactory.newInstance().newTransformer();
-      xformer.setOutputProperty(OutputKeys.METHOD, "xml");
-      xformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-      xformer.setOutputProperty(OutputKeys.MEDIA_TYPE, "text/xml");
-      xformer.setOutputProperty(OutputKeys.CDATA_SECTION_ELEMENTS, "body");
-      xformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      xformer.transform(source, result);
-
-      // now take a backup of the correct file
-      if (destination.exists() && destination.length() > 0) {
-        log.debug("Backing up to " + backupFile.getAbsolutePath());
-        destination.renameTo(backupFile);
+      long length = journal.length();
+      Writer writer = null;
+      try {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journal, true), "UTF-8"));
+        BlogEntryWriter blogEntryWriter = new BlogEntryWriter(writer);
+        for (Response response : responses) {
+          if (blogEntry.getResponse(response.getGuid()) != null) {
+            blogEntryWriter.writeResponse(response);
+          } else {
+            blogEntryWriter.writeRemovedResponse(response);
+          }
+        }
+        writer.close();
+        writer = null;
+      } catch (IOException ioe) {
+        log.error(ioe.getMessage(), ioe);
+        truncateJournal(journal, length);
+        throw new PersistenceException(ioe.getMessage());
+      } finally {
+        if (writer != null) {
+          try {
+            writer.close();
+          } catch (IOException ioe) {
+            log.warn(ioe.getMessage(), ioe);
+          }
+        }
       }
+    }
 
-      log.debug("Saving to " + destination.getAbsolutePath());
-      BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(destination), "UTF-8"));
-      bw.write(sw.toString());
-      bw.flush();
-      bw.close();
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-      e.printStackTrace();
-      throw new PersistenceException(e.getMessage());
+    if (journal.length() > JOURNAL_COMPACTION_THRESHOLD) {
+      scheduleCompaction(blogEntry.getBlog(), blogEntry.getId());
     }
   }
 
   /**
-   * Helper method to store an individual comment.
+   * Cuts a journal back to the specified length, removing a partially
+   * appended record.
    *
-   * @param comment the Comment being stored
-   * @param doc     the Document into which the comment is to be inserted
-   * @param root    the root Node for the comment
-   * @throws java.lang.Exception if something goes wrong
+   * @param journal   the File pointing to the journal
+   * @param length    the length to truncate to
    */
-  private void storeComment(Comment comment, Document doc, Node root) throws Exception {
-    Element commentNode = doc.createElement("comment");
-    root.appendChild(commentNode);
-
-    Element titleNode = doc.createElement("title");
-    Element bodyNode = doc.createElement("body");
-    Element authorNode = doc.createElement("author");
-    Element emailNode = doc.createElement("email");
-    Element websiteNode = doc.createElement("website");
-    Element avatarNode = doc.createElement("avatar");
-    Element ipAddressNode = doc.createElement("ipAddress");
-    Element dateNode = doc.createElement("date");
-    Element parentNode = doc.createElement("parent");
-    Element stateNode = doc.createElement("state");
-    Element authenticatedNode = doc.createElement("authenticated");
-
-    commentNode.appendChild(titleNode);
-    commentNode.appendChild(bodyNode);
-    commentNode.appendChild(authorNode);
-    commentNode.appendChild(emailNode);
-    commentNode.appendChild(websiteNode);
-    commentNode.appendChild(avatarNode);
-    commentNode.appendChild(ipAddressNode);
-    commentNode.appendChild(dateNode);
-    commentNode.appendChild(stateNode);
-    commentNode.appendChild(authenticatedNode);
-
-    titleNode.appendChild(createTextNode(doc, comment.getTitle()));
-    bodyNode.appendChild(createCDATASection(doc, comment.getBody()));
-    authorNode.appendChild(createTextNode(doc, comment.getAuthor()));
-    emailNode.appendChild(createTextNode(doc, comment.getEmail()));
-    websiteNode.appendChild(createTextNode(doc, comment.getWebsite()));
-    avatarNode.appendChild(createTextNode(doc, comment.getAvatar()));
-    ipAddressNode.appendChild(createTextNode(doc, comment.getIpAddress()));
-    SimpleDateFormat sdf = new SimpleDateFormat(NEW_PERSISTENT_DATETIME_FORMAT, Locale.ENGLISH);
-    sdf.setTimeZone(GMT);
-    dateNode.appendChild(createTextNode(doc, sdf.format(comment.getDate())));
-    stateNode.appendChild(createTextNode(doc, comment.getState().getName()));
-    authenticatedNode.appendChild(createTextNode(doc, "" + comment.isAuthenticated()));
-
-    if (comment.getParent() != null) {
-      commentNode.appendChild(parentNode);
-      parentNode.appendChild(createTextNode(doc, "" + comment.getParent().getId()));
+  private void truncateJournal(File journal, long length) {
+    RandomAccessFile file = null;
+    try {
+      file = new RandomAccessFile(journal, "rw");
+      file.setLength(length);
+    } catch (IOException ioe) {
+      log.error("Could not truncate response journal " + journal.getAbsolutePath(), ioe);
+    } finally {
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException ioe) {
+          log.warn(ioe.getMessage(), ioe);
+        }
+      }
     }
   }
 
-  private Node createCDATASection(Document doc, String text) {
-    if (text != null) {
-      return doc.createCDATASection(XmlStringFilter.filter(text));
-    } else {
-      return doc.createCDATASection("");
+  /**
+   * Folds the response journal for the specified blog entry back into the
+   * blog entry file, if there is one.
+   *
+   * @param blog          the owning Blog
+   * @param blogEntryId   the ID of the blog entry
+   * @throws PersistenceException   if something goes wrong compacting the journal
+   */
+  public void compactResponses(Blog blog, String blogEntryId) throws PersistenceException {
+    File path = new File(getPath(blog, blogEntryId, GMT));
+    File journal = getJournalFile(new File(path, blogEntryId + ".xml"));
+
+    // the same lock as BlogService uses when storing blog entries
+    synchronized (blog) {
+      if (journal.exists()) {
+        log.debug("Compacting " + journal.getAbsolutePath());
+        BlogEntry blogEntry = loadBlogEntry(blog, blogEntryId);
+        if (blogEntry != null) {
+          storeBlogEntry(blogEntry);
+        } else {
+          journal.delete();
+          tornJournals.remove(getKey(blog, blogEntryId));
+        }
+      }
     }
   }
 
-  private Node createTextNode(Document doc, String text) {
-    if (text != null) {
-      return doc.createTextNode(XmlStringFilter.filter(text));
-    } else {
-      return doc.createTextNode("");
+  /**
+   * Compacts the response journal for the specified blog entry on a
+   * background thread, unless it is already waiting to be compacted.
+   *
+   * @param blog          the owning Blog
+   * @param blogEntryId   the ID of the blog entry
+   */
+  private void scheduleCompaction(final Blog blog, final String blogEntryId) {
+    final String key = getKey(blog, blogEntryId);
+    if (!pendingCompactions.add(key)) {
+      return;
     }
+
+    getCompactionPool().execute(new Runnable() {
+      public void run() {
+        pendingCompactions.remove(key);
+        try {
+          compactResponses(blog, blogEntryId);
+        } catch (PersistenceException pe) {
+          log.error("Could not compact response journal for " + key, pe);
+        }
+      }
+    });
   }
 
   /**
-   * Helper method to store an individual trackback.
+   * Gets the pool used to compact response journals. As with the loader
+   * pool, the thread is a daemon and times out when idle.
    *
-   * @param trackBack the TrackBack being stored
-   * @param doc       the Document into which the trackback is to be inserted
-   * @param root      the root Node for the comment
-   * @throws java.lang.Exception if something goes wrong
+   * @return  an ExecutorService instance
    */
-  private void storeTrackBack(TrackBack trackBack, Document doc, Node root) throws Exception {
-    Element commentNode = doc.createElement("trackback");
-    root.appendChild(commentNode);
-
-    Element titleNode = doc.createElement("title");
-    Element excerptNode = doc.createElement("excerpt");
-    Element urlNode = doc.createElement("url");
-    Element blogNameNode = doc.createElement("blogName");
-    Element ipAddressNode = doc.createElement("ipAddress");
-    Element dateNode = doc.createElement("date");
-    Element stateNode = doc.createElement("state");
-
-    commentNode.appendChild(titleNode);
-    commentNode.appendChild(excerptNode);
-    commentNode.appendChild(urlNode);
-    commentNode.appendChild(blogNameNode);
-    commentNode.appendChild(ipAddressNode);
-    commentNode.appendChild(dateNode);
-    commentNode.appendChild(stateNode);
-
-    titleNode.appendChild(createTextNode(doc, trackBack.getTitle()));
-    excerptNode.appendChild(createCDATASection(doc, trackBack.getExcerpt()));
-    urlNode.appendChild(createTextNode(doc, trackBack.getUrl()));
-    blogNameNode.appendChild(createTextNode(doc, trackBack.getBlogName()));
-    ipAddressNode.appendChild(createTextNode(doc, trackBack.getIpAddress()));
-    SimpleDateFormat sdf = new SimpleDateFormat(NEW_PERSISTENT_DATETIME_FORMAT, Locale.ENGLISH);
-    sdf.setTimeZone(GMT);
-    dateNode.appendChild(createTextNode(doc, sdf.format(trackBack.getDate())));
-    stateNode.appendChild(createTextNode(doc, trackBack.getState().getName()));
+  private synchronized ExecutorService getCompactionPool() {
+    if (compactionPool == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          1, 1, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "pebble-response-journal-compactor");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      compactionPool = executor;
+    }
+
+    return compactionPool;
   }
 
   /**
@@ -440,6 +658,8 @@ public class FileBlogEntryDAO implements BlogEntryDAO {
     if (!success) {
       throw new PersistenceException("Deletion of blog entry " + blogEntry.getGuid() + " failed");
     }
+    getJournalFile(file).delete();
+    tornJournals.remove(getKey(blogEntry.getBlog(), blogEntry.getId()));
   }
 
   /**
@@ -47,15 +47,35 @@ public class FileDAOFactory extends DAOFactory {
   private RefererFilterDAO refererFilterDAO;
 
   /**
-   * Default, no args constructor.
+   * Default, no args constructor. Blog entries are loaded using one thread
+   * per available processor, unless
+   * {@link #setBlogEntryLoaderThreads(int)} says otherwise.
    */
   public FileDAOFactory() {
-    this.blogEntryDAO = new FileBlogEntryDAO();
+    this.blogEntryDAO = new FileBlogEntryDAO(getDefaultBlogEntryLoaderThreads());
     this.staticPageDAO = new FileStaticPageDAO();
     this.categoryDAO = new FileCategoryDAO();
     this.refererFilterDAO = new FileRefererFilterDAO();
   }
 
+  /**
+   * Sets the number of threads used to load all blog entries, for example
+   * when the blog is reindexed.
+   *
+   * @param threads   the number of threads, where 0 or less means one
+   *                  thread per available processor
+   */
+  public void setBlogEntryLoaderThreads(int threads) {
+    if (threads <= 0) {
+      threads = getDefaultBlogEntryLoaderThreads();
+    }
+    this.blogEntryDAO = new FileBlogEntryDAO(threads);
+  }
+
+  private int getDefaultBlogEntryLoaderThreads() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
   /**
    * Gets a DAO instance responsible for the dao of blog entries.
    *
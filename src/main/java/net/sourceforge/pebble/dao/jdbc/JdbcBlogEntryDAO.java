@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.domain.*;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+
+/**
+ * Stores blog entries, along with their categories, tags, comments and
+ * TrackBacks, in a relational database.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcBlogEntryDAO extends JdbcDAOSupport implements BlogEntryDAO {
+
+  private static final String COMMENT = "c";
+  private static final String TRACKBACK = "t";
+
+  private static final String BLOG_ENTRY_COLUMNS =
+      "id, title, subtitle, excerpt, body, time_zone, published, author, original_permalink, " +
+      "comments_enabled, trackbacks_enabled, tags, attachment_url, attachment_size, attachment_type";
+  private static final String RESPONSE_COLUMNS =
+      "blog_entry_id, type, id, title, body, author, email, website, avatar, url, blog_name, " +
+      "ip_address, state, authenticated, parent_id";
+
+  private static final String SELECT_BLOG_ENTRY =
+      "SELECT " + BLOG_ENTRY_COLUMNS + " FROM blog_entry WHERE blog_id = ? AND id = ?";
+  private static final String SELECT_BLOG_ENTRIES =
+      "SELECT " + BLOG_ENTRY_COLUMNS + " FROM blog_entry WHERE blog_id = ? ORDER BY id";
+  private static final String SELECT_CATEGORIES =
+      "SELECT blog_entry_id, category_id FROM blog_entry_category WHERE blog_id = ? AND blog_entry_id = ? ORDER BY category_id";
+  private static final String SELECT_ALL_CATEGORIES =
+      "SELECT blog_entry_id, category_id FROM blog_entry_category WHERE blog_id = ? ORDER BY blog_entry_id, category_id";
+  private static final String SELECT_RESPONSES =
+      "SELECT " + RESPONSE_COLUMNS + " FROM response WHERE blog_id = ? AND blog_entry_id = ? ORDER BY id";
+  private static final String SELECT_ALL_RESPONSES =
+      "SELECT " + RESPONSE_COLUMNS + " FROM response WHERE blog_id = ? ORDER BY blog_entry_id, id";
+  private static final String SELECT_BLOG_ENTRY_EXISTS =
+      "SELECT 1 FROM blog_entry WHERE blog_id = ? AND id = ?";
+
+  private static final String INSERT_BLOG_ENTRY =
+      "INSERT INTO blog_entry (blog_id, " + BLOG_ENTRY_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String INSERT_CATEGORY =
+      "INSERT INTO blog_entry_category (blog_id, blog_entry_id, category_id) VALUES (?, ?, ?)";
+  private static final String INSERT_RESPONSE =
+      "INSERT INTO response (blog_id, " + RESPONSE_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String DELETE_BLOG_ENTRY =
+      "DELETE FROM blog_entry WHERE blog_id = ? AND id = ?";
+  private static final String DELETE_CATEGORIES =
+      "DELETE FROM blog_entry_category WHERE blog_id = ? AND blog_entry_id = ?";
+  private static final String DELETE_RESPONSES =
+      "DELETE FROM response WHERE blog_id = ? AND blog_entry_id = ?";
+  private static final String DELETE_RESPONSE =
+      "DELETE FROM response WHERE blog_id = ? AND blog_entry_id = ? AND type = ? AND id = ?";
+
+  public JdbcBlogEntryDAO(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  /**
+   * Loads a specific blog entry.
+   *
+   * @param blogEntryId   the blog entry ID
+   * @return a BlogEntry instance
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if the specified blog entry cannot be loaded
+   */
+  public BlogEntry loadBlogEntry(Blog blog, String blogEntryId) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(SELECT_BLOG_ENTRY);
+      statement.setString(1, blog.getId());
+      statement.setLong(2, Long.parseLong(blogEntryId));
+      resultSet = statement.executeQuery();
+      if (!resultSet.next()) {
+        return null;
+      }
+      BlogEntry blogEntry = readBlogEntry(blog, resultSet);
+      close(resultSet);
+      close(statement);
+
+      Map<Long,BlogEntry> blogEntries = Collections.singletonMap(Long.parseLong(blogEntryId), blogEntry);
+      statement = connection.prepareStatement(SELECT_CATEGORIES);
+      statement.setString(1, blog.getId());
+      statement.setLong(2, Long.parseLong(blogEntryId));
+      readCategories(blog, statement, blogEntries);
+      close(statement);
+
+      statement = connection.prepareStatement(SELECT_RESPONSES);
+      statement.setString(1, blog.getId());
+      statement.setLong(2, Long.parseLong(blogEntryId));
+      readResponses(statement, blogEntries);
+
+      return blogEntry;
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not load blog entry " + blogEntryId, sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+  }
+
+  /**
+   * Loads all blog entries, using one query each for the blog entries,
+   * their categories and their responses.
+   *
+   * @param blog    the Blog to load all entries for
+   * @return a List of BlogEntry objects, in date order
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if the blog entries cannot be loaded
+   */
+  public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(SELECT_BLOG_ENTRIES);
+      statement.setString(1, blog.getId());
+      resultSet = statement.executeQuery();
+      Map<Long,BlogEntry> blogEntries = new LinkedHashMap<Long,BlogEntry>();
+      while (resultSet.next()) {
+        BlogEntry blogEntry = readBlogEntry(blog, resultSet);
+        blogEntries.put(Long.parseLong(blogEntry.getId()), blogEntry);
+      }
+      close(resultSet);
+      close(statement);
+
+      statement = connection.prepareStatement(SELECT_ALL_CATEGORIES);
+      statement.setString(1, blog.getId());
+      readCategories(blog, statement, blogEntries);
+      close(statement);
+
+      statement = connection.prepareStatement(SELECT_ALL_RESPONSES);
+      statement.setString(1, blog.getId());
+      readResponses(statement, blogEntries);
+
+      return new ArrayList<BlogEntry>(blogEntries.values());
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not load blog entries for " + blog.getId(), sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+  }
+
+  /**
+   * Stores the specified blog entry, replacing any previous version.
+   *
+   * @param blogEntry   the blog entry to store
+   * @throws PersistenceException   if something goes wrong storing the entry
+   */
+  public void storeBlogEntry(BlogEntry blogEntry) throws PersistenceException {
+    Connection connection = null;
+    try {
+      connection = getTransactionalConnection();
+      delete(connection, blogEntry);
+      insert(connection, blogEntry);
+      connection.commit();
+    } catch (SQLException sqle) {
+      rollback(connection);
+      throw persistenceException("Could not store blog entry " + blogEntry.getId(), sqle);
+    } finally {
+      close(connection);
+    }
+  }
+
+  /**
+   * Stores changes to the responses of a blog entry, without touching the
+   * rest of the blog entry.
+   *
+   * @param blogEntry   the blog entry that owns the responses
+   * @param responses   the responses that have been added, changed or removed
+   * @throws PersistenceException   if something goes wrong storing the responses
+   */
+  public void storeResponses(BlogEntry blogEntry, Collection<Response> responses) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement delete = null;
+    PreparedStatement insert = null;
+    try {
+      connection = getTransactionalConnection();
+      if (!exists(connection, blogEntry)) {
+        insert(connection, blogEntry);
+      } else if (!responses.isEmpty()) {
+        String blogId = blogEntry.getBlog().getId();
+        long blogEntryId = Long.parseLong(blogEntry.getId());
+        delete = connection.prepareStatement(DELETE_RESPONSE);
+        List<Response> current = new ArrayList<Response>();
+        for (Response response : responses) {
+          delete.setString(1, blogId);
+          delete.setLong(2, blogEntryId);
+          delete.setString(3, getType(response));
+          delete.setLong(4, response.getId());
+          delete.addBatch();
+
+          if (blogEntry.getResponse(response.getGuid()) != null) {
+            current.add(response);
+          }
+        }
+        delete.executeBatch();
+
+        insert = connection.prepareStatement(INSERT_RESPONSE);
+        addResponses(insert, blogId, blogEntryId, current);
+        insert.executeBatch();
+      }
+      connection.commit();
+    } catch (SQLException sqle) {
+      rollback(connection);
+      throw persistenceException("Could not store responses for blog entry " + blogEntry.getId(), sqle);
+    } finally {
+      close(delete);
+      close(insert);
+      close(connection);
+    }
+  }
+
+  /**
+   * Removes the specified blog entry.
+   *
+   * @param blogEntry   the blog entry to remove
+   * @throws PersistenceException   if something goes wrong removing the entry
+   */
+  public void removeBlogEntry(BlogEntry blogEntry) throws PersistenceException {
+    Connection connection = null;
+    try {
+      connection = getTransactionalConnection();
+      if (!delete(connection, blogEntry)) {
+        rollback(connection);
+        throw new PersistenceException("Deletion of blog entry " + blogEntry.getGuid() + " failed");
+      }
+      connection.commit();
+    } catch (SQLException sqle) {
+      rollback(connection);
+      throw persistenceException("Could not remove blog entry " + blogEntry.getId(), sqle);
+    } finally {
+      close(connection);
+    }
+  }
+
+  private boolean exists(Connection connection, BlogEntry blogEntry) throws SQLException {
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      statement = connection.prepareStatement(SELECT_BLOG_ENTRY_EXISTS);
+      statement.setString(1, blogEntry.getBlog().getId());
+      statement.setLong(2, Long.parseLong(blogEntry.getId()));
+      resultSet = statement.executeQuery();
+      return resultSet.next();
+    } finally {
+      close(resultSet);
+      close(statement);
+    }
+  }
+
+  /**
+   * Deletes a blog entry and everything that belongs to it.
+   *
+   * @return  true if the blog entry existed, false otherwise
+   */
+  private boolean delete(Connection connection, BlogEntry blogEntry) throws SQLException {
+    String blogId = blogEntry.getBlog().getId();
+    long blogEntryId = Long.parseLong(blogEntry.getId());
+
+    int rows = 0;
+    for (String sql : new String[] { DELETE_RESPONSES, DELETE_CATEGORIES, DELETE_BLOG_ENTRY }) {
+      PreparedStatement statement = connection.prepareStatement(sql);
+      try {
+        statement.setString(1, blogId);
+        statement.setLong(2, blogEntryId);
+        rows = statement.executeUpdate();
+      } finally {
+        close(statement);
+      }
+    }
+
+    // the blog entry itself is deleted last
+    return rows > 0;
+  }
+
+  /**
+   * Inserts a blog entry and everything that belongs to it, batching up
+   * the categories and responses. Tags are kept in the blog entry row, as
+   * they are in the XML files.
+   */
+  private void insert(Connection connection, BlogEntry blogEntry) throws SQLException {
+    String blogId = blogEntry.getBlog().getId();
+    long blogEntryId = Long.parseLong(blogEntry.getId());
+
+    PreparedStatement statement = connection.prepareStatement(INSERT_BLOG_ENTRY);
+    try {
+      int i = 1;
+      statement.setString(i++, blogId);
+      statement.setLong(i++, blogEntryId);
+      statement.setString(i++, blogEntry.getTitle());
+      statement.setString(i++, blogEntry.getSubtitle());
+      statement.setString(i++, blogEntry.getExcerpt());
+      statement.setString(i++, blogEntry.getBody());
+      statement.setString(i++, blogEntry.getTimeZoneId());
+      statement.setBoolean(i++, blogEntry.isPublished());
+      statement.setString(i++, blogEntry.getAuthor());
+      statement.setString(i++, blogEntry.isAggregated() ? blogEntry.getOriginalPermalink() : null);
+      statement.setBoolean(i++, blogEntry.isCommentsEnabled());
+      statement.setBoolean(i++, blogEntry.isTrackBacksEnabled());
+      statement.setString(i++, blogEntry.getTags());
+      Attachment attachment = blogEntry.getAttachment();
+      if (attachment != null) {
+        statement.setString(i++, attachment.getUrl());
+        statement.setLong(i++, attachment.getSize());
+        statement.setString(i++, attachment.getType());
+      } else {
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setNull(i++, Types.BIGINT);
+        statement.setNull(i++, Types.VARCHAR);
+      }
+      statement.executeUpdate();
+    } finally {
+      close(statement);
+    }
+
+    statement = connection.prepareStatement(INSERT_CATEGORY);
+    try {
+      for (Category category : blogEntry.getCategories()) {
+        if (category != null) {
+          statement.setString(1, blogId);
+          statement.setLong(2, blogEntryId);
+          statement.setString(3, category.getId());
+          statement.addBatch();
+        }
+      }
+      statement.executeBatch();
+    } finally {
+      close(statement);
+    }
+
+    statement = connection.prepareStatement(INSERT_RESPONSE);
+    try {
+      List<Response> responses = new ArrayList<Response>();
+      responses.addAll(blogEntry.getComments());
+      responses.addAll(blogEntry.getTrackBacks());
+      addResponses(statement, blogId, blogEntryId, responses);
+      statement.executeBatch();
+    } finally {
+      close(statement);
+    }
+  }
+
+  private void addResponses(PreparedStatement statement, String blogId, long blogEntryId, List<Response> responses) throws SQLException {
+    for (Response response : responses) {
+      int i = 1;
+      statement.setString(i++, blogId);
+      statement.setLong(i++, blogEntryId);
+      statement.setString(i++, getType(response));
+      statement.setLong(i++, response.getId());
+      statement.setString(i++, response.getTitle());
+      if (response instanceof Comment) {
+        Comment comment = (Comment)response;
+        statement.setString(i++, comment.getBody());
+        statement.setString(i++, comment.getAuthor());
+        statement.setString(i++, comment.getEmail());
+        statement.setString(i++, comment.getWebsite());
+        statement.setString(i++, comment.getAvatar());
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setString(i++, comment.getIpAddress());
+        statement.setString(i++, comment.getState().getName());
+        statement.setBoolean(i++, comment.isAuthenticated());
+        if (comment.getParent() != null) {
+          statement.setLong(i++, comment.getParent().getId());
+        } else {
+          statement.setNull(i++, Types.BIGINT);
+        }
+      } else {
+        TrackBack trackBack = (TrackBack)response;
+        statement.setString(i++, trackBack.getExcerpt());
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setNull(i++, Types.VARCHAR);
+        statement.setString(i++, trackBack.getUrl());
+        statement.setString(i++, trackBack.getBlogName());
+        statement.setString(i++, trackBack.getIpAddress());
+        statement.setString(i++, trackBack.getState().getName());
+        statement.setBoolean(i++, false);
+        statement.setNull(i++, Types.BIGINT);
+      }
+      statement.addBatch();
+    }
+  }
+
+  private BlogEntry readBlogEntry(Blog blog, ResultSet resultSet) throws SQLException {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle(resultSet.getString("title"));
+    blogEntry.setSubtitle(resultSet.getString("subtitle"));
+    blogEntry.setExcerpt(resultSet.getString("excerpt"));
+    blogEntry.setBody(resultSet.getString("body"));
+    blogEntry.setDate(new Date(resultSet.getLong("id")));
+    blogEntry.setTimeZoneId(resultSet.getString("time_zone"));
+    blogEntry.setPublished(resultSet.getBoolean("published"));
+    blogEntry.setAuthor(resultSet.getString("author"));
+    String originalPermalink = resultSet.getString("original_permalink");
+    if (originalPermalink != null) {
+      blogEntry.setOriginalPermalink(originalPermalink);
+    }
+    String tags = resultSet.getString("tags");
+    if (tags != null) {
+      blogEntry.setTags(tags);
+    }
+    blogEntry.setCommentsEnabled(resultSet.getBoolean("comments_enabled"));
+    blogEntry.setTrackBacksEnabled(resultSet.getBoolean("trackbacks_enabled"));
+
+    String attachmentUrl = resultSet.getString("attachment_url");
+    if (attachmentUrl != null) {
+      Attachment attachment = new Attachment();
+      attachment.setUrl(attachmentUrl);
+      attachment.setSize(resultSet.getLong("attachment_size"));
+      attachment.setType(resultSet.getString("attachment_type"));
+      blogEntry.setAttachment(attachment);
+    }
+
+    return blogEntry;
+  }
+
+  private void readCategories(Blog blog, PreparedStatement statement, Map<Long,BlogEntry> blogEntries) throws SQLException {
+    ResultSet resultSet = statement.executeQuery();
+    try {
+      while (resultSet.next()) {
+        BlogEntry blogEntry = blogEntries.get(resultSet.getLong("blog_entry_id"));
+        if (blogEntry != null) {
+          blogEntry.addCategory(blog.getCategory(resultSet.getString("category_id")));
+        }
+      }
+    } finally {
+      close(resultSet);
+    }
+  }
+
+  /**
+   * Reads responses in date order, so that parent comments are always
+   * added before their replies.
+   */
+  private void readResponses(PreparedStatement statement, Map<Long,BlogEntry> blogEntries) throws SQLException {
+    ResultSet resultSet = statement.executeQuery();
+    try {
+      while (resultSet.next()) {
+        BlogEntry blogEntry = blogEntries.get(resultSet.getLong("blog_entry_id"));
+        if (blogEntry == null) {
+          continue;
+        }
+
+        Date date = new Date(resultSet.getLong("id"));
+        State state = State.getState(resultSet.getString("state"));
+        if (COMMENT.equals(resultSet.getString("type"))) {
+          Comment comment = blogEntry.createComment(
+              resultSet.getString("title"),
+              resultSet.getString("body"),
+              resultSet.getString("author"),
+              resultSet.getString("email"),
+              resultSet.getString("website"),
+              resultSet.getString("avatar"),
+              resultSet.getString("ip_address"),
+              date,
+              state);
+          long parent = resultSet.getLong("parent_id");
+          if (!resultSet.wasNull()) {
+            comment.setParent(blogEntry.getComment(parent));
+          }
+          comment.setAuthenticated(resultSet.getBoolean("authenticated"));
+          blogEntry.addComment(comment);
+        } else {
+          TrackBack trackBack = blogEntry.createTrackBack(
+              resultSet.getString("title"),
+              resultSet.getString("body"),
+              resultSet.getString("url"),
+              resultSet.getString("blog_name"),
+              resultSet.getString("ip_address"),
+              date,
+              state);
+          blogEntry.addTrackBack(trackBack);
+        }
+      }
+    } finally {
+      close(resultSet);
+    }
+  }
+
+  private String getType(Response response) {
+    return (response instanceof Comment) ? COMMENT : TRACKBACK;
+  }
+
+}
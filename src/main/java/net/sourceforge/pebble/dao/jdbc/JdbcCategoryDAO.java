@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.CategoryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.CategoryBuilder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Stores categories in a relational database.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcCategoryDAO extends JdbcDAOSupport implements CategoryDAO {
+
+  private static final String SELECT_CATEGORIES =
+      "SELECT id, name, tags FROM category WHERE blog_id = ? ORDER BY id";
+  private static final String INSERT_CATEGORY =
+      "INSERT INTO category (blog_id, id, name, tags) VALUES (?, ?, ?, ?)";
+  private static final String DELETE_CATEGORIES =
+      "DELETE FROM category WHERE blog_id = ?";
+
+  public JdbcCategoryDAO(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  /**
+   * Gets the categories for a particular blog.
+   *
+   * @param blog    the owning Blog instance
+   * @return  the root category
+   * @throws  PersistenceException    if categories cannot be loaded
+   */
+  public Category getCategories(Blog blog) throws PersistenceException {
+    CategoryBuilder categoryBuilder = new CategoryBuilder(blog);
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(SELECT_CATEGORIES);
+      statement.setString(1, blog.getId());
+      resultSet = statement.executeQuery();
+      while (resultSet.next()) {
+        Category category = new Category(resultSet.getString("id"), resultSet.getString("name"));
+        category.setBlog(blog);
+        category.setTags(resultSet.getString("tags"));
+
+        categoryBuilder.addCategory(category);
+      }
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not load categories for " + blog.getId(), sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+
+    return categoryBuilder.getRootCategory();
+  }
+
+  /**
+   * Adds the specified category.
+   *
+   * @param category    the Category instance to be added
+   * @param blog    the owning blog
+   * @throws PersistenceException   if something goes wrong storing the category
+   */
+  public void addCategory(Category category, Blog blog) throws PersistenceException {
+    store(blog);
+  }
+
+  /**
+   * Updates the specified category.
+   *
+   * @param updatedCategory   the Category instance to be updated
+   * @param blog    the owning blog
+   * @throws PersistenceException   if something goes wrong storing the category
+   */
+  public void updateCategory(Category updatedCategory, Blog blog) throws PersistenceException {
+    store(blog);
+  }
+
+  /**
+   * Removes the specified category.
+   *
+   * @param category    the Category instance to be removed
+   * @param blog    the owning blog
+   * @throws PersistenceException   if something goes wrong removing the category
+   */
+  public void deleteCategory(Category category, Blog blog) throws PersistenceException {
+    store(blog);
+  }
+
+  /**
+   * Replaces all of the stored categories for a blog with those it
+   * currently has, since an update to one category can cascade down
+   * to its subcategories.
+   */
+  private void store(Blog blog) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = getTransactionalConnection();
+      statement = connection.prepareStatement(DELETE_CATEGORIES);
+      statement.setString(1, blog.getId());
+      statement.executeUpdate();
+      close(statement);
+
+      statement = connection.prepareStatement(INSERT_CATEGORY);
+      List<Category> categories = blog.getCategories();
+      for (Category category : categories) {
+        statement.setString(1, blog.getId());
+        statement.setString(2, category.getId());
+        statement.setString(3, category.getName());
+        statement.setString(4, category.getTags());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+
+      connection.commit();
+    } catch (SQLException sqle) {
+      rollback(connection);
+      throw persistenceException("Could not store categories for " + blog.getId(), sqle);
+    } finally {
+      close(statement);
+      close(connection);
+    }
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.*;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Represents a strategy used to load and store blog data in a relational
+ * database, which by default is an embedded H2 database. The schema is
+ * created on startup if it doesn't already exist.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcDAOFactory extends DAOFactory {
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(JdbcDAOFactory.class);
+
+  /** the classpath resource containing the DDL */
+  private static final String SCHEMA_RESOURCE = "schema.sql";
+
+  private BlogEntryDAO blogEntryDAO;
+  private StaticPageDAO staticPageDAO;
+  private CategoryDAO categoryDAO;
+  private RefererFilterDAO refererFilterDAO;
+
+  /**
+   * Creates a new instance using a pool of connections to the specified
+   * H2 database, for example jdbc:h2:/path/to/pebble.
+   *
+   * @param url         the JDBC URL of the database
+   * @param username    the database username
+   * @param password    the database password
+   * @throws PersistenceException   if the schema can't be created
+   */
+  public JdbcDAOFactory(String url, String username, String password) throws PersistenceException {
+    this(JdbcConnectionPool.create(url, username, password));
+  }
+
+  /**
+   * Creates a new instance using the specified DataSource, which might
+   * have been looked up from JNDI.
+   *
+   * @param dataSource    the DataSource to get connections from
+   * @throws PersistenceException   if the schema can't be created
+   */
+  public JdbcDAOFactory(DataSource dataSource) throws PersistenceException {
+    createSchema(dataSource);
+
+    this.blogEntryDAO = new JdbcBlogEntryDAO(dataSource);
+    this.staticPageDAO = new JdbcStaticPageDAO(dataSource);
+    this.categoryDAO = new JdbcCategoryDAO(dataSource);
+    this.refererFilterDAO = new JdbcRefererFilterDAO(dataSource);
+  }
+
+  /**
+   * Runs each of the statements in the schema, all of which are written
+   * so that they do nothing if the table or index already exists.
+   */
+  private void createSchema(DataSource dataSource) throws PersistenceException {
+    Connection connection = null;
+    Statement statement = null;
+    try {
+      connection = dataSource.getConnection();
+      statement = connection.createStatement();
+      for (String sql : readSchema().split(";")) {
+        if (sql.trim().length() > 0) {
+          statement.execute(sql);
+        }
+      }
+    } catch (SQLException sqle) {
+      log.error("Could not create schema", sqle);
+      throw new PersistenceException("Could not create schema - " + sqle.getMessage());
+    } finally {
+      try {
+        if (statement != null) {
+          statement.close();
+        }
+        if (connection != null) {
+          connection.close();
+        }
+      } catch (SQLException sqle) {
+        log.warn("Could not close connection", sqle);
+      }
+    }
+  }
+
+  private String readSchema() throws PersistenceException {
+    InputStream in = getClass().getResourceAsStream(SCHEMA_RESOURCE);
+    if (in == null) {
+      throw new PersistenceException("Could not find " + SCHEMA_RESOURCE);
+    }
+
+    try {
+      StringBuilder buf = new StringBuilder();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      String line = reader.readLine();
+      while (line != null) {
+        if (!line.trim().startsWith("--")) {
+          buf.append(line);
+          buf.append("\n");
+        }
+        line = reader.readLine();
+      }
+      reader.close();
+
+      return buf.toString();
+    } catch (IOException ioe) {
+      log.error("Could not read " + SCHEMA_RESOURCE, ioe);
+      throw new PersistenceException("Could not read " + SCHEMA_RESOURCE + " - " + ioe.getMessage());
+    }
+  }
+
+  /**
+   * Gets a DAO instance responsible for the dao of blog entries.
+   *
+   * @return  a BlogEntryDAO instance
+   */
+  public BlogEntryDAO getBlogEntryDAO() {
+    return this.blogEntryDAO;
+  }
+
+  /**
+   * Gets a DAO instance responsible for the dao of static pages.
+   *
+   * @return a StaticPageDAO instance
+   */
+  public StaticPageDAO getStaticPageDAO() {
+    return this.staticPageDAO;
+  }
+
+  /**
+   * Gets a DAO instance responsible for the dao of categories.
+   *
+   * @return  a CategoryDAO instance
+   */
+  public CategoryDAO getCategoryDAO() {
+    return this.categoryDAO;
+  }
+
+  /**
+   * Gets a DAO instance responsible for the dao of referer filters.
+   *
+   * @return  a RefererFilterDAO instance
+   */
+  public RefererFilterDAO getRefererFilterDAO() {
+    return this.refererFilterDAO;
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.PersistenceException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Superclass for the JDBC DAO implementations, looking after connections,
+ * transactions and the tidying up of JDBC resources.
+ *
+ * @author    Simon Brown
+ */
+abstract class JdbcDAOSupport {
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(JdbcDAOSupport.class);
+
+  private final DataSource dataSource;
+
+  protected JdbcDAOSupport(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Gets a connection with auto-commit turned on.
+   */
+  protected Connection getConnection() throws SQLException {
+    return dataSource.getConnection();
+  }
+
+  /**
+   * Gets a connection with auto-commit turned off, for use when several
+   * statements need to succeed or fail together.
+   */
+  protected Connection getTransactionalConnection() throws SQLException {
+    Connection connection = dataSource.getConnection();
+    connection.setAutoCommit(false);
+    return connection;
+  }
+
+  /**
+   * Rolls back the current transaction, logging rather than throwing
+   * any exception so that the original cause isn't lost.
+   */
+  protected void rollback(Connection connection) {
+    if (connection != null) {
+      try {
+        connection.rollback();
+      } catch (SQLException sqle) {
+        log.warn("Could not roll back transaction", sqle);
+      }
+    }
+  }
+
+  protected void close(Connection connection) {
+    if (connection != null) {
+      try {
+        if (!connection.getAutoCommit()) {
+          connection.setAutoCommit(true);
+        }
+        connection.close();
+      } catch (SQLException sqle) {
+        log.warn("Could not close connection", sqle);
+      }
+    }
+  }
+
+  protected void close(Statement statement) {
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException sqle) {
+        log.warn("Could not close statement", sqle);
+      }
+    }
+  }
+
+  protected void close(ResultSet resultSet) {
+    if (resultSet != null) {
+      try {
+        resultSet.close();
+      } catch (SQLException sqle) {
+        log.warn("Could not close result set", sqle);
+      }
+    }
+  }
+
+  /**
+   * Logs the specified exception and wraps it up as a PersistenceException.
+   *
+   * @param message   a description of what was being attempted
+   * @param sqle      the underlying SQLException
+   * @return  a PersistenceException instance
+   */
+  protected PersistenceException persistenceException(String message, SQLException sqle) {
+    log.error(message, sqle);
+    return new PersistenceException(message + " - " + sqle.getMessage());
+  }
+
+}
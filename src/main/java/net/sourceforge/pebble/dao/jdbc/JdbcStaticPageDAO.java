@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.StaticPageDAO;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.util.SecurityUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stores static pages, and the locks held on them, in a relational database.
+ * Unlike the file based implementation, previous versions of a page are not
+ * archived when it is updated or removed.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcStaticPageDAO extends JdbcDAOSupport implements StaticPageDAO {
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(JdbcStaticPageDAO.class);
+
+  private static final String STATIC_PAGE_COLUMNS =
+      "p.id, p.name, p.title, p.subtitle, p.body, p.tags, p.author, p.original_permalink, p.template, l.username";
+
+  private static final String SELECT_STATIC_PAGES =
+      "SELECT " + STATIC_PAGE_COLUMNS + " FROM static_page p " +
+      "LEFT OUTER JOIN static_page_lock l ON l.blog_id = p.blog_id AND l.id = p.id " +
+      "WHERE p.blog_id = ? ORDER BY p.id";
+  private static final String SELECT_STATIC_PAGE =
+      "SELECT " + STATIC_PAGE_COLUMNS + " FROM static_page p " +
+      "LEFT OUTER JOIN static_page_lock l ON l.blog_id = p.blog_id AND l.id = p.id " +
+      "WHERE p.blog_id = ? AND p.id = ?";
+  private static final String INSERT_STATIC_PAGE =
+      "INSERT INTO static_page (blog_id, id, name, title, subtitle, body, tags, author, original_permalink, template) " +
+      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String DELETE_STATIC_PAGE =
+      "DELETE FROM static_page WHERE blog_id = ? AND id = ?";
+
+  private static final String SELECT_LOCK =
+      "SELECT username FROM static_page_lock WHERE blog_id = ? AND id = ?";
+  private static final String INSERT_LOCK =
+      "INSERT INTO static_page_lock (blog_id, id, username) VALUES (?, ?, ?)";
+  private static final String DELETE_LOCK =
+      "DELETE FROM static_page_lock WHERE blog_id = ? AND id = ?";
+
+  public JdbcStaticPageDAO(DataSource dataSource) {
+    super(dataSource);
+  }
+
+  /**
+   * Loads the static pages for a given blog.
+   *
+   * @param blog the owning Blog instance
+   * @return a Collection of StaticPage instances
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if static pages cannot be loaded
+   */
+  public Collection<StaticPage> loadStaticPages(Blog blog) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(SELECT_STATIC_PAGES);
+      statement.setString(1, blog.getId());
+      resultSet = statement.executeQuery();
+      List<StaticPage> list = new ArrayList<StaticPage>();
+      while (resultSet.next()) {
+        list.add(readStaticPage(blog, resultSet));
+      }
+
+      return list;
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not load static pages for " + blog.getId(), sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+  }
+
+  /**
+   * Loads a specific static page.
+   *
+   * @param blog   the owning Blog
+   * @param pageId the page ID
+   * @return a StaticPage instance
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if the static page cannot be loaded
+   */
+  public StaticPage loadStaticPage(Blog blog, String pageId) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(SELECT_STATIC_PAGE);
+      statement.setString(1, blog.getId());
+      statement.setLong(2, Long.parseLong(pageId));
+      resultSet = statement.executeQuery();
+      if (resultSet.next()) {
+        return readStaticPage(blog, resultSet);
+      } else {
+        return null;
+      }
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not load static page " + pageId, sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+  }
+
+  /**
+   * Stores the specified static page, replacing any previous version.
+   *
+   * @param staticPage the static page to store
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if something goes wrong storing the static page
+   */
+  public void storeStaticPage(StaticPage staticPage) throws PersistenceException {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = getTransactionalConnection();
+      delete(connection, staticPage);
+
+      statement = connection.prepareStatement(INSERT_STATIC_PAGE);
+      int i = 1;
+      statement.setString(i++, staticPage.getBlog().getId());
+      statement.setLong(i++, Long.parseLong(staticPage.getId()));
+      statement.setString(i++, staticPage.getName());
+      statement.setString(i++, staticPage.getTitle());
+      statement.setString(i++, staticPage.getSubtitle());
+      statement.setString(i++, staticPage.getBody());
+      statement.setString(i++, staticPage.getTags());
+      statement.setString(i++, staticPage.getAuthor());
+      statement.setString(i++, staticPage.getOriginalPermalink());
+      statement.setString(i++, staticPage.getTemplate());
+      statement.executeUpdate();
+
+      connection.commit();
+    } catch (SQLException sqle) {
+      rollback(connection);
+      throw persistenceException("Could not store static page " + staticPage.getId(), sqle);
+    } finally {
+      close(statement);
+      close(connection);
+    }
+  }
+
+  /**
+   * Removes the specified static page.
+   *
+   * @param staticPage the static page to remove
+   * @throws net.sourceforge.pebble.dao.PersistenceException
+   *          if something goes wrong removing the page
+   */
+  public void removeStaticPage(StaticPage staticPage) throws PersistenceException {
+    Connection connection = null;
+    boolean removed;
+    try {
+      connection = getConnection();
+      removed = delete(connection, staticPage);
+    } catch (SQLException sqle) {
+      throw persistenceException("Could not remove static page " + staticPage.getId(), sqle);
+    } finally {
+      close(connection);
+    }
+
+    if (!removed) {
+      throw new PersistenceException("Deletion of " + staticPage.getGuid() + " failed");
+    }
+  }
+
+  /**
+   * Locks the specified static page.
+   *
+   * @param staticPage the static page to lock
+   * @return  true if the page could be locked, false otherwise
+   */
+  public boolean lock(StaticPage staticPage) {
+    String username = SecurityUtils.getUsername();
+    Connection connection = null;
+    PreparedStatement statement = null;
+    ResultSet resultSet = null;
+    try {
+      connection = getConnection();
+      try {
+        statement = connection.prepareStatement(INSERT_LOCK);
+        statement.setString(1, staticPage.getBlog().getId());
+        statement.setLong(2, Long.parseLong(staticPage.getId()));
+        statement.setString(3, username);
+        statement.executeUpdate();
+        return true;
+      } catch (SQLException sqle) {
+        // the primary key is already taken, so somebody holds the lock
+        log.debug("Static page " + staticPage.getGuid() + " is already locked");
+      }
+      close(statement);
+
+      statement = connection.prepareStatement(SELECT_LOCK);
+      statement.setString(1, staticPage.getBlog().getId());
+      statement.setLong(2, Long.parseLong(staticPage.getId()));
+      resultSet = statement.executeQuery();
+      return resultSet.next() && resultSet.getString(1).equals(username);
+    } catch (SQLException sqle) {
+      log.warn("Exception while attempting to lock static page " + staticPage.getGuid(), sqle);
+    } finally {
+      close(resultSet);
+      close(statement);
+      close(connection);
+    }
+
+    return false;
+  }
+
+  /**
+   * Unlocks the specified static page.
+   *
+   * @param staticPage the static page to unlock
+   * @return true if the page could be unlocked, false otherwise
+   */
+  public boolean unlock(StaticPage staticPage) {
+    Connection connection = null;
+    PreparedStatement statement = null;
+    try {
+      connection = getConnection();
+      statement = connection.prepareStatement(DELETE_LOCK);
+      statement.setString(1, staticPage.getBlog().getId());
+      statement.setLong(2, Long.parseLong(staticPage.getId()));
+      statement.executeUpdate();
+      return true;
+    } catch (SQLException sqle) {
+      log.warn("Exception while attempting to unlock static page " + staticPage.getGuid(), sqle);
+      return false;
+    } finally {
+      close(statement);
+      close(connection);
+    }
+  }
+
+  private boolean delete(Connection connection, StaticPage staticPage) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(DELETE_STATIC_PAGE);
+    try {
+      statement.setString(1, staticPage.getBlog().getId());
+      statement.setLong(2, Long.parseLong(staticPage.getId()));
+      return statement.executeUpdate() > 0;
+    } finally {
+      close(statement);
+    }
+  }
+
+  private StaticPage readStaticPage(Blog blog, ResultSet resultSet) throws SQLException {
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setTitle(resultSet.getString("title"));
+    staticPage.setSubtitle(resultSet.getString("subtitle"));
+    staticPage.setBody(resultSet.getString("body"));
+    staticPage.setTags(resultSet.getString("tags"));
+    staticPage.setAuthor(resultSet.getString("author"));
+    staticPage.setOriginalPermalink(resultSet.getString("original_permalink"));
+    staticPage.setName(resultSet.getString("name"));
+    staticPage.setDate(new Date(resultSet.getLong("id")));
+    staticPage.setTemplate(resultSet.getString("template"));
+    staticPage.setLockedBy(resultSet.getString("username"));
+
+    return staticPage;
+  }
+
+}
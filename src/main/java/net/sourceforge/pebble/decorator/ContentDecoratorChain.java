@@ -37,6 +37,7 @@ import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
  * Manages a list of content decorators at runtime.
@@ -165,15 +166,19 @@ public class ContentDecoratorChain implements ContentDecorator {
   }
 
   /**
-   * Decorates the specified blog entries.
+   * Decorates the specified blog entries. Since they may be shared, read-only
+   * instances, each is replaced in the list by a decorated copy.
    *
    * @param context       the context
    * @param blogEntries   a List of BlogEntry instances
    */
   public static void decorate(ContentDecoratorContext context, List<BlogEntry> blogEntries) {
     if (blogEntries != null) {
-      for (BlogEntry blogEntry : blogEntries) {
+      ListIterator<BlogEntry> it = blogEntries.listIterator();
+      while (it.hasNext()) {
+        BlogEntry blogEntry = (BlogEntry)it.next().clone();
         blogEntry.getBlog().getContentDecoratorChain().decorate(context, blogEntry);
+        it.set(blogEntry);
       }
     }
   }
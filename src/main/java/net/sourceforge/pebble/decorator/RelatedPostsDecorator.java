@@ -32,15 +32,12 @@
 
 package net.sourceforge.pebble.decorator;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import net.sourceforge.pebble.PluginProperties;
 import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
-import net.sourceforge.pebble.domain.Tag;
 import net.sourceforge.pebble.util.I18n;
 import net.sourceforge.pebble.util.StringUtils;
 
@@ -48,11 +45,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * Adds related posts to the current post. The posts are selected by matching
- * tags of the current post to the tags of other posts in the blog. One related
- * post per tag.
+ * Adds related posts to the current post. The posts are the published blog
+ * entries with the most tags in common with the current post (shared
+ * categories breaking ties), as kept by the blog's RelatedPostsIndex.
  * 
- * Each blog entry can have up to six related posts or none.
+ * Each blog entry can have up to RelatedPostsIndex.MAX_RELATED_BLOG_ENTRIES
+ * related posts or none.
  * 
  * @author Alexander Zagniotov
  */
@@ -95,41 +93,14 @@ public class RelatedPostsDecorator extends ContentDecoratorSupport {
       buf.append(body);
       buf.append("<p><b>" + I18n.getMessage(blog, "common.relatedPosts") + "</b><br />");
 
-      // tags of the current entry
-      List<Tag> currentEntryTags = blogEntry.getAllTags();
-
-      // all blog entries of the current blog
-      List<BlogEntry> allBlogEntries = (List<BlogEntry>) blog.getBlogEntries();
-
-      // temporary holder for accumulated unique related posts.
-      // using hash set assures that we wont have same related post twice for
-      // different tags.
-      Set<BlogEntry> relatedEntries = new HashSet<BlogEntry>();
-
-      for (BlogEntry entry : allBlogEntries) {
-
-        // don't add current entry as a related post of it self, skip it
-        if (entry.getTitle().equals(blogEntry.getTitle()))
-          continue;
-
-        // loop through each of the current entry tags, and try to find related
-        // post by matching current tag to the posts tags
-        for (Tag currentTag : currentEntryTags) {
-          if (entry.hasTag(currentTag.getName())) {
-            // if we successfully selected related post - create hyperlink for
-            // it
-            // TODO: Missing escaping -- XSS vulnerabilities here :(
-            if (relatedEntries.add(entry))
-              buf.append("<a href=\"" + entry.getPermalink() + "\" rel=\"bookmark\" title=\"" + entry.getTitle()
-                  + "\">" + entry.getTitle() + "</a><br />");
-          }
-        }
-
-        // do not allow more than default amount of posts or
-        // amount set through the RelatedPostsDecorator.maxPosts property
-        if (relatedEntries.size() == maxPosts) {
-          break;
-        }
+      // the related posts have already been worked out, so only they need loading
+      List<String> relatedEntryIds = blog.getRelatedPostsIndex().getRelatedBlogEntries(blogEntry, maxPosts);
+      List<BlogEntry> relatedEntries = blog.getBlogEntries(relatedEntryIds);
+
+      for (BlogEntry entry : relatedEntries) {
+        // TODO: Missing escaping -- XSS vulnerabilities here :(
+        buf.append("<a href=\"" + entry.getPermalink() + "\" rel=\"bookmark\" title=\"" + entry.getTitle()
+            + "\">" + entry.getTitle() + "</a><br />");
       }
 
       if (relatedEntries.size() == 0)
@@ -55,8 +55,13 @@ import javax.servlet.http.HttpServletRequest;
 import net.sourceforge.pebble.BlogCompanion;
 import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.PageCache;
 import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.PluginProperties;
+import net.sourceforge.pebble.SearchResultCache;
+import net.sourceforge.pebble.ValidatorCache;
 import net.sourceforge.pebble.aggregator.NewsFeedCache;
 import net.sourceforge.pebble.aggregator.NewsFeedEntry;
 import net.sourceforge.pebble.api.confirmation.CommentConfirmationStrategy;
@@ -79,6 +84,7 @@ import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.decorator.ContentDecoratorChain;
 import net.sourceforge.pebble.decorator.HideUnapprovedResponsesDecorator;
 import net.sourceforge.pebble.event.AuditListener;
+import net.sourceforge.pebble.event.ReaderCacheListener;
 import net.sourceforge.pebble.event.DefaultEventDispatcher;
 import net.sourceforge.pebble.event.EventListenerList;
 import net.sourceforge.pebble.event.blogentry.EmailSubscriptionListener;
@@ -86,14 +92,26 @@ import net.sourceforge.pebble.index.AuthorIndex;
 import net.sourceforge.pebble.index.AuthorIndexListener;
 import net.sourceforge.pebble.index.BlogEntryIndex;
 import net.sourceforge.pebble.index.BlogEntryIndexListener;
+import net.sourceforge.pebble.index.BlogEntrySummaryIndex;
+import net.sourceforge.pebble.index.BlogEntrySummaryIndexListener;
 import net.sourceforge.pebble.index.CategoryIndex;
 import net.sourceforge.pebble.index.CategoryIndexListener;
+import net.sourceforge.pebble.index.FacetIndex;
+import net.sourceforge.pebble.index.FacetIndexListener;
+import net.sourceforge.pebble.index.FacetQuery;
 import net.sourceforge.pebble.index.EmailSubscriptionList;
+import net.sourceforge.pebble.index.PermalinkIndex;
+import net.sourceforge.pebble.index.PermalinkIndexListener;
+import net.sourceforge.pebble.index.RelatedPostsIndex;
+import net.sourceforge.pebble.index.RelatedPostsIndexListener;
 import net.sourceforge.pebble.index.ResponseIndex;
 import net.sourceforge.pebble.index.ResponseIndexListener;
 import net.sourceforge.pebble.index.SearchIndex;
 import net.sourceforge.pebble.index.SearchIndexListener;
+import net.sourceforge.pebble.index.SearchIndexQueue;
 import net.sourceforge.pebble.index.StaticPageIndex;
+import net.sourceforge.pebble.index.SuggestionIndex;
+import net.sourceforge.pebble.index.SuggestionIndexListener;
 import net.sourceforge.pebble.index.TagIndex;
 import net.sourceforge.pebble.index.TagIndexListener;
 import net.sourceforge.pebble.logging.AbstractLogger;
@@ -184,11 +202,17 @@ public class Blog extends AbstractBlog {
   private BlogCompanion blogCompanion;
 
   private SearchIndex searchIndex;
+  private SearchIndexQueue searchIndexQueue;
   private BlogEntryIndex blogEntryIndex;
+  private BlogEntrySummaryIndex blogEntrySummaryIndex;
   private ResponseIndex responseIndex;
   private TagIndex tagIndex;
   private CategoryIndex categoryIndex;
   private AuthorIndex authorIndex;
+  private FacetIndex facetIndex;
+  private RelatedPostsIndex relatedPostsIndex;
+  private PermalinkIndex permalinkIndex;
+  private SuggestionIndex suggestionIndex;
   private StaticPageIndex staticPageIndex;
 
   private final List<PageDecorator> pageDecorators = new CopyOnWriteArrayList<PageDecorator>();
@@ -254,11 +278,17 @@ public class Blog extends AbstractBlog {
 
     // create the various indexes for this blog
     searchIndex = new SearchIndex(this);
+    searchIndexQueue = new SearchIndexQueue(this);
     blogEntryIndex = new BlogEntryIndex(this);
+    blogEntrySummaryIndex = new BlogEntrySummaryIndex(this);
     responseIndex = new ResponseIndex(this);
     tagIndex = new TagIndex(this);
     categoryIndex = new CategoryIndex(this);
     authorIndex = new AuthorIndex(this);
+    facetIndex = new FacetIndex(this);
+    relatedPostsIndex = new RelatedPostsIndex(this);
+    permalinkIndex = new PermalinkIndex(this);
+    suggestionIndex = new SuggestionIndex(this);
     staticPageIndex = new StaticPageIndex(this);
 
     decoratorChain = new ContentDecoratorChain(this);
@@ -367,12 +397,18 @@ public class Blog extends AbstractBlog {
     }
 
     // these are required to keep the various indexes up to date
+    eventListenerList.addBlogEntryListener(new PermalinkIndexListener());
     eventListenerList.addBlogEntryListener(new BlogEntryIndexListener());
+    eventListenerList.addBlogEntryListener(new BlogEntrySummaryIndexListener());
     eventListenerList.addBlogEntryListener(new TagIndexListener());
     eventListenerList.addBlogEntryListener(new CategoryIndexListener());
     eventListenerList.addBlogEntryListener(new AuthorIndexListener());
+    eventListenerList.addBlogEntryListener(new FacetIndexListener());
+    eventListenerList.addBlogEntryListener(new RelatedPostsIndexListener());
+    eventListenerList.addBlogEntryListener(new SuggestionIndexListener());
     eventListenerList.addBlogEntryListener(new SearchIndexListener());
     eventListenerList.addBlogEntryListener(new AuditListener());
+    eventListenerList.addBlogEntryListener(new ReaderCacheListener());
     try {
       eventListenerList.addBlogEntryListener(new EmailSubscriptionListener());
     } catch (Throwable t) {
@@ -407,6 +443,7 @@ public class Blog extends AbstractBlog {
 
     eventListenerList.addCommentListener(new ResponseIndexListener());
     eventListenerList.addCommentListener(new AuditListener());
+    eventListenerList.addCommentListener(new ReaderCacheListener());
   }
 
   /**
@@ -428,6 +465,7 @@ public class Blog extends AbstractBlog {
 
     eventListenerList.addTrackBackListener(new ResponseIndexListener());
     eventListenerList.addTrackBackListener(new AuditListener());
+    eventListenerList.addTrackBackListener(new ReaderCacheListener());
   }
 
   /**
@@ -525,7 +563,7 @@ public class Blog extends AbstractBlog {
         "#net.sourceforge.pebble.event.trackback.EmailAuthorNotificationListener");
     defaultProperties.setProperty(PERMALINK_PROVIDER_KEY, "net.sourceforge.pebble.permalink.DefaultPermalinkProvider");
     defaultProperties.setProperty(EVENT_DISPATCHER_KEY, "net.sourceforge.pebble.event.DefaultEventDispatcher");
-    defaultProperties.setProperty(LOGGER_KEY, "net.sourceforge.pebble.logging.CombinedLogFormatLogger");
+    defaultProperties.setProperty(LOGGER_KEY, "net.sourceforge.pebble.logging.AsyncCombinedLogFormatLogger");
     defaultProperties.setProperty(COMMENT_CONFIRMATION_STRATEGY_KEY, "net.sourceforge.pebble.confirmation.DefaultConfirmationStrategy");
     defaultProperties.setProperty(TRACKBACK_CONFIRMATION_STRATEGY_KEY, "net.sourceforge.pebble.confirmation.DefaultConfirmationStrategy");
     defaultProperties.setProperty(RICH_TEXT_EDITOR_FOR_COMMENTS_ENABLED_KEY, "true");
@@ -1033,7 +1071,7 @@ public class Blog extends AbstractBlog {
   /**
    * Gets all unpublished blog entries for this blog.
    *
-   * @return  a List of BlogEntry objects
+   * @return  a List of read-only BlogEntry objects
    */
   public List<BlogEntry> getUnpublishedBlogEntries() {
     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
@@ -1042,7 +1080,7 @@ public class Blog extends AbstractBlog {
     List<String> blogEntryIds = blogEntryIndex.getUnpublishedBlogEntries();
     for (String blogEntryId : blogEntryIds) {
       try {
-        blogEntries.add(service.getBlogEntry(this, blogEntryId));
+        blogEntries.add(service.getReadOnlyBlogEntry(this, blogEntryId));
       } catch (BlogServiceException e) {
         log.error("Exception encountered", e);
       }
@@ -1092,7 +1130,7 @@ public class Blog extends AbstractBlog {
    * of which is specified.
    *
    * @param numberOfEntries the number of entries to get
-   * @return a List containing the most recent blog entries
+   * @return a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentBlogEntries(int numberOfEntries) {
     BlogService service = new BlogService();
@@ -1100,7 +1138,7 @@ public class Blog extends AbstractBlog {
     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         blogEntries.add(blogEntry);
       } catch (BlogServiceException e) {
         log.error("Exception encountered", e);
@@ -1118,7 +1156,7 @@ public class Blog extends AbstractBlog {
    * Gets the most recent published blog entries, the number of which
    * is taken from the recentBlogEntriesOnHomePage property.
    *
-   * @return a List containing the most recent blog entries
+   * @return a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentPublishedBlogEntries() {
     return getRecentPublishedBlogEntries(getRecentBlogEntriesOnHomePage());
@@ -1129,7 +1167,7 @@ public class Blog extends AbstractBlog {
    * is specified
    *
    * @param number    the number of blog entries to get
-   * @return a List containing the most recent blog entries
+   * @return a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentPublishedBlogEntries(int number) {
     BlogService service = new BlogService();
@@ -1141,7 +1179,7 @@ public class Blog extends AbstractBlog {
       }
 
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         if (blogEntry != null) {
           blogEntries.add(blogEntry);
         }
@@ -1157,14 +1195,14 @@ public class Blog extends AbstractBlog {
    * Gets blog entries for a given list of IDs.
    *
    * @param blogEntryIds    the list of blog entry IDs
-   * @return a List containing the blog entries
+   * @return a List containing the blog entries, which are read-only
    */
   public List<BlogEntry> getBlogEntries(List<String> blogEntryIds) {
     BlogService service = new BlogService();
     List<BlogEntry> blogEntries = new LinkedList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         if (blogEntry != null) {
           blogEntries.add(blogEntry);
         }
@@ -1176,20 +1214,88 @@ public class Blog extends AbstractBlog {
     return blogEntries;
   }
 
+  /**
+   * Gets the summaries of all blog entries for this blog, most recent first.
+   *
+   * @return  a List of BlogEntrySummary objects
+   */
+  public List<BlogEntrySummary> getBlogEntrySummaries() {
+    return getBlogEntrySummaries(blogEntryIndex.getBlogEntries());
+  }
+
+  /**
+   * Gets the summaries of the blog entries with the given IDs. Any blog
+   * entries that are missing from the summary index (e.g. because they were
+   * indexed before it existed) are loaded and added to it.
+   *
+   * @param blogEntryIds    the list of blog entry IDs
+   * @return  a List of BlogEntrySummary objects, in the same order as the IDs
+   */
+  public List<BlogEntrySummary> getBlogEntrySummaries(List<String> blogEntryIds) {
+    BlogService service = new BlogService();
+    List<BlogEntrySummary> summaries = new ArrayList<BlogEntrySummary>(blogEntryIds.size());
+    List<BlogEntry> unindexedBlogEntries = new ArrayList<BlogEntry>();
+    for (String blogEntryId : blogEntryIds) {
+      BlogEntrySummary summary = blogEntrySummaryIndex.getBlogEntrySummary(blogEntryId);
+      if (summary == null) {
+        try {
+          BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
+          if (blogEntry != null) {
+            summary = new BlogEntrySummary(blogEntry);
+            unindexedBlogEntries.add(blogEntry);
+          }
+        } catch (BlogServiceException e) {
+          log.error("Exception encountered", e);
+        }
+      }
+
+      if (summary != null) {
+        summaries.add(summary);
+      }
+    }
+
+    if (!unindexedBlogEntries.isEmpty()) {
+      blogEntrySummaryIndex.index(unindexedBlogEntries);
+    }
+
+    return summaries;
+  }
+
+  /**
+   * Gets the summary of a single blog entry.
+   *
+   * @param blogEntryId   the ID of the blog entry
+   * @return  a BlogEntrySummary instance, or null if the blog entry doesn't exist
+   */
+  public BlogEntrySummary getBlogEntrySummary(String blogEntryId) {
+    List<BlogEntrySummary> summaries = getBlogEntrySummaries(Collections.singletonList(blogEntryId));
+    if (summaries.isEmpty()) {
+      return null;
+    } else {
+      return summaries.get(0);
+    }
+  }
+
   /**
    * Gets the most recent published blog entries for a given category, the
    * number of which is taken from the recentBlogEntriesOnHomePage property.
    *
    * @param   category          a category
-   * @return  a List containing the most recent blog entries
+   * @return  a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentPublishedBlogEntries(Category category) {
     BlogService service = new BlogService();
     List<String> blogEntryIds = categoryIndex.getRecentBlogEntries(category);
     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
+      // skip unpublished blog entries without loading them
+      BlogEntrySummary summary = blogEntrySummaryIndex.getBlogEntrySummary(blogEntryId);
+      if (summary != null && summary.isUnpublished()) {
+        continue;
+      }
+
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         if (blogEntry != null && blogEntry.isPublished()) {
           blogEntries.add(blogEntry);
         }
@@ -1210,15 +1316,21 @@ public class Blog extends AbstractBlog {
    * number of which is taken from the recentBlogEntriesOnHomePage property.
    *
    * @param   author    the author's username
-   * @return  a List containing the most recent blog entries
+   * @return  a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentPublishedBlogEntries(String author) {
     BlogService service = new BlogService();
     List<String> blogEntryIds = authorIndex.getRecentBlogEntries(author);
     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
+      // skip unpublished blog entries without loading them
+      BlogEntrySummary summary = blogEntrySummaryIndex.getBlogEntrySummary(blogEntryId);
+      if (summary != null && summary.isUnpublished()) {
+        continue;
+      }
+
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         if (blogEntry != null && blogEntry.isPublished()) {
           blogEntries.add(blogEntry);
         }
@@ -1239,15 +1351,21 @@ public class Blog extends AbstractBlog {
    * number of which is taken from the recentBlogEntriesOnHomePage property.
    *
    * @param tag             a tag
-   * @return a List containing the most recent blog entries
+   * @return a List containing the most recent blog entries, which are read-only
    */
   public List<BlogEntry> getRecentPublishedBlogEntries(Tag tag) {
     BlogService service = new BlogService();
     List<String> blogEntryIds = tagIndex.getRecentBlogEntries(tag);
     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
     for (String blogEntryId : blogEntryIds) {
+      // skip unpublished blog entries without loading them
+      BlogEntrySummary summary = blogEntrySummaryIndex.getBlogEntrySummary(blogEntryId);
+      if (summary != null && summary.isUnpublished()) {
+        continue;
+      }
+
       try {
-        BlogEntry blogEntry = service.getBlogEntry(this, blogEntryId);
+        BlogEntry blogEntry = service.getReadOnlyBlogEntry(this, blogEntryId);
         if (blogEntry != null && blogEntry.isPublished()) {
           blogEntries.add(blogEntry);
         }
@@ -1263,10 +1381,25 @@ public class Blog extends AbstractBlog {
     return blogEntries;
   }
 
+  /**
+   * Gets the most recent published blog entries matching a facet query,
+   * the number of which is taken from the recentBlogEntriesOnHomePage
+   * property.
+   *
+   * @param query     a FacetQuery instance
+   * @return a List containing the most recent blog entries, which are read-only
+   */
+  public List<BlogEntry> getRecentPublishedBlogEntries(FacetQuery query) {
+    FacetQuery publishedQuery = new FacetQuery(query).require(FacetIndex.STATE, FacetIndex.PUBLISHED);
+
+    List<String> blogEntryIds = facetIndex.getBlogEntries(publishedQuery, 0, getRecentBlogEntriesOnHomePage());
+    return getBlogEntries(blogEntryIds);
+  }
+
   /**
    * Gets the most recent responses.
    *
-   * @return a List containing the most recent blog entries
+   * @return a List containing the most recent blog entries, which are read-only
    */
   public List<Response> getRecentApprovedResponses() {
     BlogService service = new BlogService();
@@ -1396,7 +1529,7 @@ public class Blog extends AbstractBlog {
     if (blogEntryId != null) {
       BlogService service = new BlogService();
       try {
-        return service.getBlogEntry(this, blogEntryId);
+        return service.getReadOnlyBlogEntry(this, blogEntryId);
       } catch (BlogServiceException e) {
         // do nothing
       }
@@ -1418,7 +1551,7 @@ public class Blog extends AbstractBlog {
     if (blogEntryId != null) {
       BlogService service = new BlogService();
       try {
-        return service.getBlogEntry(this, blogEntryId);
+        return service.getReadOnlyBlogEntry(this, blogEntryId);
       } catch (BlogServiceException e) {
         // do nothing
       }
@@ -1527,6 +1660,15 @@ public class Blog extends AbstractBlog {
     return this.searchIndex;
   }
 
+  /**
+   * Gets the queue of updates waiting to be made to the search index.
+   *
+   * @return  a SearchIndexQueue instance
+   */
+  public SearchIndexQueue getSearchIndexQueue() {
+    return this.searchIndexQueue;
+  }
+
   /**
    * Gets the blog entry index.
    *
@@ -1536,6 +1678,15 @@ public class Blog extends AbstractBlog {
     return this.blogEntryIndex;
   }
 
+  /**
+   * Gets the blog entry summary index.
+   *
+   * @return  a BlogEntrySummaryIndex instance
+   */
+  public BlogEntrySummaryIndex getBlogEntrySummaryIndex() {
+    return this.blogEntrySummaryIndex;
+  }
+
   /**
    * Gets the response index.
    *
@@ -1572,6 +1723,42 @@ public class Blog extends AbstractBlog {
     return this.authorIndex;
   }
 
+  /**
+   * Gets the facet index.
+   *
+   * @return  a FacetIndex instance
+   */
+  public FacetIndex getFacetIndex() {
+    return this.facetIndex;
+  }
+
+  /**
+   * Gets the related posts index.
+   *
+   * @return  a RelatedPostsIndex instance
+   */
+  public RelatedPostsIndex getRelatedPostsIndex() {
+    return this.relatedPostsIndex;
+  }
+
+  /**
+   * Gets the permalink index.
+   *
+   * @return  a PermalinkIndex instance
+   */
+  public PermalinkIndex getPermalinkIndex() {
+    return this.permalinkIndex;
+  }
+
+  /**
+   * Gets the suggestion index.
+   *
+   * @return  a SuggestionIndex instance
+   */
+  public SuggestionIndex getSuggestionIndex() {
+    return this.suggestionIndex;
+  }
+
   /**
    * Gets the story index.
    *
@@ -1586,9 +1773,9 @@ public class Blog extends AbstractBlog {
    *
    * @param request   the HttpServletRequest instance for this request
    */
-  public synchronized void log(HttpServletRequest request, int status) {
+  public void log(HttpServletRequest request, int status) {
     String externalUri = (String)request.getAttribute(Constants.EXTERNAL_URI);
-    if (externalUri.matches("/images/.+")) {
+    if (externalUri.startsWith("/images/") && externalUri.length() > 8) {
       // do nothing, we don't want to log the following types of requests
       // - a blog's images
     } else {
@@ -1681,7 +1868,11 @@ public class Blog extends AbstractBlog {
     if (!indexes.exists()) {
       indexes.mkdir();
       reindex();
+    } else if (!searchIndex.isCurrent()) {
+      // the search index was written in an older format or with another analyzer
+      reindexSearchIndex();
     }
+    searchIndexQueue.start();
 
     File imagesDirectory = new File(getImagesDirectory());
     if (!imagesDirectory.exists()) {
@@ -1712,6 +1903,14 @@ public class Blog extends AbstractBlog {
   void stop() {
     log.debug("Stopping blog with ID " + getId());
 
+    ContentCache.getInstance().removeBlog(this);
+    PageCache.getInstance().removeBlog(this);
+    FeedCache.getInstance().removeBlog(this);
+    SearchResultCache.getInstance().removeBlog(this);
+    ValidatorCache.getInstance().removeBlog(this);
+
+    searchIndexQueue.flush();
+    searchIndex.close();
     logger.stop();
     editableTheme.backup();
 
@@ -1892,21 +2091,36 @@ public class Blog extends AbstractBlog {
   }
 
   public void reindexBlogEntries() {
+    ContentCache.getInstance().removeBlog(this);
+    PageCache.getInstance().removeBlog(this);
+    FeedCache.getInstance().removeBlog(this);
+    ValidatorCache.getInstance().removeBlog(this);
+
     blogEntryIndex.clear();
+    blogEntrySummaryIndex.clear();
     responseIndex.clear();
     tagIndex.clear();
     categoryIndex.clear();
     authorIndex.clear();
+    facetIndex.clear();
+    relatedPostsIndex.clear();
+    permalinkIndex.clear();
+    suggestionIndex.clear();
     searchIndex.clear();
 
     try {
       // to reindex all blog entries, we need to load them via the DAO
       Collection<BlogEntry> blogEntries = DAOFactory.getConfiguredFactory().getBlogEntryDAO().loadBlogEntries(this);
       blogEntryIndex.index(blogEntries);
+      blogEntrySummaryIndex.index(blogEntries);
       responseIndex.index(blogEntries);
       tagIndex.index(blogEntries);
       categoryIndex.index(blogEntries);
       authorIndex.index(blogEntries);
+      facetIndex.index(blogEntries);
+      relatedPostsIndex.index(blogEntries);
+      permalinkIndex.index(blogEntries);
+      suggestionIndex.index(blogEntries);
       searchIndex.indexBlogEntries(blogEntries);
       info("Blog entries reindexed.");
     } catch (Exception e) {
@@ -1915,7 +2129,28 @@ public class Blog extends AbstractBlog {
     }
   }
 
+  /**
+   * Rebuilds the search index, leaving the other indexes as they are.
+   */
+  private void reindexSearchIndex() {
+    log.info("Rebuilding search index for blog with ID " + getId());
+    searchIndex.clear();
+
+    try {
+      DAOFactory factory = DAOFactory.getConfiguredFactory();
+      searchIndex.indexBlogEntries(factory.getBlogEntryDAO().loadBlogEntries(this));
+      searchIndex.indexStaticPages(factory.getStaticPageDAO().loadStaticPages(this));
+    } catch (Exception e) {
+      log.error("Error rebuilding search index", e);
+    }
+  }
+
   public void reindexStaticPages() {
+    ContentCache.getInstance().removeBlog(this);
+    PageCache.getInstance().removeBlog(this);
+    FeedCache.getInstance().removeBlog(this);
+    ValidatorCache.getInstance().removeBlog(this);
+
     try {
       // to reindex all static pages, we need to load them via the DAO
       Collection<StaticPage> staticPages = DAOFactory.getConfiguredFactory().getStaticPageDAO().loadStaticPages(this);
@@ -1991,6 +2226,20 @@ public class Blog extends AbstractBlog {
     return entries;
   }
 
+  /**
+   * Stores the properties associated with this blog, removing any cached
+   * pages and feeds since they all show some of these properties.
+   *
+   * @throws BlogServiceException    if the properties can't be stored
+   */
+  @Override
+  public void storeProperties() throws BlogServiceException {
+    super.storeProperties();
+    PageCache.getInstance().removeBlog(this);
+    FeedCache.getInstance().removeBlog(this);
+    ValidatorCache.getInstance().removeBlog(this);
+  }
+
   public String getXsrfSigningSalt() {
     String salt = getProperty(XSRF_SIGNING_SALT_KEY);
     if (salt == null) {
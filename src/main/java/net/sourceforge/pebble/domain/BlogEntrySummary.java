@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A lightweight, read-only view of the header information of a blog entry
+ * (title, author, tags, categories and state). This is what listing code
+ * that doesn't need the body, comments or TrackBacks should use, since
+ * summaries are held in memory by the BlogEntrySummaryIndex rather than
+ * having to be loaded from disk.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntrySummary {
+
+  private final String id;
+  private final String title;
+  private final String subtitle;
+  private final String author;
+  private final String tags;
+  private final boolean published;
+  private final List<String> categories;
+
+  /**
+   * Creates a summary of the specified blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public BlogEntrySummary(BlogEntry blogEntry) {
+    this.id = blogEntry.getId();
+    this.title = blogEntry.getTitle();
+    this.subtitle = blogEntry.getSubtitle();
+    this.author = blogEntry.getAuthor();
+    this.tags = blogEntry.getTags();
+    this.published = blogEntry.isPublished();
+
+    List<String> list = new ArrayList<String>();
+    for (Category category : blogEntry.getCategories()) {
+      list.add(category.getId());
+    }
+    Collections.sort(list);
+    this.categories = Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Creates a summary from its constituent parts.
+   *
+   * @param id          the blog entry ID
+   * @param title       the title
+   * @param subtitle    the subtitle
+   * @param author      the author's username
+   * @param tags        the tags, as entered
+   * @param published   whether the blog entry is published
+   * @param categories  the IDs of the categories
+   */
+  public BlogEntrySummary(String id, String title, String subtitle, String author, String tags, boolean published, List<String> categories) {
+    this.id = id;
+    this.title = title;
+    this.subtitle = subtitle;
+    this.author = author;
+    this.tags = tags;
+    this.published = published;
+    this.categories = Collections.unmodifiableList(new ArrayList<String>(categories));
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * Gets the date of the blog entry, which is derived from its ID.
+   *
+   * @return  a Date instance
+   */
+  public Date getDate() {
+    return new Date(Long.parseLong(id));
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public String getSubtitle() {
+    return subtitle;
+  }
+
+  public String getAuthor() {
+    return author;
+  }
+
+  public String getTags() {
+    return tags;
+  }
+
+  public boolean isPublished() {
+    return published;
+  }
+
+  public boolean isUnpublished() {
+    return !published;
+  }
+
+  /**
+   * Gets the IDs of the categories that the blog entry belongs to.
+   *
+   * @return  a List of category IDs, in alphabetical order
+   */
+  public List<String> getCategories() {
+    return categories;
+  }
+
+  public String toString() {
+    return id + ":" + title;
+  }
+
+}
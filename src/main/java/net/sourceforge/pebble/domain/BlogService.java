@@ -43,8 +43,10 @@ import org.apache.commons.logging.LogFactory;
 
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Service that encompasses all functionality related to getting, putting
@@ -63,34 +65,53 @@ public class BlogService {
    * @return  a BlogEntry instance, or null if the entry couldn't be found
    */
   public BlogEntry getBlogEntry(Blog blog, String blogEntryId) throws BlogServiceException {
+    BlogEntry blogEntry = getReadOnlyBlogEntry(blog, blogEntryId);
+
+    if (blogEntry != null) {
+      blogEntry = (BlogEntry)blogEntry.clone();
+      blogEntry.setEventsEnabled(true);
+      blogEntry.setPersistent(true);
+    }
+
+    return blogEntry;
+  }
+
+  /**
+   * Gets the blog entry with the specified id, without taking a copy of it.
+   * The instance returned is shared with other callers, so it must not be
+   * modified (and that includes decorating it); use getBlogEntry() instead
+   * if that's what's needed.
+   *
+   * @param blogEntryId   the id of the blog entry
+   * @return  a read-only BlogEntry instance, or null if the entry couldn't be found
+   */
+  public BlogEntry getReadOnlyBlogEntry(Blog blog, String blogEntryId) throws BlogServiceException {
     BlogEntry blogEntry = null;
     ContentCache cache = ContentCache.getInstance();
 
-    // is the blog entry already in the cache?                                                  
+    // is the blog entry already in the cache?
     blogEntry = cache.getBlogEntry(blog, blogEntryId);
     if (blogEntry != null) {
       log.debug("Got blog entry " + blogEntryId + " from cache");
     } else {
       log.debug("Loading blog entry " + blogEntryId + " from disk");
+
+      // taken before loading, so a copy made stale by a concurrent store isn't cached
+      long generation = cache.getGeneration(blog);
       BlogEntryDAO dao = DAOFactory.getConfiguredFactory().getBlogEntryDAO();
       try {
         blogEntry = dao.loadBlogEntry(blog, blogEntryId);
 
         if (blogEntry != null) {
           // place in the cache for faster lookup next time
-          cache.putBlogEntry(blogEntry);
+          blogEntry.setPersistent(true);
+          cache.putBlogEntry(blogEntry, generation);
         }
       } catch (PersistenceException pe) {
         throw new BlogServiceException(blog, pe);
       }
     }
 
-    if (blogEntry != null) {
-      blogEntry = (BlogEntry)blogEntry.clone();
-      blogEntry.setEventsEnabled(true);
-      blogEntry.setPersistent(true);
-    }
-
     return blogEntry;
   }
 
@@ -149,13 +170,28 @@ public class BlogService {
 
     synchronized (blog) {
       try {
-        BlogEntry be = getBlogEntry(blog, blogEntry.getId());
+        BlogEntry be = getReadOnlyBlogEntry(blog, blogEntry.getId());
 
         if (!blogEntry.isPersistent() && be != null) {
           // the blog entry is new but one exists with the same ID already
           // - increment the date/ID and try again
           blogEntry.setDate(new Date(blogEntry.getDate().getTime() + 1));
           putBlogEntry(blogEntry);
+        } else if (blogEntry.isPersistent() && be != null && !blogEntry.isDirty()) {
+          // only the responses have changed, so there's no need to rewrite
+          // the whole blog entry
+          dao.storeResponses(blogEntry, getChangedResponses(be, blogEntry));
+          BlogEntry stored = (BlogEntry)blogEntry.clone();
+
+          blogEntry.getBlog().getEventDispatcher().fireEvents(blogEntry);
+
+          // and store anything that listeners have changed
+          if (blogEntry.isDirty()) {
+            dao.storeBlogEntry(blogEntry);
+          } else {
+            dao.storeResponses(blogEntry, getChangedResponses(stored, blogEntry));
+          }
+          cache.removeBlogEntry(blogEntry);
         } else {
           if (!blogEntry.isPersistent()) {
             dao.storeBlogEntry(blogEntry);
@@ -192,6 +228,33 @@ public class BlogService {
     }
   }
 
+  /**
+   * Works out which responses have been added, have changed state or have
+   * been removed between two versions of the same blog entry.
+   *
+   * @param before    the previous version of the blog entry
+   * @param after     the current version of the blog entry
+   * @return  a List of Response instances, those that have been removed
+   *          belonging to the previous version
+   */
+  private List<Response> getChangedResponses(BlogEntry before, BlogEntry after) {
+    Map<String, Response> previous = new LinkedHashMap<String, Response>();
+    for (Response response : before.getResponses()) {
+      previous.put(response.getGuid(), response);
+    }
+
+    List<Response> changed = new ArrayList<Response>();
+    for (Response response : after.getResponses()) {
+      Response previousResponse = previous.remove(response.getGuid());
+      if (previousResponse == null || !previousResponse.getState().equals(response.getState())) {
+        changed.add(response);
+      }
+    }
+    changed.addAll(previous.values());
+
+    return changed;
+  }
+
   /**
    * Removes this blog entry.
    */
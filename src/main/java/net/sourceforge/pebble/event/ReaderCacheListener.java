@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.event;
+
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.PageCache;
+import net.sourceforge.pebble.SearchResultCache;
+import net.sourceforge.pebble.ValidatorCache;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
+import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.api.event.comment.CommentListener;
+import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
+import net.sourceforge.pebble.api.event.trackback.TrackBackListener;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.PageBasedContent;
+import net.sourceforge.pebble.domain.Response;
+
+import java.beans.PropertyChangeEvent;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the caches of what anonymous readers see (pages, feeds, search
+ * results and validators) up to date as blog entries and responses change.
+ * Only published blog entries and approved responses are shown to anonymous
+ * readers, so changes to anything else are ignored, with the exception of
+ * the pages showing the blog entry that an unapproved response belongs to.
+ * <p />
+ * Changes that only affect how a single blog entry is displayed remove the
+ * pages showing that blog entry, whereas anything that might change the
+ * sidebar, archives or navigation removes every page for the blog. Feeds are
+ * removed when they show (or could show) what has changed, and search
+ * results and validators are removed for the whole blog.
+ *
+ * @author Simon Brown
+ */
+public class ReaderCacheListener implements BlogEntryListener, CommentListener, TrackBackListener {
+
+  /** the properties that are only displayed alongside the blog entry itself */
+  private static final Set<String> BLOG_ENTRY_PROPERTIES = new HashSet<String>(Arrays.asList(
+      PageBasedContent.SUBTITLE_PROPERTY,
+      PageBasedContent.BODY_PROPERTY,
+      PageBasedContent.ORIGINAL_PERMALINK_PROPERTY,
+      BlogEntry.EXCERPT_PROPERTY,
+      BlogEntry.ATTACHMENT_PROPERTY,
+      BlogEntry.COMMENTS_ENABLED_PROPERTY,
+      BlogEntry.TRACKBACKS_ENABLED_PROPERTY
+  ));
+
+  /**
+   * Called when a blog entry has been added.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryAdded(BlogEntryEvent event) {
+    if (event.getBlogEntry().isPublished()) {
+      blogEntryChanged(event.getBlogEntry(), true);
+    }
+  }
+
+  /**
+   * Called when a blog entry has been removed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryRemoved(BlogEntryEvent event) {
+    if (event.getBlogEntry().isPublished()) {
+      blogEntryChanged(event.getBlogEntry(), true);
+    }
+  }
+
+  /**
+   * Called when a blog entry has been changed.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryChanged(BlogEntryEvent event) {
+    BlogEntry blogEntry = event.getBlogEntry();
+    if (!blogEntry.isPublished()) {
+      // anonymous readers can't see unpublished blog entries
+      return;
+    }
+
+    boolean navigationChanged = false;
+    List<PropertyChangeEvent> propertyChangeEvents = event.getPropertyChangeEvents();
+    if (propertyChangeEvents != null) {
+      for (PropertyChangeEvent propertyChangeEvent : propertyChangeEvents) {
+        if (!BLOG_ENTRY_PROPERTIES.contains(propertyChangeEvent.getPropertyName())) {
+          navigationChanged = true;
+          break;
+        }
+      }
+    }
+
+    blogEntryChanged(blogEntry, navigationChanged);
+  }
+
+  /**
+   * Called when a blog entry has been published.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryPublished(BlogEntryEvent event) {
+    blogEntryChanged(event.getBlogEntry(), true);
+  }
+
+  /**
+   * Called when a blog entry has been unpublished.
+   *
+   * @param event a BlogEntryEvent instance
+   */
+  public void blogEntryUnpublished(BlogEntryEvent event) {
+    blogEntryChanged(event.getBlogEntry(), true);
+  }
+
+  /**
+   * Called when a comment has been added.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentAdded(CommentEvent event) {
+    responseChanged(event.getComment());
+  }
+
+  /**
+   * Called when a comment has been removed.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRemoved(CommentEvent event) {
+    responseChanged(event.getComment());
+  }
+
+  /**
+   * Called when a comment has been approved.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentApproved(CommentEvent event) {
+    approvedResponseChanged(event.getComment());
+  }
+
+  /**
+   * Called when a comment has been rejected.
+   *
+   * @param event a CommentEvent instance
+   */
+  public void commentRejected(CommentEvent event) {
+    // the comment may previously have been approved
+    approvedResponseChanged(event.getComment());
+  }
+
+  /**
+   * Called when a TrackBack has been added.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackAdded(TrackBackEvent event) {
+    responseChanged(event.getTrackBack());
+  }
+
+  /**
+   * Called when a TrackBack has been removed.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRemoved(TrackBackEvent event) {
+    responseChanged(event.getTrackBack());
+  }
+
+  /**
+   * Called when a TrackBack has been approved.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackApproved(TrackBackEvent event) {
+    approvedResponseChanged(event.getTrackBack());
+  }
+
+  /**
+   * Called when a TrackBack has been rejected.
+   *
+   * @param event a TrackBackEvent instance
+   */
+  public void trackBackRejected(TrackBackEvent event) {
+    // the TrackBack may previously have been approved
+    approvedResponseChanged(event.getTrackBack());
+  }
+
+  /**
+   * Removes what anonymous readers see of a published blog entry.
+   *
+   * @param blogEntry           the BlogEntry that has changed
+   * @param navigationChanged   whether the change might be seen on pages
+   *                            other than those showing the blog entry
+   */
+  private void blogEntryChanged(BlogEntry blogEntry, boolean navigationChanged) {
+    Blog blog = blogEntry.getBlog();
+    if (navigationChanged) {
+      PageCache.getInstance().removeBlog(blog);
+    } else {
+      PageCache.getInstance().removeBlogEntry(blogEntry);
+    }
+    FeedCache.getInstance().removeBlogEntry(blogEntry);
+    SearchResultCache.getInstance().removeBlog(blog);
+    ValidatorCache.getInstance().removeBlog(blog);
+  }
+
+  /**
+   * Approved responses are listed in the sidebar of every page, whereas
+   * other responses only affect the pages showing their blog entry.
+   */
+  private void responseChanged(Response response) {
+    if (response.isApproved()) {
+      approvedResponseChanged(response);
+    } else {
+      PageCache.getInstance().removeBlogEntry(response.getBlogEntry());
+    }
+  }
+
+  private void approvedResponseChanged(Response response) {
+    Blog blog = response.getBlogEntry().getBlog();
+    PageCache.getInstance().removeBlog(blog);
+    FeedCache.getInstance().removeResponse(response);
+    SearchResultCache.getInstance().removeBlog(blog);
+    ValidatorCache.getInstance().removeBlog(blog);
+  }
+
+}
@@ -34,8 +34,6 @@ package net.sourceforge.pebble.index;
 import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.*;
@@ -47,25 +45,26 @@ import java.util.*;
  */
 public class AuthorIndex {
 
-  private static final Log log = LogFactory.getLog(AuthorIndex.class);
-
   private Blog blog;
 
+  private IndexFile indexFile;
+
   /** the map containing the tags */
   private Map<String,List<String>> authors = new HashMap<String,List<String>>();
 
   public AuthorIndex(Blog blog) {
     this.blog = blog;
 
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), "authors.index"), this, new Handler());
     readIndex();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     authors = new HashMap<String,List<String>>();
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -82,7 +81,7 @@ public class AuthorIndex {
       }
     }
 
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -92,11 +91,8 @@ public class AuthorIndex {
    */
   public synchronized void index(BlogEntry blogEntry) {
     if (blogEntry.isPublished()) {
-      List<String> blogEntryIds = getBlogEntries(blogEntry.getAuthor());
-      blogEntryIds.add(blogEntry.getId());
-      Collections.sort(blogEntryIds, new ReverseBlogEntryIdComparator());
-
-      writeIndex();
+      add(blogEntry.getAuthor(), blogEntry.getId());
+      indexFile.add(blogEntry.getAuthor() + "=" + blogEntry.getId());
     }
   }
 
@@ -106,57 +102,69 @@ public class AuthorIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    List<String> blogEntries = authors.get(blogEntry.getAuthor());
+    if (remove(blogEntry.getAuthor(), blogEntry.getId())) {
+      indexFile.remove(blogEntry.getAuthor() + "=" + blogEntry.getId());
+    }
+  }
+
+  private void add(String author, String blogEntryId) {
+    List<String> blogEntryIds = getBlogEntries(author);
+    blogEntryIds.add(blogEntryId);
+    Collections.sort(blogEntryIds, new ReverseBlogEntryIdComparator());
+  }
+
+  private boolean remove(String author, String blogEntryId) {
+    List<String> blogEntries = authors.get(author);
+    boolean removed = false;
     if (blogEntries != null) {
-      blogEntries.remove(blogEntry.getId());
+      removed = blogEntries.remove(blogEntryId);
 
       if (blogEntries.isEmpty()) {
-        authors.remove(blogEntry.getAuthor());
+        authors.remove(author);
       }
     }
 
-    writeIndex();
+    return removed;
   }
 
   /**
    * Helper method to load the index.
    */
-  private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "authors.index");
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String indexEntry = reader.readLine();
-        while (indexEntry != null) {
-          String[] tuple = indexEntry.split("=");
-          String author = tuple[0];
-          List<String> blogEntries = getBlogEntries(author);
-
-          if (tuple.length > 1 && tuple[1] != null) {
-            String[] blogEntryIds = tuple[1].split(",");
-            for (String blogEntry : blogEntryIds) {
-              blogEntries.add(blogEntry);
-            }
-          }
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
 
-          indexEntry = reader.readLine();
-        }
+  /**
+   * Reads and writes the index, one line per author in the form
+   * author=blogEntryId,blogEntryId,... with each change logged as
+   * author=blogEntryId.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      String[] tuple = indexEntry.split("=");
+      String author = tuple[0];
+      List<String> blogEntries = getBlogEntries(author);
 
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
+      if (tuple.length > 1 && tuple[1] != null) {
+        String[] blogEntryIds = tuple[1].split(",");
+        for (String blogEntry : blogEntryIds) {
+          blogEntries.add(blogEntry);
+        }
       }
     }
-  }
 
-  /**
-   * Helper method to write out the index to disk.
-   */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "authors.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+    public void add(String record) {
+      int index = record.lastIndexOf("=");
+      AuthorIndex.this.add(record.substring(0, index), record.substring(index+1));
+    }
+
+    public void remove(String record) {
+      int index = record.lastIndexOf("=");
+      AuthorIndex.this.remove(record.substring(0, index), record.substring(index+1));
+    }
 
+    public void write(BufferedWriter writer) throws IOException {
       for (String author : authors.keySet()) {
         writer.write(author);
         writer.write("=");
@@ -169,12 +177,8 @@ public class AuthorIndex {
         }
         writer.newLine();
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   private synchronized List<String> getBlogEntries(String author) {
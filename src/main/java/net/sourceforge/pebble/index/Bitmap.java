@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+/**
+ * A compressed set of non-negative ints, used by the FacetIndex to record
+ * which blog entry ordinals have a given tag, category, etc. Sparse sets
+ * are held as a sorted int[] and dense sets as a long[] of bits, with the
+ * representation chosen by whichever is smaller; a tag used by a handful
+ * of blog entries therefore costs a few bytes, whereas "published" costs
+ * one bit per blog entry.
+ * <p/>
+ * The set operations never modify their arguments and instances aren't
+ * thread-safe, so callers (i.e. the FacetIndex) should synchronize.
+ *
+ * @author    Simon Brown
+ */
+final class Bitmap {
+
+  private static final int[] NO_VALUES = new int[0];
+
+  /** the sorted values, when the set is sparse (otherwise null) */
+  private int[] values;
+
+  /** the bits, when the set is dense (otherwise null) */
+  private long[] words;
+
+  private int cardinality;
+
+  /**
+   * Creates a new, empty instance.
+   */
+  Bitmap() {
+    this.values = NO_VALUES;
+  }
+
+  private Bitmap(int[] values, int cardinality) {
+    this.values = values;
+    this.cardinality = cardinality;
+    optimize();
+  }
+
+  private Bitmap(long[] words) {
+    this.words = words;
+    for (long word : words) {
+      cardinality += Long.bitCount(word);
+    }
+    optimize();
+  }
+
+  /**
+   * Adds a value to this set.
+   *
+   * @param value   a non-negative int
+   * @return  true if the set didn't already contain the value
+   */
+  boolean add(int value) {
+    if (words != null) {
+      int index = value >>> 6;
+      if (index >= words.length) {
+        long[] newWords = new long[Math.max(index + 1, words.length * 2)];
+        System.arraycopy(words, 0, newWords, 0, words.length);
+        words = newWords;
+      }
+
+      long bit = 1L << value;
+      if ((words[index] & bit) != 0) {
+        return false;
+      }
+      words[index] |= bit;
+      cardinality++;
+
+      // adding values never makes a dense set sparse
+      return true;
+    } else {
+      int index = binarySearch(values, cardinality, value);
+      if (index >= 0) {
+        return false;
+      }
+
+      index = -(index + 1);
+      if (cardinality == values.length) {
+        int[] newValues = new int[Math.max(4, cardinality * 2)];
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(values, index, newValues, index + 1, cardinality - index);
+        values = newValues;
+      } else {
+        System.arraycopy(values, index, values, index + 1, cardinality - index);
+      }
+      values[index] = value;
+      cardinality++;
+    }
+
+    optimize();
+    return true;
+  }
+
+  /**
+   * Removes a value from this set.
+   *
+   * @param value   a non-negative int
+   * @return  true if the set contained the value
+   */
+  boolean remove(int value) {
+    if (words != null) {
+      int index = value >>> 6;
+      long bit = 1L << value;
+      if (index >= words.length || (words[index] & bit) == 0) {
+        return false;
+      }
+      words[index] &= ~bit;
+      cardinality--;
+    } else {
+      int index = binarySearch(values, cardinality, value);
+      if (index < 0) {
+        return false;
+      }
+      System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+      cardinality--;
+    }
+
+    optimize();
+    return true;
+  }
+
+  /**
+   * Determines whether this set contains the specified value.
+   */
+  boolean contains(int value) {
+    if (words != null) {
+      int index = value >>> 6;
+      return index < words.length && (words[index] & (1L << value)) != 0;
+    } else {
+      return binarySearch(values, cardinality, value) >= 0;
+    }
+  }
+
+  /**
+   * Gets the number of values in this set.
+   */
+  int getCardinality() {
+    return cardinality;
+  }
+
+  boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  /**
+   * Gets the lowest value in this set.
+   *
+   * @return  the lowest value, or -1 if the set is empty
+   */
+  int first() {
+    if (words != null) {
+      for (int i = 0; i < words.length; i++) {
+        if (words[i] != 0) {
+          return (i << 6) + Long.numberOfTrailingZeros(words[i]);
+        }
+      }
+      return -1;
+    } else {
+      return cardinality > 0 ? values[0] : -1;
+    }
+  }
+
+  /**
+   * Gets the values in this set, in ascending order.
+   *
+   * @return  a new int[] of length getCardinality()
+   */
+  int[] toArray() {
+    int[] result = new int[cardinality];
+    if (words != null) {
+      int n = 0;
+      for (int i = 0; i < words.length; i++) {
+        long word = words[i];
+        while (word != 0) {
+          result[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+    } else {
+      System.arraycopy(values, 0, result, 0, cardinality);
+    }
+
+    return result;
+  }
+
+  /**
+   * Gets the intersection of two sets.
+   */
+  static Bitmap and(Bitmap a, Bitmap b) {
+    if (a.words != null && b.words != null) {
+      long[] words = new long[Math.min(a.words.length, b.words.length)];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = a.words[i] & b.words[i];
+      }
+      return new Bitmap(words);
+    }
+
+    // at least one is sparse, so probe the other with its values
+    Bitmap sparse = a.words == null ? a : b;
+    Bitmap other = sparse == a ? b : a;
+    int[] values = new int[sparse.cardinality];
+    int n = 0;
+    for (int i = 0; i < sparse.cardinality; i++) {
+      if (other.contains(sparse.values[i])) {
+        values[n++] = sparse.values[i];
+      }
+    }
+    return new Bitmap(values, n);
+  }
+
+  /**
+   * Gets the size of the intersection of two sets, without creating it.
+   */
+  static int andCardinality(Bitmap a, Bitmap b) {
+    int n = 0;
+    if (a.words != null && b.words != null) {
+      int length = Math.min(a.words.length, b.words.length);
+      for (int i = 0; i < length; i++) {
+        n += Long.bitCount(a.words[i] & b.words[i]);
+      }
+    } else {
+      Bitmap sparse = a.words == null ? a : b;
+      Bitmap other = sparse == a ? b : a;
+      for (int i = 0; i < sparse.cardinality; i++) {
+        if (other.contains(sparse.values[i])) {
+          n++;
+        }
+      }
+    }
+
+    return n;
+  }
+
+  /**
+   * Gets the union of two sets.
+   */
+  static Bitmap or(Bitmap a, Bitmap b) {
+    if (a.words == null && b.words == null) {
+      int[] values = new int[a.cardinality + b.cardinality];
+      int i = 0, j = 0, n = 0;
+      while (i < a.cardinality && j < b.cardinality) {
+        if (a.values[i] < b.values[j]) {
+          values[n++] = a.values[i++];
+        } else if (a.values[i] > b.values[j]) {
+          values[n++] = b.values[j++];
+        } else {
+          values[n++] = a.values[i++];
+          j++;
+        }
+      }
+      while (i < a.cardinality) {
+        values[n++] = a.values[i++];
+      }
+      while (j < b.cardinality) {
+        values[n++] = b.values[j++];
+      }
+      return new Bitmap(values, n);
+    }
+
+    long[] words = new long[Math.max(a.getNumberOfWords(), b.getNumberOfWords())];
+    a.copyInto(words);
+    b.copyInto(words);
+    return new Bitmap(words);
+  }
+
+  /**
+   * Gets the values in the first set that aren't in the second.
+   */
+  static Bitmap andNot(Bitmap a, Bitmap b) {
+    if (a.words == null) {
+      int[] values = new int[a.cardinality];
+      int n = 0;
+      for (int i = 0; i < a.cardinality; i++) {
+        if (!b.contains(a.values[i])) {
+          values[n++] = a.values[i];
+        }
+      }
+      return new Bitmap(values, n);
+    }
+
+    long[] words = new long[a.words.length];
+    System.arraycopy(a.words, 0, words, 0, words.length);
+    if (b.words != null) {
+      int length = Math.min(words.length, b.words.length);
+      for (int i = 0; i < length; i++) {
+        words[i] &= ~b.words[i];
+      }
+    } else {
+      for (int i = 0; i < b.cardinality; i++) {
+        int index = b.values[i] >>> 6;
+        if (index < words.length) {
+          words[index] &= ~(1L << b.values[i]);
+        }
+      }
+    }
+    return new Bitmap(words);
+  }
+
+  /**
+   * Determines whether this set is currently held as bits, for testing.
+   */
+  boolean isDense() {
+    return words != null;
+  }
+
+  /**
+   * Gets the number of words needed to hold this set as bits.
+   */
+  private int getNumberOfWords() {
+    if (words != null) {
+      return words.length;
+    } else if (cardinality == 0) {
+      return 0;
+    } else {
+      return (values[cardinality - 1] >>> 6) + 1;
+    }
+  }
+
+  /**
+   * ORs the values in this set into the specified words.
+   */
+  private void copyInto(long[] target) {
+    if (words != null) {
+      for (int i = 0; i < words.length; i++) {
+        target[i] |= words[i];
+      }
+    } else {
+      for (int i = 0; i < cardinality; i++) {
+        target[values[i] >>> 6] |= 1L << values[i];
+      }
+    }
+  }
+
+  /**
+   * Switches representation if the other would be smaller. An int costs
+   * half a word, so sets become dense once they have more than two values
+   * per word of bits, and only become sparse again once they've dropped
+   * below one value per word, to avoid flipping back and forth.
+   */
+  private void optimize() {
+    if (words != null) {
+      int highestWord = words.length - 1;
+      while (highestWord >= 0 && words[highestWord] == 0) {
+        highestWord--;
+      }
+
+      if (cardinality < highestWord + 1) {
+        values = toArray();
+        words = null;
+      }
+    } else if (cardinality > 0) {
+      int numberOfWords = getNumberOfWords();
+      if (cardinality > numberOfWords * 2) {
+        long[] bits = new long[numberOfWords];
+        copyInto(bits);
+        words = bits;
+        values = null;
+      }
+    }
+  }
+
+  private static int binarySearch(int[] values, int length, int value) {
+    int low = 0;
+    int high = length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (values[mid] < value) {
+        low = mid + 1;
+      } else if (values[mid] > value) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -(low + 1);
+  }
+
+}
@@ -29,37 +29,41 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
  * POSSIBILITY OF SUCH DAMAGE.
  */
-
 package net.sourceforge.pebble.index;
 
-import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Day;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.*;
 
 /**
  * Keeps an index of all blog entries, allowing efficient access at runtime.
+ * The IDs are held as sorted arrays of longs, and the lists returned by
+ * this class are read-only snapshots that share those arrays rather than
+ * copying them.
  *
  * @author    Simon Brown
  */
 public class BlogEntryIndex {
 
-  private static final Log log = LogFactory.getLog(BlogEntryIndex.class);
-
   private Blog blog;
 
-  private List<String> indexEntries = new ArrayList<String>();
-  private List<String> publishedIndexEntries = new ArrayList<String>();
-  private List<String> unpublishedIndexEntries = new ArrayList<String>();
+  private volatile SortedIdList indexEntries = SortedIdList.EMPTY;
+  private volatile SortedIdList publishedIndexEntries = SortedIdList.EMPTY;
+  private volatile SortedIdList unpublishedIndexEntries = SortedIdList.EMPTY;
+
+  private Handler publishedHandler = new Handler(true);
+  private Handler unpublishedHandler = new Handler(false);
+  private IndexFile publishedIndexFile;
+  private IndexFile unpublishedIndexFile;
 
   public BlogEntryIndex(Blog blog) {
     this.blog = blog;
 
+    publishedIndexFile = new IndexFile(new File(blog.getIndexesDirectory(), "blogentries-published.index"), this, publishedHandler);
+    unpublishedIndexFile = new IndexFile(new File(blog.getIndexesDirectory(), "blogentries-unpublished.index"), this, unpublishedHandler);
     readIndex(true);
     readIndex(false);
   }
@@ -67,12 +71,12 @@ public class BlogEntryIndex {
   /**
    * Clears the index.
    */
-  public void clear() {
-    indexEntries = new ArrayList<String>();
-    publishedIndexEntries = new ArrayList<String>();
-    unpublishedIndexEntries = new ArrayList<String>();
-    writeIndex(true);
-    writeIndex(false);
+  public synchronized void clear() {
+    indexEntries = SortedIdList.EMPTY;
+    publishedIndexEntries = SortedIdList.EMPTY;
+    unpublishedIndexEntries = SortedIdList.EMPTY;
+    publishedIndexFile.checkpoint();
+    unpublishedIndexFile.checkpoint();
   }
 
   /**
@@ -81,24 +85,27 @@ public class BlogEntryIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    long[] published = new long[blogEntries.size()];
+    long[] unpublished = new long[blogEntries.size()];
+    int numberOfPublished = 0;
+    int numberOfUnpublished = 0;
     for (BlogEntry blogEntry : blogEntries) {
       Day day = blog.getBlogForDay(blogEntry.getDate());
       if (blogEntry.isPublished()) {
-        publishedIndexEntries.add(blogEntry.getId());
+        published[numberOfPublished++] = Long.parseLong(blogEntry.getId());
         day.addPublishedBlogEntry(blogEntry.getId());
       } else {
-        unpublishedIndexEntries.add(blogEntry.getId());
+        unpublished[numberOfUnpublished++] = Long.parseLong(blogEntry.getId());
         day.addUnpublishedBlogEntry(blogEntry.getId());
       }
-      indexEntries.add(blogEntry.getId());
     }
 
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    publishedIndexEntries = publishedIndexEntries.addAll(published, numberOfPublished);
+    unpublishedIndexEntries = unpublishedIndexEntries.addAll(unpublished, numberOfUnpublished);
+    indexEntries = indexEntries.addAll(published, numberOfPublished).addAll(unpublished, numberOfUnpublished);
 
-    writeIndex(true);
-    writeIndex(false);
+    publishedIndexFile.checkpoint();
+    unpublishedIndexFile.checkpoint();
   }
 
   /**
@@ -108,20 +115,17 @@ public class BlogEntryIndex {
    */
   public synchronized void index(BlogEntry blogEntry) {
     Day day = blog.getBlogForDay(blogEntry.getDate());
+    long id = Long.parseLong(blogEntry.getId());
+    indexEntries = indexEntries.add(id);
     if (blogEntry.isPublished()) {
-      publishedIndexEntries.add(blogEntry.getId());
+      publishedIndexEntries = publishedIndexEntries.add(id);
       day.addPublishedBlogEntry(blogEntry.getId());
-      writeIndex(true);
+      publishedIndexFile.add(blogEntry.getId());
     } else {
-      unpublishedIndexEntries.add(blogEntry.getId());
+      unpublishedIndexEntries = unpublishedIndexEntries.add(id);
       day.addUnpublishedBlogEntry(blogEntry.getId());
-      writeIndex(false);
+      unpublishedIndexFile.add(blogEntry.getId());
     }
-    indexEntries.add(blogEntry.getId());
-
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
   }
 
   /**
@@ -133,88 +137,108 @@ public class BlogEntryIndex {
     Day day = blog.getBlogForDay(blogEntry.getDate());
     day.removeBlogEntry(blogEntry);
 
-    indexEntries.remove(blogEntry.getId());
-    publishedIndexEntries.remove(blogEntry.getId());
-    unpublishedIndexEntries.remove(blogEntry.getId());
-
-    writeIndex(true);
-    writeIndex(false);
+    long id = Long.parseLong(blogEntry.getId());
+    indexEntries = indexEntries.remove(id);
+    if (publishedIndexEntries.contains(id)) {
+      publishedIndexEntries = publishedIndexEntries.remove(id);
+      publishedIndexFile.remove(blogEntry.getId());
+    }
+    if (unpublishedIndexEntries.contains(id)) {
+      unpublishedIndexEntries = unpublishedIndexEntries.remove(id);
+      unpublishedIndexFile.remove(blogEntry.getId());
+    }
   }
 
   /**
    * Helper method to load the index.
    */
-  private void readIndex(boolean published) {
-    File indexFile;
+  private synchronized void readIndex(boolean published) {
+    SortedIdList ids;
     if (published) {
-      indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
+      publishedIndexFile.read();
+      ids = publishedHandler.get();
     } else {
-      indexFile = new File(blog.getIndexesDirectory(), "blogentries-unpublished.index");
+      unpublishedIndexFile.read();
+      ids = unpublishedHandler.get();
     }
 
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String indexEntry = reader.readLine();
-        while (indexEntry != null) {
-          indexEntries.add(indexEntry);
-
-          // and add it to the internal memory structures
-          Date date = new Date(Long.parseLong(indexEntry));
-          Day day = blog.getBlogForDay(date);
-
-          if (published) {
-            publishedIndexEntries.add(indexEntry);
-            day.addPublishedBlogEntry(indexEntry);
-          } else {
-            unpublishedIndexEntries.add(indexEntry);
-            day.addUnpublishedBlogEntry(indexEntry);
-          }
-
-          indexEntry = reader.readLine();
-        }
-
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
+    // and add the entries to the internal memory structures
+    long[] all = new long[ids.size()];
+    int i = 0;
+    for (String indexEntry : ids.asList()) {
+      long id = Long.parseLong(indexEntry);
+      all[i++] = id;
+
+      Day day = blog.getBlogForDay(new Date(id));
+      if (published) {
+        day.addPublishedBlogEntry(indexEntry);
+      } else {
+        day.addUnpublishedBlogEntry(indexEntry);
       }
     }
-
-    Collections.sort(indexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(publishedIndexEntries, new ReverseBlogEntryIdComparator());
-    Collections.sort(unpublishedIndexEntries, new ReverseBlogEntryIdComparator());
+    indexEntries = indexEntries.addAll(all, all.length);
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Reads and writes the published or unpublished blog entry IDs, one per
+   * line, most recent first.
    */
-  private void writeIndex(boolean published) {
-    try {
-      File indexFile;
-      if (published) {
-        indexFile = new File(blog.getIndexesDirectory(), "blogentries-published.index");
-      } else {
-        indexFile = new File(blog.getIndexesDirectory(), "blogentries-unpublished.index");
+  private class Handler implements IndexFile.Handler {
+
+    private final boolean published;
+
+    /** the IDs read from the checkpoint, before they are sorted */
+    private long[] ids = new long[256];
+    private int numberOfIds = 0;
+
+    Handler(boolean published) {
+      this.published = published;
+    }
+
+    public void read(String line) {
+      if (numberOfIds == ids.length) {
+        long[] larger = new long[ids.length * 2];
+        System.arraycopy(ids, 0, larger, 0, numberOfIds);
+        ids = larger;
       }
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+      ids[numberOfIds++] = Long.parseLong(line);
+    }
+
+    public void add(String record) {
+      set(get().add(Long.parseLong(record)));
+    }
 
+    public void remove(String record) {
+      set(get().remove(Long.parseLong(record)));
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
+      for (String indexEntry : get().asList()) {
+        writer.write(indexEntry);
+        writer.newLine();
+      }
+    }
+
+    /**
+     * Gets the IDs, sorting any that have just been read from the checkpoint.
+     */
+    SortedIdList get() {
+      if (numberOfIds > 0) {
+        set(SortedIdList.valueOf(ids, numberOfIds));
+        ids = new long[256];
+        numberOfIds = 0;
+      }
+      return published ? publishedIndexEntries : unpublishedIndexEntries;
+    }
+
+    private void set(SortedIdList list) {
       if (published) {
-        for (String indexEntry : publishedIndexEntries) {
-          writer.write(indexEntry);
-          writer.newLine();
-        }
+        publishedIndexEntries = list;
       } else {
-        for (String indexEntry : unpublishedIndexEntries) {
-          writer.write(indexEntry);
-          writer.newLine();
-        }
+        unpublishedIndexEntries = list;
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   /**
@@ -247,28 +271,50 @@ public class BlogEntryIndex {
   /**
    * Gets the full list of blog entries.
    *
-   * @return  a List of blog entry IDs
+   * @return  a read-only List of blog entry IDs, most recent first
    */
   public List<String> getBlogEntries() {
-    return new ArrayList<String>(indexEntries);
+    return indexEntries.asList();
+  }
+
+  /**
+   * Gets a page of blog entries.
+   *
+   * @param offset    the number of blog entries to skip
+   * @param limit     the maximum number of blog entries to return
+   * @return  a read-only List of blog entry IDs, most recent first
+   */
+  public List<String> getBlogEntries(int offset, int limit) {
+    return indexEntries.asList(offset, limit);
   }
 
   /**
    * Gets the full list of published blog entries.
    *
-   * @return  a List of blog entry IDs
+   * @return  a read-only List of blog entry IDs, most recent first
    */
   public List<String> getPublishedBlogEntries() {
-    return new ArrayList<String>(publishedIndexEntries);
+    return publishedIndexEntries.asList();
+  }
+
+  /**
+   * Gets a page of published blog entries.
+   *
+   * @param offset    the number of blog entries to skip
+   * @param limit     the maximum number of blog entries to return
+   * @return  a read-only List of blog entry IDs, most recent first
+   */
+  public List<String> getPublishedBlogEntries(int offset, int limit) {
+    return publishedIndexEntries.asList(offset, limit);
   }
 
   /**
    * Gets the full list of unpublished blog entries.
    *
-   * @return  a List of blog entry IDs
+   * @return  a read-only List of blog entry IDs, most recent first
    */
   public List<String> getUnpublishedBlogEntries() {
-    return new ArrayList<String>(unpublishedIndexEntries);
+    return unpublishedIndexEntries.asList();
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogEntrySummary;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.*;
+
+/**
+ * Keeps the header information (title, author, tags, categories and state)
+ * of all blog entries in memory, so that code that doesn't need the body
+ * or responses can avoid loading blog entries from disk.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntrySummaryIndex {
+
+  private static final Log log = LogFactory.getLog(BlogEntrySummaryIndex.class);
+
+  private static final String INDEX_FILE = "blogentrysummaries.index";
+  private static final String FIELD_SEPARATOR = "|";
+  private static final String CATEGORY_SEPARATOR = ",";
+
+  private Blog blog;
+
+  private IndexFile indexFile;
+
+  /** the map containing the summaries, keyed on blog entry ID */
+  private Map<String,BlogEntrySummary> summaries = new HashMap<String,BlogEntrySummary>();
+
+  public BlogEntrySummaryIndex(Blog blog) {
+    this.blog = blog;
+
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), INDEX_FILE), this, new Handler());
+    readIndex();
+  }
+
+  /**
+   * Clears the index.
+   */
+  public synchronized void clear() {
+    summaries = new HashMap<String,BlogEntrySummary>();
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes one or more blog entries.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  public synchronized void index(Collection<BlogEntry> blogEntries) {
+    for (BlogEntry blogEntry : blogEntries) {
+      summaries.put(blogEntry.getId(), new BlogEntrySummary(blogEntry));
+    }
+
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes a single blog entry, replacing any existing summary.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void index(BlogEntry blogEntry) {
+    BlogEntrySummary summary = new BlogEntrySummary(blogEntry);
+    summaries.put(blogEntry.getId(), summary);
+
+    try {
+      indexFile.add(format(summary));
+    } catch (UnsupportedEncodingException uee) {
+      log.error("Error while writing index", uee);
+    }
+  }
+
+  /**
+   * Unindexes a single blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void unindex(BlogEntry blogEntry) {
+    if (summaries.remove(blogEntry.getId()) != null) {
+      indexFile.remove(blogEntry.getId());
+    }
+  }
+
+  /**
+   * Gets the summary of the specified blog entry.
+   *
+   * @param blogEntryId   the ID of the blog entry
+   * @return  a BlogEntrySummary instance, or null if the blog entry
+   *          hasn't been indexed
+   */
+  public synchronized BlogEntrySummary getBlogEntrySummary(String blogEntryId) {
+    return summaries.get(blogEntryId);
+  }
+
+  /**
+   * Gets the number of blog entries that have been indexed.
+   *
+   * @return  an int
+   */
+  public synchronized int getNumberOfBlogEntrySummaries() {
+    return summaries.size();
+  }
+
+  /**
+   * Helper method to load the index.
+   */
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
+
+  /**
+   * Reads and writes the index, one summary per line, with removals logged
+   * as the ID of the blog entry.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      try {
+        BlogEntrySummary summary = parse(indexEntry);
+        summaries.put(summary.getId(), summary);
+      } catch (UnsupportedEncodingException uee) {
+        log.error("Error while reading index", uee);
+      }
+    }
+
+    public void add(String record) {
+      read(record);
+    }
+
+    public void remove(String blogEntryId) {
+      summaries.remove(blogEntryId);
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
+      for (BlogEntrySummary summary : summaries.values()) {
+        writer.write(format(summary));
+        writer.newLine();
+      }
+    }
+
+  }
+
+  /**
+   * Formats a summary as a single line; each field is URL encoded so that
+   * neither the field separator nor line breaks can appear within one.
+   */
+  private String format(BlogEntrySummary summary) throws UnsupportedEncodingException {
+    StringBuffer categories = new StringBuffer();
+    for (String category : summary.getCategories()) {
+      if (categories.length() > 0) {
+        categories.append(CATEGORY_SEPARATOR);
+      }
+      categories.append(encode(category));
+    }
+
+    StringBuffer buf = new StringBuffer();
+    buf.append(summary.getId());
+    buf.append(FIELD_SEPARATOR);
+    buf.append(summary.isPublished());
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(summary.getAuthor()));
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(summary.getTags()));
+    buf.append(FIELD_SEPARATOR);
+    buf.append(categories);
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(summary.getSubtitle()));
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(summary.getTitle()));
+
+    return buf.toString();
+  }
+
+  private BlogEntrySummary parse(String indexEntry) throws UnsupportedEncodingException {
+    String[] fields = indexEntry.split("\\" + FIELD_SEPARATOR, -1);
+
+    List<String> categories = new ArrayList<String>();
+    if (fields[4].length() > 0) {
+      for (String category : fields[4].split(CATEGORY_SEPARATOR)) {
+        categories.add(decode(category));
+      }
+    }
+
+    return new BlogEntrySummary(
+        fields[0],
+        decode(fields[6]),
+        decode(fields[5]),
+        decode(fields[2]),
+        decode(fields[3]),
+        Boolean.parseBoolean(fields[1]),
+        categories);
+  }
+
+  private String encode(String s) throws UnsupportedEncodingException {
+    if (s == null) {
+      return "";
+    } else {
+      return URLEncoder.encode(s, "UTF-8");
+    }
+  }
+
+  private String decode(String s) throws UnsupportedEncodingException {
+    if (s.length() == 0) {
+      return null;
+    } else {
+      return URLDecoder.decode(s, "UTF-8");
+    }
+  }
+
+}
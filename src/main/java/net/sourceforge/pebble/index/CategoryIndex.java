@@ -34,8 +34,6 @@ package net.sourceforge.pebble.index;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Category;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -49,10 +47,10 @@ import java.io.*;
  */
 public class CategoryIndex {
 
-  private static final Log log = LogFactory.getLog(CategoryIndex.class);
-
   private Blog blog;
 
+  private IndexFile indexFile;
+
   public CategoryIndex(Blog blog) {
     this.blog = blog;
 
@@ -60,18 +58,19 @@ public class CategoryIndex {
 //    if (!indexes.exists()) {
 //      indexes.mkdir();
 //    }
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), "categories.index"), this, new Handler());
     readIndex();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     for (Category category : blog.getCategories()) {
       category.removeAllBlogEntries();
     }
 
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -88,7 +87,7 @@ public class CategoryIndex {
       }
     }
 
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -100,9 +99,8 @@ public class CategoryIndex {
     if (blogEntry.isPublished()) {
       for (Category category : blogEntry.getCategories()) {
         category.addBlogEntry(blogEntry.getId());
+        indexFile.add(category.getId() + "=" + blogEntry.getId());
       }
-
-      writeIndex();
     }
   }
 
@@ -113,50 +111,56 @@ public class CategoryIndex {
    */
   public synchronized void unindex(BlogEntry blogEntry) {
     for (Category category : blog.getCategories()) {
+      if (category.getBlogEntries().contains(blogEntry.getId())) {
+        indexFile.remove(category.getId() + "=" + blogEntry.getId());
+      }
       category.removeBlogEntry(blogEntry.getId());
     }
-
-    writeIndex();
   }
 
   /**
    * Helper method to load the index.
    */
-  private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "categories.index");
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String indexEntry = reader.readLine();
-        while (indexEntry != null) {
-          String[] tuple = indexEntry.split("=");
-          Category category = blog.getCategory(tuple[0]);
-
-          if (tuple.length > 1 && tuple[1] != null) {
-            String[] blogEntries = tuple[1].split(",");
-            for (String blogEntry : blogEntries) {
-              category.addBlogEntry(blogEntry);
-            }
-          }
-
-          indexEntry = reader.readLine();
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
+
+  /**
+   * Reads and writes the index, one line per category in the form
+   * category=blogEntryId,blogEntryId,... with each change logged as
+   * category=blogEntryId.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      String[] tuple = indexEntry.split("=");
+      Category category = blog.getCategory(tuple[0]);
+
+      if (tuple.length > 1 && tuple[1] != null) {
+        String[] blogEntries = tuple[1].split(",");
+        for (String blogEntry : blogEntries) {
+          category.addBlogEntry(blogEntry);
         }
+      }
+    }
 
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
+    public void add(String record) {
+      int index = record.lastIndexOf("=");
+      Category category = blog.getCategory(record.substring(0, index));
+      if (category != null) {
+        category.addBlogEntry(record.substring(index+1));
       }
     }
-  }
 
-  /**
-   * Helper method to write out the index to disk.
-   */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "categories.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+    public void remove(String record) {
+      int index = record.lastIndexOf("=");
+      Category category = blog.getCategory(record.substring(0, index));
+      if (category != null) {
+        category.removeBlogEntry(record.substring(index+1));
+      }
+    }
 
+    public void write(BufferedWriter writer) throws IOException {
       for (Category category : blog.getCategories()) {
         writer.write(category.getId());
         writer.write("=");
@@ -166,12 +170,8 @@ public class CategoryIndex {
         }
         writer.newLine();
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   /**
@@ -31,8 +31,6 @@
  */
 package net.sourceforge.pebble.index;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.Tag;
 import net.sourceforge.pebble.domain.BlogEntry;
@@ -47,25 +45,26 @@ import java.io.*;
  */
 public class EmailSubscriptionList {
 
-  private static final Log log = LogFactory.getLog(EmailSubscriptionList.class);
-
   private Blog blog;
 
+  private IndexFile indexFile;
+
   /** the list of e-mail addresses */
   private List<String> emailAddresses = new LinkedList<String>();
 
   public EmailSubscriptionList(Blog blog) {
     this.blog = blog;
 
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), "email-subscriptions.index"), this, new Handler());
     readIndex();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     emailAddresses = new LinkedList<String>();
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -76,7 +75,7 @@ public class EmailSubscriptionList {
   public synchronized void addEmailAddress(String emailAddress) {
     if (!emailAddresses.contains(emailAddress)) {
       emailAddresses.add(emailAddress);
-      writeIndex();
+      indexFile.add(emailAddress);
     }
   }
 
@@ -86,49 +85,44 @@ public class EmailSubscriptionList {
    * @param emailAddress    an e-mail address
    */
   public synchronized void removeEmailAddress(String emailAddress) {
-    emailAddresses.remove(emailAddress);
-    writeIndex();
+    if (emailAddresses.remove(emailAddress)) {
+      indexFile.remove(emailAddress);
+    }
   }
 
   /**
    * Helper method to load the index.
    */
-  private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "email-subscriptions.index");
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String emailAddress = reader.readLine();
-        while (emailAddress != null) {
-          emailAddresses.add(emailAddress);
-          emailAddress = reader.readLine();
-        }
-
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
-      }
-    }
+  private synchronized void readIndex() {
+    indexFile.read();
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Reads and writes the list, one e-mail address per line.
    */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "email-subscriptions.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String emailAddress) {
+      emailAddresses.add(emailAddress);
+    }
 
+    public void add(String emailAddress) {
+      if (!emailAddresses.contains(emailAddress)) {
+        emailAddresses.add(emailAddress);
+      }
+    }
+
+    public void remove(String emailAddress) {
+      emailAddresses.remove(emailAddress);
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
       for (String emailAddress : emailAddresses) {
         writer.write(emailAddress);
         writer.newLine();
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   /**
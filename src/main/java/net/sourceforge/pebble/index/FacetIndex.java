@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.Tag;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Indexes blog entries by tag, category, author, month and state, so that
+ * they can be browsed by any combination of those (e.g. published blog
+ * entries tagged java and jvm, in a category, but not by a given author)
+ * without being loaded.
+ * <p/>
+ * Each blog entry is given a small ordinal, reused once the blog entry has
+ * been unindexed, and each facet value has a Bitmap of the ordinals of the
+ * blog entries with that value. Queries are answered by intersecting the
+ * bitmaps, and only the ordinals that match are mapped back to blog entry
+ * IDs.
+ *
+ * @author    Simon Brown
+ */
+public class FacetIndex {
+
+  private static final Log log = LogFactory.getLog(FacetIndex.class);
+
+  /** the tags of a blog entry, including those inherited from its categories */
+  public static final String TAG = "tag";
+
+  /** the categories of a blog entry, and their parents */
+  public static final String CATEGORY = "category";
+
+  /** the username of the author of a blog entry */
+  public static final String AUTHOR = "author";
+
+  /** the month of a blog entry, as yyyy/MM in the blog's time zone */
+  public static final String MONTH = "month";
+
+  /** the state of a blog entry, either PUBLISHED or UNPUBLISHED */
+  public static final String STATE = "state";
+
+  public static final String PUBLISHED = "published";
+  public static final String UNPUBLISHED = "unpublished";
+
+  private static final String[] FACETS = { TAG, CATEGORY, AUTHOR, MONTH, STATE };
+
+  private static final String INDEX_FILE = "facets.index";
+  private static final String FIELD_SEPARATOR = "|";
+  private static final String VALUE_SEPARATOR = ",";
+
+  private Blog blog;
+
+  private IndexFile indexFile;
+
+  /** the ordinal of each blog entry, keyed on blog entry ID */
+  private Map<String,Integer> ordinals = new HashMap<String,Integer>();
+
+  /** the facet values of each blog entry, by ordinal (null if unused) */
+  private List<Map<String,Set<String>>> entries = new ArrayList<Map<String,Set<String>>>();
+
+  /** the ID of each blog entry, by ordinal */
+  private long[] ids = new long[64];
+
+  /** ordinals that have been released and can be reused */
+  private Bitmap freeOrdinals = new Bitmap();
+
+  /** the ordinals of all blog entries */
+  private Bitmap all = new Bitmap();
+
+  /** a bitmap per value, per facet */
+  private Map<String,Map<String,Bitmap>> bitmaps = new HashMap<String,Map<String,Bitmap>>();
+
+  public FacetIndex(Blog blog) {
+    this.blog = blog;
+
+    for (String facet : FACETS) {
+      bitmaps.put(facet, new HashMap<String,Bitmap>());
+    }
+
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), INDEX_FILE), this, new Handler());
+    readIndex();
+  }
+
+  /**
+   * Determines whether the specified name is one of the facets.
+   *
+   * @param name    the name of a facet (e.g. "tag")
+   * @return  true if the name is TAG, CATEGORY, AUTHOR, MONTH or STATE
+   */
+  public static boolean isFacet(String name) {
+    for (String facet : FACETS) {
+      if (facet.equals(name)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the names of the facets, in the order that they're normally shown.
+   *
+   * @return  a List of Strings
+   */
+  public static List<String> getFacets() {
+    return Collections.unmodifiableList(Arrays.asList(FACETS));
+  }
+
+  /**
+   * Clears the index.
+   */
+  public synchronized void clear() {
+    ordinals = new HashMap<String,Integer>();
+    entries = new ArrayList<Map<String,Set<String>>>();
+    ids = new long[64];
+    freeOrdinals = new Bitmap();
+    all = new Bitmap();
+    for (String facet : FACETS) {
+      bitmaps.put(facet, new HashMap<String,Bitmap>());
+    }
+
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes one or more blog entries.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  public synchronized void index(Collection<BlogEntry> blogEntries) {
+    for (BlogEntry blogEntry : blogEntries) {
+      put(blogEntry.getId(), getFacetValues(blogEntry));
+    }
+
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes a single blog entry, replacing any existing facet values.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void index(BlogEntry blogEntry) {
+    Map<String,Set<String>> facets = getFacetValues(blogEntry);
+    put(blogEntry.getId(), facets);
+
+    try {
+      indexFile.add(format(blogEntry.getId(), facets));
+    } catch (UnsupportedEncodingException uee) {
+      log.error("Error while writing index", uee);
+    }
+  }
+
+  /**
+   * Unindexes a single blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void unindex(BlogEntry blogEntry) {
+    if (remove(blogEntry.getId())) {
+      indexFile.remove(blogEntry.getId());
+    }
+  }
+
+  /**
+   * Gets the IDs of the blog entries matching the specified query.
+   *
+   * @param query   a FacetQuery instance
+   * @return  a read-only List of blog entry IDs, most recent first
+   */
+  public synchronized List<String> getBlogEntries(FacetQuery query) {
+    return getBlogEntries(query, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets a page of the IDs of the blog entries matching the specified query.
+   *
+   * @param query   a FacetQuery instance
+   * @param offset  the number of blog entries to skip
+   * @param limit   the maximum number of blog entries to return
+   * @return  a read-only List of blog entry IDs, most recent first
+   */
+  public synchronized List<String> getBlogEntries(FacetQuery query, int offset, int limit) {
+    int[] matches = evaluate(query).toArray();
+    long[] blogEntryIds = new long[matches.length];
+    for (int i = 0; i < matches.length; i++) {
+      blogEntryIds[i] = ids[matches[i]];
+    }
+
+    return SortedIdList.valueOf(blogEntryIds, blogEntryIds.length).asList(offset, limit);
+  }
+
+  /**
+   * Gets the number of blog entries matching the specified query.
+   *
+   * @param query   a FacetQuery instance
+   * @return  the number of blog entries
+   */
+  public synchronized int getNumberOfBlogEntries(FacetQuery query) {
+    return evaluate(query).getCardinality();
+  }
+
+  /**
+   * Gets the number of blog entries matching the specified query, for each
+   * value of a facet. This is what's needed to show the choices for
+   * narrowing a query down further.
+   *
+   * @param facet   the name of the facet (e.g. TAG)
+   * @param query   a FacetQuery instance
+   * @return  a SortedMap of value to number of blog entries, omitting
+   *          values with no matching blog entries
+   */
+  public synchronized SortedMap<String,Integer> getCounts(String facet, FacetQuery query) {
+    Bitmap matches = evaluate(query);
+    SortedMap<String,Integer> counts = new TreeMap<String,Integer>();
+    Map<String,Bitmap> bitmapsForFacet = bitmaps.get(facet);
+    if (bitmapsForFacet != null) {
+      for (Map.Entry<String,Bitmap> entry : bitmapsForFacet.entrySet()) {
+        int count = Bitmap.andCardinality(matches, entry.getValue());
+        if (count > 0) {
+          counts.put(entry.getKey(), count);
+        }
+      }
+    }
+
+    return counts;
+  }
+
+  /**
+   * Gets the number of blog entries that have been indexed.
+   *
+   * @return  an int
+   */
+  public synchronized int getNumberOfBlogEntries() {
+    return all.getCardinality();
+  }
+
+  /**
+   * Gets the values of each facet for the specified blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  a Map of facet name to the Set of values, with an entry (that
+   *          may be empty) for every facet
+   */
+  static Map<String,Set<String>> getFacetValues(BlogEntry blogEntry) {
+    Map<String,Set<String>> facets = new HashMap<String,Set<String>>();
+    for (String facet : FACETS) {
+      facets.put(facet, new TreeSet<String>());
+    }
+
+    for (Tag tag : blogEntry.getAllTags()) {
+      facets.get(TAG).add(tag.getName());
+    }
+
+    for (Category category : blogEntry.getCategories()) {
+      while (category != null) {
+        facets.get(CATEGORY).add(category.getId());
+        category = category.getParent();
+      }
+    }
+
+    if (blogEntry.getAuthor() != null) {
+      facets.get(AUTHOR).add(blogEntry.getAuthor());
+    }
+
+    SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy/MM");
+    monthFormat.setTimeZone(blogEntry.getBlog().getTimeZone());
+    facets.get(MONTH).add(monthFormat.format(blogEntry.getDate()));
+
+    facets.get(STATE).add(blogEntry.isPublished() ? PUBLISHED : UNPUBLISHED);
+
+    return facets;
+  }
+
+  /**
+   * Finds the ordinals of the blog entries matching a query. Required
+   * clauses are intersected smallest first, so that the intermediate
+   * results stay small, and then excluded clauses are subtracted.
+   */
+  private Bitmap evaluate(FacetQuery query) {
+    List<Bitmap> required = new ArrayList<Bitmap>();
+    List<Bitmap> excluded = new ArrayList<Bitmap>();
+    for (FacetQuery.Clause clause : query.getClauses()) {
+      Map<String,Bitmap> bitmapsForFacet = bitmaps.get(clause.getFacet());
+      Bitmap union = null;
+      for (String value : clause.getValues()) {
+        Bitmap bitmap = bitmapsForFacet.get(value);
+        if (bitmap != null) {
+          union = (union == null) ? bitmap : Bitmap.or(union, bitmap);
+        }
+      }
+
+      if (union == null) {
+        union = new Bitmap();
+      }
+
+      if (clause.isExcluded()) {
+        excluded.add(union);
+      } else {
+        required.add(union);
+      }
+    }
+
+    Collections.sort(required, new Comparator<Bitmap>() {
+      public int compare(Bitmap b1, Bitmap b2) {
+        return b1.getCardinality() - b2.getCardinality();
+      }
+    });
+
+    Bitmap result = all;
+    for (Bitmap bitmap : required) {
+      if (result.isEmpty()) {
+        return result;
+      }
+      result = Bitmap.and(result, bitmap);
+    }
+    for (Bitmap bitmap : excluded) {
+      if (result.isEmpty()) {
+        return result;
+      }
+      result = Bitmap.andNot(result, bitmap);
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds or replaces the facet values for a blog entry.
+   */
+  private void put(String blogEntryId, Map<String,Set<String>> facets) {
+    remove(blogEntryId);
+
+    int ordinal;
+    if (freeOrdinals.isEmpty()) {
+      ordinal = entries.size();
+      entries.add(facets);
+      if (ordinal == ids.length) {
+        long[] newIds = new long[ids.length * 2];
+        System.arraycopy(ids, 0, newIds, 0, ids.length);
+        ids = newIds;
+      }
+    } else {
+      // reuse the lowest free ordinal, to keep the bitmaps dense
+      ordinal = freeOrdinals.first();
+      freeOrdinals.remove(ordinal);
+      entries.set(ordinal, facets);
+    }
+
+    ids[ordinal] = Long.parseLong(blogEntryId);
+    ordinals.put(blogEntryId, ordinal);
+    all.add(ordinal);
+
+    for (String facet : FACETS) {
+      Map<String,Bitmap> bitmapsForFacet = bitmaps.get(facet);
+      for (String value : facets.get(facet)) {
+        Bitmap bitmap = bitmapsForFacet.get(value);
+        if (bitmap == null) {
+          bitmap = new Bitmap();
+          bitmapsForFacet.put(value, bitmap);
+        }
+        bitmap.add(ordinal);
+      }
+    }
+  }
+
+  /**
+   * Removes a blog entry, touching only the bitmaps of its own values.
+   *
+   * @return  true if the blog entry was indexed
+   */
+  private boolean remove(String blogEntryId) {
+    Integer ordinal = ordinals.remove(blogEntryId);
+    if (ordinal == null) {
+      return false;
+    }
+
+    Map<String,Set<String>> facets = entries.get(ordinal);
+    for (String facet : FACETS) {
+      Map<String,Bitmap> bitmapsForFacet = bitmaps.get(facet);
+      for (String value : facets.get(facet)) {
+        Bitmap bitmap = bitmapsForFacet.get(value);
+        if (bitmap != null) {
+          bitmap.remove(ordinal);
+          if (bitmap.isEmpty()) {
+            bitmapsForFacet.remove(value);
+          }
+        }
+      }
+    }
+
+    entries.set(ordinal, null);
+    ids[ordinal] = 0;
+    all.remove(ordinal);
+    freeOrdinals.add(ordinal);
+
+    return true;
+  }
+
+  /**
+   * Helper method to load the index.
+   */
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
+
+  /**
+   * Reads and writes the index, one blog entry per line, with removals
+   * logged as the ID of the blog entry.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      try {
+        String[] fields = indexEntry.split("\\" + FIELD_SEPARATOR, -1);
+        Map<String,Set<String>> facets = new HashMap<String,Set<String>>();
+        for (int i = 0; i < FACETS.length; i++) {
+          Set<String> values = new TreeSet<String>();
+          if (fields[i + 1].length() > 0) {
+            for (String value : fields[i + 1].split(VALUE_SEPARATOR)) {
+              values.add(URLDecoder.decode(value, "UTF-8"));
+            }
+          }
+          facets.put(FACETS[i], values);
+        }
+
+        put(fields[0], facets);
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+
+    public void add(String record) {
+      read(record);
+    }
+
+    public void remove(String blogEntryId) {
+      FacetIndex.this.remove(blogEntryId);
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
+      for (Map.Entry<String,Integer> entry : ordinals.entrySet()) {
+        writer.write(format(entry.getKey(), entries.get(entry.getValue())));
+        writer.newLine();
+      }
+    }
+
+  }
+
+  /**
+   * Formats a blog entry as id|tags|categories|author|month|state, with
+   * each value URL encoded so that the separators can't appear within one.
+   */
+  private String format(String blogEntryId, Map<String,Set<String>> facets) throws UnsupportedEncodingException {
+    StringBuilder buf = new StringBuilder(blogEntryId);
+    for (String facet : FACETS) {
+      buf.append(FIELD_SEPARATOR);
+      boolean first = true;
+      for (String value : facets.get(facet)) {
+        if (!first) {
+          buf.append(VALUE_SEPARATOR);
+        }
+        buf.append(URLEncoder.encode(value, "UTF-8"));
+        first = false;
+      }
+    }
+
+    return buf.toString();
+  }
+
+}
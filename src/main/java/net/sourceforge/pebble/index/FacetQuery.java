@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Tag;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.*;
+
+/**
+ * A query over the FacetIndex. A query is made up of clauses, each of which
+ * matches the blog entries with any one of a set of values for a facet
+ * (e.g. tagged java or jvm), or, when excluded, the blog entries with none
+ * of them. A blog entry matches the query when it matches every clause,
+ * so an empty query matches all blog entries.
+ * <p/>
+ * In URLs, each clause is a request parameter named after the facet, with
+ * the values separated by commas and excluded clauses prefixed by a minus
+ * sign; for example tag=java,jvm&amp;tag=-applets&amp;author=simon.
+ *
+ * @author    Simon Brown
+ */
+public class FacetQuery {
+
+  private static final String VALUE_SEPARATOR = ",";
+  private static final String EXCLUDE = "-";
+
+  private final List<Clause> clauses = new ArrayList<Clause>();
+
+  /**
+   * Creates a new, empty query.
+   */
+  public FacetQuery() {
+  }
+
+  /**
+   * Creates a new query with the same clauses as the specified query, to
+   * which further clauses can be added.
+   *
+   * @param query   a FacetQuery instance
+   */
+  public FacetQuery(FacetQuery query) {
+    clauses.addAll(query.clauses);
+  }
+
+  /**
+   * Adds a clause matching blog entries with any of the specified values.
+   *
+   * @param facet     the name of the facet (e.g. FacetIndex.TAG)
+   * @param values    one or more values
+   * @return  this query
+   */
+  public FacetQuery require(String facet, String... values) {
+    return add(facet, false, Arrays.asList(values));
+  }
+
+  /**
+   * Adds a clause matching blog entries with none of the specified values.
+   *
+   * @param facet     the name of the facet (e.g. FacetIndex.TAG)
+   * @param values    one or more values
+   * @return  this query
+   */
+  public FacetQuery exclude(String facet, String... values) {
+    return add(facet, true, Arrays.asList(values));
+  }
+
+  /**
+   * Adds a clause in the URL form described above; for example "java,jvm"
+   * or "-applets".
+   *
+   * @param facet         the name of the facet (e.g. FacetIndex.TAG)
+   * @param expression    the parameter value
+   * @return  this query
+   */
+  public FacetQuery add(String facet, String expression) {
+    if (expression == null) {
+      return this;
+    }
+
+    boolean excluded = expression.startsWith(EXCLUDE);
+    if (excluded) {
+      expression = expression.substring(EXCLUDE.length());
+    }
+
+    return add(facet, excluded, Arrays.asList(expression.split(VALUE_SEPARATOR)));
+  }
+
+  private FacetQuery add(String facet, boolean excluded, List<String> values) {
+    if (!FacetIndex.isFacet(facet)) {
+      throw new IllegalArgumentException(facet + " is not a facet");
+    }
+
+    SortedSet<String> set = new TreeSet<String>();
+    for (String value : values) {
+      if (value != null) {
+        if (facet.equals(FacetIndex.TAG)) {
+          value = Tag.encode(value);
+        } else {
+          value = value.trim();
+        }
+
+        if (value.length() > 0) {
+          set.add(value);
+        }
+      }
+    }
+
+    // a clause without values would match nothing (or everything) by accident
+    if (!set.isEmpty()) {
+      clauses.add(new Clause(facet, set, excluded));
+    }
+
+    return this;
+  }
+
+  /**
+   * Gets the clauses that make up this query.
+   *
+   * @return  a read-only List of Clause instances
+   */
+  public List<Clause> getClauses() {
+    return Collections.unmodifiableList(clauses);
+  }
+
+  /**
+   * Determines whether this query has no clauses, and therefore matches
+   * all blog entries.
+   */
+  public boolean isEmpty() {
+    return clauses.isEmpty();
+  }
+
+  /**
+   * Determines whether the specified blog entry matches this query.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  true if the blog entry matches every clause
+   */
+  public boolean matches(BlogEntry blogEntry) {
+    Map<String,Set<String>> facets = FacetIndex.getFacetValues(blogEntry);
+    for (Clause clause : clauses) {
+      boolean found = false;
+      for (String value : clause.getValues()) {
+        if (facets.get(clause.getFacet()).contains(value)) {
+          found = true;
+          break;
+        }
+      }
+
+      if (found == clause.isExcluded()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets this query in its URL form, with the clauses in a consistent
+   * order so that equivalent queries give the same string.
+   *
+   * @return  a query string (without the leading ?), which is empty if
+   *          this query is empty
+   */
+  public String toString() {
+    SortedSet<String> parameters = new TreeSet<String>();
+    for (Clause clause : clauses) {
+      StringBuilder buf = new StringBuilder();
+      buf.append(clause.getFacet());
+      buf.append("=");
+      if (clause.isExcluded()) {
+        buf.append(EXCLUDE);
+      }
+
+      boolean first = true;
+      for (String value : clause.getValues()) {
+        if (!first) {
+          buf.append(VALUE_SEPARATOR);
+        }
+        buf.append(encode(value));
+        first = false;
+      }
+      parameters.add(buf.toString());
+    }
+
+    StringBuilder buf = new StringBuilder();
+    for (String parameter : parameters) {
+      if (buf.length() > 0) {
+        buf.append("&");
+      }
+      buf.append(parameter);
+    }
+
+    return buf.toString();
+  }
+
+  public boolean equals(Object o) {
+    return (o instanceof FacetQuery) && toString().equals(o.toString());
+  }
+
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  private static String encode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException uee) {
+      // UTF-8 is always supported
+      throw new IllegalStateException(uee);
+    }
+  }
+
+  /**
+   * A single clause of a query.
+   */
+  public static class Clause {
+
+    private final String facet;
+    private final SortedSet<String> values;
+    private final boolean excluded;
+
+    private Clause(String facet, SortedSet<String> values, boolean excluded) {
+      this.facet = facet;
+      this.values = Collections.unmodifiableSortedSet(values);
+      this.excluded = excluded;
+    }
+
+    public String getFacet() {
+      return facet;
+    }
+
+    public SortedSet<String> getValues() {
+      return values;
+    }
+
+    public boolean isExcluded() {
+      return excluded;
+    }
+
+  }
+
+}
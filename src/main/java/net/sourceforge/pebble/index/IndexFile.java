@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists an index as a checkpoint (the .index file, in whatever format
+ * the index has always used) plus an append-only log of the records that
+ * have been added or removed since the checkpoint was written. A change
+ * to the index therefore costs one small append rather than a rewrite of
+ * the whole file.
+ * <p/>
+ * Each record is synced to disk as it's appended. Checkpoints are written
+ * to a temporary file, synced to disk and renamed over the old checkpoint,
+ * after which the log is deleted. Where the old checkpoint can't be
+ * replaced in one rename (e.g. on Windows), it's moved aside first and
+ * only deleted once the new one is in place, and is read instead if the
+ * new one never arrives. Replaying a log over a checkpoint that already
+ * includes it gives the same result, so a crash at any point leaves the
+ * index readable. Files are read and written as UTF-8. Once the log has grown
+ * past {@link #COMPACTION_THRESHOLD} records, a new checkpoint is written
+ * on a background thread.
+ * <p/>
+ * Instances aren't thread-safe; all methods should be called while
+ * holding the lock passed to the constructor (normally the index itself),
+ * which is also held while compacting.
+ *
+ * @author    Simon Brown
+ */
+class IndexFile {
+
+  private static final Log log = LogFactory.getLog(IndexFile.class);
+
+  /** the number of logged records after which the index is compacted */
+  static final int COMPACTION_THRESHOLD = 500;
+
+  private static final char ADD = '+';
+  private static final char REMOVE = '-';
+
+  /** the single thread used to compact indexes, created on first use */
+  private static ExecutorService compactionPool;
+
+  /**
+   * Implemented by indexes to read and write their contents.
+   */
+  interface Handler {
+
+    /**
+     * Called for each line of the checkpoint, when the index is read.
+     */
+    void read(String line);
+
+    /**
+     * Called for each record that was logged as added, when the index is read.
+     */
+    void add(String record);
+
+    /**
+     * Called for each record that was logged as removed, when the index is read.
+     */
+    void remove(String record);
+
+    /**
+     * Writes the entire contents of the index, in the checkpoint format.
+     */
+    void write(BufferedWriter writer) throws IOException;
+
+  }
+
+  private final File file;
+  private final File logFile;
+  private final File tempFile;
+  private final File backupFile;
+  private final Object lock;
+  private final Handler handler;
+
+  /** the number of records in the log */
+  private int numberOfRecords;
+
+  /** the length that the log should be, or -1 if unknown */
+  private long logLength;
+
+  private boolean compactionScheduled;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param file      the checkpoint file (e.g. tags.index)
+   * @param lock      the lock guarding the index
+   * @param handler   the Handler that reads and writes the index
+   */
+  IndexFile(File file, Object lock, Handler handler) {
+    this.file = file;
+    this.logFile = new File(file.getParentFile(), file.getName() + ".log");
+    this.tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    this.backupFile = new File(file.getParentFile(), file.getName() + ".bak");
+    this.lock = lock;
+    this.handler = handler;
+  }
+
+  /**
+   * Reads the checkpoint and then replays the log.
+   */
+  void read() {
+    // a crash while replacing the checkpoint can leave only the old one
+    File checkpoint = file;
+    if (!file.exists() && backupFile.exists()) {
+      checkpoint = backupFile;
+    }
+
+    if (checkpoint.exists()) {
+      try {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpoint), "UTF-8"));
+        String line = reader.readLine();
+        while (line != null) {
+          handler.read(line);
+          line = reader.readLine();
+        }
+
+        reader.close();
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+
+    numberOfRecords = 0;
+    logLength = 0;
+    boolean complete = true;
+    if (logFile.exists()) {
+      try {
+        String records = readLog();
+        int start = 0;
+        int end = records.indexOf('\n');
+        while (end > -1) {
+          if (end > start) {
+            String record = records.substring(start + 1, end);
+            if (records.charAt(start) == ADD) {
+              handler.add(record);
+            } else if (records.charAt(start) == REMOVE) {
+              handler.remove(record);
+            }
+            numberOfRecords++;
+          }
+          start = end + 1;
+          end = records.indexOf('\n', start);
+        }
+
+        // anything after the last line break was cut short by a crash
+        complete = (start == records.length());
+        logLength = logFile.length();
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+        complete = false;
+      }
+    }
+
+    if (!complete) {
+      // further appends would be joined onto the incomplete record
+      log.warn("Incomplete index log " + logFile.getAbsolutePath() + ", writing a new checkpoint");
+      checkpoint();
+    } else if (numberOfRecords >= COMPACTION_THRESHOLD) {
+      scheduleCompaction();
+    }
+  }
+
+  /**
+   * Logs that a record has been added to the index.
+   *
+   * @param record    the record, which mustn't contain line breaks
+   */
+  void add(String record) {
+    append(ADD, record);
+  }
+
+  /**
+   * Logs that a record has been removed from the index.
+   *
+   * @param record    the record, which mustn't contain line breaks
+   */
+  void remove(String record) {
+    append(REMOVE, record);
+  }
+
+  /**
+   * Writes the entire index as a new checkpoint and deletes the log.
+   */
+  void checkpoint() {
+    FileOutputStream out = null;
+    try {
+      out = new FileOutputStream(tempFile);
+      BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+      handler.write(writer);
+      writer.flush();
+      out.getFD().sync();
+      writer.close();
+      out = null;
+
+      if (!tempFile.renameTo(file)) {
+        // keep the old checkpoint until the new one has replaced it
+        backupFile.delete();
+        if (file.exists() && !file.renameTo(backupFile)) {
+          throw new IOException("Could not rename " + file.getAbsolutePath() + " to " + backupFile.getAbsolutePath());
+        }
+        if (!tempFile.renameTo(file)) {
+          backupFile.renameTo(file);
+          throw new IOException("Could not rename " + tempFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+        }
+        backupFile.delete();
+      }
+
+      // the checkpoint now includes everything in the log
+      logFile.delete();
+      numberOfRecords = 0;
+      logLength = 0;
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+      tempFile.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ioe) {
+          // ignore
+        }
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of records in the log.
+   */
+  int getNumberOfRecords() {
+    return numberOfRecords;
+  }
+
+  private void append(char type, String record) {
+    try {
+      byte[] bytes = (type + record + "\n").getBytes("UTF-8");
+      FileOutputStream out = new FileOutputStream(logFile, true);
+      try {
+        out.write(bytes);
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+
+      numberOfRecords++;
+      if (logLength > -1) {
+        logLength += bytes.length;
+      }
+    } catch (Exception e) {
+      log.error("Error while writing index", e);
+      logLength = -1;
+    }
+
+    if (numberOfRecords >= COMPACTION_THRESHOLD) {
+      scheduleCompaction();
+    }
+  }
+
+  private String readLog() throws IOException {
+    InputStream in = new FileInputStream(logFile);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int)logFile.length());
+      byte[] buf = new byte[8192];
+      int length;
+      while ((length = in.read(buf)) != -1) {
+        out.write(buf, 0, length);
+      }
+
+      return new String(out.toByteArray(), "UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes a new checkpoint on a background thread, unless one is already
+   * waiting to be written.
+   */
+  private void scheduleCompaction() {
+    if (compactionScheduled) {
+      return;
+    }
+
+    compactionScheduled = true;
+    getCompactionPool().execute(new Runnable() {
+      public void run() {
+        synchronized (lock) {
+          compactionScheduled = false;
+
+          // don't overwrite the index if something else has changed the log
+          // (e.g. the blog has since been reloaded)
+          if (numberOfRecords > 0 && logLength == logFile.length()) {
+            log.debug("Compacting " + file.getAbsolutePath());
+            checkpoint();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Gets the pool used to compact indexes. As with the pools used by the
+   * DAOs, the thread is a daemon and times out when idle.
+   *
+   * @return  an ExecutorService instance
+   */
+  private static synchronized ExecutorService getCompactionPool() {
+    if (compactionPool == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          1, 1, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "pebble-index-compactor");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      compactionPool = executor;
+    }
+
+    return compactionPool;
+  }
+
+}
@@ -80,6 +80,16 @@ public class IndexedTag extends Tag {
     }
   }
 
+  /**
+   * Determines whether a blog entry is associated with this tag.
+   *
+   * @param blogEntryId   a blog entry ID
+   * @return  true if the blog entry has this tag, false otherwise
+   */
+  synchronized boolean hasBlogEntry(String blogEntryId) {
+    return blogEntries.contains(blogEntryId);
+  }
+
   /**
    * Removes a blog entry to this tag.
    *
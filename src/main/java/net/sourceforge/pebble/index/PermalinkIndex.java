@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.api.permalink.PermalinkProvider;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.BlogServiceException;
+import net.sourceforge.pebble.permalink.IndexedPermalinkProvider;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the local permalink of every blog entry, as generated by the blog's
+ * permalink provider, so that a permalink can be resolved to its blog entry
+ * (and vice versa) without loading other blog entries. The blog entries
+ * with each title are kept too, since title based permalink providers need
+ * to know whether an older blog entry has the same title.
+ * <p/>
+ * Lookups don't lock, so they can run concurrently with each other and with
+ * updates. If the permalink provider is changed, the index is rebuilt the
+ * next time that it's used.
+ *
+ * @author    Simon Brown
+ */
+public class PermalinkIndex {
+
+  private static final Log log = LogFactory.getLog(PermalinkIndex.class);
+
+  private static final String INDEX_FILE = "permalinks.index";
+  private static final String FIELD_SEPARATOR = "|";
+
+  /** marks the line naming the permalink provider that generated the index */
+  private static final String PROVIDER_PREFIX = "#";
+
+  private Blog blog;
+
+  private IndexFile indexFile;
+
+  /** the class name of the permalink provider used to generate the permalinks */
+  private volatile String permalinkProviderName;
+
+  private Map<String,String> permalinks = new ConcurrentHashMap<String,String>();
+  private Map<String,String> blogEntryIds = new ConcurrentHashMap<String,String>();
+  private Map<String,String> titles = new ConcurrentHashMap<String,String>();
+
+  /** the IDs of the blog entries with each title */
+  private Map<String,SortedIdList> blogEntriesByTitle = new ConcurrentHashMap<String,SortedIdList>();
+
+  public PermalinkIndex(Blog blog) {
+    this.blog = blog;
+
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), INDEX_FILE), this, new Handler());
+    readIndex();
+  }
+
+  /**
+   * Clears the index.
+   */
+  public synchronized void clear() {
+    permalinks.clear();
+    blogEntryIds.clear();
+    titles.clear();
+    blogEntriesByTitle.clear();
+    permalinkProviderName = getCurrentPermalinkProviderName();
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes one or more blog entries.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  public synchronized void index(Collection<BlogEntry> blogEntries) {
+    // permalinks can depend on the titles of other blog entries
+    for (BlogEntry blogEntry : blogEntries) {
+      putTitle(blogEntry.getId(), blogEntry.getTitle());
+    }
+    for (BlogEntry blogEntry : blogEntries) {
+      putPermalink(blogEntry.getId(), generatePermalink(blogEntry));
+    }
+
+    permalinkProviderName = getCurrentPermalinkProviderName();
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes a single blog entry, along with any others whose permalinks
+   * are affected by a change to its title.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void index(BlogEntry blogEntry) {
+    if (checkPermalinkProvider()) {
+      // the rebuild has included this blog entry
+      return;
+    }
+
+    String oldTitle = titles.get(blogEntry.getId());
+    putTitle(blogEntry.getId(), blogEntry.getTitle());
+    putPermalink(blogEntry.getId(), generatePermalink(blogEntry));
+    write(blogEntry.getId());
+
+    Set<String> others = new HashSet<String>();
+    others.addAll(getBlogEntriesWithTitle(oldTitle));
+    others.addAll(getBlogEntriesWithTitle(blogEntry.getTitle()));
+    others.remove(blogEntry.getId());
+    regenerate(others);
+  }
+
+  /**
+   * Unindexes a single blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void unindex(BlogEntry blogEntry) {
+    String oldTitle = titles.get(blogEntry.getId());
+    putTitle(blogEntry.getId(), null);
+    String permalink = permalinks.remove(blogEntry.getId());
+    if (permalink != null) {
+      if (blogEntry.getId().equals(blogEntryIds.get(permalink))) {
+        blogEntryIds.remove(permalink);
+      }
+      indexFile.remove(blogEntry.getId());
+    }
+
+    regenerate(getBlogEntriesWithTitle(oldTitle));
+  }
+
+  /**
+   * Gets the ID of the blog entry with the specified local permalink.
+   *
+   * @param permalink   a permalink relative to the blog (e.g. /a-title)
+   * @return  a blog entry ID, or null if no blog entry has that permalink
+   */
+  public String getBlogEntryId(String permalink) {
+    checkPermalinkProvider();
+    return blogEntryIds.get(permalink);
+  }
+
+  /**
+   * Gets the local permalink of the specified blog entry.
+   *
+   * @param blogEntryId   the ID of a blog entry
+   * @return  a permalink relative to the blog, or null if the blog entry
+   *          hasn't been indexed
+   */
+  public String getPermalink(String blogEntryId) {
+    checkPermalinkProvider();
+    return permalinks.get(blogEntryId);
+  }
+
+  /**
+   * Gets the local permalink of the specified blog entry, as long as its
+   * title hasn't changed since it was indexed.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @return  a permalink relative to the blog, or null if the blog entry
+   *          hasn't been indexed with its current title
+   */
+  public String getPermalink(BlogEntry blogEntry) {
+    checkPermalinkProvider();
+    String title = titles.get(blogEntry.getId());
+    String permalink = permalinks.get(blogEntry.getId());
+    if (permalink != null && (title == null ? blogEntry.getTitle() == null : title.equals(blogEntry.getTitle()))) {
+      return permalink;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Gets the IDs of the blog entries with the specified title.
+   *
+   * @param title   a blog entry title
+   * @return  a read-only List of blog entry IDs, most recent first
+   */
+  public List<String> getBlogEntriesWithTitle(String title) {
+    SortedIdList ids = (title != null) ? blogEntriesByTitle.get(title) : null;
+    if (ids == null) {
+      return Collections.emptyList();
+    } else {
+      return ids.asList();
+    }
+  }
+
+  /**
+   * Rebuilds the index if it was generated by a different permalink
+   * provider to the one that the blog is now using.
+   *
+   * @return  true if the index was rebuilt successfully
+   */
+  private boolean checkPermalinkProvider() {
+    String current = getCurrentPermalinkProviderName();
+    if (current == null || current.equals(permalinkProviderName)) {
+      return false;
+    }
+
+    synchronized (this) {
+      if (current.equals(permalinkProviderName)) {
+        return false;
+      }
+
+      log.info("Rebuilding permalink index for " + current);
+      try {
+        Collection<BlogEntry> blogEntries = DAOFactory.getConfiguredFactory().getBlogEntryDAO().loadBlogEntries(blog);
+        permalinks.clear();
+        blogEntryIds.clear();
+        titles.clear();
+        blogEntriesByTitle.clear();
+
+        // this only records the new permalink provider once it has finished
+        index(blogEntries);
+        return true;
+      } catch (Exception e) {
+        // the rebuild is tried again on the next lookup
+        log.error("Error while rebuilding permalink index", e);
+        return false;
+      }
+    }
+  }
+
+  private String getCurrentPermalinkProviderName() {
+    PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
+    return (permalinkProvider != null) ? permalinkProvider.getClass().getName() : null;
+  }
+
+  private String generatePermalink(BlogEntry blogEntry) {
+    PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
+    if (permalinkProvider instanceof IndexedPermalinkProvider) {
+      // rather than looking up what's already indexed
+      return ((IndexedPermalinkProvider)permalinkProvider).generatePermalink(blogEntry);
+    } else {
+      return permalinkProvider.getPermalink(blogEntry);
+    }
+  }
+
+  /**
+   * Regenerates the permalinks of other blog entries, whose permalinks
+   * may have changed because a blog entry with the same title has.
+   */
+  private void regenerate(Collection<String> ids) {
+    BlogService service = new BlogService();
+    for (String id : ids) {
+      try {
+        BlogEntry other = service.getReadOnlyBlogEntry(blog, id);
+        if (other != null) {
+          String permalink = generatePermalink(other);
+          if (!permalink.equals(permalinks.get(id))) {
+            putPermalink(id, permalink);
+            write(id);
+          }
+        }
+      } catch (BlogServiceException e) {
+        log.error("Error while regenerating permalink for " + id, e);
+      }
+    }
+  }
+
+  private void putTitle(String blogEntryId, String title) {
+    String oldTitle = (title != null) ? titles.put(blogEntryId, title) : titles.remove(blogEntryId);
+    if (oldTitle != null && !oldTitle.equals(title)) {
+      SortedIdList ids = blogEntriesByTitle.get(oldTitle);
+      if (ids != null) {
+        ids = ids.remove(Long.parseLong(blogEntryId));
+        if (ids.size() == 0) {
+          blogEntriesByTitle.remove(oldTitle);
+        } else {
+          blogEntriesByTitle.put(oldTitle, ids);
+        }
+      }
+    }
+
+    if (title != null) {
+      SortedIdList ids = blogEntriesByTitle.get(title);
+      blogEntriesByTitle.put(title, (ids != null ? ids : SortedIdList.EMPTY).add(Long.parseLong(blogEntryId)));
+    }
+  }
+
+  private void putPermalink(String blogEntryId, String permalink) {
+    String oldPermalink = permalinks.put(blogEntryId, permalink);
+    if (oldPermalink != null && !oldPermalink.equals(permalink) && blogEntryId.equals(blogEntryIds.get(oldPermalink))) {
+      blogEntryIds.remove(oldPermalink);
+    }
+    blogEntryIds.put(permalink, blogEntryId);
+  }
+
+  private void write(String blogEntryId) {
+    try {
+      indexFile.add(format(blogEntryId));
+    } catch (UnsupportedEncodingException uee) {
+      log.error("Error while writing index", uee);
+    }
+  }
+
+  /**
+   * Helper method to load the index.
+   */
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
+
+  /**
+   * Reads and writes the index, starting with a line naming the permalink
+   * provider and then one line per blog entry in the form
+   * id|permalink|title, with removals logged as the ID of the blog entry.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      if (indexEntry.startsWith(PROVIDER_PREFIX)) {
+        permalinkProviderName = indexEntry.substring(PROVIDER_PREFIX.length());
+        return;
+      }
+
+      try {
+        String[] fields = indexEntry.split("\\" + FIELD_SEPARATOR, -1);
+        putTitle(fields[0], decode(fields[2]));
+        putPermalink(fields[0], decode(fields[1]));
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+
+    public void add(String record) {
+      read(record);
+    }
+
+    public void remove(String blogEntryId) {
+      putTitle(blogEntryId, null);
+      String permalink = permalinks.remove(blogEntryId);
+      if (permalink != null && blogEntryId.equals(blogEntryIds.get(permalink))) {
+        blogEntryIds.remove(permalink);
+      }
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
+      if (permalinkProviderName != null) {
+        writer.write(PROVIDER_PREFIX + permalinkProviderName);
+        writer.newLine();
+      }
+
+      for (String blogEntryId : permalinks.keySet()) {
+        writer.write(format(blogEntryId));
+        writer.newLine();
+      }
+    }
+
+  }
+
+  private String format(String blogEntryId) throws UnsupportedEncodingException {
+    StringBuilder buf = new StringBuilder(blogEntryId);
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(permalinks.get(blogEntryId)));
+    buf.append(FIELD_SEPARATOR);
+    buf.append(encode(titles.get(blogEntryId)));
+
+    return buf.toString();
+  }
+
+  private String encode(String s) throws UnsupportedEncodingException {
+    if (s == null) {
+      return "";
+    } else {
+      return URLEncoder.encode(s, "UTF-8");
+    }
+  }
+
+  private String decode(String s) throws UnsupportedEncodingException {
+    if (s.length() == 0) {
+      return null;
+    } else {
+      return URLDecoder.decode(s, "UTF-8");
+    }
+  }
+
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.Tag;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.*;
+
+/**
+ * Keeps the most closely related published blog entries of each published
+ * blog entry, so that they can be shown without scanning the whole blog.
+ * As before, two blog entries are related when they have at least one
+ * tag in common, and the more tags they share the more closely related they
+ * are. Categories never make blog entries related on their own; they only
+ * break ties between blog entries that share the same number of tags, with
+ * any remaining ties going to the most recent blog entry.
+ * <p/>
+ * Because the weights don't depend on the rest of the blog, a change to a
+ * blog entry only affects the lists of the blog entries that share (or
+ * used to share) a tag or category with it, and those lists are updated
+ * in place. A list is only recalculated from scratch if a blog entry drops
+ * out of it, or down it, when it's full.
+ *
+ * @author    Simon Brown
+ */
+public class RelatedPostsIndex {
+
+  private static final Log log = LogFactory.getLog(RelatedPostsIndex.class);
+
+  /** the number of related blog entries kept for each blog entry */
+  public static final int MAX_RELATED_BLOG_ENTRIES = 10;
+
+  /**
+   * the score for each tag that two blog entries have in common, which
+   * outweighs any number of shared categories
+   */
+  static final int TAG_WEIGHT = 1 << 16;
+
+  /** the score for each category that two blog entries have in common */
+  static final int CATEGORY_WEIGHT = 1;
+
+  private static final String INDEX_FILE = "relatedposts.index";
+  private static final String FIELD_SEPARATOR = "|";
+  private static final String VALUE_SEPARATOR = ",";
+  private static final String TAG_PREFIX = "t:";
+  private static final String CATEGORY_PREFIX = "c:";
+
+  private Blog blog;
+
+  private IndexFile indexFile;
+
+  /** the tags and categories of each blog entry, keyed on blog entry ID */
+  private Map<String,Set<String>> features = new HashMap<String,Set<String>>();
+
+  /** the IDs of the blog entries with each tag or category */
+  private Map<String,Set<String>> postings = new HashMap<String,Set<String>>();
+
+  /** the related blog entries of each blog entry, most related first */
+  private Map<String,List<String>> related = new HashMap<String,List<String>>();
+
+  public RelatedPostsIndex(Blog blog) {
+    this.blog = blog;
+
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), INDEX_FILE), this, new Handler());
+    readIndex();
+  }
+
+  /**
+   * Clears the index.
+   */
+  public synchronized void clear() {
+    features = new HashMap<String,Set<String>>();
+    postings = new HashMap<String,Set<String>>();
+    related = new HashMap<String,List<String>>();
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes one or more blog entries, ignoring those that aren't published.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  public synchronized void index(Collection<BlogEntry> blogEntries) {
+    for (BlogEntry blogEntry : blogEntries) {
+      if (blogEntry.isPublished()) {
+        removeFeatures(blogEntry.getId());
+        addFeatures(blogEntry.getId(), getFeatures(blogEntry));
+      }
+    }
+
+    for (String blogEntryId : features.keySet()) {
+      related.put(blogEntryId, calculate(blogEntryId));
+    }
+
+    indexFile.checkpoint();
+  }
+
+  /**
+   * Indexes a single published blog entry, updating the related blog
+   * entries of those that it has something in common with.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void index(BlogEntry blogEntry) {
+    String blogEntryId = blogEntry.getId();
+    Set<String> oldFeatures = removeFeatures(blogEntryId);
+    Set<String> newFeatures = getFeatures(blogEntry);
+    addFeatures(blogEntryId, newFeatures);
+
+    Set<String> changed = new HashSet<String>();
+    for (String other : getBlogEntriesSharing(oldFeatures, newFeatures, blogEntryId)) {
+      List<String> list = getList(other);
+      boolean full = list.size() == MAX_RELATED_BLOG_ENTRIES;
+      int oldScore = score(features.get(other), oldFeatures);
+      int newScore = score(features.get(other), newFeatures);
+      boolean present = list.remove(blogEntryId);
+
+      if (present && full && newScore < oldScore) {
+        // something that didn't make the list may now beat this blog entry
+        related.put(other, calculate(other));
+        changed.add(other);
+      } else if ((isRelated(newScore) && insert(other, list, blogEntryId, newScore)) || present) {
+        changed.add(other);
+      }
+    }
+
+    related.put(blogEntryId, calculate(blogEntryId));
+    changed.add(blogEntryId);
+
+    write(changed);
+  }
+
+  /**
+   * Unindexes a single blog entry, removing it from the related blog
+   * entries of the others.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void unindex(BlogEntry blogEntry) {
+    String blogEntryId = blogEntry.getId();
+    Set<String> oldFeatures = removeFeatures(blogEntryId);
+    if (oldFeatures == null) {
+      return;
+    }
+    related.remove(blogEntryId);
+
+    Set<String> changed = new HashSet<String>();
+    for (String other : getBlogEntriesSharing(oldFeatures, Collections.<String>emptySet(), blogEntryId)) {
+      List<String> list = getList(other);
+      boolean full = list.size() == MAX_RELATED_BLOG_ENTRIES;
+      if (list.remove(blogEntryId)) {
+        if (full) {
+          related.put(other, calculate(other));
+        }
+        changed.add(other);
+      }
+    }
+
+    indexFile.remove(blogEntryId);
+    write(changed);
+  }
+
+  /**
+   * Gets the IDs of the blog entries most closely related to the
+   * specified blog entry. Blog entries that haven't been indexed, for
+   * example because they're being previewed, are compared against the
+   * index there and then.
+   *
+   * @param blogEntry   a BlogEntry instance
+   * @param max         the maximum number of IDs to return, which is
+   *                    limited to MAX_RELATED_BLOG_ENTRIES
+   * @return  a List of blog entry IDs, most closely related first
+   */
+  public synchronized List<String> getRelatedBlogEntries(BlogEntry blogEntry, int max) {
+    List<String> list = related.get(blogEntry.getId());
+    if (list == null) {
+      list = calculate(blogEntry.getId(), getFeatures(blogEntry));
+    }
+
+    max = Math.max(0, Math.min(max, list.size()));
+    return new ArrayList<String>(list.subList(0, max));
+  }
+
+  /**
+   * Determines whether the specified blog entry has been indexed.
+   */
+  synchronized boolean isIndexed(BlogEntry blogEntry) {
+    return features.containsKey(blogEntry.getId());
+  }
+
+  /**
+   * Gets the tags and categories of a blog entry, as used to compare it
+   * against the others.
+   */
+  private Set<String> getFeatures(BlogEntry blogEntry) {
+    Set<String> set = new HashSet<String>();
+    for (Tag tag : blogEntry.getAllTags()) {
+      set.add(TAG_PREFIX + tag.getName());
+    }
+    for (Category category : blogEntry.getCategories()) {
+      set.add(CATEGORY_PREFIX + category.getId());
+    }
+
+    return set;
+  }
+
+  private void addFeatures(String blogEntryId, Set<String> set) {
+    features.put(blogEntryId, set);
+    for (String feature : set) {
+      Set<String> blogEntryIds = postings.get(feature);
+      if (blogEntryIds == null) {
+        blogEntryIds = new HashSet<String>();
+        postings.put(feature, blogEntryIds);
+      }
+      blogEntryIds.add(blogEntryId);
+    }
+  }
+
+  /**
+   * Removes the tags and categories of a blog entry.
+   *
+   * @return  the tags and categories that it had, or null if it wasn't indexed
+   */
+  private Set<String> removeFeatures(String blogEntryId) {
+    Set<String> set = features.remove(blogEntryId);
+    if (set != null) {
+      for (String feature : set) {
+        Set<String> blogEntryIds = postings.get(feature);
+        if (blogEntryIds != null) {
+          blogEntryIds.remove(blogEntryId);
+          if (blogEntryIds.isEmpty()) {
+            postings.remove(feature);
+          }
+        }
+      }
+    }
+
+    return set;
+  }
+
+  private Set<String> getBlogEntriesSharing(Set<String> oldFeatures, Set<String> newFeatures, String blogEntryId) {
+    Set<String> blogEntryIds = new HashSet<String>();
+    if (oldFeatures != null) {
+      addPostings(blogEntryIds, oldFeatures);
+    }
+    addPostings(blogEntryIds, newFeatures);
+    blogEntryIds.remove(blogEntryId);
+
+    return blogEntryIds;
+  }
+
+  private void addPostings(Set<String> blogEntryIds, Set<String> set) {
+    for (String feature : set) {
+      Set<String> postingsForFeature = postings.get(feature);
+      if (postingsForFeature != null) {
+        blogEntryIds.addAll(postingsForFeature);
+      }
+    }
+  }
+
+  private List<String> getList(String blogEntryId) {
+    List<String> list = related.get(blogEntryId);
+    if (list == null) {
+      list = new ArrayList<String>();
+      related.put(blogEntryId, list);
+    }
+
+    return list;
+  }
+
+  private List<String> calculate(String blogEntryId) {
+    return calculate(blogEntryId, features.get(blogEntryId));
+  }
+
+  /**
+   * Calculates the related blog entries for a set of tags and categories,
+   * by accumulating a score for each blog entry that shares one of them.
+   */
+  private List<String> calculate(String blogEntryId, Set<String> set) {
+    final Map<String,Integer> scores = new HashMap<String,Integer>();
+    for (String feature : set) {
+      Set<String> postingsForFeature = postings.get(feature);
+      if (postingsForFeature != null) {
+        int weight = weight(feature);
+        for (String other : postingsForFeature) {
+          Integer score = scores.get(other);
+          scores.put(other, score == null ? weight : score + weight);
+        }
+      }
+    }
+    scores.remove(blogEntryId);
+
+    List<String> list = new ArrayList<String>();
+    for (Map.Entry<String,Integer> entry : scores.entrySet()) {
+      if (isRelated(entry.getValue())) {
+        list.add(entry.getKey());
+      }
+    }
+    Collections.sort(list, new Comparator<String>() {
+      public int compare(String id1, String id2) {
+        return compareRelatedness(scores.get(id1), id1, scores.get(id2), id2);
+      }
+    });
+
+    if (list.size() > MAX_RELATED_BLOG_ENTRIES) {
+      list = new ArrayList<String>(list.subList(0, MAX_RELATED_BLOG_ENTRIES));
+    }
+
+    return list;
+  }
+
+  /**
+   * Inserts a blog entry into a list of related blog entries, in order,
+   * keeping the list no longer than MAX_RELATED_BLOG_ENTRIES.
+   *
+   * @return  true if the blog entry made it into the list
+   */
+  private boolean insert(String blogEntryId, List<String> list, String other, int score) {
+    Set<String> set = features.get(blogEntryId);
+    int index = 0;
+    while (index < list.size() && compareRelatedness(score(set, features.get(list.get(index))), list.get(index), score, other) < 0) {
+      index++;
+    }
+
+    if (index < MAX_RELATED_BLOG_ENTRIES) {
+      list.add(index, other);
+      if (list.size() > MAX_RELATED_BLOG_ENTRIES) {
+        list.remove(list.size() - 1);
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * Orders blog entries by descending score and then descending ID.
+   */
+  private static int compareRelatedness(int score1, String id1, int score2, String id2) {
+    if (score1 != score2) {
+      return score1 > score2 ? -1 : 1;
+    }
+
+    long l1 = Long.parseLong(id1);
+    long l2 = Long.parseLong(id2);
+    return l1 > l2 ? -1 : (l1 < l2 ? 1 : 0);
+  }
+
+  private static int score(Set<String> set1, Set<String> set2) {
+    int score = 0;
+    if (set1 != null && set2 != null) {
+      for (String feature : set1) {
+        if (set2.contains(feature)) {
+          score += weight(feature);
+        }
+      }
+    }
+
+    return score;
+  }
+
+  /**
+   * Determines whether a score means that two blog entries are related,
+   * which they are only if they share at least one tag.
+   */
+  private static boolean isRelated(int score) {
+    return score >= TAG_WEIGHT;
+  }
+
+  private static int weight(String feature) {
+    return feature.startsWith(TAG_PREFIX) ? TAG_WEIGHT : CATEGORY_WEIGHT;
+  }
+
+  private void write(Set<String> blogEntryIds) {
+    try {
+      for (String blogEntryId : blogEntryIds) {
+        indexFile.add(format(blogEntryId));
+      }
+    } catch (UnsupportedEncodingException uee) {
+      log.error("Error while writing index", uee);
+    }
+  }
+
+  /**
+   * Helper method to load the index.
+   */
+  private synchronized void readIndex() {
+    indexFile.read();
+  }
+
+  /**
+   * Reads and writes the index, one blog entry per line in the form
+   * id|tags and categories|related blog entry IDs, with removals logged
+   * as the ID of the blog entry.
+   */
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      try {
+        String[] fields = indexEntry.split("\\" + FIELD_SEPARATOR, -1);
+        Set<String> set = new HashSet<String>();
+        if (fields[1].length() > 0) {
+          for (String feature : fields[1].split(VALUE_SEPARATOR)) {
+            set.add(URLDecoder.decode(feature, "UTF-8"));
+          }
+        }
+
+        List<String> list = new ArrayList<String>();
+        if (fields[2].length() > 0) {
+          list.addAll(Arrays.asList(fields[2].split(VALUE_SEPARATOR)));
+        }
+
+        removeFeatures(fields[0]);
+        addFeatures(fields[0], set);
+        related.put(fields[0], list);
+      } catch (Exception e) {
+        log.error("Error while reading index", e);
+      }
+    }
+
+    public void add(String record) {
+      read(record);
+    }
+
+    public void remove(String blogEntryId) {
+      removeFeatures(blogEntryId);
+      related.remove(blogEntryId);
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
+      for (String blogEntryId : features.keySet()) {
+        writer.write(format(blogEntryId));
+        writer.newLine();
+      }
+    }
+
+  }
+
+  private String format(String blogEntryId) throws UnsupportedEncodingException {
+    StringBuilder buf = new StringBuilder(blogEntryId);
+    buf.append(FIELD_SEPARATOR);
+    boolean first = true;
+    for (String feature : features.get(blogEntryId)) {
+      if (!first) {
+        buf.append(VALUE_SEPARATOR);
+      }
+      buf.append(URLEncoder.encode(feature, "UTF-8"));
+      first = false;
+    }
+
+    buf.append(FIELD_SEPARATOR);
+    first = true;
+    for (String other : related.get(blogEntryId)) {
+      if (!first) {
+        buf.append(VALUE_SEPARATOR);
+      }
+      buf.append(other);
+      first = false;
+    }
+
+    return buf.toString();
+  }
+
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, sorted set of response GUIDs (of the form
+ * type/blogEntryId/responseId), held as parallel primitive arrays ordered
+ * by response ID. As with {@link SortedIdList}, adding or removing a GUID
+ * uses a binary search and returns a new instance, so the lists handed out
+ * by {@link #asList()} are zero-copy snapshots, most recent first.
+ *
+ * @author    Simon Brown
+ */
+final class ResponseIdList {
+
+  static final ResponseIdList EMPTY = new ResponseIdList(new long[0], new long[0], new char[0]);
+
+  /** the response IDs, in ascending order */
+  private final long[] responseIds;
+
+  /** the IDs of the blog entries that the responses belong to */
+  private final long[] blogEntryIds;
+
+  /** the response types, 'c' for comments and 't' for TrackBacks */
+  private final char[] types;
+
+  private ResponseIdList(long[] responseIds, long[] blogEntryIds, char[] types) {
+    this.responseIds = responseIds;
+    this.blogEntryIds = blogEntryIds;
+    this.types = types;
+  }
+
+  /**
+   * Creates a new instance from the specified GUIDs, which may be in any
+   * order. Malformed GUIDs are ignored.
+   *
+   * @param guids   a List of response GUIDs
+   * @return  a ResponseIdList instance
+   */
+  static ResponseIdList valueOf(List<String> guids) {
+    long[] key = new long[3];
+    int size = 0;
+    long[] responseIds = new long[guids.size()];
+    long[] blogEntryIds = new long[guids.size()];
+    char[] types = new char[guids.size()];
+    for (String guid : guids) {
+      if (parse(guid, key)) {
+        responseIds[size] = key[0];
+        blogEntryIds[size] = key[1];
+        types[size] = (char)key[2];
+        size++;
+      }
+    }
+
+    // sort the indices of the parsed GUIDs, then copy them across in order
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+    final long[] r = responseIds;
+    final long[] b = blogEntryIds;
+    final char[] t = types;
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer i1, Integer i2) {
+        return ResponseIdList.compare(r[i1], b[i1], t[i1], r[i2], b[i2], t[i2]);
+      }
+    });
+
+    long[] sortedResponseIds = new long[size];
+    long[] sortedBlogEntryIds = new long[size];
+    char[] sortedTypes = new char[size];
+    int unique = 0;
+    for (int i = 0; i < size; i++) {
+      int j = order[i];
+      if (unique > 0 && compare(sortedResponseIds[unique-1], sortedBlogEntryIds[unique-1], sortedTypes[unique-1], r[j], b[j], t[j]) == 0) {
+        continue;
+      }
+      sortedResponseIds[unique] = r[j];
+      sortedBlogEntryIds[unique] = b[j];
+      sortedTypes[unique] = t[j];
+      unique++;
+    }
+
+    if (unique == 0) {
+      return EMPTY;
+    } else {
+      return new ResponseIdList(
+          truncate(sortedResponseIds, unique),
+          truncate(sortedBlogEntryIds, unique),
+          truncate(sortedTypes, unique));
+    }
+  }
+
+  /**
+   * Adds a GUID.
+   *
+   * @param guid    the GUID to add
+   * @return  a ResponseIdList containing the GUID
+   */
+  ResponseIdList add(String guid) {
+    long[] key = new long[3];
+    if (!parse(guid, key)) {
+      return this;
+    }
+
+    int index = binarySearch(key[0], key[1], (char)key[2]);
+    if (index >= 0) {
+      return this;
+    }
+
+    index = -(index + 1);
+    int length = responseIds.length;
+    long[] r = new long[length + 1];
+    long[] b = new long[length + 1];
+    char[] t = new char[length + 1];
+    System.arraycopy(responseIds, 0, r, 0, index);
+    System.arraycopy(blogEntryIds, 0, b, 0, index);
+    System.arraycopy(types, 0, t, 0, index);
+    r[index] = key[0];
+    b[index] = key[1];
+    t[index] = (char)key[2];
+    System.arraycopy(responseIds, index, r, index + 1, length - index);
+    System.arraycopy(blogEntryIds, index, b, index + 1, length - index);
+    System.arraycopy(types, index, t, index + 1, length - index);
+
+    return new ResponseIdList(r, b, t);
+  }
+
+  /**
+   * Removes a GUID.
+   *
+   * @param guid    the GUID to remove
+   * @return  a ResponseIdList without the GUID
+   */
+  ResponseIdList remove(String guid) {
+    int index = indexOf(guid);
+    if (index < 0) {
+      return this;
+    }
+
+    int length = responseIds.length;
+    long[] r = new long[length - 1];
+    long[] b = new long[length - 1];
+    char[] t = new char[length - 1];
+    System.arraycopy(responseIds, 0, r, 0, index);
+    System.arraycopy(blogEntryIds, 0, b, 0, index);
+    System.arraycopy(types, 0, t, 0, index);
+    System.arraycopy(responseIds, index + 1, r, index, length - index - 1);
+    System.arraycopy(blogEntryIds, index + 1, b, index, length - index - 1);
+    System.arraycopy(types, index + 1, t, index, length - index - 1);
+
+    return new ResponseIdList(r, b, t);
+  }
+
+  boolean contains(String guid) {
+    return indexOf(guid) >= 0;
+  }
+
+  int size() {
+    return responseIds.length;
+  }
+
+  /**
+   * Gets all of the GUIDs, most recent first.
+   *
+   * @return  an unmodifiable List of GUIDs
+   */
+  List<String> asList() {
+    return new GuidList(0, responseIds.length);
+  }
+
+  /**
+   * Gets a page of the GUIDs, most recent first.
+   *
+   * @param offset    the number of GUIDs to skip
+   * @param limit     the maximum number of GUIDs to return
+   * @return  an unmodifiable List of GUIDs
+   */
+  List<String> asList(int offset, int limit) {
+    int from = Math.min(Math.max(offset, 0), responseIds.length);
+    int to = Math.min(from + Math.max(limit, 0), responseIds.length);
+    return new GuidList(from, to);
+  }
+
+  /**
+   * Gets the position of a GUID in the (ascending) arrays.
+   */
+  private int indexOf(Object o) {
+    long[] key = new long[3];
+    if (!(o instanceof String) || !parse((String)o, key)) {
+      return -1;
+    }
+
+    int index = binarySearch(key[0], key[1], (char)key[2]);
+    if (index >= 0 && getGuid(index).equals(o)) {
+      return index;
+    } else {
+      return -1;
+    }
+  }
+
+  private String getGuid(int index) {
+    return types[index] + "/" + blogEntryIds[index] + "/" + responseIds[index];
+  }
+
+  private int binarySearch(long responseId, long blogEntryId, char type) {
+    int low = 0;
+    int high = responseIds.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(responseIds[mid], blogEntryIds[mid], types[mid], responseId, blogEntryId, type);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -(low + 1);
+  }
+
+  private static int compare(long r1, long b1, char t1, long r2, long b2, char t2) {
+    if (r1 != r2) {
+      return r1 < r2 ? -1 : 1;
+    } else if (b1 != b2) {
+      return b1 < b2 ? -1 : 1;
+    } else {
+      return t1 - t2;
+    }
+  }
+
+  /**
+   * Parses a GUID of the form type/blogEntryId/responseId into a key of
+   * {responseId, blogEntryId, type}.
+   *
+   * @return  true if the GUID could be parsed, false otherwise
+   */
+  private static boolean parse(String guid, long[] key) {
+    if (guid == null || guid.length() < 5 || guid.charAt(1) != '/') {
+      return false;
+    }
+
+    int separator = guid.lastIndexOf('/');
+    if (separator <= 2) {
+      return false;
+    }
+
+    try {
+      key[0] = Long.parseLong(guid.substring(separator + 1));
+      key[1] = Long.parseLong(guid.substring(2, separator));
+      key[2] = guid.charAt(0);
+      return true;
+    } catch (NumberFormatException nfe) {
+      return false;
+    }
+  }
+
+  private static long[] truncate(long[] array, int length) {
+    if (array.length == length) {
+      return array;
+    }
+    long[] result = new long[length];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  private static char[] truncate(char[] array, int length) {
+    if (array.length == length) {
+      return array;
+    }
+    char[] result = new char[length];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  /**
+   * A read-only window onto the GUIDs, in descending order.
+   */
+  private class GuidList extends AbstractList<String> implements RandomAccess {
+
+    private final int from;
+    private final int to;
+
+    GuidList(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    public String get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      return getGuid(responseIds.length - 1 - from - index);
+    }
+
+    public int size() {
+      return to - from;
+    }
+
+    public int indexOf(Object o) {
+      int index = ResponseIdList.this.indexOf(o);
+      if (index < 0) {
+        return -1;
+      }
+
+      // convert to a position in this (descending) window
+      index = responseIds.length - 1 - index - from;
+      return (index >= 0 && index < size()) ? index : -1;
+    }
+
+    public int lastIndexOf(Object o) {
+      return indexOf(o);
+    }
+
+    public boolean contains(Object o) {
+      return indexOf(o) > -1;
+    }
+
+    public List<String> subList(int fromIndex, int toIndex) {
+      if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+        throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+      }
+      return new GuidList(from + fromIndex, from + toIndex);
+    }
+
+  }
+
+}
@@ -29,58 +29,60 @@
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
  * POSSIBILITY OF SUCH DAMAGE.
  */
-
 package net.sourceforge.pebble.index;
 
-import net.sourceforge.pebble.comparator.ReverseResponseIdComparator;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Response;
 import net.sourceforge.pebble.domain.State;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Collection;
 
 /**
- * Keeps an index of all responses.
+ * Keeps an index of all responses. The GUIDs are held as sorted primitive
+ * arrays, and the lists returned by this class are read-only snapshots that
+ * share those arrays rather than copying them.
  *
  * @author    Simon Brown
  */
 public class ResponseIndex {
 
-  private static final Log log = LogFactory.getLog(ResponseIndex.class);
-
   private Blog blog;
 
-  private List<String> approvedResponses = new ArrayList<String>();
-  private List<String> pendingResponses = new ArrayList<String>();
-  private List<String> rejectedResponses = new ArrayList<String>();
+  private volatile ResponseIdList approvedResponses = ResponseIdList.EMPTY;
+  private volatile ResponseIdList pendingResponses = ResponseIdList.EMPTY;
+  private volatile ResponseIdList rejectedResponses = ResponseIdList.EMPTY;
+
+  private Handler approvedHandler;
+  private Handler pendingHandler;
+  private Handler rejectedHandler;
 
   public ResponseIndex(Blog blog) {
     this.blog = blog;
 
-    approvedResponses = readIndex(State.APPROVED);
-    pendingResponses = readIndex(State.PENDING);
-    rejectedResponses = readIndex(State.REJECTED);
+    approvedHandler = new Handler(State.APPROVED);
+    pendingHandler = new Handler(State.PENDING);
+    rejectedHandler = new Handler(State.REJECTED);
+    approvedResponses = approvedHandler.read();
+    pendingResponses = pendingHandler.read();
+    rejectedResponses = rejectedHandler.read();
   }
 
   /**
    * Clears the index.
    */
-  public void clear() {
-    approvedResponses = new ArrayList<String>();
-    writeIndex(State.APPROVED);
+  public synchronized void clear() {
+    approvedResponses = ResponseIdList.EMPTY;
+    approvedHandler.indexFile.checkpoint();
 
-    pendingResponses = new ArrayList<String>();
-    writeIndex(State.PENDING);
+    pendingResponses = ResponseIdList.EMPTY;
+    pendingHandler.indexFile.checkpoint();
 
-    rejectedResponses = new ArrayList<String>();
-    writeIndex(State.REJECTED);
+    rejectedResponses = ResponseIdList.EMPTY;
+    rejectedHandler.indexFile.checkpoint();
   }
 
   /**
@@ -89,24 +91,27 @@ public class ResponseIndex {
    * @param blogEntries   a List of BlogEntry instances
    */
   public synchronized void index(Collection<BlogEntry> blogEntries) {
+    List<String> approved = new ArrayList<String>(approvedResponses.asList());
+    List<String> pending = new ArrayList<String>(pendingResponses.asList());
+    List<String> rejected = new ArrayList<String>(rejectedResponses.asList());
     for (BlogEntry blogEntry : blogEntries) {
       for (Response response : blogEntry.getResponses()) {
         if (response.isApproved()) {
-          approvedResponses.add(response.getGuid());
+          approved.add(response.getGuid());
         } else if (response.isPending()) {
-          pendingResponses.add(response.getGuid());
+          pending.add(response.getGuid());
         } else if (response.isRejected()) {
-          rejectedResponses.add(response.getGuid());
+          rejected.add(response.getGuid());
         }
       }
     }
 
-    Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-    Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-    Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-    writeIndex(State.APPROVED);
-    writeIndex(State.PENDING);
-    writeIndex(State.REJECTED);
+    approvedResponses = ResponseIdList.valueOf(approved);
+    pendingResponses = ResponseIdList.valueOf(pending);
+    rejectedResponses = ResponseIdList.valueOf(rejected);
+    approvedHandler.indexFile.checkpoint();
+    pendingHandler.indexFile.checkpoint();
+    rejectedHandler.indexFile.checkpoint();
   }
 
   /**
@@ -116,17 +121,14 @@ public class ResponseIndex {
    */
   public synchronized void index(Response response) {
     if (response.isApproved()) {
-      approvedResponses.add(response.getGuid());
-      Collections.sort(approvedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.APPROVED);
+      approvedResponses = approvedResponses.add(response.getGuid());
+      approvedHandler.indexFile.add(response.getGuid());
     } else if (response.isPending()) {
-      pendingResponses.add(response.getGuid());
-      Collections.sort(pendingResponses, new ReverseResponseIdComparator());
-      writeIndex(State.PENDING);
+      pendingResponses = pendingResponses.add(response.getGuid());
+      pendingHandler.indexFile.add(response.getGuid());
     } else if (response.isRejected()) {
-      rejectedResponses.add(response.getGuid());
-      Collections.sort(rejectedResponses, new ReverseResponseIdComparator());
-      writeIndex(State.REJECTED);
+      rejectedResponses = rejectedResponses.add(response.getGuid());
+      rejectedHandler.indexFile.add(response.getGuid());
     }
   }
 
@@ -137,83 +139,97 @@ public class ResponseIndex {
    */
   public synchronized void unindex(Response response) {
     if (approvedResponses.contains(response.getGuid())) {
-      approvedResponses.remove(response.getGuid());
-      writeIndex(State.APPROVED);
+      approvedResponses = approvedResponses.remove(response.getGuid());
+      approvedHandler.indexFile.remove(response.getGuid());
     } else if (pendingResponses.contains(response.getGuid())) {
-      pendingResponses.remove(response.getGuid());
-      writeIndex(State.PENDING);
+      pendingResponses = pendingResponses.remove(response.getGuid());
+      pendingHandler.indexFile.remove(response.getGuid());
     } else if (rejectedResponses.contains(response.getGuid())) {
-      rejectedResponses.remove(response.getGuid());
-      writeIndex(State.REJECTED);
+      rejectedResponses = rejectedResponses.remove(response.getGuid());
+      rejectedHandler.indexFile.remove(response.getGuid());
     }
   }
 
   /**
-   * Helper method to load the index.
+   * Reads and writes the GUIDs of the responses in a given state, one per
+   * line, most recent first.
    */
-  private List<String> readIndex(State state) {
-    String filename = null;
-    List<String> responses = new ArrayList<String>();
-    if (state == State.APPROVED) {
-        filename = "responses-approved.index";
-    } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
-    } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
-    }
+  private class Handler implements IndexFile.Handler {
 
-    File indexFile = new File(blog.getIndexesDirectory(), filename);
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String response = reader.readLine();
-        while (response != null) {
-          responses.add(response);
-          response = reader.readLine();
-        }
+    private final State state;
+    private final IndexFile indexFile;
+
+    /** the GUIDs read from the checkpoint, before they are sorted */
+    private List<String> guids = new ArrayList<String>();
+
+    Handler(State state) {
+      this.state = state;
 
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
+      String filename = null;
+      if (state == State.APPROVED) {
+        filename = "responses-approved.index";
+      } else if (state == State.PENDING) {
+        filename = "responses-pending.index";
+      } else if (state == State.REJECTED) {
+        filename = "responses-rejected.index";
       }
+      this.indexFile = new IndexFile(new File(blog.getIndexesDirectory(), filename), ResponseIndex.this, this);
     }
 
-    Collections.sort(responses, new ReverseResponseIdComparator());
+    /**
+     * Helper method to load the index.
+     */
+    ResponseIdList read() {
+      synchronized (ResponseIndex.this) {
+        indexFile.read();
+        return get();
+      }
+    }
 
-    return responses;
-  }
+    public void read(String line) {
+      guids.add(line);
+    }
 
-  /**
-   * Helper method to write out the index to disk.
-   */
-  private void writeIndex(State state) {
-    String filename = null;
-    List<String> responses = null;
-    if (state == State.APPROVED) {
-        filename = "responses-approved.index";
-        responses = approvedResponses;
-    } else if (state == State.PENDING) {
-      filename = "responses-pending.index";
-      responses = pendingResponses;
-    } else if (state == State.REJECTED) {
-      filename = "responses-rejected.index";
-      responses = rejectedResponses;
+    public void add(String record) {
+      set(get().add(record));
     }
 
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), filename);
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+    public void remove(String record) {
+      set(get().remove(record));
+    }
 
-      for (String response : responses) {
+    public void write(BufferedWriter writer) throws IOException {
+      for (String response : get().asList()) {
         writer.write(response);
         writer.newLine();
       }
+    }
+
+    private ResponseIdList get() {
+      if (!guids.isEmpty()) {
+        set(ResponseIdList.valueOf(guids));
+        guids = new ArrayList<String>();
+      }
+
+      if (state == State.APPROVED) {
+        return approvedResponses;
+      } else if (state == State.PENDING) {
+        return pendingResponses;
+      } else {
+        return rejectedResponses;
+      }
+    }
 
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
+    private void set(ResponseIdList responses) {
+      if (state == State.APPROVED) {
+        approvedResponses = responses;
+      } else if (state == State.PENDING) {
+        pendingResponses = responses;
+      } else {
+        rejectedResponses = responses;
+      }
     }
+
   }
 
   /**
@@ -267,38 +283,34 @@ public class ResponseIndex {
    * @return  a List of response IDs
    */
   public List<String> getRecentApprovedResponses(int number) {
-    if (approvedResponses.size() >= number) {
-      return approvedResponses.subList(0, number);
-    } else {
-      return approvedResponses;
-    }
+    return approvedResponses.asList(0, number);
   }
 
   /**
    * Gets the list of approved responses.
    *
-   * @return  a List of response IDs
+   * @return  a read-only List of response IDs, most recent first
    */
   public List<String> getApprovedResponses() {
-    return new ArrayList<String>(approvedResponses);
+    return approvedResponses.asList();
   }
 
   /**
    * Gets the list of pending responses.
    *
-   * @return  a List of response IDs
+   * @return  a read-only List of response IDs, most recent first
    */
   public List<String> getPendingResponses() {
-    return new ArrayList<String>(pendingResponses);
+    return pendingResponses.asList();
   }
 
   /**
    * Gets the list of rejected responses.
    *
-   * @return  a List of response IDs
+   * @return  a read-only List of response IDs, most recent first
    */
   public List<String> getRejectedResponses() {
-    return new ArrayList<String>(rejectedResponses);
+    return rejectedResponses.asList();
   }
 
 }
\ No newline at end of file
@@ -31,6 +31,8 @@
  */
 package net.sourceforge.pebble.index;
 
+import net.sourceforge.pebble.SearchResultCache;
+import net.sourceforge.pebble.ValidatorCache;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.search.SearchException;
 import net.sourceforge.pebble.search.SearchHit;
@@ -46,20 +48,26 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
-import org.apache.lucene.search.Hits;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
-import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Collection;
+import java.io.*;
+import java.util.*;
 
 /**
  * Wraps up the functionality to index blog entries. This is really just
  * a convenient wrapper around Lucene.
+ * <p/>
+ * Changes are applied in batches, with all of the deletions in a batch made
+ * through a single IndexReader and all of the additions through a single
+ * IndexWriter. Searches share a single IndexSearcher, which is reference
+ * counted and replaced once a batch has been written, so searching never
+ * waits for indexing (or vice versa) and a change is visible to the next
+ * search after it has been indexed.
  *
  * @author    Simon Brown
  */
@@ -68,8 +76,41 @@ public class SearchIndex {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(SearchIndex.class);
 
+  /**
+   * the version of the documents written by this class, which should be
+   * incremented whenever the fields change so that existing indexes are
+   * rebuilt
+   */
+  static final int FORMAT = 3;
+
+  /** the file, inside the search index directory, recording the format */
+  static final String FORMAT_FILE = "pebble.format";
+
+  /** sorts search results by relevance, most relevant first */
+  public static final String SORT_BY_SCORE = "score";
+
+  /** sorts search results by date, most recent first */
+  public static final String SORT_BY_DATE = "date";
+
+  /** the indexed (but not stored) field used to sort by date */
+  private static final String SORT_DATE = "sortDate";
+
+  /** the stored (but not indexed) plain text used to build snippets */
+  private static final String SNIPPET_SOURCE = "snippetSource";
+
   private final Blog blog;
 
+  /** serializes changes to the index */
+  private final Object writeLock = new Object();
+
+  /** guards the current searcher */
+  private final Object searcherLock = new Object();
+
+  private SearcherReference searcher;
+
+  private Analyzer analyzer;
+  private String analyzerName;
+
   public SearchIndex(Blog blog) {
     this.blog = blog;
   }
@@ -83,55 +124,92 @@ public class SearchIndex {
       searchDirectory.mkdirs();
     }
 
-    synchronized (blog) {
+    synchronized (writeLock) {
       try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(searchDirectory, analyzer, true);
+        IndexWriter writer = new IndexWriter(searchDirectory, getAnalyzer(), true);
         writer.close();
+        writeFormat(searchDirectory);
       } catch (Exception e) {
         log.error(e.getMessage(), e);
       }
+
+      refresh();
     }
   }
 
   /**
-   * Allows a collection of blog entries to be indexed.
+   * Determines whether the index exists and was written in the current
+   * format, with the analyzer that the blog is currently configured to use.
+   * If not, the index needs to be rebuilt.
+   *
+   * @return  true if the index is current, false otherwise
    */
-  public void indexBlogEntries(Collection<BlogEntry> blogEntries) {
-    synchronized (blog) {
-      try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
+  public boolean isCurrent() {
+    File file = new File(blog.getSearchIndexDirectory(), FORMAT_FILE);
+    if (!file.exists()) {
+      return false;
+    }
 
-        for (BlogEntry blogEntry : blogEntries) {
-          index(blogEntry, writer);
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader(file));
+      return getFormat().equals(reader.readLine());
+    } catch (IOException ioe) {
+      log.warn("Error while reading " + file.getAbsolutePath(), ioe);
+      return false;
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ioe) {
+          // can't do much now
         }
+      }
+    }
+  }
 
-        writer.close();
-      } catch (Exception e) {
-        log.error(e.getMessage(), e);
+  private void writeFormat(File searchDirectory) throws IOException {
+    BufferedWriter writer = new BufferedWriter(new FileWriter(new File(searchDirectory, FORMAT_FILE)));
+    try {
+      writer.write(getFormat());
+      writer.newLine();
+    } finally {
+      writer.close();
+    }
+  }
+
+  private String getFormat() {
+    return FORMAT + " " + blog.getLuceneAnalyzer();
+  }
+
+  /**
+   * Allows a collection of blog entries to be indexed.
+   */
+  public void indexBlogEntries(Collection<BlogEntry> blogEntries) {
+    List<Document> documents = new ArrayList<Document>();
+    for (BlogEntry blogEntry : blogEntries) {
+      Document document = createDocument(blogEntry);
+      if (document != null) {
+        documents.add(document);
       }
     }
+
+    update(Collections.<String>emptyList(), documents);
   }
 
   /**
    * Allows a collection of static pages to be indexed.
    */
   public void indexStaticPages(Collection<StaticPage> staticPages) {
-    synchronized (blog) {
-      try {
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-
-        for (StaticPage staticPage : staticPages) {
-          index(staticPage, writer);
-        }
-
-        writer.close();
-      } catch (Exception e) {
-        log.error(e.getMessage(), e);
+    List<Document> documents = new ArrayList<Document>();
+    for (StaticPage staticPage : staticPages) {
+      Document document = createDocument(staticPage);
+      if (document != null) {
+        documents.add(document);
       }
     }
+
+    update(Collections.<String>emptyList(), documents);
   }
 
   /**
@@ -142,19 +220,7 @@ public class SearchIndex {
    * @param blogEntry   the BlogEntry instance to index
    */
   public void index(BlogEntry blogEntry) {
-    try {
-      synchronized (blog) {
-        // first delete the blog entry from the index (if it was there)
-        unindex(blogEntry);
-
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-        index(blogEntry, writer);
-        writer.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-    }
+    update(Collections.singletonList(blogEntry.getId()), asList(createDocument(blogEntry)));
   }
 
   /**
@@ -165,79 +231,120 @@ public class SearchIndex {
    * @param staticPage    the StaticPage instance to index
    */
   public void index(StaticPage staticPage) {
-    try {
-      synchronized (blog) {
-        // first delete the static page from the index (if it was there)
-        unindex(staticPage);
-
-        Analyzer analyzer = getAnalyzer();
-        IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), analyzer, false);
-        index(staticPage, writer);
-        writer.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
-    }
+    update(Collections.singletonList(staticPage.getId()), asList(createDocument(staticPage)));
   }
 
   /**
-   * Gets the Analyzer implementation to use.
+   * Removes the index for a single blog entry to be removed.
    *
-   * @return  an Analyzer instance
-   * @throws Exception
+   * @param blogEntry   the BlogEntry instance to be removed
    */
-  private Analyzer getAnalyzer() throws Exception {
-    Class c = Class.forName(blog.getLuceneAnalyzer());
-    return (Analyzer)c.newInstance();
+  public void unindex(BlogEntry blogEntry) {
+    update(Collections.singletonList(blogEntry.getId()), Collections.<Document>emptyList());
   }
 
   /**
    * Removes the index for a single blog entry to be removed.
    *
-   * @param blogEntry   the BlogEntry instance to be removed
+   * @param staticPage    the StaticPage instance to be removed
    */
-  public void unindex(BlogEntry blogEntry) {
-    try {
-      synchronized (blog) {
-        log.debug("Attempting to delete index for " + blogEntry.getTitle());
-        IndexReader reader = IndexReader.open(blog.getSearchIndexDirectory());
-        Term term = new Term("id", blogEntry.getId());
-        log.debug("Deleted " + reader.delete(term) + " document(s) from the index");
-        reader.close();
-      }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
+  public void unindex(StaticPage staticPage) {
+    update(Collections.singletonList(staticPage.getId()), Collections.<Document>emptyList());
+  }
+
+  private List<Document> asList(Document document) {
+    if (document == null) {
+      return Collections.emptyList();
+    } else {
+      return Collections.singletonList(document);
     }
   }
 
   /**
-   * Removes the index for a single blog entry to be removed.
+   * Applies a batch of changes to the index and then makes them visible to
+   * searches.
    *
-   * @param staticPage    the StaticPage instance to be removed
+   * @param ids         the IDs of the documents to delete
+   * @param documents   the documents to add
+   * @return  true if the changes were applied, false if something went wrong
    */
-  public void unindex(StaticPage staticPage) {
-    try {
-      synchronized (blog) {
-        log.debug("Attempting to delete index for " + staticPage.getTitle());
-        IndexReader reader = IndexReader.open(blog.getSearchIndexDirectory());
-        Term term = new Term("id", staticPage.getId());
-        log.debug("Deleted " + reader.delete(term) + " document(s) from the index");
-        reader.close();
+  boolean update(Collection<String> ids, Collection<Document> documents) {
+    if (ids.isEmpty() && documents.isEmpty()) {
+      return true;
+    }
+
+    boolean applied = true;
+
+    synchronized (writeLock) {
+      // Lucene only allows deletions through an IndexReader, and the reader
+      // and writer can't be open at the same time
+      if (!ids.isEmpty()) {
+        try {
+          IndexReader reader = IndexReader.open(blog.getSearchIndexDirectory());
+          try {
+            int deleted = 0;
+            for (String id : ids) {
+              deleted += reader.delete(new Term("id", id));
+            }
+            log.debug("Deleted " + deleted + " document(s) from the index");
+          } finally {
+            reader.close();
+          }
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+          applied = false;
+        }
       }
-    } catch (Exception e) {
-      log.error(e.getMessage(), e);
+
+      if (!documents.isEmpty()) {
+        try {
+          IndexWriter writer = new IndexWriter(blog.getSearchIndexDirectory(), getAnalyzer(), false);
+          try {
+            for (Document document : documents) {
+              writer.addDocument(document);
+            }
+          } finally {
+            writer.close();
+          }
+        } catch (Exception e) {
+          log.error(e.getMessage(), e);
+          applied = false;
+        }
+      }
+
+      refresh();
     }
+
+    return applied;
+  }
+
+  /**
+   * Gets the Analyzer implementation to use, which is only created again
+   * if the blog is configured to use a different analyzer.
+   *
+   * @return  an Analyzer instance
+   * @throws Exception
+   */
+  private synchronized Analyzer getAnalyzer() throws Exception {
+    String name = blog.getLuceneAnalyzer();
+    if (analyzer == null || !name.equals(analyzerName)) {
+      Class c = Class.forName(name);
+      analyzer = (Analyzer)c.newInstance();
+      analyzerName = name;
+    }
+
+    return analyzer;
   }
 
   /**
    * Helper method to index an individual blog entry.
    *
    * @param blogEntry   the BlogEntry instance to index
-   * @param writer      the IndexWriter to index with
+   * @return  a Document, or null if the blog entry shouldn't be indexed
    */
-  private void index(BlogEntry blogEntry, IndexWriter writer) {
+  Document createDocument(BlogEntry blogEntry) {
     if (!blogEntry.isPublished()) {
-      return;
+      return null;
     }
 
     try {
@@ -256,11 +363,13 @@ public class SearchIndex {
       }
       document.add(Field.Keyword("permalink", blogEntry.getPermalink()));
       document.add(Field.UnIndexed("date", DateField.dateToString(blogEntry.getDate())));
+      document.add(new Field(SORT_DATE, DateField.dateToString(blogEntry.getDate()), false, true, false));
       if (blogEntry.getBody() != null) {
         document.add(Field.UnStored("body", blogEntry.getBody()));
       } else {
         document.add(Field.UnStored("body", ""));
       }
+      document.add(Field.UnIndexed(SNIPPET_SOURCE, SnippetHighlighter.getSource(blogEntry.getBody())));
       if (blogEntry.getTruncatedContent() != null) {
         document.add(Field.Text("truncatedBody", blogEntry.getTruncatedContent()));
       } else {
@@ -307,18 +416,20 @@ public class SearchIndex {
       // join the title and body together to make searching on them both easier
       document.add(Field.UnStored("blogEntry", searchableContent.toString()));
 
-      writer.addDocument(document);
+      return document;
     } catch (Exception e) {
       log.error(e.getMessage(), e);
+      return null;
     }
   }
+
   /**
-   * Helper method to index an individual blog entry.
+   * Helper method to index an individual static page.
    *
    * @param staticPage    the Page instance instance to index
-   * @param writer      the IndexWriter to index with
+   * @return  a Document, or null if the page couldn't be indexed
    */
-  private void index(StaticPage staticPage, IndexWriter writer) {
+  Document createDocument(StaticPage staticPage) {
     try {
       log.debug("Indexing " + staticPage.getTitle());
       Document document = new Document();
@@ -330,11 +441,13 @@ public class SearchIndex {
       }
       document.add(Field.Keyword("permalink", staticPage.getPermalink()));
       document.add(Field.UnIndexed("date", DateField.dateToString(staticPage.getDate())));
+      document.add(new Field(SORT_DATE, DateField.dateToString(staticPage.getDate()), false, true, false));
       if (staticPage.getBody() != null) {
         document.add(Field.UnStored("body", staticPage.getBody()));
       } else {
         document.add(Field.UnStored("body", ""));
       }
+      document.add(Field.UnIndexed(SNIPPET_SOURCE, SnippetHighlighter.getSource(staticPage.getBody())));
       if (staticPage.getTruncatedContent() != null) {
         document.add(Field.Text("truncatedBody", staticPage.getTruncatedContent()));
       } else {
@@ -355,29 +468,90 @@ public class SearchIndex {
       // join the title and body together to make searching on them both easier
       document.add(Field.UnStored("blogEntry", searchableContent.toString()));
 
-      writer.addDocument(document);
+      return document;
     } catch (Exception e) {
       log.error(e.getMessage(), e);
+      return null;
     }
   }
 
+  /**
+   * Performs a search, returning all of the hits ordered by relevance.
+   *
+   * @param queryString   the Lucene query
+   * @return  a SearchResults instance
+   * @throws SearchException    if something goes wrong while searching
+   */
   public SearchResults search(String queryString) throws SearchException {
+    return search(queryString, SORT_BY_SCORE, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Performs a search, returning a single page of hits. Only the hits on
+   * the page are loaded from the index, although the results include the
+   * total number of hits. Results are cached until the index changes, unless
+   * the page is larger than the cache will hold.
+   *
+   * @param queryString   the Lucene query
+   * @param sort          SORT_BY_SCORE or SORT_BY_DATE
+   * @param offset        the number of hits to skip
+   * @param limit         the maximum number of hits to return
+   * @return  a SearchResults instance
+   * @throws SearchException    if something goes wrong while searching
+   */
+  public SearchResults search(String queryString, String sort, int offset, int limit) throws SearchException {
+    if (queryString == null || queryString.length() == 0 || limit > SearchResultCache.MAX_HITS_PER_RESULTS) {
+      return searchIndex(queryString, sort, offset, limit);
+    }
+
+    sort = SORT_BY_DATE.equalsIgnoreCase(sort) ? SORT_BY_DATE : SORT_BY_SCORE;
+    SearchResultCache cache = SearchResultCache.getInstance();
+    String key = SearchResultCache.getKey(queryString, sort, offset, limit);
+    SearchResults searchResults = cache.getSearchResults(blog, key);
+    if (searchResults == null) {
+      // the generation is taken first, so that results from an index that
+      // changes during the search aren't cached
+      long generation = cache.getGeneration(blog);
+      searchResults = searchIndex(queryString, sort, offset, limit);
+      cache.putSearchResults(blog, key, searchResults, generation);
+    }
+
+    return searchResults;
+  }
+
+  /**
+   * Performs a search against the index itself, bypassing the cache.
+   */
+  private SearchResults searchIndex(String queryString, String sort, int offset, int limit) throws SearchException {
 
     log.debug("Performing search : " + queryString);
 
     SearchResults searchResults = new SearchResults();
     searchResults.setQuery(queryString);
+    searchResults.setOffset(offset);
 
     if (queryString != null && queryString.length() > 0) {
-      Searcher searcher = null;
+      SearcherReference ref = null;
 
       try {
-        searcher = new IndexSearcher(blog.getSearchIndexDirectory());
+        ref = acquireSearcher();
         Query query = QueryParser.parse(queryString, "blogEntry", getAnalyzer());
-        Hits hits = searcher.search(query);
+        SnippetHighlighter highlighter = new SnippetHighlighter(ref.searcher.rewrite(query), getAnalyzer());
+
+        // only collect as many hits as are needed to fill the page
+        int n = (int)Math.max(1, Math.min((long)offset + limit, ref.searcher.maxDoc()));
+        TopDocs topDocs;
+        if (SORT_BY_DATE.equalsIgnoreCase(sort)) {
+          topDocs = ref.searcher.search(query, null, n, new Sort(new SortField(SORT_DATE, SortField.STRING, true)));
+        } else {
+          topDocs = ref.searcher.search(query, null, n);
+        }
+        searchResults.setNumberOfHits(topDocs.totalHits);
 
-        for (int i = 0; i < hits.length(); i++) {
-          Document doc = hits.doc(i);
+        int end = (int)Math.min((long)offset + limit, topDocs.scoreDocs.length);
+        for (int i = offset; i < end; i++) {
+          ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+          Document doc = ref.searcher.doc(scoreDoc.doc);
           SearchHit result = new SearchHit(
               blog,
               doc.get("id"),
@@ -386,7 +560,9 @@ public class SearchIndex {
               doc.get("subtitle"),
               doc.get("truncatedBody"),
               DateField.stringToDate(doc.get("date")),
-              hits.score(i));
+              scoreDoc.score);
+          result.setNumber(i + 1);
+          result.setSnippet(highlighter.getSnippet(doc.get(SNIPPET_SOURCE)));
           searchResults.add(result);
         }
       } catch (ParseException pe) {
@@ -396,12 +572,8 @@ public class SearchIndex {
         e.printStackTrace();
         throw new SearchException(e.getMessage());
       } finally {
-        if (searcher != null) {
-          try {
-            searcher.close();
-          } catch (IOException e) {
-            // can't do much now! ;-)
-          }
+        if (ref != null) {
+          release(ref);
         }
       }
     }
@@ -409,5 +581,98 @@ public class SearchIndex {
     return searchResults;
   }
 
-}
+  /**
+   * Gets the current searcher, opening one if necessary. The searcher must
+   * be released once the caller has finished with it.
+   *
+   * @return  a SearcherReference instance
+   * @throws IOException    if the index can't be opened
+   */
+  private SearcherReference acquireSearcher() throws IOException {
+    synchronized (searcherLock) {
+      if (searcher == null) {
+        searcher = new SearcherReference(new IndexSearcher(blog.getSearchIndexDirectory()));
+      }
+      searcher.refCount++;
+
+      return searcher;
+    }
+  }
+
+  private void release(SearcherReference ref) {
+    synchronized (searcherLock) {
+      ref.refCount--;
+      if (ref.refCount > 0) {
+        return;
+      }
+    }
+
+    try {
+      ref.searcher.close();
+    } catch (IOException ioe) {
+      log.warn("Error while closing searcher", ioe);
+    }
+  }
+
+  /**
+   * Opens a new searcher on the index, replacing the current one once any
+   * searches using it have finished.
+   */
+  private void refresh() {
+    SearcherReference ref;
+    try {
+      ref = new SearcherReference(new IndexSearcher(blog.getSearchIndexDirectory()));
+    } catch (IOException ioe) {
+      // the next search will try again
+      log.warn("Error while opening searcher", ioe);
+      ref = null;
+    }
+
+    SearcherReference old;
+    synchronized (searcherLock) {
+      old = searcher;
+      searcher = ref;
+    }
 
+    // anything cached was found with the old searcher, including the
+    // search results that tag and category pages are built from
+    SearchResultCache.getInstance().removeBlog(blog);
+    ValidatorCache.getInstance().removeBlog(blog);
+
+    if (old != null) {
+      release(old);
+    }
+  }
+
+  /**
+   * Closes the current searcher, which will be opened again by the next
+   * search.
+   */
+  public void close() {
+    SearcherReference old;
+    synchronized (searcherLock) {
+      old = searcher;
+      searcher = null;
+    }
+
+    if (old != null) {
+      release(old);
+    }
+  }
+
+  /**
+   * An IndexSearcher along with the number of callers using it, including
+   * the index itself while it is the current searcher.
+   */
+  private static final class SearcherReference {
+
+    private final IndexSearcher searcher;
+    private int refCount = 1;
+
+    private SearcherReference(IndexSearcher searcher) {
+      this.searcher = searcher;
+    }
+
+  }
+
+}
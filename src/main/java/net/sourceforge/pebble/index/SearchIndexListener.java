@@ -63,7 +63,7 @@ public class SearchIndexListener implements BlogEntryListener {
   public void blogEntryRemoved(BlogEntryEvent event) {
     BlogEntry blogEntry = event.getBlogEntry();
 
-    blogEntry.getBlog().getSearchIndex().unindex(blogEntry);
+    updateSearchIndex(blogEntry);
   }
 
   /**
@@ -97,14 +97,15 @@ public class SearchIndexListener implements BlogEntryListener {
   public void blogEntryUnpublished(BlogEntryEvent event) {
     BlogEntry blogEntry = event.getBlogEntry();
 
-    blogEntry.getBlog().getSearchIndex().unindex(blogEntry);
+    updateSearchIndex(blogEntry);
   }
 
   /**
-   * Updates the search index to reflect the new/changed/removed blog entry.
+   * Queues an update to the search index to reflect the new/changed/removed
+   * blog entry.
    */
   private void updateSearchIndex(BlogEntry blogEntry) {
-    blogEntry.getBlog().getSearchIndex().index(blogEntry);
+    blogEntry.getBlog().getSearchIndexQueue().addBlogEntry(blogEntry.getId());
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.service.StaticPageService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.lucene.document.Document;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates the search index in the background, so that saving a blog entry
+ * or static page doesn't wait for Lucene. Only the ID of each changed blog
+ * entry or static page is queued, so any number of changes to the same one
+ * are coalesced into a single update, and the current version is loaded
+ * when the batch containing it is written.
+ * <p/>
+ * The queued IDs are also appended to a file, which is read back when the
+ * blog is next loaded, so that updates aren't lost if the server stops
+ * before they have been applied.
+ *
+ * @author    Simon Brown
+ */
+public class SearchIndexQueue {
+
+  private static final Log log = LogFactory.getLog(SearchIndexQueue.class);
+
+  static final String QUEUE_FILE = "search.queue";
+
+  /** how long to wait for further changes before writing a batch, in milliseconds */
+  static final long BATCH_DELAY = 500;
+
+  /** how long to wait before retrying updates that couldn't be written, in milliseconds */
+  static final long RETRY_DELAY = 60 * 1000;
+
+  /** the maximum number of blog entries and static pages in a batch */
+  static final int MAX_BATCH_SIZE = 100;
+
+  private static final char BLOG_ENTRY = 'b';
+  private static final char STATIC_PAGE = 'p';
+
+  /** the single thread used to write batches, created on first use */
+  private static ScheduledExecutorService indexingPool;
+
+  private final Blog blog;
+  private final File file;
+
+  /** the queued keys (type followed by ID), with the time at which each was queued */
+  private final Map<String,Long> queue = new LinkedHashMap<String,Long>();
+
+  /** held while a batch is written */
+  private final Object batchLock = new Object();
+
+  private boolean scheduled;
+
+  private long numberOfBatches;
+  private long numberOfUpdates;
+
+  public SearchIndexQueue(Blog blog) {
+    this.blog = blog;
+    this.file = new File(blog.getIndexesDirectory(), QUEUE_FILE);
+
+    read();
+  }
+
+  /**
+   * Queues a blog entry to be indexed, or unindexed if it has been removed
+   * or unpublished.
+   *
+   * @param blogEntryId   the ID of a blog entry
+   */
+  public void addBlogEntry(String blogEntryId) {
+    add(BLOG_ENTRY + blogEntryId);
+  }
+
+  /**
+   * Queues a static page to be indexed, or unindexed if it has been removed.
+   *
+   * @param staticPageId    the ID of a static page
+   */
+  public void addStaticPage(String staticPageId) {
+    add(STATIC_PAGE + staticPageId);
+  }
+
+  private synchronized void add(String key) {
+    if (!queue.containsKey(key)) {
+      queue.put(key, System.currentTimeMillis());
+      append(key);
+    }
+
+    schedule();
+  }
+
+  /**
+   * Starts writing any updates that were queued before the blog was last
+   * stopped.
+   */
+  public synchronized void start() {
+    if (!queue.isEmpty()) {
+      log.info(queue.size() + " search index update(s) pending for blog with ID " + blog.getId());
+      schedule();
+    }
+  }
+
+  /**
+   * Writes all of the queued updates, without waiting for the background
+   * thread.
+   */
+  public void flush() {
+    while (process()) {
+      // keep going until the queue is empty
+    }
+  }
+
+  /**
+   * Gets the number of blog entries and static pages waiting to be indexed.
+   *
+   * @return  the queue depth
+   */
+  public synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Gets how long the oldest queued update has been waiting.
+   *
+   * @return  a number of milliseconds, or zero if the queue is empty
+   */
+  public synchronized long getLag() {
+    if (queue.isEmpty()) {
+      return 0;
+    }
+
+    // updates that are put back on the queue go to the end, keeping their original time
+    long oldest = Long.MAX_VALUE;
+    for (long time : queue.values()) {
+      oldest = Math.min(oldest, time);
+    }
+    return System.currentTimeMillis() - oldest;
+  }
+
+  /**
+   * Gets the number of batches written since the blog was loaded.
+   *
+   * @return  the number of batches
+   */
+  public synchronized long getNumberOfBatches() {
+    return numberOfBatches;
+  }
+
+  /**
+   * Gets the number of blog entries and static pages indexed since the blog
+   * was loaded.
+   *
+   * @return  the number of updates
+   */
+  public synchronized long getNumberOfUpdates() {
+    return numberOfUpdates;
+  }
+
+  private void schedule() {
+    schedule(BATCH_DELAY);
+  }
+
+  private void schedule(long delay) {
+    if (scheduled) {
+      return;
+    }
+
+    scheduled = true;
+    getIndexingPool().schedule(new Runnable() {
+      public void run() {
+        synchronized (SearchIndexQueue.this) {
+          scheduled = false;
+        }
+
+        boolean written = process();
+        synchronized (SearchIndexQueue.this) {
+          if (!queue.isEmpty()) {
+            // anything that couldn't be written is tried again later, rather than straight away
+            schedule(written ? BATCH_DELAY : RETRY_DELAY);
+          }
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes the next batch of updates. Anything that can't be loaded, or the
+   * whole batch if the index can't be updated, is put back on the queue.
+   *
+   * @return  true if a batch was written, false if the queue was empty or
+   *          nothing in the batch could be written
+   */
+  private boolean process() {
+    synchronized (batchLock) {
+      Map<String,Long> batch = new LinkedHashMap<String,Long>();
+      synchronized (this) {
+        Iterator<Map.Entry<String,Long>> it = queue.entrySet().iterator();
+        while (it.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+          Map.Entry<String,Long> entry = it.next();
+          batch.put(entry.getKey(), entry.getValue());
+          it.remove();
+        }
+      }
+
+      if (batch.isEmpty()) {
+        return false;
+      }
+
+      // the current version of each blog entry and static page is indexed,
+      // and anything that no longer exists (or isn't published) is just removed
+      SearchIndex searchIndex = blog.getSearchIndex();
+      List<String> ids = new ArrayList<String>();
+      List<Document> documents = new ArrayList<Document>();
+      Map<String,Long> failed = new LinkedHashMap<String,Long>();
+      for (String key : batch.keySet()) {
+        String id = key.substring(1);
+
+        try {
+          Document document = null;
+          if (key.charAt(0) == BLOG_ENTRY) {
+            BlogEntry blogEntry = new BlogService().getReadOnlyBlogEntry(blog, id);
+            if (blogEntry != null) {
+              document = searchIndex.createDocument(blogEntry);
+            }
+          } else {
+            StaticPage staticPage = new StaticPageService().getStaticPageById(blog, id);
+            if (staticPage != null) {
+              document = searchIndex.createDocument(staticPage);
+            }
+          }
+
+          ids.add(id);
+          if (document != null) {
+            documents.add(document);
+          }
+        } catch (Exception e) {
+          // not removed from the index, since it may well still exist
+          log.error("Error while loading " + id + " for indexing", e);
+          failed.put(key, batch.get(key));
+        }
+      }
+
+      boolean applied;
+      try {
+        applied = searchIndex.update(ids, documents);
+      } catch (Exception e) {
+        log.error("Error while updating search index for blog with ID " + blog.getId(), e);
+        applied = false;
+      }
+
+      if (!applied) {
+        // deleting and adding again is harmless, so the whole batch is retried
+        requeue(batch);
+        return false;
+      }
+
+      if (!ids.isEmpty()) {
+        synchronized (this) {
+          numberOfBatches++;
+          numberOfUpdates += ids.size();
+        }
+      }
+      requeue(failed);
+
+      return !ids.isEmpty();
+    }
+  }
+
+  /**
+   * Puts keys taken for a batch back on the queue, keeping the time at which
+   * each was first queued. Any that have been queued again in the meantime
+   * are left where they are.
+   */
+  private synchronized void requeue(Map<String,Long> keys) {
+    for (Map.Entry<String,Long> entry : keys.entrySet()) {
+      if (!queue.containsKey(entry.getKey())) {
+        queue.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    write();
+  }
+
+  /**
+   * Reads any updates left queued when the blog was last stopped.
+   */
+  private void read() {
+    if (!file.exists()) {
+      return;
+    }
+
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader(file));
+      long now = System.currentTimeMillis();
+      String key = reader.readLine();
+      while (key != null) {
+        if (key.length() > 1) {
+          queue.put(key, now);
+        }
+        key = reader.readLine();
+      }
+    } catch (IOException ioe) {
+      log.error("Error while reading " + file.getAbsolutePath(), ioe);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ioe) {
+          // can't do much now
+        }
+      }
+    }
+  }
+
+  private void append(String key) {
+    try {
+      Writer writer = new FileWriter(file, true);
+      try {
+        writer.write(key + "\n");
+      } finally {
+        writer.close();
+      }
+    } catch (IOException ioe) {
+      log.error("Error while writing " + file.getAbsolutePath(), ioe);
+    }
+  }
+
+  /**
+   * Rewrites the file to hold only the updates still queued.
+   */
+  private void write() {
+    if (queue.isEmpty()) {
+      file.delete();
+      return;
+    }
+
+    try {
+      Writer writer = new FileWriter(file);
+      try {
+        for (String key : queue.keySet()) {
+          writer.write(key + "\n");
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException ioe) {
+      log.error("Error while writing " + file.getAbsolutePath(), ioe);
+    }
+  }
+
+  /**
+   * Gets the pool used to write batches. As with the pool used to compact
+   * indexes, there is a single daemon thread shared by all blogs.
+   *
+   * @return  a ScheduledExecutorService instance
+   */
+  private static synchronized ScheduledExecutorService getIndexingPool() {
+    if (indexingPool == null) {
+      indexingPool = new ScheduledThreadPoolExecutor(1,
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "pebble-search-indexer");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+
+    return indexingPool;
+  }
+
+}
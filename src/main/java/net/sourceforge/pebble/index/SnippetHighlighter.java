@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.util.StringUtils;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds keyword-in-context snippets for search hits. The text of each
+ * blog entry and static page is stored in the index as plain text when it
+ * is indexed, so that snippets can be built without loading anything from
+ * disk. At search time the text is run back through the analyzer, which
+ * gives the offsets of the words matching the query, and the part of the
+ * text with the most matches is returned with them highlighted.
+ *
+ * @author    Simon Brown
+ */
+class SnippetHighlighter {
+
+  /** the maximum length of the text stored for building snippets */
+  static final int MAX_SOURCE_LENGTH = 10000;
+
+  /** the (approximate) length of a snippet */
+  static final int SNIPPET_LENGTH = 200;
+
+  /** the amount of text shown before the first match in a snippet */
+  private static final int LEADING_CONTEXT = 40;
+
+  /** the fields whose terms are highlighted */
+  private static final Set<String> FIELDS = new HashSet<String>();
+
+  static {
+    FIELDS.add("blogEntry");
+    FIELDS.add("title");
+    FIELDS.add("subtitle");
+    FIELDS.add("body");
+  }
+
+  private final Analyzer analyzer;
+  private final Set<String> terms;
+
+  /**
+   * Creates a new instance to highlight the terms in the specified query.
+   *
+   * @param query       the (rewritten) Query
+   * @param analyzer    the Analyzer used to index the text
+   */
+  SnippetHighlighter(Query query, Analyzer analyzer) {
+    this.analyzer = analyzer;
+    this.terms = new HashSet<String>();
+    addTerms(query);
+  }
+
+  private void addTerms(Query query) {
+    if (query instanceof BooleanQuery) {
+      for (BooleanClause clause : ((BooleanQuery)query).getClauses()) {
+        if (!clause.prohibited) {
+          addTerms(clause.query);
+        }
+      }
+    } else if (query instanceof TermQuery) {
+      addTerm(((TermQuery)query).getTerm());
+    } else if (query instanceof PhraseQuery) {
+      for (Term term : ((PhraseQuery)query).getTerms()) {
+        addTerm(term);
+      }
+    }
+  }
+
+  private void addTerm(Term term) {
+    if (FIELDS.contains(term.field())) {
+      terms.add(term.text());
+    }
+  }
+
+  /**
+   * Converts HTML content into the plain text stored for building
+   * snippets, with the tags and entities removed and whitespace collapsed.
+   *
+   * @param html    the content as HTML
+   * @return  the text, truncated if necessary
+   */
+  static String getSource(String html) {
+    if (html == null) {
+      return "";
+    }
+
+    String text = StringUtils.filterHTML(html);
+    if (text.indexOf('&') > -1) {
+      // the named entities don't include the ones that XML has
+      text = StringUtils.unescapeHTMLEntities(text);
+      text = text.replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+    }
+    text = text.replaceAll("\\s+", " ").trim();
+    if (text.length() > MAX_SOURCE_LENGTH) {
+      text = text.substring(0, MAX_SOURCE_LENGTH);
+    }
+
+    return text;
+  }
+
+  /**
+   * Gets a snippet of the specified text, with the words matching the
+   * query wrapped in &lt;b&gt; tags and everything else escaped.
+   *
+   * @param text    the plain text, as returned by getSource
+   * @return  a snippet as HTML, or null if nothing in the text matches
+   */
+  String getSnippet(String text) {
+    if (text == null || text.length() == 0 || terms.isEmpty()) {
+      return null;
+    }
+
+    // find the offsets of the matching words
+    List<int[]> matches = new ArrayList<int[]>();
+    try {
+      TokenStream tokens = analyzer.tokenStream("blogEntry", new StringReader(text));
+      try {
+        Token token;
+        while ((token = tokens.next()) != null) {
+          if (terms.contains(token.termText())) {
+            matches.add(new int[] { token.startOffset(), token.endOffset() });
+          }
+        }
+      } finally {
+        tokens.close();
+      }
+    } catch (IOException ioe) {
+      return null;
+    }
+
+    if (matches.isEmpty()) {
+      return null;
+    }
+
+    // the snippet starts shortly before the match followed by the most
+    // other matches
+    int best = 0;
+    int bestCount = 0;
+    for (int i = 0, j = 0; i < matches.size(); i++) {
+      while (j < matches.size() && matches.get(j)[1] <= matches.get(i)[0] + SNIPPET_LENGTH - LEADING_CONTEXT) {
+        j++;
+      }
+      if (j - i > bestCount) {
+        best = i;
+        bestCount = j - i;
+      }
+    }
+
+    int start = Math.max(0, matches.get(best)[0] - LEADING_CONTEXT);
+    if (start > 0) {
+      int space = text.indexOf(' ', start);
+      start = (space > -1 && space < matches.get(best)[0]) ? space + 1 : matches.get(best)[0];
+    }
+    int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+    if (end < text.length()) {
+      int space = text.lastIndexOf(' ', end);
+      end = (space > start) ? space : end;
+    }
+
+    StringBuffer buf = new StringBuffer();
+    if (start > 0) {
+      buf.append("...");
+    }
+    int position = start;
+    for (int i = best; i < matches.size(); i++) {
+      int[] match = matches.get(i);
+      if (match[1] > end) {
+        break;
+      }
+      buf.append(StringUtils.transformHTML(text.substring(position, match[0])));
+      buf.append("<b>");
+      buf.append(StringUtils.transformHTML(text.substring(match[0], match[1])));
+      buf.append("</b>");
+      position = match[1];
+    }
+    buf.append(StringUtils.transformHTML(text.substring(position, end)));
+    if (end < text.length()) {
+      buf.append("...");
+    }
+
+    return buf.toString();
+  }
+
+}
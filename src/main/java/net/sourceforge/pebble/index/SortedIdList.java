@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, sorted set of numeric IDs (e.g. blog entry IDs) held as
+ * primitive longs. Adding or removing an ID finds its position with a binary
+ * search and returns a new instance, so the lists handed out by
+ * {@link #asList()} are zero-copy snapshots, most recent (largest) ID first,
+ * that can safely be read while the index that owns them is being updated.
+ *
+ * @author    Simon Brown
+ */
+final class SortedIdList {
+
+  static final SortedIdList EMPTY = new SortedIdList(new long[0]);
+
+  /** the IDs, in ascending order and without duplicates */
+  private final long[] ids;
+
+  private SortedIdList(long[] ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * Creates a new instance from the specified IDs, which may be in any
+   * order and may contain duplicates.
+   *
+   * @param ids       an array of IDs
+   * @param length    the number of IDs in the array to use
+   * @return  a SortedIdList instance
+   */
+  static SortedIdList valueOf(long[] ids, int length) {
+    long[] sorted = new long[length];
+    System.arraycopy(ids, 0, sorted, 0, length);
+    Arrays.sort(sorted);
+
+    int size = 0;
+    for (int i = 0; i < length; i++) {
+      if (size == 0 || sorted[size-1] != sorted[i]) {
+        sorted[size++] = sorted[i];
+      }
+    }
+
+    if (size < length) {
+      long[] unique = new long[size];
+      System.arraycopy(sorted, 0, unique, 0, size);
+      sorted = unique;
+    }
+
+    return new SortedIdList(sorted);
+  }
+
+  /**
+   * Adds an ID.
+   *
+   * @param id    the ID to add
+   * @return  a SortedIdList containing the ID
+   */
+  SortedIdList add(long id) {
+    int index = Arrays.binarySearch(ids, id);
+    if (index >= 0) {
+      return this;
+    }
+
+    index = -(index + 1);
+    long[] result = new long[ids.length + 1];
+    System.arraycopy(ids, 0, result, 0, index);
+    result[index] = id;
+    System.arraycopy(ids, index, result, index + 1, ids.length - index);
+
+    return new SortedIdList(result);
+  }
+
+  /**
+   * Adds several IDs.
+   *
+   * @param more    the IDs to add, in any order
+   * @param length  the number of IDs in the array to use
+   * @return  a SortedIdList containing the IDs
+   */
+  SortedIdList addAll(long[] more, int length) {
+    long[] all = new long[ids.length + length];
+    System.arraycopy(ids, 0, all, 0, ids.length);
+    System.arraycopy(more, 0, all, ids.length, length);
+
+    return valueOf(all, all.length);
+  }
+
+  /**
+   * Removes an ID.
+   *
+   * @param id    the ID to remove
+   * @return  a SortedIdList without the ID
+   */
+  SortedIdList remove(long id) {
+    int index = Arrays.binarySearch(ids, id);
+    if (index < 0) {
+      return this;
+    }
+
+    long[] result = new long[ids.length - 1];
+    System.arraycopy(ids, 0, result, 0, index);
+    System.arraycopy(ids, index + 1, result, index, ids.length - index - 1);
+
+    return new SortedIdList(result);
+  }
+
+  boolean contains(long id) {
+    return Arrays.binarySearch(ids, id) >= 0;
+  }
+
+  int size() {
+    return ids.length;
+  }
+
+  /**
+   * Gets all of the IDs, most recent first.
+   *
+   * @return  an unmodifiable List of IDs, as Strings
+   */
+  List<String> asList() {
+    return new IdList(0, ids.length);
+  }
+
+  /**
+   * Gets a page of the IDs, most recent first.
+   *
+   * @param offset    the number of IDs to skip
+   * @param limit     the maximum number of IDs to return
+   * @return  an unmodifiable List of IDs, as Strings
+   */
+  List<String> asList(int offset, int limit) {
+    int from = Math.min(Math.max(offset, 0), ids.length);
+    int to = (int)Math.min((long)from + Math.max(limit, 0), ids.length);
+    return new IdList(from, to);
+  }
+
+  /**
+   * A read-only window onto the IDs, in descending order.
+   */
+  private class IdList extends AbstractList<String> implements RandomAccess {
+
+    private final int from;
+    private final int to;
+
+    IdList(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    public String get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      return Long.toString(ids[ids.length - 1 - from - index]);
+    }
+
+    public int size() {
+      return to - from;
+    }
+
+    public int indexOf(Object o) {
+      if (!(o instanceof String)) {
+        return -1;
+      }
+
+      try {
+        String s = (String)o;
+        long id = Long.parseLong(s);
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0 || !Long.toString(id).equals(s)) {
+          return -1;
+        }
+
+        // convert to a position in this (descending) window
+        index = ids.length - 1 - index - from;
+        return (index >= 0 && index < size()) ? index : -1;
+      } catch (NumberFormatException nfe) {
+        return -1;
+      }
+    }
+
+    public int lastIndexOf(Object o) {
+      return indexOf(o);
+    }
+
+    public boolean contains(Object o) {
+      return indexOf(o) > -1;
+    }
+
+    public List<String> subList(int fromIndex, int toIndex) {
+      if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+        throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex);
+      }
+      return new IdList(from + fromIndex, from + toIndex);
+    }
+
+  }
+
+}
@@ -60,6 +60,8 @@ public class StaticPageIndex {
   private Map<String,String> index = new HashMap<String,String>();
   private int lockAttempts = 0;
 
+  private IndexFile indexFile;
+
   public StaticPageIndex(Blog blog) {
     this.blog = blog;
 
@@ -69,6 +71,7 @@ public class StaticPageIndex {
       indexDirectory.mkdirs();
     }
 
+    indexFile = new IndexFile(getIndexFile(), this, new Handler());
     readIndex();
   }
 
@@ -86,7 +89,7 @@ public class StaticPageIndex {
       }
 
       // and finally, write the index
-      writeIndex();
+      indexFile.checkpoint();
       unlock();
     }
   }
@@ -100,19 +103,8 @@ public class StaticPageIndex {
     if (lock()) {
       readIndex();
 
-      // remove the old entry for this static page
-      Iterator it = index.keySet().iterator();
-      while (it.hasNext()) {
-        String key = (String)it.next();
-        String value = index.get(key);
-        if (value.equals(staticPage.getId())) {
-          it.remove();
-        }
-      }
-
-      // and now add the new entry for this page
-      index.put(staticPage.getName(), staticPage.getId());
-      writeIndex();
+      put(staticPage.getName(), staticPage.getId());
+      indexFile.add(staticPage.getName() + "=" + staticPage.getId());
       unlock();
     } else {
       if (lockAttempts <= MAXIMUM_LOCK_ATTEMPTS) {
@@ -137,7 +129,7 @@ public class StaticPageIndex {
     if (lock()) {
       readIndex();
       index.remove(staticPage.getName());
-      writeIndex();
+      indexFile.remove(staticPage.getName());
       unlock();
     } else {
       if (lockAttempts <= MAXIMUM_LOCK_ATTEMPTS) {
@@ -153,48 +145,57 @@ public class StaticPageIndex {
     }
   }
 
+  /**
+   * Adds a page to the index, removing the old entry for it.
+   */
+  private void put(String name, String id) {
+    Iterator it = index.keySet().iterator();
+    while (it.hasNext()) {
+      String key = (String)it.next();
+      String value = index.get(key);
+      if (value.equals(id)) {
+        it.remove();
+      }
+    }
+
+    index.put(name, id);
+  }
+
   /**
    * Helper method to load the index.
    */
   private void readIndex() {
     log.info("Reading index from disk");
-    File indexFile = getIndexFile();
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String indexEntry = reader.readLine();
-        while (indexEntry != null) {
-          String[] parts = indexEntry.split("=");
-          index.put(parts[0], parts[1]);
-
-          indexEntry = reader.readLine();
-        }
-
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
-      }
-    }
+    indexFile.read();
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Reads and writes the index, one line per page in the form name=id, with
+   * removals logged as the name of the page.
    */
-  private void writeIndex() {
-    try {
-      File indexFile = getIndexFile();
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      String[] parts = indexEntry.split("=");
+      index.put(parts[0], parts[1]);
+    }
 
+    public void add(String record) {
+      String[] parts = record.split("=");
+      put(parts[0], parts[1]);
+    }
+
+    public void remove(String name) {
+      index.remove(name);
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
       for (String name : index.keySet()) {
         writer.write(name + "=" + index.get(name));
         writer.newLine();
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   /**
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.*;
+
+/**
+ * Suggests completions for partially typed titles, tags, categories and
+ * authors, taken from the published blog entries in a blog. Every distinct
+ * term is weighted by the number of blog entries using it, and lookups
+ * binary search a sorted array of the terms, so they don't touch the
+ * search index.
+ * <p/>
+ * The index is built from the blog entry summaries when it's first used,
+ * and then kept up to date by blog entry events. The sorted array is
+ * rebuilt lazily, on the first lookup after a change.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestionIndex {
+
+  public static final String TITLE = "title";
+  public static final String TAG = "tag";
+  public static final String CATEGORY = "category";
+  public static final String AUTHOR = "author";
+
+  /** separates the type of a term from its value */
+  private static final char SEPARATOR = '\t';
+
+  private final Blog blog;
+
+  /** the terms used by each blog entry */
+  private final Map<String,String[]> terms = new HashMap<String,String[]>();
+
+  /** the number of blog entries using each term */
+  private final Map<String,Integer> weights = new HashMap<String,Integer>();
+
+  private boolean loaded;
+
+  /** the sorted terms, or null if they need to be rebuilt */
+  private volatile Suggestions suggestions;
+
+  public SuggestionIndex(Blog blog) {
+    this.blog = blog;
+  }
+
+  /**
+   * Clears the index.
+   */
+  public synchronized void clear() {
+    terms.clear();
+    weights.clear();
+    loaded = true;
+    suggestions = null;
+  }
+
+  /**
+   * Indexes one or more blog entries.
+   *
+   * @param blogEntries   a List of BlogEntry instances
+   */
+  public synchronized void index(Collection<BlogEntry> blogEntries) {
+    load();
+    for (BlogEntry blogEntry : blogEntries) {
+      put(blogEntry.getId(), blogEntry.isPublished() ? getTerms(blogEntry) : null);
+    }
+  }
+
+  /**
+   * Indexes a single blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void index(BlogEntry blogEntry) {
+    load();
+    put(blogEntry.getId(), blogEntry.isPublished() ? getTerms(blogEntry) : null);
+  }
+
+  /**
+   * Unindexes a single blog entry.
+   *
+   * @param blogEntry   a BlogEntry instance
+   */
+  public synchronized void unindex(BlogEntry blogEntry) {
+    load();
+    put(blogEntry.getId(), null);
+  }
+
+  /**
+   * Gets the terms starting with the specified prefix, ignoring case, with
+   * the most used first.
+   *
+   * @param prefix    the partially typed term
+   * @param type      TITLE, TAG, CATEGORY or AUTHOR, or null for any type
+   * @param max       the maximum number of suggestions
+   * @return  a List of Suggestion instances
+   */
+  public List<Suggestion> getSuggestions(String prefix, String type, int max) {
+    if (prefix == null || prefix.trim().length() == 0 || max <= 0) {
+      return Collections.emptyList();
+    }
+
+    Suggestions s = suggestions;
+    if (s == null) {
+      s = build();
+    }
+
+    return s.find(normalize(prefix), type, max);
+  }
+
+  private static String normalize(String s) {
+    return s.trim().toLowerCase();
+  }
+
+  /**
+   * Loads the index from the blog entry summaries, if it hasn't been
+   * loaded or rebuilt already.
+   */
+  private void load() {
+    if (loaded) {
+      return;
+    }
+
+    loaded = true;
+    for (BlogEntrySummary summary : blog.getBlogEntrySummaries()) {
+      if (summary.isPublished()) {
+        List<String> categories = new ArrayList<String>();
+        for (String id : summary.getCategories()) {
+          Category category = blog.getCategory(id);
+          if (category != null) {
+            categories.add(category.getName());
+          }
+        }
+
+        List<String> tags = new ArrayList<String>();
+        for (Tag tag : Tag.parse(blog, summary.getTags())) {
+          tags.add(tag.getName());
+        }
+
+        put(summary.getId(), getTerms(summary.getTitle(), tags, categories, summary.getAuthor()));
+      }
+    }
+  }
+
+  private String[] getTerms(BlogEntry blogEntry) {
+    List<String> categories = new ArrayList<String>();
+    for (Category category : blogEntry.getCategories()) {
+      categories.add(category.getName());
+    }
+
+    List<String> tags = new ArrayList<String>();
+    for (Tag tag : blogEntry.getTagsAsList()) {
+      tags.add(tag.getName());
+    }
+
+    return getTerms(blogEntry.getTitle(), tags, categories, blogEntry.getAuthor());
+  }
+
+  private String[] getTerms(String title, List<String> tags, List<String> categories, String author) {
+    Set<String> set = new LinkedHashSet<String>();
+    addTerm(set, TITLE, title);
+    for (String tag : tags) {
+      addTerm(set, TAG, tag);
+    }
+    for (String category : categories) {
+      addTerm(set, CATEGORY, category);
+    }
+    addTerm(set, AUTHOR, author);
+
+    return set.toArray(new String[set.size()]);
+  }
+
+  private void addTerm(Set<String> set, String type, String value) {
+    if (value != null && value.trim().length() > 0) {
+      set.add(type + SEPARATOR + value.trim());
+    }
+  }
+
+  /**
+   * Replaces the terms used by a blog entry.
+   */
+  private void put(String blogEntryId, String[] newTerms) {
+    String[] oldTerms = (newTerms != null) ? terms.put(blogEntryId, newTerms) : terms.remove(blogEntryId);
+    if (oldTerms != null) {
+      for (String term : oldTerms) {
+        int weight = weights.get(term) - 1;
+        if (weight == 0) {
+          weights.remove(term);
+        } else {
+          weights.put(term, weight);
+        }
+      }
+    }
+
+    if (newTerms != null) {
+      for (String term : newTerms) {
+        Integer weight = weights.get(term);
+        weights.put(term, weight == null ? 1 : weight + 1);
+      }
+    }
+
+    suggestions = null;
+  }
+
+  private synchronized Suggestions build() {
+    load();
+    if (suggestions == null) {
+      suggestions = new Suggestions(weights);
+    }
+
+    return suggestions;
+  }
+
+  /**
+   * A term that could complete what has been typed.
+   */
+  public static final class Suggestion {
+
+    private final String value;
+    private final String type;
+    private final int weight;
+
+    Suggestion(String value, String type, int weight) {
+      this.value = value;
+      this.type = type;
+      this.weight = weight;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    /**
+     * Gets the number of published blog entries using this term.
+     */
+    public int getWeight() {
+      return weight;
+    }
+
+    public String toString() {
+      return type + ":" + value;
+    }
+
+  }
+
+  /**
+   * An immutable snapshot of the terms, sorted by their normalized value.
+   */
+  private static final class Suggestions {
+
+    private final String[] keys;
+    private final Suggestion[] suggestions;
+
+    private Suggestions(Map<String,Integer> weights) {
+      List<String> terms = new ArrayList<String>(weights.keySet());
+      final Map<String,String> normalized = new HashMap<String,String>();
+      for (String term : terms) {
+        normalized.put(term, normalize(term.substring(term.indexOf(SEPARATOR) + 1)));
+      }
+      Collections.sort(terms, new Comparator<String>() {
+        public int compare(String t1, String t2) {
+          int comparison = normalized.get(t1).compareTo(normalized.get(t2));
+          return comparison != 0 ? comparison : t1.compareTo(t2);
+        }
+      });
+
+      keys = new String[terms.size()];
+      suggestions = new Suggestion[terms.size()];
+      for (int i = 0; i < keys.length; i++) {
+        String term = terms.get(i);
+        int separator = term.indexOf(SEPARATOR);
+        keys[i] = normalized.get(term);
+        suggestions[i] = new Suggestion(term.substring(separator + 1), term.substring(0, separator), weights.get(term));
+      }
+    }
+
+    private List<Suggestion> find(String prefix, String type, int max) {
+      // find the first key that isn't less than the prefix
+      int low = 0;
+      int high = keys.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (keys[mid].compareTo(prefix) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+
+      // and keep the heaviest of those that start with it, in key order
+      // where the weights are the same
+      List<Suggestion> found = new ArrayList<Suggestion>(max + 1);
+      for (int i = low; i < keys.length && keys[i].startsWith(prefix); i++) {
+        Suggestion suggestion = suggestions[i];
+        if (type != null && !type.equals(suggestion.getType())) {
+          continue;
+        }
+
+        int position = found.size();
+        while (position > 0 && found.get(position-1).getWeight() < suggestion.getWeight()) {
+          position--;
+        }
+        if (position < max) {
+          found.add(position, suggestion);
+          if (found.size() > max) {
+            found.remove(max);
+          }
+        }
+      }
+
+      return found;
+    }
+
+  }
+
+}
@@ -34,8 +34,6 @@ package net.sourceforge.pebble.index;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.Tag;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
 
 import java.io.*;
 import java.util.*;
@@ -47,10 +45,10 @@ import java.util.*;
  */
 public class TagIndex {
 
-  private static final Log log = LogFactory.getLog(TagIndex.class);
-
   private Blog blog;
 
+  private IndexFile indexFile;
+
   /** the map containing the tags */
   private Map<String,IndexedTag> tags = new HashMap<String,IndexedTag>();
 
@@ -60,6 +58,7 @@ public class TagIndex {
   public TagIndex(Blog blog) {
     this.blog = blog;
 
+    indexFile = new IndexFile(new File(blog.getIndexesDirectory(), "tags.index"), this, new Handler());
     readIndex();
     recalculateTagRankings();
   }
@@ -67,9 +66,9 @@ public class TagIndex {
   /**
    * Clears the index.
    */
-  public void clear() {
+  public synchronized void clear() {
     tags = new HashMap<String,IndexedTag>();
-    writeIndex();
+    indexFile.checkpoint();
   }
 
   /**
@@ -87,7 +86,7 @@ public class TagIndex {
       }
     }
 
-    writeIndex();
+    indexFile.checkpoint();
     recalculateTagRankings();
   }
 
@@ -101,9 +100,9 @@ public class TagIndex {
       for (Tag tag : blogEntry.getAllTags()) {
         IndexedTag t = getTag(tag.getName());
         t.addBlogEntry(blogEntry.getId());
+        indexFile.add(t.getName() + "=" + blogEntry.getId());
       }
 
-      writeIndex();
       recalculateTagRankings();
     }
   }
@@ -114,53 +113,52 @@ public class TagIndex {
    * @param blogEntry   a BlogEntry instance
    */
   public synchronized void unindex(BlogEntry blogEntry) {
-    for (Tag tag : tags.values()) {
-      IndexedTag t = getTag(tag.getName());
-      t.removeBlogEntry(blogEntry.getId());
+    for (IndexedTag tag : tags.values()) {
+      if (tag.hasBlogEntry(blogEntry.getId())) {
+        tag.removeBlogEntry(blogEntry.getId());
+        indexFile.remove(tag.getName() + "=" + blogEntry.getId());
+      }
     }
 
-    writeIndex();
     recalculateTagRankings();
   }
 
   /**
    * Helper method to load the index.
    */
-  private void readIndex() {
-    File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
-    if (indexFile.exists()) {
-      try {
-        BufferedReader reader = new BufferedReader(new FileReader(indexFile));
-        String indexEntry = reader.readLine();
-        while (indexEntry != null) {
-          String[] tuple = indexEntry.split("=");
-          IndexedTag tag = getTag(tuple[0]);
-
-          if (tuple.length > 1 && tuple[1] != null) {
-            String[] blogEntries = tuple[1].split(",");
-            for (String blogEntry : blogEntries) {
-              tag.addBlogEntry(blogEntry);
-            }
-          }
-
-          indexEntry = reader.readLine();
-        }
-
-        reader.close();
-      } catch (Exception e) {
-        log.error("Error while reading index", e);
-      }
-    }
+  private synchronized void readIndex() {
+    indexFile.read();
   }
 
   /**
-   * Helper method to write out the index to disk.
+   * Reads and writes the index, one line per tag in the form
+   * tag=blogEntryId,blogEntryId,... with each change logged as tag=blogEntryId.
    */
-  private void writeIndex() {
-    try {
-      File indexFile = new File(blog.getIndexesDirectory(), "tags.index");
-      BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile));
+  private class Handler implements IndexFile.Handler {
+
+    public void read(String indexEntry) {
+      String[] tuple = indexEntry.split("=");
+      IndexedTag tag = getTag(tuple[0]);
+
+      if (tuple.length > 1 && tuple[1] != null) {
+        String[] blogEntries = tuple[1].split(",");
+        for (String blogEntry : blogEntries) {
+          tag.addBlogEntry(blogEntry);
+        }
+      }
+    }
+
+    public void add(String record) {
+      int index = record.lastIndexOf("=");
+      getTag(record.substring(0, index)).addBlogEntry(record.substring(index+1));
+    }
 
+    public void remove(String record) {
+      int index = record.lastIndexOf("=");
+      getTag(record.substring(0, index)).removeBlogEntry(record.substring(index+1));
+    }
+
+    public void write(BufferedWriter writer) throws IOException {
       for (IndexedTag tag : tags.values()) {
         writer.write(tag.getName());
         writer.write("=");
@@ -170,12 +168,8 @@ public class TagIndex {
         }
         writer.newLine();
       }
-
-      writer.flush();
-      writer.close();
-    } catch (Exception e) {
-      log.error("Error while writing index", e);
     }
+
   }
 
   /**
@@ -56,7 +56,7 @@ public abstract class AbstractLogger {
   }
 
   /**
-   * Logs a HTTP request.
+   * Logs a HTTP request. This is called by many request threads at once.
    *
    * @param request   a HttpServletRequest
    */
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.PluginProperties;
+import net.sourceforge.pebble.domain.Blog;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes log files in the same Combined Log Format as
+ * {@link CombinedLogFormatLogger}, but without making requests wait for
+ * the disk. Requests add their entry to a {@link RingBuffer}, which a
+ * background thread drains in batches into the day's log file. That file
+ * is kept open until midnight, in the blog's time zone.
+ * <p />
+ * When the buffer is full, entries are either dropped or the request
+ * waits for space, depending upon the overflow policy. Both are counted,
+ * as are entries that arrive after the logger has been stopped and the
+ * background thread has taken its last look at the buffer.
+ *
+ * @author    Simon Brown
+ */
+public class AsyncCombinedLogFormatLogger extends CombinedLogFormatLogger {
+
+  /** the plugin property used to configure the size of the buffer */
+  public static final String CAPACITY_KEY = "AsyncCombinedLogFormatLogger.capacity";
+
+  /** the plugin property used to configure the overflow policy */
+  public static final String OVERFLOW_POLICY_KEY = "AsyncCombinedLogFormatLogger.overflowPolicy";
+
+  /** the overflow policy that drops entries when the buffer is full */
+  public static final String DROP = "drop";
+
+  /** the overflow policy that makes requests wait when the buffer is full */
+  public static final String BLOCK = "block";
+
+  /** the default number of entries that can be waiting to be written */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  /** the maximum number of entries written between flushes */
+  private static final int BATCH_SIZE = 256;
+
+  /** how long the background thread sleeps when there's nothing to write */
+  private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /** how long a blocked request waits before trying again */
+  private static final long BLOCKED_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** the maximum time to wait for outstanding entries to be written */
+  private static final long FLUSH_TIMEOUT = 5000;
+
+  /** the log used by this class */
+  private static org.apache.commons.logging.Log log = LogFactory.getLog(AsyncCombinedLogFormatLogger.class);
+
+  private volatile RingBuffer<LogEntry> buffer;
+  private volatile boolean block;
+  private volatile boolean running;
+  private volatile Thread writerThread;
+
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong blocked = new AtomicLong();
+
+  /** the number of entries taken from the buffer and flushed to disk */
+  private volatile long written;
+
+  /** the buffer that the background thread has finished with, guarded by stoppedLock */
+  private RingBuffer<LogEntry> stoppedBuffer;
+  private final Object stoppedLock = new Object();
+
+  // only used by the background thread
+  private final SimpleDateFormat filenameFormat = new SimpleDateFormat("'blog-'yyyyMMdd'.log'");
+  private final CombinedFormatLogEntryFormat format;
+  private BufferedWriter writer;
+  private long startOfDay;
+  private long endOfDay;
+
+  public AsyncCombinedLogFormatLogger(Blog blog) {
+    super(blog);
+    filenameFormat.setTimeZone(blog.getTimeZone());
+    format = new CombinedFormatLogEntryFormat(blog);
+  }
+
+  /**
+   * Logs a HTTP request.
+   *
+   * @param request   a HttpServletRequest
+   */
+  public void log(HttpServletRequest request, int status) {
+    if (!running) {
+      // not started (or already stopped), so write the entry directly
+      super.log(request, status);
+      return;
+    }
+
+    RingBuffer<LogEntry> buffer = this.buffer;
+    LogEntry entry = createLogEntry(request, status);
+    if (!buffer.offer(entry)) {
+      if (!block) {
+        dropped.incrementAndGet();
+        return;
+      }
+
+      blocked.incrementAndGet();
+      do {
+        if (!running) {
+          dropped.incrementAndGet();
+          return;
+        }
+        LockSupport.unpark(writerThread);
+        LockSupport.parkNanos(BLOCKED_WAIT);
+      } while (!buffer.offer(entry));
+    }
+
+    if (!running) {
+      // stopped since the check above, so the background thread may
+      // already have drained the buffer for the last time
+      discardStranded(buffer);
+    }
+  }
+
+  /**
+   * Called to start this logger.
+   */
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+
+    PluginProperties props = blog.getPluginProperties();
+    int capacity = DEFAULT_CAPACITY;
+    if (props.hasProperty(CAPACITY_KEY)) {
+      try {
+        capacity = Integer.parseInt(props.getProperty(CAPACITY_KEY));
+      } catch (NumberFormatException nfe) {
+        log.error(nfe.getMessage());
+        // do nothing, the value has already been defaulted
+      }
+    }
+    block = BLOCK.equalsIgnoreCase(props.getProperty(OVERFLOW_POLICY_KEY));
+
+    buffer = new RingBuffer<LogEntry>(Math.max(1, capacity));
+    written = 0;
+    running = true;
+
+    writerThread = new Thread(new Runnable() {
+      public void run() {
+        drain();
+      }
+    }, "pebble-log-" + blog.getId());
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Called to stop this logger, once all outstanding entries have been
+   * written.
+   */
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+    Thread thread = writerThread;
+    LockSupport.unpark(thread);
+    try {
+      thread.join(FLUSH_TIMEOUT);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (dropped.get() > 0 || blocked.get() > 0) {
+      log.info("Access log for " + blog.getId() + " dropped " + dropped.get() + " entries and blocked " + blocked.get() + " requests");
+    }
+  }
+
+  /**
+   * Waits until all entries logged so far have been written to disk.
+   */
+  public void flush() {
+    RingBuffer<LogEntry> buffer = this.buffer;
+    if (buffer == null) {
+      return;
+    }
+
+    long target = buffer.getTail();
+    long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+    while (running && written < target && System.currentTimeMillis() < deadline) {
+      LockSupport.unpark(writerThread);
+      LockSupport.parkNanos(BLOCKED_WAIT);
+    }
+  }
+
+  public String getLogFile(int year, int month, int day) {
+    flush();
+    return super.getLogFile(year, month, day);
+  }
+
+  public Log getLog(int year, int month, int day) {
+    flush();
+    return super.getLog(year, month, day);
+  }
+
+  public LogSummary getLogSummary(int year, int month, int day) {
+    flush();
+    return super.getLogSummary(year, month, day);
+  }
+
+  /**
+   * Gets the number of entries dropped because the buffer was full.
+   *
+   * @return  the number of dropped entries
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Gets the number of requests that had to wait for space in the buffer.
+   *
+   * @return  the number of blocked requests
+   */
+  public long getBlocked() {
+    return blocked.get();
+  }
+
+  /**
+   * Gets the number of entries written since this logger was started.
+   *
+   * @return  the number of written entries
+   */
+  public long getWritten() {
+    return written;
+  }
+
+  /**
+   * Gets the number of entries waiting to be written.
+   *
+   * @return  the number of entries in the buffer
+   */
+  public int getPending() {
+    RingBuffer<LogEntry> buffer = this.buffer;
+    return buffer != null ? buffer.size() : 0;
+  }
+
+  /**
+   * The body of the background thread, which writes entries until this
+   * logger is stopped and the buffer is empty.
+   */
+  private void drain() {
+    RingBuffer<LogEntry> buffer = this.buffer;
+    List<LogEntry> batch = new ArrayList<LogEntry>(BATCH_SIZE);
+    while (true) {
+      boolean stopping = !running;
+      int count = buffer.drainTo(batch, BATCH_SIZE);
+      if (count > 0) {
+        write(batch);
+        batch.clear();
+      }
+
+      if (count < BATCH_SIZE) {
+        // caught up, so make everything written so far visible
+        flushWriter();
+        written = buffer.getHead();
+
+        if (stopping) {
+          break;
+        } else if (count == 0) {
+          LockSupport.parkNanos(this, IDLE_WAIT);
+        }
+      }
+    }
+
+    closeWriter();
+
+    synchronized (stoppedLock) {
+      stoppedBuffer = buffer;
+      discardStranded(buffer);
+    }
+  }
+
+  /**
+   * Counts anything left in a buffer that the background thread has
+   * finished with as dropped, since nothing will write it. Until the
+   * background thread has finished, it is the only thing that may take
+   * entries from the buffer, and it will find them itself.
+   */
+  private void discardStranded(RingBuffer<LogEntry> buffer) {
+    synchronized (stoppedLock) {
+      if (stoppedBuffer == buffer) {
+        while (buffer.poll() != null) {
+          dropped.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  private void write(List<LogEntry> entries) {
+    for (LogEntry entry : entries) {
+      try {
+        long time = entry.getDate().getTime();
+        if (writer == null || time < startOfDay || time >= endOfDay) {
+          open(time);
+        }
+        writer.write(format.format(entry));
+        writer.newLine();
+      } catch (IOException ioe) {
+        log.error("Could not write to access log for " + blog.getId(), ioe);
+        dropped.incrementAndGet();
+        closeWriter();
+      }
+    }
+  }
+
+  /**
+   * Opens the log file for the day containing the given time.
+   */
+  private void open(long time) throws IOException {
+    closeWriter();
+
+    Calendar cal = blog.getCalendar();
+    cal.setTimeInMillis(time);
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    startOfDay = cal.getTimeInMillis();
+    cal.add(Calendar.DAY_OF_MONTH, 1);
+    endOfDay = cal.getTimeInMillis();
+
+    File file = new File(blog.getLogsDirectory(), filenameFormat.format(new Date(time)));
+    writer = new BufferedWriter(new FileWriter(file, true));
+  }
+
+  private void flushWriter() {
+    if (writer != null) {
+      try {
+        writer.flush();
+      } catch (IOException ioe) {
+        log.error("Could not write to access log for " + blog.getId(), ioe);
+        closeWriter();
+      }
+    }
+  }
+
+  private void closeWriter() {
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException ioe) {
+        log.error("Could not close access log for " + blog.getId(), ioe);
+      }
+      writer = null;
+    }
+  }
+
+}
@@ -39,6 +39,7 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -69,10 +70,25 @@ public class CombinedLogFormatLogger extends AbstractLogger {
    * @param request   a HttpServletRequest
    */
   public synchronized void log(HttpServletRequest request, int status) {
+    entries.add(createLogEntry(request, status));
+
+    if (entries.size() >= FLUSH_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+   * Creates a log entry for a HTTP request.
+   *
+   * @param request   a HttpServletRequest
+   * @param status    the HTTP status code of the response
+   * @return  a LogEntry instance
+   */
+  protected LogEntry createLogEntry(HttpServletRequest request, int status) {
     String externalUri = (String)request.getAttribute(Constants.EXTERNAL_URI);
     LogEntry entry = new LogEntry();
     entry.setHost(request.getRemoteAddr());
-    entry.setDate(blog.getCalendar().getTime());
+    entry.setDate(new Date());
     entry.setStatusCode(status);
     StringBuffer buf = new StringBuffer();
     buf.append(request.getMethod());
@@ -81,11 +97,8 @@ public class CombinedLogFormatLogger extends AbstractLogger {
     entry.setRequest(buf.toString());
     entry.setReferer(request.getHeader(REFERER_HEADER));
     entry.setAgent(request.getHeader(USER_AGENT_HEADER));
-    entries.add(entry);
 
-    if (entries.size() >= FLUSH_SIZE) {
-      flush();
-    }
+    return entry;
   }
 
   private void flush() {
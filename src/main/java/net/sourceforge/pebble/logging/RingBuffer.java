@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue that any number of threads can add to and a
+ * single thread takes from. Each slot carries a sequence number saying
+ * whether it is ready to be written or read, so producers only contend on
+ * claiming a position and never wait for each other.
+ *
+ * @author    Simon Brown
+ */
+public class RingBuffer<E> {
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicReferenceArray<E> elements;
+  private final AtomicLongArray sequences;
+
+  /** the next position to be claimed by a producer */
+  private final AtomicLong tail = new AtomicLong();
+
+  /** the next position to be read by the consumer */
+  private volatile long head;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param capacity    the minimum capacity, rounded up to a power of two
+   *                    (and at least two, so that full and empty slots
+   *                    have different sequence numbers)
+   */
+  public RingBuffer(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive : " + capacity);
+    }
+
+    int size = 2;
+    while (size < capacity) {
+      size <<= 1;
+    }
+
+    this.capacity = size;
+    this.mask = size - 1;
+    this.elements = new AtomicReferenceArray<E>(size);
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+  }
+
+  /**
+   * Adds an element, if there is room.
+   *
+   * @param element   the element to add
+   * @return  true if the element was added, false if the buffer is full
+   */
+  public boolean offer(E element) {
+    long position = tail.get();
+    while (true) {
+      int index = (int)(position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0) {
+        // the slot is free, so try to claim it
+        if (tail.compareAndSet(position, position + 1)) {
+          elements.set(index, element);
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      } else if (difference < 0) {
+        // the slot still holds an element from the previous lap
+        return false;
+      } else {
+        // another producer claimed the slot first
+        position = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Takes the next element. This must only be called by the consumer.
+   *
+   * @return  the next element, or null if the buffer is empty
+   */
+  public E poll() {
+    long position = head;
+    int index = (int)(position & mask);
+    if (sequences.get(index) != position + 1) {
+      return null;
+    }
+
+    E element = elements.get(index);
+    elements.set(index, null);
+    sequences.set(index, position + capacity);
+    head = position + 1;
+    return element;
+  }
+
+  /**
+   * Takes up to the specified number of elements. This must only be called
+   * by the consumer.
+   *
+   * @param collection    the collection to add the elements to
+   * @param max           the maximum number of elements to take
+   * @return  the number of elements taken
+   */
+  public int drainTo(Collection<? super E> collection, int max) {
+    int count = 0;
+    while (count < max) {
+      E element = poll();
+      if (element == null) {
+        break;
+      }
+      collection.add(element);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of positions that have been claimed by producers,
+   * which is the position that the consumer will have reached once
+   * everything added so far has been taken.
+   *
+   * @return  a position
+   */
+  public long getTail() {
+    return tail.get();
+  }
+
+  /**
+   * Gets the number of elements taken by the consumer so far.
+   *
+   * @return  a position
+   */
+  public long getHead() {
+    return head;
+  }
+
+  /**
+   * Gets the approximate number of elements in the buffer.
+   *
+   * @return  the number of elements
+   */
+  public int size() {
+    return (int)Math.max(0, Math.min(capacity, tail.get() - head));
+  }
+
+  /**
+   * Gets the capacity of this buffer.
+   *
+   * @return  the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+}
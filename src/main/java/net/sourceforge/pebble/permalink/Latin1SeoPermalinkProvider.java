@@ -37,8 +37,8 @@ import net.sourceforge.pebble.domain.*;
 
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Generates permalinks based upon the blog entry title. This implementation
@@ -53,22 +53,22 @@ import java.util.List;
  *
  * @author Mattias Reichel
  */
-public class Latin1SeoPermalinkProvider implements PermalinkProvider {
+public class Latin1SeoPermalinkProvider implements IndexedPermalinkProvider {
 
   /**
    * the regex used to check for a day request
    */
-  private static final String DAY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d";
+  private static final Pattern DAY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d");
 
   /**
    * the regex used to check for a monthly blog request
    */
-  private static final String MONTH_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d";
+  private static final Pattern MONTH_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d");
 
   /**
    * the regex used to check for a blog entry permalink
    */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/[\\w-]*";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/[\\w-]*");
 
   /**
    * the Blog associated with this provider instance
@@ -94,24 +94,32 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
   }
 
   /**
-   * Gets the permalink for a blog entry.
+   * Gets the permalink for a blog entry, from the PermalinkIndex if it has
+   * been indexed.
    *
    * @return a URI as a String
    */
-  public synchronized String getPermalink(BlogEntry blogEntry) {
+  public String getPermalink(BlogEntry blogEntry) {
+    String permalink = getBlog().getPermalinkIndex().getPermalink(blogEntry);
+    if (permalink != null) {
+      return permalink;
+    } else {
+      return generatePermalink(blogEntry);
+    }
+  }
+
+  /**
+   * Works out the permalink for a blog entry.
+   *
+   * @return a URI as a String
+   */
+  public String generatePermalink(BlogEntry blogEntry) {
     if (blogEntry.getTitle() == null || blogEntry.getTitle().length() == 0) {
       return buildPermalink(blogEntry);
     } else {
-      BlogService service = new BlogService();
-      List<BlogEntry> entries = getBlog().getBlogEntries();
-      int count = 0;
-      for (int i = entries.size() - 1; i >= 0 && !entries.get(i).getId().equals(blogEntry.getId()); i--) {
-        if (entries.get(i).getTitle().equals(blogEntry.getTitle())) {
-          count++;
-        }
-      }
-
-      if (count == 0) {
+      // the oldest blog entry with a given title gets the plain permalink
+      List<String> ids = getBlog().getPermalinkIndex().getBlogEntriesWithTitle(blogEntry.getTitle());
+      if (ids.isEmpty() || Long.parseLong(ids.get(ids.size()-1)) >= Long.parseLong(blogEntry.getId())) {
         return buildPermalink(blogEntry);
       } else {
         return buildPermalink(blogEntry) + "_" + blogEntry.getId();
@@ -120,9 +128,12 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
   }
 
   private String buildPermalink(BlogEntry blogEntry) {
-    String title = blogEntry.getTitle();
+    return buildPermalink(blogEntry.getTitle(), blogEntry.getId());
+  }
+
+  private String buildPermalink(String title, String id) {
     if (title == null || title.length() == 0) {
-      title = "" + blogEntry.getId();
+      title = "" + id;
     } else {
       title = title.toLowerCase();
       title = title.replaceAll("[\\. ,;/\\\\_]", "-"); // Change whitespace and punctuation marks to dashes
@@ -137,7 +148,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
 
     // if the title has been blanked out, use the blog entry instead
     if (title == null || title.length() == 0) {
-      title = "" + blogEntry.getId();
+      title = "" + id;
     }
 
     return "/" + title;
@@ -146,23 +157,17 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
 
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
   }
 
   public BlogEntry getBlogEntry(String uri) {
-    BlogService service = new BlogService();
-    Iterator it = getBlog().getBlogEntries().iterator();
-    while (it.hasNext()) {
+    String id = getBlog().getPermalinkIndex().getBlogEntryId(uri);
+    if (id != null) {
       try {
-        BlogEntry blogEntry = service.getBlogEntry(getBlog(), "" + ((BlogEntry) it.next()).getId());
-        // use the local permalink, just in case the entry has been aggregated
-        // and an original permalink assigned
-        if (blogEntry.getLocalPermalink().endsWith(uri)) {
-          return blogEntry;
-        }
+        return new BlogService().getReadOnlyBlogEntry(getBlog(), id);
       } catch (BlogServiceException e) {
         // do nothing
       }
@@ -192,7 +197,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
    */
   public boolean isMonthPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(MONTH_PERMALINK_REGEX);
+      return MONTH_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -232,7 +237,7 @@ public class Latin1SeoPermalinkProvider implements PermalinkProvider {
    */
   public boolean isDayPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(DAY_PERMALINK_REGEX);
+      return DAY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
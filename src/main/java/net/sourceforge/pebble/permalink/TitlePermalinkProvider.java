@@ -36,8 +36,7 @@ import net.sourceforge.pebble.domain.*;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Generates permalinks based upon the blog entry title. This implementation
@@ -53,36 +52,51 @@ import java.util.List;
  *
  * @author Simon Brown
  */
-public class TitlePermalinkProvider extends PermalinkProviderSupport {
+public class TitlePermalinkProvider extends PermalinkProviderSupport implements IndexedPermalinkProvider {
 
   /** the regex used to check for a blog entry permalink */
-  private static final String BLOG_ENTRY_PERMALINK_REGEX = "/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html";
+  private static final Pattern BLOG_ENTRY_PERMALINK_PATTERN = Pattern.compile("/\\d\\d\\d\\d/\\d\\d/\\d\\d/[\\w]*.html");
 
   /**
-   * Gets the permalink for a blog entry.
+   * Gets the permalink for a blog entry, from the PermalinkIndex if it has
+   * been indexed.
    *
    * @return  a URI as a String
    */
-  public synchronized String getPermalink(BlogEntry blogEntry) {
+  public String getPermalink(BlogEntry blogEntry) {
+    String permalink = getBlog().getPermalinkIndex().getPermalink(blogEntry);
+    if (permalink != null) {
+      return permalink;
+    } else {
+      return generatePermalink(blogEntry);
+    }
+  }
+
+  /**
+   * Works out the permalink for a blog entry.
+   *
+   * @return  a URI as a String
+   */
+  public String generatePermalink(BlogEntry blogEntry) {
     if (blogEntry.getTitle() == null || blogEntry.getTitle().length() == 0) {
       return buildPermalink(blogEntry) + ".html";
     } else {
-      BlogService service = new BlogService();
-      Day day = getBlog().getBlogForDay(blogEntry.getDate());
-      List entries = day.getBlogEntries();
-      int count = 0;
-      for (int i = entries.size()-1; i > entries.indexOf(blogEntry.getId()); i--) {
-        try {
-          BlogEntry entry = service.getBlogEntry(getBlog(), (String)entries.get(i));
-          if (entry.getTitle().equals(blogEntry.getTitle())) {
-            count++;
-          }
-        } catch (BlogServiceException e) {
-          // do nothing
+      // the oldest blog entry with a given title on a given day gets the plain
+      // permalink, and blog entry IDs are the time at which they were created
+      DateFormat dayFormat = new SimpleDateFormat("yyyyMMdd");
+      dayFormat.setTimeZone(getBlog().getTimeZone());
+      String day = dayFormat.format(blogEntry.getDate());
+      long id = Long.parseLong(blogEntry.getId());
+      boolean duplicate = false;
+      for (String other : getBlog().getPermalinkIndex().getBlogEntriesWithTitle(blogEntry.getTitle())) {
+        long otherId = Long.parseLong(other);
+        if (otherId < id && day.equals(dayFormat.format(new Date(otherId)))) {
+          duplicate = true;
+          break;
         }
       }
 
-      if (count == 0) {
+      if (!duplicate) {
         return buildPermalink(blogEntry) + ".html";
       } else {
         return buildPermalink(blogEntry) + "_" + blogEntry.getId() + ".html";
@@ -139,7 +153,7 @@ public class TitlePermalinkProvider extends PermalinkProviderSupport {
    */
   public boolean isBlogEntryPermalink(String uri) {
     if (uri != null) {
-      return uri.matches(BLOG_ENTRY_PERMALINK_REGEX);
+      return BLOG_ENTRY_PERMALINK_PATTERN.matcher(uri).matches();
     } else {
       return false;
     }
@@ -152,18 +166,10 @@ public class TitlePermalinkProvider extends PermalinkProviderSupport {
    * @return  a BlogEntry instance, or null if one can't be found
    */
   public BlogEntry getBlogEntry(String uri) {
-    BlogService service = new BlogService();
-    Day day = getDay(uri);
-
-    Iterator it = day.getBlogEntries().iterator();
-    while (it.hasNext()) {
+    String id = getBlog().getPermalinkIndex().getBlogEntryId(uri);
+    if (id != null) {
       try {
-        BlogEntry blogEntry = service.getBlogEntry(getBlog(), (String)it.next());
-        // use the local permalink, just in case the entry has been aggregated
-        // and an original permalink assigned
-        if (blogEntry.getLocalPermalink().endsWith(uri)) {
-          return blogEntry;
-        }
+        return new BlogService().getReadOnlyBlogEntry(getBlog(), id);
       } catch (BlogServiceException e) {
         // do nothing
       }
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.search;
+
+import net.sourceforge.pebble.comparator.SearchHitByDateComparator;
+import net.sourceforge.pebble.comparator.SearchHitByScoreComparator;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogManager;
+import net.sourceforge.pebble.index.SearchIndex;
+import net.sourceforge.pebble.util.I18n;
+import net.sourceforge.pebble.util.SecurityUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Searches several blogs at once, as used by the home page of a multi-blog
+ * installation. The query is run against the search index of each blog in
+ * parallel, on a small pool of threads shared by all searches, and the top
+ * hits from each blog are merged. A blog whose index doesn't answer within
+ * the timeout is left out of the results, rather than holding up the others.
+ *
+ * @author    Simon Brown
+ */
+public class FederatedSearch {
+
+  private static final Log log = LogFactory.getLog(FederatedSearch.class);
+
+  /** the default time allowed for each blog to answer, in milliseconds */
+  public static final long DEFAULT_TIMEOUT = 2000;
+
+  /** the number of threads used to search blogs */
+  static final int NUMBER_OF_THREADS = 4;
+
+  /** the number of blog searches that can be waiting for a thread */
+  static final int QUEUE_SIZE = 256;
+
+  /** the pool used to search blogs, created on first use */
+  private static ExecutorService searchPool;
+
+  private final Locale locale;
+
+  private final long timeout;
+
+  /**
+   * Creates a new instance with the default timeout.
+   *
+   * @param locale    the Locale used for messages about blogs left out
+   */
+  public FederatedSearch(Locale locale) {
+    this(locale, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param locale    the Locale used for messages about blogs left out
+   * @param timeout   the time allowed for each blog to answer, in milliseconds
+   */
+  public FederatedSearch(Locale locale, long timeout) {
+    this.locale = locale;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Gets the blogs that the specified user is allowed to search, which are
+   * all public blogs along with any private blogs that they can read.
+   *
+   * @param auth    the current Authentication, or null if anonymous
+   * @return  a List of Blog instances
+   */
+  public static List<Blog> getSearchableBlogs(Authentication auth) {
+    boolean authenticated = auth != null && auth.isAuthenticated() && !(auth instanceof AnonymousAuthenticationToken);
+
+    List<Blog> blogs = new ArrayList<Blog>();
+    for (Blog blog : BlogManager.getInstance().getBlogs()) {
+      // the same checks as PrivateBlogVoter
+      if (blog.isPublic()) {
+        blogs.add(blog);
+      } else if (authenticated && (
+          SecurityUtils.isBlogAdmin(auth) ||
+          SecurityUtils.isUserAuthorisedForBlog(auth, blog) ||
+          SecurityUtils.isUserAuthorisedForBlogAsBlogReader(auth, blog))) {
+        blogs.add(blog);
+      }
+    }
+
+    return blogs;
+  }
+
+  /**
+   * Searches the specified blogs, returning a single page of the merged hits.
+   *
+   * @param blogs         the blogs to search
+   * @param queryString   the Lucene query
+   * @param sort          SearchIndex.SORT_BY_SCORE or SearchIndex.SORT_BY_DATE
+   * @param offset        the number of hits to skip
+   * @param limit         the maximum number of hits to return
+   * @return  a SearchResults instance
+   */
+  public SearchResults search(List<Blog> blogs, final String queryString, final String sort, int offset, int limit) {
+    SearchResults searchResults = new SearchResults();
+    searchResults.setQuery(queryString);
+    searchResults.setOffset(offset);
+
+    // each blog needs to supply enough hits to fill the page on its own
+    final int n = (int)Math.min((long)offset + limit, Integer.MAX_VALUE);
+    Map<Blog,Future<SearchResults>> futures = new LinkedHashMap<Blog,Future<SearchResults>>();
+    for (final Blog blog : blogs) {
+      try {
+        futures.put(blog, getSearchPool().submit(new Callable<SearchResults>() {
+          public SearchResults call() throws Exception {
+            return blog.getSearchIndex().search(queryString, sort, 0, n);
+          }
+        }));
+      } catch (RejectedExecutionException ree) {
+        log.warn("Too many searches in progress to search blog with ID " + blog.getId());
+        futures.put(blog, null);
+      }
+    }
+
+    List<SearchHit> hits = new ArrayList<SearchHit>();
+    List<String> unavailable = new ArrayList<String>();
+    int numberOfHits = 0;
+    long deadline = System.currentTimeMillis() + timeout;
+    for (Blog blog : futures.keySet()) {
+      Future<SearchResults> future = futures.get(blog);
+      if (future == null) {
+        unavailable.add(blog.getName());
+        continue;
+      }
+
+      try {
+        SearchResults results = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        hits.addAll(results.getHits());
+        numberOfHits += results.getNumberOfHits();
+      } catch (TimeoutException te) {
+        log.warn("Search of blog with ID " + blog.getId() + " timed out");
+        future.cancel(true);
+        unavailable.add(blog.getName());
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        future.cancel(true);
+        unavailable.add(blog.getName());
+      } catch (ExecutionException ee) {
+        log.warn("Error while searching blog with ID " + blog.getId(), ee.getCause());
+        unavailable.add(blog.getName());
+      }
+    }
+
+    if (SearchIndex.SORT_BY_DATE.equalsIgnoreCase(sort)) {
+      Collections.sort(hits, new SearchHitByDateComparator());
+    } else {
+      Collections.sort(hits, new SearchHitByScoreComparator());
+    }
+
+    int end = (int)Math.min((long)offset + limit, hits.size());
+    for (int i = offset; i < end; i++) {
+      SearchHit hit = hits.get(i);
+      hit.setNumber(i + 1);
+      searchResults.add(hit);
+    }
+    searchResults.setNumberOfHits(numberOfHits);
+
+    if (!unavailable.isEmpty()) {
+      searchResults.setMessage(MessageFormat.format(I18n.getMessage(locale, "search.blogsUnavailable"), unavailable));
+    }
+
+    return searchResults;
+  }
+
+  /**
+   * Gets the pool used to search blogs. The threads are daemons and time out
+   * when idle, and only a limited number of searches can wait for them.
+   *
+   * @return  an ExecutorService instance
+   */
+  private static synchronized ExecutorService getSearchPool() {
+    if (searchPool == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          NUMBER_OF_THREADS, NUMBER_OF_THREADS, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(QUEUE_SIZE),
+          new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "pebble-search-" + (++count));
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      searchPool = executor;
+    }
+
+    return searchPool;
+  }
+
+}
@@ -69,6 +69,9 @@ public class SearchHit {
   /** the number of this result */
   private int number;
 
+  /** the highlighted keyword-in-context snippet, as HTML */
+  private String snippet;
+
   /**
    * Creates a new instance with the specified message.
    */
@@ -173,4 +176,23 @@ public class SearchHit {
     return subtitle;
   }
 
+  /**
+   * Gets a snippet of the matching content, as HTML, with the words that
+   * matched the search query highlighted.
+   *
+   * @return  the snippet, or null if there isn't one
+   */
+  public String getSnippet() {
+    return snippet;
+  }
+
+  /**
+   * Sets the snippet of the matching content.
+   *
+   * @param snippet   the snippet, as HTML
+   */
+  public void setSnippet(String snippet) {
+    this.snippet = snippet;
+  }
+
 }
@@ -56,6 +56,12 @@ public class SearchResults {
   /** the collection of search results */
   private List hits = new ArrayList();
 
+  /** the total number of hits, if the hits are a single page of them */
+  private int numberOfHits = -1;
+
+  /** the position of the first hit in the overall results */
+  private int offset;
+
   /**
    * Gets the query that was used to generate these results.
    *
@@ -104,12 +110,47 @@ public class SearchResults {
   }
 
   /**
-   * Gets the number of hits that the query returned.
+   * Gets the number of hits that the query returned, which may be more than
+   * the number of hits held by this instance.
    *
    * @return  the number of hits as an int
    */
   public int getNumberOfHits() {
-    return hits.size();
+    if (numberOfHits > -1) {
+      return numberOfHits;
+    } else {
+      return hits.size();
+    }
+  }
+
+  /**
+   * Sets the number of hits that the query returned, for when this instance
+   * only holds a single page of them.
+   *
+   * @param numberOfHits    the total number of hits
+   */
+  public void setNumberOfHits(int numberOfHits) {
+    this.numberOfHits = numberOfHits;
+  }
+
+  /**
+   * Gets the position of the first hit held by this instance in the overall
+   * results.
+   *
+   * @return  an offset, starting at zero
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Sets the position of the first hit held by this instance in the overall
+   * results.
+   *
+   * @param offset    an offset, starting at zero
+   */
+  public void setOffset(int offset) {
+    this.offset = offset;
   }
 
   /**
@@ -121,13 +162,39 @@ public class SearchResults {
     return this.hits;
   }
 
+  /**
+   * Creates a copy of these results, including copies of the hits, so that
+   * the copy can be modified (e.g. renumbered) without affecting this
+   * instance.
+   *
+   * @return  a new SearchResults instance
+   */
+  public SearchResults copy() {
+    SearchResults copy = new SearchResults();
+    copy.query = query;
+    copy.message = message;
+    copy.numberOfHits = numberOfHits;
+    copy.offset = offset;
+
+    Iterator it = hits.iterator();
+    while (it.hasNext()) {
+      SearchHit hit = (SearchHit)it.next();
+      SearchHit hitCopy = new SearchHit(hit.getBlog(), hit.getId(), hit.getPermalink(), hit.getTitle(), hit.getSubtitle(), hit.getExcerpt(), hit.getDate(), hit.getScore());
+      hitCopy.setNumber(hit.getNumber());
+      hitCopy.setSnippet(hit.getSnippet());
+      copy.hits.add(hitCopy);
+    }
+
+    return copy;
+  }
+
   /**
    * Sorts the search results by score, in reverse order.
    */
   public void sortByScoreDescending() {
     Collections.sort(hits, new SearchHitByScoreComparator());
 
-    int number = 1;
+    int number = offset + 1;
     Iterator it = hits.iterator();
     while (it.hasNext()) {
       SearchHit hit = (SearchHit)it.next();
@@ -142,7 +209,7 @@ public class SearchResults {
   public void sortByDateDescending() {
     Collections.sort(hits, new SearchHitByDateComparator());
 
-    int number = 1;
+    int number = offset + 1;
     Iterator it = hits.iterator();
     while (it.hasNext()) {
       SearchHit hit = (SearchHit)it.next();
@@ -31,10 +31,19 @@
  */
 package net.sourceforge.pebble.service;
 
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.ValidatorCache;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.util.CookieUtils;
+import net.sourceforge.pebble.util.SecurityUtils;
+import net.sourceforge.pebble.web.filter.GZIPResponseWrapper;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
 
 /**
@@ -44,29 +53,99 @@ import java.util.TimeZone;
  */
 public class DefaultLastModifiedService implements LastModifiedService {
 
+  /** SimpleDateFormat isn't thread safe, so each thread gets its own */
+  private static final ThreadLocal<SimpleDateFormat> httpFormat = new ThreadLocal<SimpleDateFormat>() {
+    protected SimpleDateFormat initialValue() {
+      SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
+      format.setTimeZone(TimeZone.getTimeZone("GMT"));
+      return format;
+    }
+  };
+
   public boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response,
                                              Date lastModified, Date expires) {
 
-    SimpleDateFormat httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z");
-    httpFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-
     // Set the headers
+    String eTag = "\"" + Long.toHexString(lastModified.getTime()) + "\"";
     response.setDateHeader("Last-Modified", lastModified.getTime());
-    response.setHeader("ETag", "\"" + httpFormat.format(lastModified) + "\"");
+    response.setHeader("ETag", eTag);
     if (expires != null) {
-      response.setHeader("Expires", httpFormat.format(expires));
+      response.setDateHeader("Expires", expires.getTime());
     }
 
-    // Get the headers to check
-    String ifModifiedSince = request.getHeader("If-Modified-Since");
-    String ifNoneMatch = request.getHeader("If-None-Match");
+    return isNotModified(request, response, eTag, lastModified);
+  }
 
-    if (ifModifiedSince != null && ifModifiedSince.equals(httpFormat.format(lastModified))) {
-      return true;
-    } else if (ifNoneMatch != null && ifNoneMatch.equals("\"" + httpFormat.format(lastModified) + "\"")) {
-      return true;
-    } else {
+  public boolean checkAndProcessValidators(HttpServletRequest request, HttpServletResponse response, Blog blog) {
+    if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
       return false;
     }
+
+    // pages can show things specific to logged in users, and comment forms are
+    // filled in from the "remember me" cookie
+    if (SecurityUtils.isUserAuthenticated() || CookieUtils.getCookie(request.getCookies(), "rememberMe") != null) {
+      return false;
+    }
+
+    ValidatorCache.Validator validator = ValidatorCache.getInstance().getValidator(blog, getResource(request));
+    response.setDateHeader("Last-Modified", validator.getLastModified().getTime());
+    response.setHeader("ETag", validator.getETag());
+
+    return isNotModified(request, response, validator.getETag(), validator.getLastModified());
+  }
+
+  /**
+   * Gets the key identifying the requested resource, which is the URI that
+   * the reader asked for (before any forwarding). Pages are rendered in the
+   * blog's locale rather than the reader's, so that isn't part of the key.
+   */
+  private String getResource(HttpServletRequest request) {
+    String uri = (String)request.getAttribute(Constants.EXTERNAL_URI);
+    if (uri == null) {
+      uri = request.getRequestURI();
+      if (request.getQueryString() != null) {
+        uri += "?" + request.getQueryString();
+      }
+    }
+
+    return uri;
+  }
+
+  /**
+   * Determines whether the client's copy is current, using If-None-Match in
+   * preference to If-Modified-Since. The GZIPFilter adds a suffix to the
+   * entity tag of gzipped pages, and a client holding one of those is sent
+   * it back with the 304.
+   */
+  private boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String eTag, Date lastModified) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      String gzippedETag = GZIPResponseWrapper.getGzippedETag(eTag);
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(eTag)) {
+          return true;
+        } else if (tag.equals(gzippedETag)) {
+          response.setHeader("ETag", gzippedETag);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String ifModifiedSince = request.getHeader("If-Modified-Since");
+    if (ifModifiedSince != null) {
+      try {
+        Date date = httpFormat.get().parse(ifModifiedSince);
+        return date.getTime() / 1000 >= lastModified.getTime() / 1000;
+      } catch (ParseException pe) {
+        return false;
+      }
+    }
+
+    return false;
   }
 }
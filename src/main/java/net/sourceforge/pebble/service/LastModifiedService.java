@@ -31,6 +31,8 @@
  */
 package net.sourceforge.pebble.service;
 
+import net.sourceforge.pebble.domain.Blog;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Date;
@@ -54,4 +56,17 @@ public interface LastModifiedService {
    */
   boolean checkAndProcessLastModified(HttpServletRequest request, HttpServletResponse response, Date lastModified,
                                       Date expires);
+
+  /**
+   * Work out whether this request should return not modified, using the validators held by the ValidatorCache for
+   * the requested page or feed.  Only requests from anonymous readers are validated, since pages can show things
+   * that are specific to the logged in user.
+   *
+   * @param request      The request to check and process
+   * @param response     The response to go with the request.  This can be used to set the etag and last modified
+   *                     headers, but should not be used to set the status code.
+   * @param blog         The blog that the page or feed belongs to
+   * @return True        If it should return not modified
+   */
+  boolean checkAndProcessValidators(HttpServletRequest request, HttpServletResponse response, Blog blog);
 }
@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.service;
 
 import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.ValidatorCache;
 import net.sourceforge.pebble.comparator.StaticPageByNameComparator;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.PersistenceException;
@@ -97,12 +98,14 @@ public class StaticPageService {
       } else {
         log.debug("Loading static page " + pageId+ " from disk");
 
+        // taken before loading, so a copy made stale by a concurrent store isn't cached
+        long generation = cache.getGeneration(blog);
         DAOFactory factory = DAOFactory.getConfiguredFactory();
         StaticPageDAO dao = factory.getStaticPageDAO();
         staticPage = dao.loadStaticPage(blog, pageId);
         if (staticPage != null) {
           staticPage.setPersistent(true);
-          cache.putStaticPage(staticPage);
+          cache.putStaticPage(staticPage, generation);
         }
       }
     } catch (PersistenceException pe) {
@@ -156,8 +159,9 @@ public class StaticPageService {
           cache.removeStaticPage(staticPage);
         }
 
-        staticPage.getBlog().getSearchIndex().index(staticPage);
+        staticPage.getBlog().getSearchIndexQueue().addStaticPage(staticPage.getId());
         staticPage.getBlog().getStaticPageIndex().index(staticPage);
+        ValidatorCache.getInstance().removeBlog(blog);
       } catch (PersistenceException pe) {
         throw new StaticPageServiceException(blog, pe);
       }
@@ -180,8 +184,9 @@ public class StaticPageService {
       dao.removeStaticPage(staticPage);
       cache.removeStaticPage(staticPage);
 
-      staticPage.getBlog().getSearchIndex().unindex(staticPage);
+      staticPage.getBlog().getSearchIndexQueue().addStaticPage(staticPage.getId());
       staticPage.getBlog().getStaticPageIndex().unindex(staticPage);
+      ValidatorCache.getInstance().removeBlog(blog);
     } catch (PersistenceException pe) {
       // remove from the cache so that it's picked up from storage when accessed next
       cache.removeStaticPage(staticPage);
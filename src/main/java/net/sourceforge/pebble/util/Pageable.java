@@ -31,6 +31,7 @@
  */
 package net.sourceforge.pebble.util;
 
+import java.util.AbstractList;
 import java.util.List;
 
 /**
@@ -76,6 +77,37 @@ public class Pageable<T> {
     calculatePages();
   }
 
+  /**
+   * Creates a new instance over a list of which only a single page has been
+   * fetched, such as the results of a search.
+   *
+   * @param listForPage   the items on the page
+   * @param size          the size of the whole list
+   * @param pageSize      the page size
+   * @param page          the page that the items are on
+   */
+  public Pageable(final List<T> listForPage, final int size, int pageSize, int page) {
+    final int offset = Math.max(0, pageSize * (page-1));
+    this.list = new AbstractList<T>() {
+      public T get(int index) {
+        if (index >= offset && index < offset + listForPage.size()) {
+          return listForPage.get(index - offset);
+        } else {
+          return null;
+        }
+      }
+
+      public int size() {
+        return size;
+      }
+    };
+    this.page = 1;
+    this.maxPages = 1;
+
+    setPageSize(pageSize);
+    setPage(page);
+  }
+
   private void calculatePages() {
     if (pageSize > 0) {
       // calculate how many pages there are
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.Configuration;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.dao.jdbc.JdbcDAOFactory;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.RefererFilter;
+import net.sourceforge.pebble.domain.StaticPage;
+
+import java.io.File;
+
+/**
+ * Simple utility to copy a file based Pebble blog into a database,
+ * for use with the JdbcDAOFactory.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcImporter {
+
+  /**
+   * Starts the importer.
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2 || args.length > 4) {
+      System.out.println("Usage : net.sourceforge.pebble.util.importer.JdbcImporter %1 %2 [%3 %4]");
+      System.out.println("   %1 : location of Pebble blog");
+      System.out.println("   %2 : JDBC URL of the database (e.g. jdbc:h2:/path/to/pebble)");
+      System.out.println("   %3 : database username");
+      System.out.println("   %4 : database password");
+
+      return;
+    }
+
+    File file = new File(args[0]);
+    if (null == PebbleContext.getInstance().getConfiguration()) {
+      Configuration config = new Configuration();
+      config.setDataDirectory(file.getParent());
+      config.setUrl("http://www.yourdomain.com/blog/");
+      PebbleContext.getInstance().setConfiguration(config);
+    }
+
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    Blog blog = new Blog(file.getAbsolutePath());
+    blog.setId(file.getName());
+
+    String username = args.length > 2 ? args[2] : "";
+    String password = args.length > 3 ? args[3] : "";
+    importBlog(blog, new FileDAOFactory(), new JdbcDAOFactory(args[1], username, password));
+  }
+
+  /**
+   * Copies the categories, blog entries, static pages and referer filters
+   * belonging to a blog from one set of DAOs to another.
+   *
+   * @param blog    the Blog to copy
+   * @param from    the DAOFactory to read from
+   * @param to      the DAOFactory to write to
+   * @throws PersistenceException   if something goes wrong
+   */
+  public static void importBlog(Blog blog, DAOFactory from, DAOFactory to) throws PersistenceException {
+    System.out.println("Importing " + blog.getId());
+
+    // blog entries refer to their categories, so these need to go first
+    blog.setRootCategory(from.getCategoryDAO().getCategories(blog));
+    to.getCategoryDAO().addCategory(blog.getRootCategory(), blog);
+
+    int count = 0;
+    for (BlogEntry blogEntry : from.getBlogEntryDAO().loadBlogEntries(blog)) {
+      to.getBlogEntryDAO().storeBlogEntry(blogEntry);
+      count++;
+    }
+    System.out.println(" " + count + " blog entries");
+
+    count = 0;
+    for (StaticPage staticPage : from.getStaticPageDAO().loadStaticPages(blog)) {
+      to.getStaticPageDAO().storeStaticPage(staticPage);
+      count++;
+    }
+    System.out.println(" " + count + " static pages");
+
+    count = 0;
+    for (Object filter : from.getRefererFilterDAO().getRefererFilters(blog)) {
+      to.getRefererFilterDAO().addRefererFilter((RefererFilter)filter, blog);
+      count++;
+    }
+    System.out.println(" " + count + " referer filters");
+  }
+
+}
@@ -31,12 +31,15 @@
  */
 package net.sourceforge.pebble.web.action;
 
+import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.service.LastModifiedService;
 import net.sourceforge.pebble.util.I18n;
 import net.sourceforge.pebble.web.model.Model;
 import net.sourceforge.pebble.web.view.View;
@@ -51,6 +54,9 @@ public abstract class Action {
 
   private Model model;
 
+  @Inject
+  private LastModifiedService lastModifiedService;
+
   /**
    * Gets the model.
    *
@@ -78,7 +84,34 @@ public abstract class Action {
   	return I18n.getMessage(((AbstractBlog)getModel().get(Constants.BLOG_KEY)).getLocale(), key);
   }
 
-  
+  /**
+   * Determines whether the reader already has the current version of the
+   * page being asked for, using the validators held for it, and sets the
+   * ETag and Last-Modified headers. This should only be called once the
+   * action knows that the page exists, so that readers don't get a 304
+   * (or a validator) for a page that would be a 404.
+   *
+   * @param request     the HttpServletRequest instance
+   * @param response    the HttpServletResponse instance
+   * @return  true if a NotModifiedView should be returned, false otherwise
+   */
+  protected boolean isNotModified(HttpServletRequest request, HttpServletResponse response) {
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+    if (!(blog instanceof Blog)) {
+      return false;
+    }
+
+    return lastModifiedService.checkAndProcessValidators(request, response, (Blog)blog);
+  }
+
+  protected LastModifiedService getLastModifiedService() {
+    return lastModifiedService;
+  }
+
+  public void setLastModifiedService(LastModifiedService lastModifiedService) {
+    this.lastModifiedService = lastModifiedService;
+  }
+
   /**
    * Performs the processing associated with this action.
    *
@@ -75,7 +75,7 @@ public class BlogEntryToPdfAction extends Action {
     if (entryId != null) {
       BlogService service = new BlogService();
       try {
-        blogEntry = service.getBlogEntry(blog, entryId);
+        blogEntry = service.getReadOnlyBlogEntry(blog, entryId);
       } catch (BlogServiceException e) {
         throw new ServletException(e);
       }
@@ -32,16 +32,17 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.comparator.BlogEntryComparator;
 import net.sourceforge.pebble.domain.*;
-import net.sourceforge.pebble.service.LastModifiedService;
+import net.sourceforge.pebble.index.FacetQuery;
 import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.AbstractRomeFeedView;
+import net.sourceforge.pebble.web.view.impl.CachedFeedView;
 import net.sourceforge.pebble.web.view.impl.FeedView;
 import net.sourceforge.pebble.web.view.impl.RdfView;
 
-import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -54,9 +55,6 @@ import java.util.*;
  */
 public class FeedAction extends Action {
 
-  @Inject
-  private LastModifiedService lastModifiedService;
-
   /**
    * Peforms the processing associated with this action.
    *
@@ -67,21 +65,54 @@ public class FeedAction extends Action {
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     AbstractBlog blog = (AbstractBlog) getModel().get(Constants.BLOG_KEY);
     String flavor = request.getParameter("flavor");
+    String s = request.getParameter("includeAggregatedContent");
+    boolean includeAggregatedContent = (s == null || s.equalsIgnoreCase("true"));
+
+    Tag tag = null;
+    Category category = null;
+    String author = null;
+    FacetQuery facetQuery = null;
+    String cacheKey = null;
+    long generation = 0;
+
+    if (blog instanceof Blog) {
+      if (request.getParameter("facets") != null) {
+        facetQuery = ViewBlogEntriesByFacetAction.getFacetQuery(request);
+      } else {
+        tag = getTag((Blog) blog, request);
+        category = getCategory((Blog) blog, request);
+        author = getAuthor(request);
+      }
+
+      // feeds only change when blog entries do, so serve them from the cache where possible
+      FeedCache feedCache = FeedCache.getInstance();
+      cacheKey = getCacheKey(flavor, tag, category, author, facetQuery, includeAggregatedContent);
+      FeedCache.Feed feed = feedCache.getFeed((Blog) blog, cacheKey);
+      if (feed != null) {
+        if (CachedFeedView.isNotModified(feed, request, response)) {
+          return new NotModifiedView();
+        } else {
+          return new CachedFeedView(feed);
+        }
+      }
+      generation = feedCache.getGeneration((Blog) blog);
+    }
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)) {
+    if (blog instanceof Blog) {
+      if (isNotModified(request, response)) {
+        return new NotModifiedView();
+      }
+    } else if (getLastModifiedService().checkAndProcessLastModified(request, response, blog.getLastModified(), null)) {
       return new NotModifiedView();
     }
 
     List<BlogEntry> blogEntries;
-    String s = request.getParameter("includeAggregatedContent");
-    boolean includeAggregatedContent = (s == null || s.equalsIgnoreCase("true"));
 
     if (blog instanceof Blog) {
-      Tag tag = getTag((Blog) blog, request);
-      Category category = getCategory((Blog) blog, request);
-      String author = getAuthor(request);
-
-      if (tag != null) {
+      if (facetQuery != null) {
+        blogEntries = ((Blog) blog).getRecentPublishedBlogEntries(facetQuery);
+        getModel().put("facetQuery", facetQuery);
+      } else if (tag != null) {
         blogEntries = ((Blog) blog).getRecentPublishedBlogEntries(tag);
         getModel().put("tag", tag);
       } else if (category != null) {
@@ -114,15 +145,56 @@ public class FeedAction extends Action {
         javax.servlet.jsp.jstl.core.Config.FMT_LOCALE,
         Locale.ENGLISH);
 
+    View view;
     if (flavor != null && flavor.equalsIgnoreCase("atom")) {
-      return new FeedView(AbstractRomeFeedView.FeedType.ATOM);
+      view = new FeedView(AbstractRomeFeedView.FeedType.ATOM);
     } else if (flavor != null && flavor.equalsIgnoreCase("rdf")) {
-      return new RdfView();
+      view = new RdfView();
     } else {
-      return new FeedView(AbstractRomeFeedView.FeedType.RSS);
+      view = new FeedView(AbstractRomeFeedView.FeedType.RSS);
+    }
+
+    if (blog instanceof Blog) {
+      FeedCache.Scope scope;
+      if (facetQuery != null) {
+        scope = FeedCache.Scope.forBlogEntries(facetQuery, blogEntriesForFeed);
+      } else {
+        scope = FeedCache.Scope.forBlogEntries(tag, category, author, blogEntriesForFeed);
+      }
+      return new CachedFeedView(view, cacheKey, scope, generation);
+    } else {
+      return view;
     }
   }
 
+  /**
+   * Gets the key that identifies a feed in the feed cache.
+   */
+  private String getCacheKey(String flavor, Tag tag, Category category, String author, FacetQuery facetQuery, boolean includeAggregatedContent) {
+    StringBuilder key = new StringBuilder("blogEntries/");
+    if (flavor != null && (flavor.equalsIgnoreCase("atom") || flavor.equalsIgnoreCase("rdf"))) {
+      key.append(flavor.toLowerCase());
+    } else {
+      key.append("rss");
+    }
+
+    if (facetQuery != null) {
+      key.append("/facets?").append(facetQuery);
+    } else if (tag != null) {
+      key.append("/tag/").append(tag.getName());
+    } else if (category != null) {
+      key.append("/category").append(category.getId());
+    } else if (author != null) {
+      key.append("/author/").append(author);
+    }
+
+    if (!includeAggregatedContent) {
+      key.append("/local");
+    }
+
+    return key.toString();
+  }
+
   /**
    * Helper method to find a named tag from a request parameter.
    *
@@ -166,8 +238,4 @@ public class FeedAction extends Action {
   private String getAuthor(HttpServletRequest request) {
     return request.getParameter("author");
   }
-
-  public void setLastModifiedService(LastModifiedService lastModifiedService) {
-    this.lastModifiedService = lastModifiedService;
-  }
 }
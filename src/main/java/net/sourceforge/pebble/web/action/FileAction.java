@@ -35,19 +35,15 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.MultiBlog;
 import net.sourceforge.pebble.domain.FileManager;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.service.LastModifiedService;
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.web.view.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
-import java.util.Calendar;
-import java.util.Date;
 
 /**
  * Gets a file/image from a blog.
@@ -59,9 +55,6 @@ public class FileAction extends Action {
   /** the log used by this class */
   private static final Log log = LogFactory.getLog(FileAction.class);
 
-  @Inject
-  private LastModifiedService lastModifiedService;
-
   /**
    * Peforms the processing associated with this action.
    *
@@ -98,15 +91,8 @@ public class FileAction extends Action {
       return new ForwardView("/viewFiles.secureaction?type=" + type + "&path=" + name);
     }
 
-    Date lastModified = new Date(file.lastModified());
-    Calendar expires = blog.getCalendar();
-    expires.add(Calendar.MONTH, 1);
-
-    if (lastModifiedService.checkAndProcessLastModified(request, response, lastModified, expires.getTime())) {
-      return new NotModifiedView();
-    } else {
-      return new FileView(file);
-    }
+    // FileView handles conditional and range requests itself
+    return new FileView(file);
   }
 
 }
\ No newline at end of file
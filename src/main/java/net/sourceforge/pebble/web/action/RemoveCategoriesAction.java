@@ -32,6 +32,9 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.PageCache;
+import net.sourceforge.pebble.ValidatorCache;
 import net.sourceforge.pebble.dao.CategoryDAO;
 import net.sourceforge.pebble.dao.DAOFactory;
 import net.sourceforge.pebble.dao.PersistenceException;
@@ -81,6 +84,11 @@ public class RemoveCategoriesAction extends SecureAction {
           }
         }
       }
+
+      // categories are listed on every page, and in feeds
+      PageCache.getInstance().removeBlog(blog);
+      FeedCache.getInstance().removeBlog(blog);
+      ValidatorCache.getInstance().removeBlog(blog);
     }
 
     return new ForwardView("/viewCategories.secureaction");
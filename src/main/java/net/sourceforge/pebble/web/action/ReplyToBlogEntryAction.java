@@ -73,7 +73,7 @@ public class ReplyToBlogEntryAction extends AbstractCommentAction {
     BlogEntry blogEntry = null;
     if (entryId != null) {
       try {
-        blogEntry = service.getBlogEntry(blog, entryId);
+        blogEntry = service.getReadOnlyBlogEntry(blog, entryId);
       } catch (BlogServiceException e) {
         throw new ServletException(e);
       }
@@ -112,7 +112,11 @@ public class ReplyToBlogEntryAction extends AbstractCommentAction {
       String parentCommentId = request.getParameter("comment");
       if (parentCommentId != null && parentCommentId.length() > 0) {
         Comment parentComment = blogEntry.getComment(Long.parseLong(parentCommentId));
-        blog.getContentDecoratorChain().decorate(decoratorContext, parentComment);
+        if (parentComment != null) {
+          // the blog entry is read-only, so a copy of the comment is decorated
+          parentComment = (Comment)parentComment.clone();
+          blog.getContentDecoratorChain().decorate(decoratorContext, parentComment);
+        }
         getModel().put("parentComment", parentComment);
       }
 
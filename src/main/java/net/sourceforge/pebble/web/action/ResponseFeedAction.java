@@ -32,13 +32,12 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
 import net.sourceforge.pebble.domain.*;
-import net.sourceforge.pebble.service.LastModifiedService;
 import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.*;
 
-import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -51,9 +50,6 @@ import java.util.*;
  */
 public class ResponseFeedAction extends Action {
 
-  @Inject
-  private LastModifiedService lastModifiedService;
-
   /**
    * Peforms the processing associated with this action.
    *
@@ -64,22 +60,35 @@ public class ResponseFeedAction extends Action {
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog) getModel().get(Constants.BLOG_KEY);
     String flavor = request.getParameter("flavor");
+    String entryId = request.getParameter("entry");
 
-    if (lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)) {
-      return new NotModifiedView();
+    // feeds only change when responses do, so serve them from the cache where possible
+    FeedCache feedCache = FeedCache.getInstance();
+    String cacheKey = getCacheKey(flavor, entryId);
+    FeedCache.Feed feed = feedCache.getFeed(blog, cacheKey);
+    if (feed != null) {
+      if (CachedFeedView.isNotModified(feed, request, response)) {
+        return new NotModifiedView();
+      } else {
+        return new CachedFeedView(feed);
+      }
     }
+    long generation = feedCache.getGeneration(blog);
+
     List<Response> responses = new ArrayList<Response>();
 
-    String entryId = request.getParameter("entry");
     if (entryId != null) {
       BlogService service = new BlogService();
       BlogEntry blogEntry;
       try {
-        blogEntry = service.getBlogEntry(blog, entryId);
+        blogEntry = service.getReadOnlyBlogEntry(blog, entryId);
       } catch (BlogServiceException e) {
         throw new ServletException(e);
       }
       if (blogEntry != null && blogEntry.isPublished()) {
+        if (isNotModified(request, response)) {
+          return new NotModifiedView();
+        }
         getModel().put(Constants.BLOG_ENTRY_KEY, blogEntry);
         for (Response r : blogEntry.getResponses()) {
           if (r.isApproved()) {
@@ -88,6 +97,9 @@ public class ResponseFeedAction extends Action {
         }
       }
     } else {
+      if (isNotModified(request, response)) {
+        return new NotModifiedView();
+      }
       responses = new ArrayList<Response>(blog.getRecentApprovedResponses());
     }
 
@@ -99,10 +111,32 @@ public class ResponseFeedAction extends Action {
 
     getModel().put(Constants.RESPONSES, responses);
 
+    View view;
+    if (flavor != null && flavor.equalsIgnoreCase("atom")) {
+      view = new ResponseFeedView(AbstractRomeFeedView.FeedType.ATOM);
+    } else {
+      view = new ResponseFeedView(AbstractRomeFeedView.FeedType.RSS);
+    }
+
+    return new CachedFeedView(view, cacheKey, FeedCache.Scope.forResponses(entryId, responses), generation);
+  }
+
+  /**
+   * Gets the key that identifies a feed in the feed cache.
+   */
+  private String getCacheKey(String flavor, String entryId) {
+    StringBuilder key = new StringBuilder("responses/");
     if (flavor != null && flavor.equalsIgnoreCase("atom")) {
-      return new ResponseFeedView(AbstractRomeFeedView.FeedType.ATOM);
+      key.append("atom");
     } else {
-      return new ResponseFeedView(AbstractRomeFeedView.FeedType.RSS);
+      key.append("rss");
     }
+
+    if (entryId != null) {
+      key.append("/entry/").append(entryId);
+    }
+
+    return key.toString();
   }
+
 }
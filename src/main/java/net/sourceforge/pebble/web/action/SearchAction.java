@@ -32,7 +32,10 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.AbstractBlog;
 import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.index.SearchIndex;
+import net.sourceforge.pebble.search.FederatedSearch;
 import net.sourceforge.pebble.search.SearchException;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
@@ -43,6 +46,8 @@ import net.sourceforge.pebble.web.view.impl.AdvancedSearchView;
 import net.sourceforge.pebble.web.view.impl.SearchResultsView;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -72,7 +77,7 @@ public class SearchAction extends Action {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
 
-    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
     String query = request.getParameter("query");
 
     if (query == null || query.trim().length() == 0) {
@@ -93,7 +98,19 @@ public class SearchAction extends Action {
     }
 
     try {
-      SearchResults results = blog.getSearchIndex().search(query);
+      String sort = request.getParameter("sort");
+      if (sort == null || !sort.equalsIgnoreCase(SearchIndex.SORT_BY_DATE)) {
+        sort = SearchIndex.SORT_BY_SCORE;
+      }
+
+      // only the hits on the requested page are loaded
+      page = Math.max(page, 1);
+      SearchResults results = search(blog, query, sort, page);
+      int maxPages = (results.getNumberOfHits() + PAGE_SIZE - 1) / PAGE_SIZE;
+      if (page > maxPages && maxPages > 0) {
+        page = maxPages;
+        results = search(blog, query, sort, page);
+      }
 
       if (results.getNumberOfHits() == 1) {
         // if there is only one hit, redirect the user to it without the
@@ -101,17 +118,7 @@ public class SearchAction extends Action {
         SearchHit hit = (SearchHit)results.getHits().get(0);
         return new RedirectView(hit.getPermalink());
       } else {
-        // show all results on the search results page
-        String sort = request.getParameter("sort");
-        if (sort != null && sort.equalsIgnoreCase("date")) {
-          results.sortByDateDescending();
-        } else {
-          results.sortByScoreDescending();
-        }
-
-        Pageable pageable = new Pageable(results.getHits());
-        pageable.setPageSize(PAGE_SIZE);
-        pageable.setPage(page);
+        Pageable pageable = new Pageable(results.getHits(), results.getNumberOfHits(), PAGE_SIZE, page);
 
         try {
           getModel().put("searchResults", results);
@@ -128,4 +135,18 @@ public class SearchAction extends Action {
     }
   }
 
-}
\ No newline at end of file
+  /**
+   * Searches a single blog or, on the home page of a multi-blog installation,
+   * all of the blogs that the current user can read.
+   */
+  private SearchResults search(AbstractBlog blog, String query, String sort, int page) throws SearchException {
+    int offset = (page-1) * PAGE_SIZE;
+    if (blog instanceof Blog) {
+      return ((Blog)blog).getSearchIndex().search(query, sort, offset, PAGE_SIZE);
+    } else {
+      Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+      return new FederatedSearch(blog.getLocale()).search(FederatedSearch.getSearchableBlogs(auth), query, sort, offset, PAGE_SIZE);
+    }
+  }
+
+}
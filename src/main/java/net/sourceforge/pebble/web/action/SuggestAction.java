@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.index.SuggestionIndex;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.SuggestionsView;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Suggests titles, tags, categories and authors that start with what has
+ * been typed so far, for autocompleting the search box and the blog entry
+ * editor.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestAction extends Action {
+
+  /** the number of suggestions returned if none is specified */
+  static final int DEFAULT_MAX = 10;
+
+  /** the largest number of suggestions that can be asked for */
+  static final int MAX = 50;
+
+  /**
+   * Peforms the processing associated with this action.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @return the name of the next view
+   */
+  public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+    String prefix = request.getParameter("q");
+    String type = request.getParameter("type");
+    if (type != null && type.trim().length() == 0) {
+      type = null;
+    }
+
+    int max = DEFAULT_MAX;
+    String maxAsString = request.getParameter("max");
+    if (maxAsString != null && maxAsString.length() > 0) {
+      try {
+        max = Math.min(Integer.parseInt(maxAsString), MAX);
+      } catch (NumberFormatException nfe) {
+        // not a number, so the default limit is used
+      }
+    }
+
+    List<SuggestionIndex.Suggestion> suggestions;
+    if (blog instanceof Blog) {
+      suggestions = ((Blog)blog).getSuggestionIndex().getSuggestions(prefix, type, max);
+    } else {
+      suggestions = Collections.emptyList();
+    }
+    getModel().put("suggestions", suggestions);
+
+    return new SuggestionsView();
+  }
+
+}
@@ -32,6 +32,7 @@
 package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.SearchResultCache;
 import net.sourceforge.pebble.domain.Category;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.util.Utilities;
@@ -90,6 +91,11 @@ public class UtilitiesAction extends SecureAction {
       }
     }
 
+    SearchResultCache searchResultCache = SearchResultCache.getInstance();
+    getModel().put("searchResultCacheSize", searchResultCache.getSize(blog));
+    getModel().put("searchResultCacheHits", searchResultCache.getHits(blog));
+    getModel().put("searchResultCacheMisses", searchResultCache.getMisses(blog));
+
     return new UtilitiesView();
   }
 
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.index.FacetIndex;
+import net.sourceforge.pebble.index.FacetQuery;
+import net.sourceforge.pebble.util.Pageable;
+import net.sourceforge.pebble.util.SecurityUtils;
+import net.sourceforge.pebble.web.view.NotModifiedView;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.BlogEntriesView;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Views blog entries by any combination of tags, categories, authors,
+ * months and state, page by page (e.g. /facets/?tag=java,jvm&amp;author=simon).
+ * Alongside the blog entries, the number of matching blog entries for each
+ * value of each facet is made available for narrowing the query down.
+ *
+ * @author    Simon Brown
+ */
+public class ViewBlogEntriesByFacetAction extends Action {
+
+  /**
+   * Peforms the processing associated with this action.
+   *
+   * @param request     the HttpServletRequest instance.
+   * @param response    the HttpServletResponse instance.
+   * @return            the next View
+   */
+  public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
+    Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+
+    FacetQuery query = getFacetQuery(request);
+
+    int page;
+    try {
+      page = Integer.parseInt(request.getParameter("page"));
+    } catch (NumberFormatException nfe) {
+      page = 1;
+    }
+
+    // only those that can see unpublished blog entries elsewhere can browse them
+    FacetQuery queryForUser = query;
+    if (!SecurityUtils.isUserAuthorisedForBlog(blog)) {
+      queryForUser = new FacetQuery(query).require(FacetIndex.STATE, FacetIndex.PUBLISHED);
+    }
+
+    FacetIndex facetIndex = blog.getFacetIndex();
+    Pageable<String> pageable = new Pageable<String>(facetIndex.getBlogEntries(queryForUser));
+    pageable.setPageSize(blog.getRecentBlogEntriesOnHomePage());
+    pageable.setPage(page);
+    List<BlogEntry> blogEntries = blog.getBlogEntries(pageable.getListForPage());
+
+    // queries that match nothing (and pages past the end) aren't validated
+    if (!blogEntries.isEmpty() && isNotModified(request, response)) {
+      return new NotModifiedView();
+    }
+
+    Map<String,SortedMap<String,Integer>> counts = new LinkedHashMap<String,SortedMap<String,Integer>>();
+    for (String facet : FacetIndex.getFacets()) {
+      counts.put(facet, facetIndex.getCounts(facet, queryForUser));
+    }
+
+    getModel().put(Constants.MONTHLY_BLOG, blog.getBlogForThisMonth());
+    getModel().put(Constants.BLOG_ENTRIES, blogEntries);
+    getModel().put("displayMode", "facets");
+    getModel().put("facetQuery", query);
+    getModel().put("facetCounts", counts);
+    getModel().put("page", page);
+    getModel().put("pageable", pageable);
+
+    return new BlogEntriesView();
+  }
+
+  /**
+   * Builds a facet query from the request parameters named after facets.
+   *
+   * @param request   the HttpServletRequest instance
+   * @return  a FacetQuery instance, which is empty if there are no such
+   *          parameters
+   */
+  static FacetQuery getFacetQuery(HttpServletRequest request) {
+    FacetQuery query = new FacetQuery();
+    for (String facet : FacetIndex.getFacets()) {
+      String[] expressions = request.getParameterValues(facet);
+      if (expressions != null) {
+        for (String expression : expressions) {
+          query.add(facet, expression);
+        }
+      }
+    }
+
+    return query;
+  }
+
+}
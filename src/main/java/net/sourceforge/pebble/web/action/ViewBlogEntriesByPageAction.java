@@ -36,6 +36,7 @@ import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.util.Pageable;
 import net.sourceforge.pebble.web.view.RedirectView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.BlogEntriesView;
 
@@ -102,6 +103,13 @@ public class ViewBlogEntriesByPageAction extends Action {
       pageable.setPageSize(blog.getRecentBlogEntriesOnHomePage());
       pageable.setPage(page);
       List<String> blogEntryIds = pageable.getListForPage();
+
+      // pages past the end are empty, so aren't validated; this is decided
+      // from the index, so that nothing is loaded for a conditional request
+      if ((page == 1 || !blogEntryIds.isEmpty()) && isNotModified(request, response)) {
+        return new NotModifiedView();
+      }
+
       List<BlogEntry> blogEntries = blog.getBlogEntries(blogEntryIds);
 
       getModel().put(Constants.BLOG_ENTRIES, blogEntries);
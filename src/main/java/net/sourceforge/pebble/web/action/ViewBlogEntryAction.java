@@ -37,6 +37,7 @@ import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.util.CookieUtils;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.BlogEntryView;
 
@@ -67,7 +68,7 @@ public class ViewBlogEntryAction extends AbstractCommentAction {
     if (entryId != null) {
       BlogService service = new BlogService();
       try {
-        blogEntry = service.getBlogEntry(blog, entryId);
+        blogEntry = service.getReadOnlyBlogEntry(blog, entryId);
       } catch (BlogServiceException e) {
         throw new ServletException(e);
       }
@@ -81,12 +82,13 @@ public class ViewBlogEntryAction extends AbstractCommentAction {
     } else if (!blogEntry.isPublished() && !(SecurityUtils.isUserAuthorisedForBlog(blog))) {
       // the entry exists, but isn't yet published
       return new NotFoundView();
+    } else if (isNotModified(request, response)) {
+      return new NotModifiedView();
     } else {
       getModel().put(Constants.BLOG_ENTRY_KEY, blogEntry);
       getModel().put(Constants.MONTHLY_BLOG, blog.getBlogForDay(blogEntry.getDate()).getMonth());
       getModel().put("displayMode", "detail");
 
-
       // is "remember me" set?
       Cookie rememberMe = CookieUtils.getCookie(request.getCookies(), "rememberMe");
       if (rememberMe != null) {
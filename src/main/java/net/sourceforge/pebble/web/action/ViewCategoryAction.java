@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.action;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.web.view.ForwardView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 
 import javax.servlet.ServletException;
@@ -58,7 +59,14 @@ public class ViewCategoryAction extends Action {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
+
     String category = request.getParameter("category");
+
+    // categories that don't exist just give an empty search, so aren't validated
+    if (category != null && blog.getCategory(category) != null && isNotModified(request, response)) {
+      return new NotModifiedView();
+    }
+
     try {
       return new ForwardView("/search.action?query=category:" + URLEncoder.encode(category, blog.getCharacterEncoding()) + "&sort=date");
     } catch (UnsupportedEncodingException uee) {
@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.action;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.BlogEntriesByDayView;
 
@@ -59,6 +60,7 @@ public class ViewDayAction extends Action {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
+
     String year = request.getParameter("year");
     String month = request.getParameter("month");
     String day = request.getParameter("day");
@@ -80,6 +82,10 @@ public class ViewDayAction extends Action {
       throw new ServletException(e);
     }
 
+    if (isNotModified(request, response)) {
+      return new NotModifiedView();
+    }
+
     getModel().put(Constants.MONTHLY_BLOG, daily.getMonth());
     getModel().put(Constants.DAILY_BLOG, daily);
     getModel().put(Constants.BLOG_ENTRIES, filter(blog, blogEntries));
@@ -34,6 +34,7 @@ package net.sourceforge.pebble.web.action;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.NotFoundView;
 import net.sourceforge.pebble.web.view.impl.BlogEntriesByMonthView;
@@ -64,6 +65,7 @@ public class ViewMonthAction extends Action {
     String month = request.getParameter("month");
 
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+
     Month monthly;
     if (year != null && year.length() > 0 &&
         month != null && month.length() > 0) {
@@ -72,6 +74,10 @@ public class ViewMonthAction extends Action {
       return new NotFoundView();
     }
 
+    if (isNotModified(request, response)) {
+      return new NotModifiedView();
+    }
+
     BlogService service = new BlogService();
 
     List<BlogEntry> blogEntries = null;
@@ -84,11 +84,11 @@ public class ViewResponsesAction extends SecureAction {
 
     List responses = null;
     if (type.equalsIgnoreCase("pending")) {
-      responses = new ArrayList(blog.getPendingResponses());
+      responses = blog.getPendingResponses();
     } else if (type.equalsIgnoreCase("rejected")) {
-      responses = new ArrayList(blog.getRejectedResponses());
+      responses = blog.getRejectedResponses();
     } else {
-      responses = new ArrayList(blog.getApprovedResponses());
+      responses = blog.getApprovedResponses();
     }
 
     Pageable pageable = new Pageable(responses) {
@@ -37,6 +37,7 @@ import net.sourceforge.pebble.domain.StaticPage;
 import net.sourceforge.pebble.service.StaticPageService;
 import net.sourceforge.pebble.service.StaticPageServiceException;
 import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.StaticPageView;
 
@@ -73,6 +74,8 @@ public class ViewStaticPageAction extends Action {
       // the page cannot be found - it may have been removed or the
       // requesting URL was wrong
       return new NotFoundView();
+    } else if (isNotModified(request, response)) {
+      return new NotModifiedView();
     } else {
       getModel().put(Constants.STATIC_PAGE_KEY, staticPage);
       getModel().put(Constants.MONTHLY_BLOG, blog.getBlogForThisMonth());
@@ -35,6 +35,7 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.Tag;
 import net.sourceforge.pebble.web.view.ForwardView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.View;
 
 import javax.servlet.ServletException;
@@ -59,7 +60,14 @@ public class ViewTagAction extends Action {
    */
   public View process(HttpServletRequest request, HttpServletResponse response) throws ServletException {
     Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+
     String tag = request.getParameter("tag");
+
+    // tags that don't exist just give an empty search, so aren't validated
+    if (tag != null && blog.getTags().contains(blog.getTag(tag)) && isNotModified(request, response)) {
+      return new NotModifiedView();
+    }
+
     try {
       return new ForwardView("/search.action?query=tag:\"" + URLEncoder.encode(Tag.encode(tag), blog.getCharacterEncoding()) + "\"&sort=date");
     } catch (UnsupportedEncodingException uee) {
@@ -38,19 +38,51 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
 
+/**
+ * Gzips responses for clients that accept it. Content is compressed as it
+ * is written, and the following init parameters are supported:
+ * <ul>
+ * <li>compressionLevel : from 1 (fastest) to 9 (smallest), default 6</li>
+ * <li>minimumSize : the number of bytes below which responses aren't
+ * compressed, default 1024</li>
+ * <li>excludedContentTypes : a comma separated list of content types (or
+ * prefixes of them, like image/) that are already compressed</li>
+ * </ul>
+ *
+ * @author    Simon Brown
+ */
 public class GZIPFilter implements Filter {
 
+  static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+  static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+  static final String DEFAULT_EXCLUDED_CONTENT_TYPES =
+      "image/,audio/,video/,application/zip,application/x-zip-compressed,application/gzip,application/x-gzip," +
+      "application/x-compress,application/x-bzip2,application/x-rar-compressed,application/pdf,application/java-archive";
+
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private int minimumSize = DEFAULT_MINIMUM_SIZE;
+  private List<String> excludedContentTypes = parseContentTypes(DEFAULT_EXCLUDED_CONTENT_TYPES);
+
   public void doFilter(ServletRequest req, ServletResponse res,
                        FilterChain chain) throws IOException, ServletException {
 
       HttpServletRequest request = (HttpServletRequest) req;
       HttpServletResponse response = (HttpServletResponse) res;
 
+      // caches need to know that the content depends on the Accept-Encoding
+      // header, whether or not this client accepts gzip
+      response.addHeader("Vary", "Accept-Encoding");
+
       String ae = request.getHeader("Accept-Encoding");
       if (ae != null && ae.indexOf("gzip") != -1) {
         String encoding = ((AbstractBlog)request.getAttribute(Constants.BLOG_KEY)).getCharacterEncoding();
-        GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, encoding);
+        GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, encoding, compressionLevel, minimumSize, excludedContentTypes);
         chain.doFilter(req, wrappedResponse);
         wrappedResponse.finishResponse();
       } else {
@@ -59,6 +91,32 @@ public class GZIPFilter implements Filter {
   }
 
   public void init(FilterConfig filterConfig) {
+    String value = filterConfig.getInitParameter("compressionLevel");
+    if (value != null && value.trim().length() > 0) {
+      compressionLevel = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, Integer.parseInt(value.trim())));
+    }
+
+    value = filterConfig.getInitParameter("minimumSize");
+    if (value != null && value.trim().length() > 0) {
+      minimumSize = Math.max(0, Integer.parseInt(value.trim()));
+    }
+
+    value = filterConfig.getInitParameter("excludedContentTypes");
+    if (value != null) {
+      excludedContentTypes = parseContentTypes(value);
+    }
+  }
+
+  private static List<String> parseContentTypes(String s) {
+    List<String> contentTypes = new ArrayList<String>();
+    for (String contentType : s.split(",")) {
+      contentType = contentType.trim().toLowerCase();
+      if (contentType.length() > 0) {
+        contentTypes.add(contentType);
+      }
+    }
+
+    return contentTypes;
   }
 
   public void destroy() {
@@ -36,51 +36,110 @@ import java.util.zip.GZIPOutputStream;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+/**
+ * An output stream that gzips content as it is written, rather than
+ * holding the whole response in memory. The first few bytes are buffered
+ * until there are enough of them to be worth compressing; responses that
+ * end before then are sent as they are, with their length. Otherwise the
+ * Content-Encoding header is added (and any ETag given a suffix, since the
+ * gzipped content is a different representation) and compressed data is
+ * written to the response as the compressor produces it.
+ *
+ * @author    Simon Brown
+ */
 public class GZIPResponseStream extends ServletOutputStream {
 
-  protected ByteArrayOutputStream baos = null;
-  protected GZIPOutputStream gzipstream = null;
-  protected boolean closed = false;
-  protected HttpServletResponse response = null;
-  protected ServletOutputStream output = null;
+  /** the size of the buffer used by the compressor */
+  private static final int BUFFER_SIZE = 8192;
+
+  private final GZIPResponseWrapper wrapper;
+  private final HttpServletResponse response;
+  private final int compressionLevel;
 
-  public GZIPResponseStream(HttpServletResponse response) throws IOException {
-    closed = false;
+  /** content written before deciding whether to compress it */
+  private final byte[] buffer;
+  private int count;
+
+  private OutputStream output;
+  private GZIPOutputStream gzipstream;
+  private boolean closed;
+
+  /**
+   * Creates a new instance.
+   *
+   * @param wrapper             the wrapper that decides whether the content can be compressed
+   * @param response            the response being wrapped
+   * @param compressionLevel    the compression level, from 1 to 9
+   * @param minimumSize         the number of bytes below which content isn't compressed
+   */
+  public GZIPResponseStream(GZIPResponseWrapper wrapper, HttpServletResponse response, int compressionLevel, int minimumSize) {
+    this.wrapper = wrapper;
     this.response = response;
-    this.output = response.getOutputStream();
-    baos = new ByteArrayOutputStream();
-    gzipstream = new GZIPOutputStream(baos);
+    this.compressionLevel = compressionLevel;
+    this.buffer = new byte[Math.max(0, minimumSize)];
+  }
+
+  /**
+   * Starts sending content, compressed if the response allows it.
+   */
+  private void start() throws IOException {
+    if (wrapper.shouldGzipResponse()) {
+      response.addHeader("Content-Encoding", "gzip");
+      String eTag = wrapper.getGzippedETag();
+      if (eTag != null) {
+        response.setHeader("ETag", eTag);
+      }
+      gzipstream = new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE) {
+        {
+          def.setLevel(compressionLevel);
+        }
+      };
+      output = gzipstream;
+    } else {
+      wrapper.sendContentLength();
+      output = response.getOutputStream();
+    }
+
+    output.write(buffer, 0, count);
+    count = 0;
   }
 
   public void close() throws IOException {
     if (closed) {
-      throw new IOException("This output stream has already been closed");
+      return;
     }
-    gzipstream.finish();
-    gzipstream.flush();
-    gzipstream.close();
-
-    byte[] bytes = baos.toByteArray();
-    response.setContentLength(bytes.length);
-    response.addHeader("Content-Encoding", "gzip");
-    output.write(bytes);
-    output.flush();
-    output.close();
     closed = true;
+
+    if (output == null) {
+      // everything fitted in the buffer, so it isn't worth compressing; an
+      // empty body (HEAD, redirects) keeps whatever length was set for it
+      if (count > 0) {
+        response.setContentLength(count);
+      } else {
+        wrapper.sendContentLength();
+      }
+      output = response.getOutputStream();
+      output.write(buffer, 0, count);
+    } else if (gzipstream != null) {
+      gzipstream.finish();
+    }
+    output.flush();
   }
 
   public void flush() throws IOException {
     if (closed) {
       throw new IOException("Cannot flush a closed output stream");
     }
-    gzipstream.flush();
+
+    // until there is enough content to decide whether to compress it, a
+    // flush can't send anything
+    if (output != null) {
+      output.flush();
+    }
   }
 
   public void write(int b) throws IOException {
-    if (closed) {
-      throw new IOException("Cannot write to a closed output stream");
-    }
-    gzipstream.write((byte) b);
+    write(new byte[] { (byte)b }, 0, 1);
   }
 
   public void write(byte b[]) throws IOException {
@@ -91,6 +150,16 @@ public class GZIPResponseStream extends ServletOutputStream {
     if (closed) {
       throw new IOException("Cannot write to a closed output stream");
     }
-    gzipstream.write(b, off, len);
+
+    if (output == null) {
+      if (count + len <= buffer.length) {
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+        return;
+      }
+      start();
+    }
+    output.write(b, off, len);
   }
-}
\ No newline at end of file
+
+}
@@ -37,39 +37,118 @@ import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.List;
 
+/**
+ * Wraps a response so that its content is gzipped, unless it's too small
+ * to be worth compressing, is of a type that is already compressed (images,
+ * archives, etc) or has already been encoded by whatever produced it.
+ *
+ * @author    Simon Brown
+ */
 public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 
   private final HttpServletResponse wrappedResponse;
   private final String encoding;
+  private final int compressionLevel;
+  private final int minimumSize;
+  private final List<String> excludedContentTypes;
 
   private ServletOutputStream stream;
   private PrintWriter writer;
   private int status;
   private Integer contentLength;
+  private String contentType;
+  private String eTag;
+  private boolean encoded;
+  private boolean identityOnly;
 
-  public GZIPResponseWrapper(HttpServletResponse wrappedResponse, String encoding) {
+  public GZIPResponseWrapper(HttpServletResponse wrappedResponse, String encoding, int compressionLevel, int minimumSize, List<String> excludedContentTypes) {
     super(wrappedResponse);
     this.wrappedResponse = wrappedResponse;
     this.encoding = encoding;
+    this.compressionLevel = compressionLevel;
+    this.minimumSize = minimumSize;
+    this.excludedContentTypes = excludedContentTypes;
   }
 
   public ServletOutputStream createOutputStream() throws IOException {
     if (shouldGzipResponse()) {
-      return (new GZIPResponseStream(wrappedResponse));
+      return new GZIPResponseStream(this, wrappedResponse, compressionLevel, minimumSize);
     } else {
-      // If we aren't zipping the response, then we need to pass on the content length
-      if (contentLength != null) {
-        wrappedResponse.setContentLength(contentLength);
-      }
+      sendContentLength();
       return wrappedResponse.getOutputStream();
     }
   }
 
-  private boolean shouldGzipResponse() {
+  /**
+   * Determines whether the response should be gzipped, based upon what is
+   * known about it so far.
+   *
+   * @return  true if the content should be compressed, false otherwise
+   */
+  boolean shouldGzipResponse() {
     // PEBBLE-43 We shouldn't zip responses that are not allowed to have any content, because a zipped
     // empty response is actually 20 bytes long
-    return status != HttpServletResponse.SC_NOT_MODIFIED && status != HttpServletResponse.SC_NO_CONTENT;
+    if (status == HttpServletResponse.SC_NOT_MODIFIED || status == HttpServletResponse.SC_NO_CONTENT) {
+      return false;
+    }
+
+    // byte ranges and lengths that have been passed through as they were set
+    // only hold for the content as it is
+    if (status == HttpServletResponse.SC_PARTIAL_CONTENT || identityOnly) {
+      return false;
+    }
+
+    if (encoded || (contentLength != null && contentLength < minimumSize)) {
+      return false;
+    }
+
+    if (contentType != null) {
+      String type = contentType.toLowerCase();
+      for (String excludedContentType : excludedContentTypes) {
+        if (type.startsWith(excludedContentType)) {
+          return false;
+        }
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets the entity tag that was set for the content, changed to identify
+   * the gzipped version of it.
+   *
+   * @return  the gzipped entity tag, or null if no ETag header was set
+   */
+  String getGzippedETag() {
+    return getGzippedETag(eTag);
+  }
+
+  /**
+   * Gets the entity tag that identifies the gzipped version of some content,
+   * since it's a different representation to the one the tag was made for.
+   *
+   * @param eTag    a quoted (strong or weak) entity tag
+   * @return  the entity tag with a -gzip suffix, or null if eTag is null
+   */
+  public static String getGzippedETag(String eTag) {
+    if (eTag == null || !eTag.endsWith("\"")) {
+      return eTag;
+    }
+
+    return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+  }
+
+  /**
+   * Passes on the content length, if one was set, for when the content
+   * isn't being compressed.
+   */
+  void sendContentLength() {
+    if (contentLength != null) {
+      wrappedResponse.setContentLength(contentLength);
+    }
   }
 
   public void finishResponse() {
@@ -87,9 +166,11 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
   }
 
   public void flushBuffer() throws IOException {
-	if (stream != null) {
-	  stream.flush();
-	}
+    if (writer != null) {
+      writer.flush();
+    } else if (stream != null) {
+      stream.flush();
+    }
   }
 
   public ServletOutputStream getOutputStream() throws IOException {
@@ -120,6 +201,57 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
     contentLength = length;
   }
 
+  @Override
+  public void setContentType(String type) {
+    this.contentType = type;
+    super.setContentType(type);
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (!interceptHeader(name, value)) {
+      super.setHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (!interceptHeader(name, value)) {
+      super.addHeader(name, value);
+    }
+  }
+
+  /**
+   * Keeps track of the headers that affect whether the response is gzipped.
+   *
+   * @return  true if the header has been dealt with, false if it should be
+   *          passed on
+   */
+  private boolean interceptHeader(String name, String value) {
+    if (name.equalsIgnoreCase("Content-Length")) {
+      try {
+        contentLength = Integer.parseInt(value.trim());
+        return true;
+      } catch (NumberFormatException nfe) {
+        // too big to be held here (or just bad), so leave the content alone
+        // and let the header through as it is
+        contentLength = null;
+        identityOnly = true;
+        return false;
+      }
+    } else if (name.equalsIgnoreCase("Content-Encoding")) {
+      encoded = true;
+    } else if (name.equalsIgnoreCase("ETag")) {
+      eTag = value.trim();
+    } else if (name.equalsIgnoreCase("Content-Range")) {
+      identityOnly = true;
+    } else if (name.equalsIgnoreCase("Content-Type")) {
+      contentType = value;
+    }
+
+    return false;
+  }
+
   @Override
   public void setStatus(int sc) {
     this.status = sc;
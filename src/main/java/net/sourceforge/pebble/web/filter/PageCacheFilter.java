@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.PageCache;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.util.CookieUtils;
+import net.sourceforge.pebble.util.SecurityUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Serves the pages that anonymous readers see most often (the home page,
+ * permalinks and the various archive pages) from the page cache, and adds
+ * the rendered page to the cache when it isn't there. Anybody who is logged
+ * in, has asked for their comment details to be remembered or is doing
+ * something other than a GET always gets a freshly rendered page.
+ * <p />
+ * This needs to run after the security filters (so that the user is known)
+ * but before the PreProcessingFilter, so that a cache hit skips all of the
+ * work of setting up the page.
+ *
+ * @author    Simon Brown
+ */
+public class PageCacheFilter implements Filter {
+
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(PageCacheFilter.class);
+
+  /** the internal URIs of the actions whose pages can be cached */
+  private static final Set<String> CACHEABLE_URIS = new HashSet<String>(Arrays.asList(
+      "/viewHomePage.action",
+      "/viewBlogEntriesByPage.action",
+      "/viewBlogEntriesByFacet.action",
+      "/viewBlogEntry.action",
+      "/viewDay.action",
+      "/viewMonth.action",
+      "/viewTag.action",
+      "/viewCategory.action"
+  ));
+
+  /**
+   * Initialises this instance.
+   *
+   * @param config    a FilterConfig instance
+   */
+  public void init(FilterConfig config) {
+  }
+
+  /**
+   * Called when this filter is taken out of service.
+   */
+  public void destroy() {
+  }
+
+  /**
+   * Contains the processing associated with this filter.
+   */
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+
+    HttpServletRequest httpRequest = (HttpServletRequest)request;
+    HttpServletResponse httpResponse = (HttpServletResponse)response;
+    PageCache pageCache = PageCache.getInstance();
+
+    if (!pageCache.isEnabled() || !isCacheable(httpRequest)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    Blog blog = (Blog)request.getAttribute(Constants.BLOG_KEY);
+    String uri = (String)request.getAttribute(Constants.EXTERNAL_URI);
+
+    PageCache.Page page = pageCache.getPage(blog, uri);
+    String matchingETag = page != null ? getMatchingETag(page, httpRequest) : null;
+    if (matchingETag != null) {
+      httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      httpResponse.setHeader("ETag", matchingETag);
+      addVary(httpResponse);
+      blog.log(httpRequest, HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    if (page != null) {
+      log.debug("Serving " + uri + " from the page cache");
+      writePage(page, httpRequest, httpResponse);
+
+      // the view would normally do this
+      blog.log(httpRequest, HttpServletResponse.SC_OK);
+      return;
+    }
+
+    long generation = pageCache.getGeneration(blog);
+    boolean hadSession = httpRequest.getSession(false) != null;
+    PageCaptureResponseWrapper wrappedResponse = new PageCaptureResponseWrapper(httpResponse, pageCache.getMaxPageSize());
+    chain.doFilter(request, wrappedResponse);
+
+    // a new session means that the page may contain something specific to this reader
+    boolean hasSession = httpRequest.getSession(false) != null;
+    if (wrappedResponse.isCacheable() && hadSession == hasSession) {
+      page = new PageCache.Page(
+          wrappedResponse.getContentType(),
+          wrappedResponse.getHeaders(),
+          wrappedResponse.getContent(),
+          getBlogEntryIds(httpRequest));
+      pageCache.putPage(blog, uri, page, generation);
+    }
+  }
+
+  private boolean isCacheable(HttpServletRequest request) {
+    AbstractBlog blog = (AbstractBlog)request.getAttribute(Constants.BLOG_KEY);
+    if (!(blog instanceof Blog) || !"GET".equals(request.getMethod()) || SecurityUtils.isUserAuthenticated()) {
+      return false;
+    }
+
+    // comment forms are filled in from the "remember me" cookie
+    if (CookieUtils.getCookie(request.getCookies(), "rememberMe") != null) {
+      return false;
+    }
+
+    String internalUri = (String)request.getAttribute(Constants.INTERNAL_URI);
+    if (internalUri == null) {
+      return false;
+    }
+    int index = internalUri.indexOf('?');
+    if (index > -1) {
+      internalUri = internalUri.substring(0, index);
+    }
+
+    if (internalUri.equals("/viewHomePage.action")) {
+      // static home pages aren't invalidated by blog entry changes
+      String homePage = ((Blog)blog).getHomePage();
+      return homePage == null || homePage.equals("");
+    }
+
+    return CACHEABLE_URIS.contains(internalUri);
+  }
+
+  /**
+   * Gets the IDs of the blog entries shown on the page that has just been
+   * rendered, from the request attributes set up by the action.
+   */
+  @SuppressWarnings("unchecked")
+  private Set<String> getBlogEntryIds(HttpServletRequest request) {
+    Set<String> blogEntryIds = new HashSet<String>();
+
+    BlogEntry blogEntry = (BlogEntry)request.getAttribute(Constants.BLOG_ENTRY_KEY);
+    if (blogEntry != null) {
+      blogEntryIds.add(blogEntry.getId());
+    }
+
+    addBlogEntryIds(blogEntryIds, (Collection<BlogEntry>)request.getAttribute(Constants.BLOG_ENTRIES));
+    addBlogEntryIds(blogEntryIds, (Collection<BlogEntry>)request.getAttribute(Constants.RECENT_BLOG_ENTRIES));
+
+    return blogEntryIds;
+  }
+
+  private void addBlogEntryIds(Set<String> blogEntryIds, Collection<BlogEntry> blogEntries) {
+    if (blogEntries != null) {
+      for (BlogEntry blogEntry : blogEntries) {
+        blogEntryIds.add(blogEntry.getId());
+      }
+    }
+  }
+
+  /**
+   * Determines whether the reader already has the cached page, using the
+   * entity tag that the action set when the page was rendered, or the one
+   * that identifies the gzipped version of it.
+   *
+   * @return  the entity tag that the reader has, or null if they don't
+   *          have the cached page
+   */
+  private String getMatchingETag(PageCache.Page page, HttpServletRequest request) {
+    String eTag = getHeader(page, "ETag");
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (eTag == null || ifNoneMatch == null) {
+      return null;
+    }
+
+    String gzippedETag = GZIPResponseWrapper.getGzippedETag(eTag);
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(eTag)) {
+        return eTag;
+      } else if (tag.equals(gzippedETag)) {
+        return gzippedETag;
+      }
+    }
+
+    return null;
+  }
+
+  private String getHeader(PageCache.Page page, String name) {
+    for (String[] header : page.getHeaders()) {
+      if (header[0].equalsIgnoreCase(name)) {
+        return header[1];
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Writes a cached page. When the response is being gzipped, the already
+   * gzipped content is written to the response underneath the GZIPFilter,
+   * with the entity tag that the GZIPFilter would have given it.
+   * Not every cacheable page goes through the GZIPFilter, so the Vary
+   * header is added here if it hasn't been already.
+   */
+  private void writePage(PageCache.Page page, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    HttpServletResponse target = response;
+    ServletResponse r = response;
+    while (r instanceof ServletResponseWrapper) {
+      if (r instanceof GZIPResponseWrapper) {
+        target = (HttpServletResponse)((GZIPResponseWrapper)r).getResponse();
+        break;
+      }
+      r = ((ServletResponseWrapper)r).getResponse();
+    }
+
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    boolean gzip = acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1;
+    byte[] content = gzip ? page.getGzippedContent() : page.getContent();
+
+    target.setContentType(page.getContentType());
+    for (String[] header : page.getHeaders()) {
+      if (gzip && header[0].equalsIgnoreCase("ETag")) {
+        target.addHeader(header[0], GZIPResponseWrapper.getGzippedETag(header[1]));
+      } else {
+        target.addHeader(header[0], header[1]);
+      }
+    }
+    if (gzip) {
+      target.addHeader("Content-Encoding", "gzip");
+    }
+    addVary(target);
+    target.setContentLength(content.length);
+
+    ServletOutputStream out = target.getOutputStream();
+    out.write(content);
+    out.flush();
+  }
+
+  private void addVary(HttpServletResponse response) {
+    if (!response.containsHeader("Vary")) {
+      response.addHeader("Vary", "Accept-Encoding");
+    }
+  }
+
+}
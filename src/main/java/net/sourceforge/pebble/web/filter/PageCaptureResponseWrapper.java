@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * Passes a response straight through to the wrapped response, keeping a
+ * copy of the content and headers so that the page can be cached. Anything
+ * that makes the response unsuitable for caching (an error, a redirect, a
+ * cookie or content that's too big) is recorded rather than prevented.
+ *
+ * @author    Simon Brown
+ */
+public class PageCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+  private final int maxSize;
+  private final ByteArrayOutputStream capture = new ByteArrayOutputStream(8192);
+  private final List<String[]> headers = new ArrayList<String[]>();
+
+  private ServletOutputStream stream;
+  private PrintWriter writer;
+  private int status = SC_OK;
+  private boolean cacheable = true;
+
+  public PageCaptureResponseWrapper(HttpServletResponse response, int maxSize) {
+    super(response);
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Determines whether the response can be cached.
+   *
+   * @return  true if the response completed normally, false otherwise
+   */
+  public boolean isCacheable() {
+    return cacheable && status == SC_OK && getContentType() != null;
+  }
+
+  /**
+   * Gets the content written so far, flushing any writer first.
+   *
+   * @return  the content as a byte array
+   */
+  public byte[] getContent() {
+    if (writer != null) {
+      writer.flush();
+    }
+    return capture.toByteArray();
+  }
+
+  /**
+   * Gets the headers that were set, other than the content type and length.
+   *
+   * @return  a List of name/value pairs
+   */
+  public List<String[]> getHeaders() {
+    return headers;
+  }
+
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called!");
+    }
+
+    if (stream == null) {
+      stream = new CaptureOutputStream(super.getOutputStream());
+    }
+    return stream;
+  }
+
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      if (stream != null) {
+        throw new IllegalStateException("getOutputStream() has already been called!");
+      }
+      stream = new CaptureOutputStream(super.getOutputStream());
+      writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  public void flushBuffer() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+    super.flushBuffer();
+  }
+
+  public void setHeader(String name, String value) {
+    removeHeader(name);
+    addCapturedHeader(name, value);
+    super.setHeader(name, value);
+  }
+
+  public void addHeader(String name, String value) {
+    addCapturedHeader(name, value);
+    super.addHeader(name, value);
+  }
+
+  public void setDateHeader(String name, long date) {
+    removeHeader(name);
+    addCapturedHeader(name, formatDate(date));
+    super.setDateHeader(name, date);
+  }
+
+  public void addDateHeader(String name, long date) {
+    addCapturedHeader(name, formatDate(date));
+    super.addDateHeader(name, date);
+  }
+
+  public void setIntHeader(String name, int value) {
+    removeHeader(name);
+    addCapturedHeader(name, "" + value);
+    super.setIntHeader(name, value);
+  }
+
+  public void addIntHeader(String name, int value) {
+    addCapturedHeader(name, "" + value);
+    super.addIntHeader(name, value);
+  }
+
+  public void addCookie(Cookie cookie) {
+    cacheable = false;
+    super.addCookie(cookie);
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    this.status = sc;
+    super.setStatus(sc);
+  }
+
+  @Override
+  public void setStatus(int sc, String sm) {
+    this.status = sc;
+    super.setStatus(sc, sm);
+  }
+
+  @Override
+  public void sendError(int sc, String msg) throws IOException {
+    this.status = sc;
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendError(int sc) throws IOException {
+    this.status = sc;
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    this.status = SC_MOVED_TEMPORARILY;
+    super.sendRedirect(location);
+  }
+
+  private void addCapturedHeader(String name, String value) {
+    if (name.equalsIgnoreCase("Content-Type") || name.equalsIgnoreCase("Content-Length")) {
+      // these are dealt with separately
+    } else if (name.equalsIgnoreCase("Set-Cookie") || name.equalsIgnoreCase("Content-Encoding")) {
+      cacheable = false;
+    } else {
+      headers.add(new String[] {name, value});
+    }
+  }
+
+  private void removeHeader(String name) {
+    Iterator<String[]> it = headers.iterator();
+    while (it.hasNext()) {
+      if (it.next()[0].equalsIgnoreCase(name)) {
+        it.remove();
+      }
+    }
+  }
+
+  private String formatDate(long date) {
+    SimpleDateFormat httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    httpFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+    return httpFormat.format(new Date(date));
+  }
+
+  /**
+   * Writes to the wrapped stream, keeping a copy until the content gets
+   * too big to cache.
+   */
+  private class CaptureOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream out;
+
+    CaptureOutputStream(ServletOutputStream out) {
+      this.out = out;
+    }
+
+    public void write(int b) throws IOException {
+      out.write(b);
+      if (cacheable) {
+        capture.write(b);
+        checkSize();
+      }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      if (cacheable) {
+        capture.write(b, off, len);
+        checkSize();
+      }
+    }
+
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    public void close() throws IOException {
+      out.close();
+    }
+
+    private void checkSize() {
+      if (capture.size() > maxSize) {
+        cacheable = false;
+        capture.reset();
+      }
+    }
+
+  }
+
+}
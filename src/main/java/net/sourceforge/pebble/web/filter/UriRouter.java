@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps incoming URIs onto internal URIs using a table of patterns compiled
+ * into a trie, keyed by path segment. Patterns are made up of literal
+ * segments and captures, for example :
+ * <ul>
+ * <li><code>/about.html</code> - a literal URI</li>
+ * <li><code>/blogentries/{page}.html</code> - a single, non-empty segment</li>
+ * <li><code>/archive/{year:int}</code> - a segment made up of digits</li>
+ * <li><code>/help/{name:word}.html</code> - a segment made up of word characters</li>
+ * <li><code>/categories/{category:path}</code> - one or more segments, as few as possible</li>
+ * <li><code>/images/{name:*}</code> - the remainder of the URI, which may be empty</li>
+ * </ul>
+ * Literal segments are tried before captures, and more specific captures
+ * before less specific ones, backtracking where necessary. A single trailing
+ * slash is ignored, and any query string is passed to the route rather than
+ * matched. Recently routed URIs are cached, so routes must only depend upon
+ * the URI they are given.
+ * <p />
+ * Routes are expected to be registered at startup, although registering
+ * a route later is safe.
+ *
+ * @author    Simon Brown
+ */
+public class UriRouter {
+
+  /** the default number of recently routed URIs that are cached */
+  public static final int DEFAULT_CACHE_SIZE = 512;
+
+  /** cached against URIs that didn't match a route */
+  private static final String NO_ROUTE = new String();
+
+  /** the root of the trie */
+  private final Node root = new Node();
+
+  /** the maximum number of cached URIs */
+  private final int cacheSize;
+
+  /** recently routed URIs, least recently used first */
+  private final Map<String,String> cache;
+
+  /**
+   * Creates a new instance with the default cache size.
+   */
+  public UriRouter() {
+    this(DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param cacheSize   the number of recently routed URIs to cache, 0 disables caching
+   */
+  public UriRouter(int cacheSize) {
+    this.cacheSize = cacheSize;
+    this.cache = new LinkedHashMap<String,String>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+        return size() > UriRouter.this.cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Registers a route whose internal URI is built from a template, in which
+   * captures are referred to as <code>{name}</code>.
+   *
+   * @param pattern     the URI pattern
+   * @param template    the internal URI template, e.g. /viewTag.action?tag={tag}
+   * @throws IllegalArgumentException   if the pattern or template is invalid
+   */
+  public void addRoute(String pattern, String template) {
+    addRoute(pattern, new TemplateRoute(template));
+  }
+
+  /**
+   * Registers a route, replacing any route already registered with the
+   * same pattern.
+   *
+   * @param pattern   the URI pattern
+   * @param route     the Route that builds the internal URI
+   * @throws IllegalArgumentException   if the pattern is invalid
+   */
+  public synchronized void addRoute(String pattern, Route route) {
+    if (pattern == null || !pattern.startsWith("/")) {
+      throw new IllegalArgumentException("Pattern must start with / : " + pattern);
+    }
+
+    Node node = root;
+    if (pattern.length() > 1) {
+      String[] segments = pattern.substring(1).split("/", -1);
+      for (int i = 0; i < segments.length; i++) {
+        String segment = segments[i];
+        int open = segment.indexOf('{');
+        if (open == -1) {
+          Node child = node.literals.get(segment);
+          if (child == null) {
+            child = new Node();
+            node.literals.put(segment, child);
+          }
+          node = child;
+        } else {
+          Capture capture = Capture.parse(pattern, segment, open);
+          if (capture.type == CaptureType.REST && i < segments.length-1) {
+            throw new IllegalArgumentException("{" + capture.name + ":*} must be the last segment : " + pattern);
+          }
+          node = node.addCapture(capture);
+        }
+      }
+    }
+    node.route = route;
+
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Gets the internal URI for the specified URI.
+   *
+   * @param uri   a URI, starting with / and optionally including a query string
+   * @return  the internal URI, or null if no route matches
+   */
+  public String getUri(String uri) {
+    String result;
+    if (cacheSize > 0) {
+      synchronized (cache) {
+        result = cache.get(uri);
+      }
+      if (result != null) {
+        return result == NO_ROUTE ? null : result;
+      }
+    }
+
+    result = route(uri);
+
+    if (cacheSize > 0) {
+      synchronized (cache) {
+        cache.put(uri, result == null ? NO_ROUTE : result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Matches a URI against the trie, bypassing the cache.
+   */
+  private String route(String uri) {
+    if (uri == null || !uri.startsWith("/")) {
+      return null;
+    }
+
+    String path = uri;
+    String queryString = null;
+    int question = uri.indexOf('?');
+    if (question > -1) {
+      path = uri.substring(0, question);
+      queryString = uri.substring(question+1);
+    }
+
+    // work out where each segment starts and ends, without copying them
+    int count = 1;
+    for (int i = 1; i < path.length(); i++) {
+      if (path.charAt(i) == '/') {
+        count++;
+      }
+    }
+    int[] starts = new int[count];
+    int[] ends = new int[count];
+    int segment = 0;
+    starts[0] = 1;
+    for (int i = 1; i < path.length(); i++) {
+      if (path.charAt(i) == '/') {
+        ends[segment] = i;
+        segment++;
+        starts[segment] = i+1;
+      }
+    }
+    ends[count-1] = Math.max(1, path.length());
+
+    Map<String,String> parameters = new HashMap<String,String>();
+    Route route = match(root, new Segments(path, starts, ends), 0, parameters);
+    if (route != null) {
+      return route.getUri(parameters, queryString);
+    } else {
+      return null;
+    }
+  }
+
+  private Route match(Node node, Segments segments, int index, Map<String,String> parameters) {
+    int count = segments.count();
+    if (node.route != null && (index == count || (index == count-1 && segments.isEmpty(index)))) {
+      return node.route;
+    }
+
+    if (index == count) {
+      return null;
+    }
+
+    Node child = node.literals.get(segments.get(index));
+    if (child != null) {
+      Route route = match(child, segments, index+1, parameters);
+      if (route != null) {
+        return route;
+      }
+    }
+
+    for (Capture capture : node.captures) {
+      if (capture.type == CaptureType.REST) {
+        if (capture.node.route != null) {
+          parameters.put(capture.name, segments.get(index, count));
+          return capture.node.route;
+        }
+      } else if (capture.type == CaptureType.PATH) {
+        // as few segments as possible, so that longer patterns win, and
+        // leaving any trailing slash to be matched by the next node
+        int last = segments.isEmpty(count-1) ? count-1 : count;
+        for (int end = index+1; end <= last; end++) {
+          String value = capture.extract(segments.get(index, end));
+          if (value != null) {
+            parameters.put(capture.name, value);
+            Route route = match(capture.node, segments, end, parameters);
+            if (route != null) {
+              return route;
+            }
+            parameters.remove(capture.name);
+          }
+        }
+      } else {
+        String value = capture.extract(segments.get(index));
+        if (value != null) {
+          parameters.put(capture.name, value);
+          Route route = match(capture.node, segments, index+1, parameters);
+          if (route != null) {
+            return route;
+          }
+          parameters.remove(capture.name);
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Builds an internal URI from the values captured from a matching URI.
+   */
+  public interface Route {
+
+    /**
+     * Gets the internal URI.
+     *
+     * @param parameters    the captured values, keyed on name
+     * @param queryString   the query string of the URI, or null if it didn't have one
+     * @return  an internal URI
+     */
+    public String getUri(Map<String,String> parameters, String queryString);
+
+  }
+
+  /**
+   * A Route that substitutes captured values into a template.
+   */
+  private static class TemplateRoute implements Route {
+
+    /** literal text and parameter names, alternately */
+    private final List<String> parts = new ArrayList<String>();
+
+    TemplateRoute(String template) {
+      int start = 0;
+      int open = template.indexOf('{');
+      while (open > -1) {
+        int close = template.indexOf('}', open);
+        if (close == -1) {
+          throw new IllegalArgumentException("Unterminated parameter : " + template);
+        }
+        parts.add(template.substring(start, open));
+        parts.add(template.substring(open+1, close));
+        start = close+1;
+        open = template.indexOf('{', start);
+      }
+      parts.add(template.substring(start));
+    }
+
+    public String getUri(Map<String,String> parameters, String queryString) {
+      StringBuilder buf = new StringBuilder();
+      for (int i = 0; i < parts.size(); i++) {
+        if (i % 2 == 0) {
+          buf.append(parts.get(i));
+        } else {
+          String value = parameters.get(parts.get(i));
+          if (value != null) {
+            buf.append(value);
+          }
+        }
+      }
+      return buf.toString();
+    }
+
+  }
+
+  private enum CaptureType {
+
+    // in the order that they are tried
+    INT, WORD, SEGMENT, PATH, REST;
+
+    static CaptureType forName(String name) {
+      if (name == null) {
+        return SEGMENT;
+      } else if (name.equals("int")) {
+        return INT;
+      } else if (name.equals("word")) {
+        return WORD;
+      } else if (name.equals("path")) {
+        return PATH;
+      } else if (name.equals("*")) {
+        return REST;
+      } else {
+        return null;
+      }
+    }
+
+  }
+
+  /**
+   * An edge in the trie that captures part of the URI.
+   */
+  private static class Capture implements Comparable<Capture> {
+
+    private final String name;
+    private final CaptureType type;
+    private final String prefix;
+    private final String suffix;
+    private Node node;
+
+    private Capture(String name, CaptureType type, String prefix, String suffix) {
+      this.name = name;
+      this.type = type;
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    static Capture parse(String pattern, String segment, int open) {
+      int close = segment.indexOf('}', open);
+      if (close == -1 || segment.indexOf('{', open+1) > -1) {
+        throw new IllegalArgumentException("Segments may contain a single capture : " + pattern);
+      }
+
+      String name = segment.substring(open+1, close);
+      String typeName = null;
+      int colon = name.indexOf(':');
+      if (colon > -1) {
+        typeName = name.substring(colon+1);
+        name = name.substring(0, colon);
+      }
+
+      CaptureType type = CaptureType.forName(typeName);
+      if (type == null) {
+        throw new IllegalArgumentException("Unknown capture type " + typeName + " : " + pattern);
+      }
+
+      Capture capture = new Capture(name, type, segment.substring(0, open), segment.substring(close+1));
+      if (type == CaptureType.REST && (capture.prefix.length() > 0 || capture.suffix.length() > 0)) {
+        throw new IllegalArgumentException("{" + name + ":*} must be a whole segment : " + pattern);
+      }
+
+      return capture;
+    }
+
+    /**
+     * Extracts the captured value from one or more segments.
+     *
+     * @return  the value, or null if the text doesn't match
+     */
+    String extract(String text) {
+      int length = text.length() - prefix.length() - suffix.length();
+      if (length < 0 || !text.startsWith(prefix) || !text.endsWith(suffix)) {
+        return null;
+      }
+
+      String value = text.substring(prefix.length(), prefix.length() + length);
+      switch (type) {
+        case INT:
+          if (value.length() == 0) {
+            return null;
+          }
+          for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+              return null;
+            }
+          }
+          return value;
+        case WORD:
+          for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) {
+              return null;
+            }
+          }
+          return value;
+        default:
+          return value.length() > 0 ? value : null;
+      }
+    }
+
+    boolean sameAs(Capture capture) {
+      return name.equals(capture.name) && type == capture.type && prefix.equals(capture.prefix) && suffix.equals(capture.suffix);
+    }
+
+    public int compareTo(Capture capture) {
+      int result = type.compareTo(capture.type);
+      if (result == 0) {
+        // longer literals are more specific
+        result = (capture.prefix.length() + capture.suffix.length()) - (prefix.length() + suffix.length());
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * A node in the trie.
+   */
+  private static class Node {
+
+    private final Map<String,Node> literals = new ConcurrentHashMap<String,Node>();
+
+    /** replaced rather than modified, so that it can be read without locking */
+    private volatile Capture[] captures = new Capture[0];
+
+    private volatile Route route;
+
+    Node addCapture(Capture capture) {
+      for (Capture existing : captures) {
+        if (existing.sameAs(capture)) {
+          return existing.node;
+        }
+      }
+
+      capture.node = new Node();
+      Capture[] sorted = new Capture[captures.length+1];
+      System.arraycopy(captures, 0, sorted, 0, captures.length);
+      sorted[captures.length] = capture;
+      Arrays.sort(sorted);
+      captures = sorted;
+      return capture.node;
+    }
+
+  }
+
+  /**
+   * The segments of the URI being routed.
+   */
+  private static class Segments {
+
+    private final String path;
+    private final int[] starts;
+    private final int[] ends;
+
+    Segments(String path, int[] starts, int[] ends) {
+      this.path = path;
+      this.starts = starts;
+      this.ends = ends;
+    }
+
+    int count() {
+      return starts.length;
+    }
+
+    boolean isEmpty(int index) {
+      return starts[index] >= ends[index];
+    }
+
+    String get(int index) {
+      return get(index, index+1);
+    }
+
+    String get(int from, int to) {
+      if (from == to) {
+        return "";
+      }
+      return path.substring(starts[from], ends[to-1]);
+    }
+
+  }
+
+}
@@ -37,33 +37,36 @@ import net.sourceforge.pebble.api.permalink.PermalinkProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Map;
+
 /**
  * Responsible for converting an incoming URI to a real URI used by Pebble.
+ * Permalinks are tried first, since they depend on the blog, followed by
+ * the routes registered with the router returned by {@link #getRouter()}.
  *
  * @author    Simon Brown
  */
 public class UriTransformer {
 
-  /** literal used at the start of category URIs */
-  private static final String CATEGORIES = "/categories";
-
-  /** literal used at the start of category URIs, in regex form */
-  private static final String CATEGORIES_REGEX = "\\/categories\\/";
-
-  /** literal used at the start of tag URIs */
-  private static final String TAGS = "/tags/";
-
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String TAGS_REGEX = "\\/tags\\/";
+  /** the log used by this class */
+  private static Log log = LogFactory.getLog(UriTransformer.class);
 
-  /** literal used at the start of author URIs */
-  private static final String AUTHORS = "/authors/";
+  /** the routes used for single blogs */
+  private static final UriRouter blogRouter = createBlogRouter(UriRouter.DEFAULT_CACHE_SIZE);
 
-  /** literal used at the start of tag URIs, in regex form */
-  private static final String AUTHORS_REGEX = "\\/authors\\/";
+  /** the routes used for the multi-blog home page */
+  private static final UriRouter multiBlogRouter = createMultiBlogRouter();
 
-  /** the log used by this class */
-  private static Log log = LogFactory.getLog(UriTransformer.class);
+  /**
+   * Gets the router used to transform URIs for individual blogs, with which
+   * plugins can register additional routes when they are started. These
+   * apply to all blogs, and are tried after any permalinks.
+   *
+   * @return  a UriRouter instance
+   */
+  public static UriRouter getRouter() {
+    return blogRouter;
+  }
 
   /**
    * Checks for URI patterns and converts them to the appropriate action.
@@ -75,162 +78,35 @@ public class UriTransformer {
    *            the same)
    */
   public String getUri(String uri, Blog blog) {
-    PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
-    DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
-    defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
-
-    log.trace("URI before transformation : " + uri);
+    if (log.isTraceEnabled()) {
+      log.trace("URI before transformation : " + uri);
+    }
 
     if (uri == null || uri.trim().equals("")) {
       uri = "/";
     }
 
     // try to transform the URI with the permalink provider in use
+    PermalinkProvider permalinkProvider = blog.getPermalinkProvider();
     String result = getUri(uri, permalinkProvider);
-    if (result == null) {
+    if (result == null && permalinkProvider.getClass() != DefaultPermalinkProvider.class) {
       // for backwards compatibility, try the default permalink provider
+      DefaultPermalinkProvider defaultPermalinkProvider = new DefaultPermalinkProvider();
+      defaultPermalinkProvider.setBlog(permalinkProvider.getBlog());
       result = getUri(uri, defaultPermalinkProvider);
     }
 
     // if the result is still null, try the other URL patterns to transform the URI
     if (result == null) {
-      if (uri.equals("/categories") || uri.equals("/categories/")) {
-        // URI of the form /categories/
-        result = "/viewCategories.action";
-      } else if (uri.matches(CATEGORIES_REGEX + ".*\\/.*xml")) {
-          // URI of the form /category[/subcategories]/[rss|rdf|atom].xml
-          int indexOfLastSlash = uri.lastIndexOf("/");
-          String categoryId = uri.substring(CATEGORIES.length(), indexOfLastSlash);
-
-          if (uri.endsWith("rdf.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=rdf";
-          } else if (uri.endsWith("atom.xml")) {
-            result = "/feed.action?category=" + categoryId + "&flavor=atom";
-          } else {
-            result = "/feed.action?category=" + categoryId + "&flavor=rss20";
-          }
-      } else if (uri.startsWith(CATEGORIES)) {
-        // URI of the form /categories/category/
-        String category = uri.substring(CATEGORIES.length(), uri.length());
-        if (category.endsWith("/")) {
-          category = category.substring(0, category.length()-1);
-        }
-        result = "/viewCategory.action?category=" + category;
-      } else if (uri.equals("/tags") || uri.equals("/tags/")) {
-          // URI of the form /tags/
-          result = "/viewTags.action";
-      } else if (uri.matches(TAGS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /tags/tag/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String tag = uri.substring(TAGS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?tag=" + tag + "&flavor=atom";
-        } else {
-          result = "/feed.action?tag=" + tag + "&flavor=rss20";
-        }
-      } else if (uri.matches(AUTHORS_REGEX + ".*\\/.*xml")) {
-        // URI of the form /authors/username/[rss|rdf|atom].xml
-        int indexOfLastSlash = uri.lastIndexOf("/");
-        String author = uri.substring(AUTHORS.length(), indexOfLastSlash);
-
-        if (uri.endsWith("rdf.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=rdf";
-        } else if (uri.endsWith("atom.xml")) {
-          result = "/feed.action?author=" + author + "&flavor=atom";
-        } else {
-          result = "/feed.action?author=" + author + "&flavor=rss20";
-        }
-      } else if (uri.startsWith(TAGS)) {
-        // URI of the form /tags/tag/
-        String tag = uri.substring(TAGS.length(), uri.length());
-        if (tag.endsWith("/")) {
-          tag = tag.substring(0, tag.length()-1);
-        }
-        result = "/viewTag.action?tag=" + Tag.encode(tag);
-      } else if (uri.startsWith(AUTHORS)) {
-        // URI of the form /authors/usename/
-        String author = uri.substring(AUTHORS.length(), uri.length());
-        if (author.endsWith("/")) {
-          author = author.substring(0, author.length()-1);
-        }
-        result = "/aboutAuthor.action?user=" + author;
-      } else if (uri.equals("/pages/") || uri.equals("/pages")) {
-        result = "/viewStaticPage.action?name=index";
-      } else if (uri.startsWith("/pages/")) {
-        // url matches /pages/xyz.html
-        String name = uri.substring(7, uri.length()-5);
-
-        result = "/viewStaticPage.action?name=";
-        result += name;
-      } else if (uri.startsWith("/images/")) {
-        // url matches /images/xyz.xyz
-        String name = uri.substring(7, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/files/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=";
-        result += name;
-      } else if (uri.startsWith("/theme/")) {
-        // url matches /files/xyz.xyz
-        String name = uri.substring(6, uri.length());
-
-        result = "/file.action?type=" + FileMetaData.THEME_FILE + "&name=";
-        result += name;
-      } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-        // url matches /help/xyz.html
-        String name = uri.substring(6, uri.length());
-
-        result = "/viewHelp.secureaction?name=";
-        result += name.substring(0, name.length()-5);
-      } else if (uri.equals("/help") || uri.equals("/help/")) {
-        // url matches /help/
-        result = "/viewHelp.secureaction?name=index";
-      } else if (uri.equals("/responses/rss.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20";
-      } else if (uri.startsWith("/responses/rss.xml?entry=")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
-      } else if (uri.startsWith("/rss.xml")) {
-        // url matches rss.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/feed.xml")) {
-        // url matches feed.xml
-        result = "/feed.action?flavor=rss20";
-      } else if (uri.startsWith("/rdf.xml")) {
-        // url matches rdf.xml
-        result = "/feed.action?flavor=rdf";
-      } else if (uri.startsWith("/responses/atom.xml")) {
-        // url is for a response feed
-        result = "/responseFeed.action?flavor=atom";
-      } else if (uri.startsWith("/atom.xml")) {
-        // url matches atom.xml
-        result = "/feed.action?flavor=atom";
-      } else if (uri.equals("/today.html")) {
-        // URI of the form /today.html
-        result = "/viewDay.action";
-      } else if (uri.equals("/about.html")) {
-        // URI of the form /about.html
-        result = "/about.action";
-      } else if (uri.startsWith("/blogentries/")) {
-        // view blog entries by page /blogentries/1.html
-        String page = uri.substring(13, uri.length()-5);
-        result = "/viewBlogEntriesByPage.action?page=" + page;
-      } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-          result = "/viewHomePage.action";
-      } else {
-        result = uri;
-      }
+      result = blogRouter.getUri(uri);
+    }
+    if (result == null) {
+      result = uri;
     }
 
-    log.trace("URI after transformation : " + result);
+    if (log.isTraceEnabled()) {
+      log.trace("URI after transformation : " + result);
+    }
 
     return result;
   }
@@ -245,39 +121,22 @@ public class UriTransformer {
    *            the same)
    */
   public String getUri(String uri, MultiBlog blog) {
-    String result;
-
-    log.trace("URI before transformation : " + uri);
+    if (log.isTraceEnabled()) {
+      log.trace("URI before transformation : " + uri);
+    }
 
     if (uri == null || uri.trim().equals("")) {
       uri = "/";
     }
 
-    if (uri.startsWith("/rss.xml")) {
-      // url matches rss.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/feed.xml")) {
-      // url matches feed.xml
-      result = "/feed.action?flavor=rss20";
-    } else if (uri.startsWith("/rdf.xml")) {
-      // url matches rdf.xml
-      result = "/feed.action?flavor=rdf";
-    } else if (uri.startsWith("/atom.xml")) {
-      // url matches atom.xml
-      result = "/feed.action?flavor=atom";
-    } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
-        result = "/viewHomePage.action";
-    } else if (uri.matches("\\/help\\/\\w*\\.html")) {
-      // url matches /help/xyz.html
-      String name = uri.substring(6, uri.length());
-
-      result = "/viewHelp.secureaction?name=";
-      result += name.substring(0, name.length()-5);
-    } else {
+    String result = multiBlogRouter.getUri(uri);
+    if (result == null) {
       result = uri;
     }
 
-    log.trace("URI after transformation : " + result);
+    if (log.isTraceEnabled()) {
+      log.trace("URI after transformation : " + result);
+    }
 
     return result;
   }
@@ -321,4 +180,116 @@ public class UriTransformer {
     return result;
   }
 
+  /**
+   * Creates the routes used for single blogs.
+   *
+   * @param cacheSize   the number of recently routed URIs to cache
+   * @return  a UriRouter instance
+   */
+  static UriRouter createBlogRouter(int cacheSize) {
+    UriRouter router = new UriRouter(cacheSize);
+
+    router.addRoute("/", "/viewHomePage.action");
+    router.addRoute("/index.jsp", "/viewHomePage.action");
+    router.addRoute("/index.html", "/viewHomePage.action");
+    router.addRoute("/today.html", "/viewDay.action");
+    router.addRoute("/about.html", "/about.action");
+    router.addRoute("/blogentries/{page}.html", "/viewBlogEntriesByPage.action?page={page}");
+
+    router.addRoute("/rss.xml", "/feed.action?flavor=rss20");
+    router.addRoute("/feed.xml", "/feed.action?flavor=rss20");
+    router.addRoute("/rdf.xml", "/feed.action?flavor=rdf");
+    router.addRoute("/atom.xml", "/feed.action?flavor=atom");
+    router.addRoute("/responses/rss.xml", new UriRouter.Route() {
+      public String getUri(Map<String,String> parameters, String queryString) {
+        // the response feed for a single blog entry is /responses/rss.xml?entry=...
+        if (queryString != null && queryString.startsWith("entry=")) {
+          return "/responseFeed.action?flavor=rss20&" + queryString;
+        } else {
+          return "/responseFeed.action?flavor=rss20";
+        }
+      }
+    });
+    router.addRoute("/responses/atom.xml", "/responseFeed.action?flavor=atom");
+
+    // category IDs start with a slash
+    router.addRoute("/categories", "/viewCategories.action");
+    router.addRoute("/categories/{category:path}", "/viewCategory.action?category=/{category}");
+    router.addRoute("/categories/{category:path}/{flavor}.xml", new FeedRoute("category", "/"));
+
+    router.addRoute("/tags", "/viewTags.action");
+    router.addRoute("/tags/{tag:path}", new UriRouter.Route() {
+      public String getUri(Map<String,String> parameters, String queryString) {
+        return "/viewTag.action?tag=" + Tag.encode(parameters.get("tag"));
+      }
+    });
+    router.addRoute("/tags/{tag:path}/{flavor}.xml", new FeedRoute("tag", ""));
+
+    router.addRoute("/authors/{author:path}", "/aboutAuthor.action?user={author}");
+    router.addRoute("/authors/{author:path}/{flavor}.xml", new FeedRoute("author", ""));
+
+    // faceted browsing, with the facets in the query string
+    router.addRoute("/facets", "/viewBlogEntriesByFacet.action");
+    router.addRoute("/facets/rss.xml", "/feed.action?facets=true&flavor=rss20");
+    router.addRoute("/facets/rdf.xml", "/feed.action?facets=true&flavor=rdf");
+    router.addRoute("/facets/atom.xml", "/feed.action?facets=true&flavor=atom");
+
+    router.addRoute("/pages", "/viewStaticPage.action?name=index");
+    router.addRoute("/pages/{name:path}.html", "/viewStaticPage.action?name={name}");
+
+    // file names start with a slash
+    router.addRoute("/images/{name:*}", "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=/{name}");
+    router.addRoute("/files/{name:*}", "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=/{name}");
+    router.addRoute("/theme/{name:*}", "/file.action?type=" + FileMetaData.THEME_FILE + "&name=/{name}");
+
+    router.addRoute("/help", "/viewHelp.secureaction?name=index");
+    router.addRoute("/help/{name:word}.html", "/viewHelp.secureaction?name={name}");
+
+    return router;
+  }
+
+  private static UriRouter createMultiBlogRouter() {
+    UriRouter router = new UriRouter();
+
+    router.addRoute("/", "/viewHomePage.action");
+    router.addRoute("/index.jsp", "/viewHomePage.action");
+    router.addRoute("/index.html", "/viewHomePage.action");
+    router.addRoute("/rss.xml", "/feed.action?flavor=rss20");
+    router.addRoute("/feed.xml", "/feed.action?flavor=rss20");
+    router.addRoute("/rdf.xml", "/feed.action?flavor=rdf");
+    router.addRoute("/atom.xml", "/feed.action?flavor=atom");
+    router.addRoute("/help/{name:word}.html", "/viewHelp.secureaction?name={name}");
+
+    return router;
+  }
+
+  /**
+   * Routes /[category|tag|author]/.../[rss|rdf|atom].xml to a feed, where
+   * anything other than rdf.xml and atom.xml is treated as RSS.
+   */
+  private static class FeedRoute implements UriRouter.Route {
+
+    private final String name;
+    private final String prefix;
+
+    FeedRoute(String name, String prefix) {
+      this.name = name;
+      this.prefix = prefix;
+    }
+
+    public String getUri(Map<String,String> parameters, String queryString) {
+      String flavor = parameters.get("flavor");
+      if (flavor.endsWith("rdf")) {
+        flavor = "rdf";
+      } else if (flavor.endsWith("atom")) {
+        flavor = "atom";
+      } else {
+        flavor = "rss20";
+      }
+
+      return "/feed.action?" + name + "=" + prefix + parameters.get(name) + "&flavor=" + flavor;
+    }
+
+  }
+
 }
\ No newline at end of file
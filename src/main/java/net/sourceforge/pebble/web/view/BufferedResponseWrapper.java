@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Collects the content written to a response in memory rather than
+ * sending it, so that a view can be rendered into a byte array.
+ *
+ * @author    Simon Brown
+ */
+public class BufferedResponseWrapper extends HttpServletResponseWrapper {
+
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+
+  private ServletOutputStream stream;
+  private PrintWriter writer;
+
+  public BufferedResponseWrapper(HttpServletResponse response) {
+    super(response);
+  }
+
+  /**
+   * Gets the content written so far, flushing any writer first.
+   *
+   * @return  the content as a byte array
+   */
+  public byte[] getContent() {
+    if (writer != null) {
+      writer.flush();
+    }
+    return buffer.toByteArray();
+  }
+
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called!");
+    }
+
+    if (stream == null) {
+      stream = new ServletOutputStream() {
+        public void write(int b) throws IOException {
+          buffer.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+          buffer.write(b, off, len);
+        }
+      };
+    }
+    return stream;
+  }
+
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      if (stream != null) {
+        throw new IllegalStateException("getOutputStream() has already been called!");
+      }
+      String encoding = getCharacterEncoding();
+      writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), encoding != null ? encoding : "ISO-8859-1"));
+    }
+    return writer;
+  }
+
+  public void flushBuffer() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  public void setContentLength(int length) {
+    // the length is set when the buffered content is sent
+  }
+
+  public void resetBuffer() {
+    if (writer != null) {
+      writer.flush();
+    }
+    buffer.reset();
+  }
+
+}
@@ -34,20 +34,34 @@ package net.sourceforge.pebble.web.view;
 import net.sourceforge.pebble.util.FileUtils;
 import net.sourceforge.pebble.domain.AbstractBlog;
 import net.sourceforge.pebble.domain.Blog;
-import net.sourceforge.pebble.domain.FileMetaData;
+import net.sourceforge.pebble.Configuration;
 import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.web.filter.GZIPResponseWrapper;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.LogFactory;
 import org.apache.commons.logging.Log;
 
 /**
- * Represents a binary view component and prepares the model for display.
+ * Sends a file, such as an image or an attachment, to the client. Files are
+ * validated with a strong ETag (derived from their size and last modified
+ * time) and a Last-Modified date, so conditional requests get a 304 back.
+ * Where the GZIPFilter compresses the file, it adds a suffix to the ETag,
+ * since the gzipped file is a different representation of it.
+ * Range requests are supported so that downloads of large files can be
+ * resumed.
  *
  * @author    Simon Brown
  */
@@ -56,6 +70,11 @@ public class FileView extends BinaryView {
   /** the log used by this class */
   private static Log log = LogFactory.getLog(FileView.class);
 
+  /** the maximum number of ranges served from a single request */
+  static final int MAX_RANGES = 16;
+
+  private static final String MULTIPART_BOUNDARY = "PEBBLE_BYTERANGES";
+
   private File file;
 
   public FileView(File file) {
@@ -85,6 +104,16 @@ public class FileView extends BinaryView {
     return file.length();
   }
 
+  /**
+   * Gets the strong entity tag for the file, which changes whenever its
+   * size or last modified time does.
+   *
+   * @return  a quoted entity tag
+   */
+  public String getETag() {
+    return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+  }
+
   /**
    * Dispatches this view.
    *
@@ -93,25 +122,290 @@ public class FileView extends BinaryView {
    * @param context
    */
   public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
-    response.setContentLength((int)getContentLength());
+    int status = HttpServletResponse.SC_OK;
     try {
-      BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
-      BufferedOutputStream out = new BufferedOutputStream(response.getOutputStream());
-
-      byte[] buf = new byte[1024];
-      int len = in.read(buf);
-      while (len > 0) {
-          out.write(buf, 0, len);
-          len = in.read(buf);
+      String eTag = getETag();
+      long lastModified = file.lastModified();
+      long length = file.length();
+      String contentType = getContentType();
+
+      response.setHeader("ETag", eTag);
+      response.setDateHeader("Last-Modified", lastModified);
+      response.setHeader("Accept-Ranges", "bytes");
+      response.setHeader("Cache-Control", getCacheControl(contentType));
+
+      if (isNotModified(request, response, eTag, lastModified)) {
+        status = HttpServletResponse.SC_NOT_MODIFIED;
+        response.setStatus(status);
+        return;
       }
 
-      in.close();
-      out.close();
+      List<long[]> ranges = null;
+      String range = request.getHeader("Range");
+      if (range != null && isRangeCurrent(request, eTag, lastModified)) {
+        ranges = parseRanges(range, length);
+        if (ranges != null && ranges.isEmpty()) {
+          status = HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+          response.setStatus(status);
+          response.setHeader("Content-Range", "bytes */" + length);
+          return;
+        }
+      }
+
+      if (ranges == null) {
+        setContentLength(response, length);
+        send(response, 0, length);
+      } else if (ranges.size() == 1) {
+        long[] r = ranges.get(0);
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        response.setStatus(status);
+        response.setHeader("Content-Range", "bytes " + r[0] + "-" + r[1] + "/" + length);
+        setContentLength(response, r[1] - r[0] + 1);
+        send(response, r[0], r[1] - r[0] + 1);
+      } else {
+        status = HttpServletResponse.SC_PARTIAL_CONTENT;
+        response.setStatus(status);
+        sendMultipart(response, ranges, contentType, length);
+      }
     } catch (IOException ioe) {
       log.warn(ioe);
     } finally {
       AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
-      blog.log(request, HttpServletResponse.SC_OK);
+      blog.log(request, status);
+    }
+  }
+
+  /**
+   * Determines whether the client's copy of the file is current, using
+   * If-None-Match in preference to If-Modified-Since.
+   */
+  private boolean isNotModified(HttpServletRequest request, HttpServletResponse response, String eTag, long lastModified) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      String gzippedETag = GZIPResponseWrapper.getGzippedETag(eTag);
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals("*") || tag.equals(eTag)) {
+          return true;
+        } else if (tag.equals(gzippedETag)) {
+          // the client's gzipped copy is still current
+          response.setHeader("ETag", gzippedETag);
+          return true;
+        }
+      }
+      return false;
+    }
+
+    long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+    return ifModifiedSince > -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * Determines whether a Range request should be honoured, which it
+   * shouldn't be if it's conditional (If-Range) on a different version of
+   * the file.
+   */
+  private boolean isRangeCurrent(HttpServletRequest request, String eTag, long lastModified) {
+    String ifRange = request.getHeader("If-Range");
+    if (ifRange == null) {
+      return true;
+    } else if (ifRange.trim().startsWith("\"")) {
+      return ifRange.trim().equals(eTag);
+    } else {
+      long date = getDateHeader(request, "If-Range");
+      return date > -1 && lastModified / 1000 == date / 1000;
+    }
+  }
+
+  private long getDateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException iae) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parses the value of a Range header.
+   *
+   * @param header    the header value, e.g. bytes=0-499,1000-
+   * @param length    the length of the file
+   * @return  a List of inclusive {start, end} pairs, an empty List if none
+   *          of the ranges can be satisfied, or null if the header should
+   *          be ignored and the whole file sent
+   */
+  static List<long[]> parseRanges(String header, long length) {
+    header = header.trim();
+    if (!header.startsWith("bytes=")) {
+      return null;
+    }
+
+    List<long[]> ranges = new ArrayList<long[]>();
+    for (String spec : header.substring("bytes=".length()).split(",")) {
+      spec = spec.trim();
+      int dash = spec.indexOf('-');
+      if (dash < 0) {
+        return null;
+      }
+
+      long start, end;
+      try {
+        if (dash == 0) {
+          // the last n bytes
+          long suffix = Long.parseLong(spec.substring(1));
+          start = Math.max(0, length - suffix);
+          end = length - 1;
+          if (suffix == 0) {
+            continue;
+          }
+        } else {
+          start = Long.parseLong(spec.substring(0, dash));
+          if (dash == spec.length() - 1) {
+            end = length - 1;
+          } else {
+            end = Long.parseLong(spec.substring(dash + 1));
+            if (end < start) {
+              // syntactically invalid, so the whole header is ignored
+              return null;
+            }
+            end = Math.min(end, length - 1);
+          }
+        }
+      } catch (NumberFormatException nfe) {
+        return null;
+      }
+
+      if (start < length && start <= end) {
+        ranges.add(new long[] { start, end });
+      }
+    }
+
+    // lots of (or overlapping) ranges are cheaper to answer with the whole file
+    if (ranges.size() > MAX_RANGES) {
+      return null;
+    }
+    for (int i = 0; i < ranges.size(); i++) {
+      for (int j = i + 1; j < ranges.size(); j++) {
+        if (ranges.get(i)[0] <= ranges.get(j)[1] && ranges.get(j)[0] <= ranges.get(i)[1]) {
+          return null;
+        }
+      }
+    }
+
+    return ranges;
+  }
+
+  /**
+   * Gets the Cache-Control header for the specified content type, using the
+   * policies configured for Pebble. Files belonging to private blogs are
+   * only cached privately.
+   */
+  String getCacheControl(String contentType) {
+    String policies = Configuration.DEFAULT_FILE_CACHE_CONTROL;
+    Configuration configuration = PebbleContext.getInstance().getConfiguration();
+    if (configuration != null && configuration.getFileCacheControl() != null) {
+      policies = configuration.getFileCacheControl();
+    }
+
+    String directives = null;
+    String type = contentType != null ? contentType.toLowerCase() : "";
+    int semicolon = type.indexOf(';');
+    if (semicolon > -1) {
+      type = type.substring(0, semicolon).trim();
+    }
+    for (String policy : policies.split(";")) {
+      int equals = policy.indexOf('=');
+      if (equals < 0) {
+        continue;
+      }
+      String pattern = policy.substring(0, equals).trim().toLowerCase();
+      if (pattern.equals("*") || pattern.equals(type) ||
+          (pattern.endsWith("/*") && type.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+        directives = policy.substring(equals + 1).trim();
+        break;
+      }
+    }
+
+    Object blog = getModel() != null ? getModel().get(Constants.BLOG_KEY) : null;
+    String visibility = (blog instanceof Blog && ((Blog)blog).isPrivate()) ? "private" : "public";
+    if (directives == null || directives.length() == 0) {
+      return visibility + ", no-cache";
+    } else {
+      return visibility + ", " + directives;
+    }
+  }
+
+  private void setContentLength(HttpServletResponse response, long length) {
+    if (length <= Integer.MAX_VALUE) {
+      response.setContentLength((int)length);
+    } else {
+      response.setHeader("Content-Length", Long.toString(length));
+    }
+  }
+
+  /**
+   * Sends part of the file.
+   */
+  private void send(HttpServletResponse response, long start, long length) throws IOException {
+    ServletOutputStream out = response.getOutputStream();
+    FileInputStream in = new FileInputStream(file);
+    try {
+      transfer(in.getChannel(), start, length, Channels.newChannel(out));
+    } finally {
+      in.close();
+    }
+    out.flush();
+  }
+
+  /**
+   * Sends several parts of the file as a multipart/byteranges response.
+   */
+  private void sendMultipart(HttpServletResponse response, List<long[]> ranges, String contentType, long length) throws IOException {
+    List<byte[]> headers = new ArrayList<byte[]>();
+    long contentLength = 0;
+    for (long[] r : ranges) {
+      String header = "\r\n--" + MULTIPART_BOUNDARY + "\r\n" +
+          "Content-Type: " + contentType + "\r\n" +
+          "Content-Range: bytes " + r[0] + "-" + r[1] + "/" + length + "\r\n\r\n";
+      byte[] bytes = header.getBytes("ISO-8859-1");
+      headers.add(bytes);
+      contentLength += bytes.length + (r[1] - r[0] + 1);
+    }
+    byte[] trailer = ("\r\n--" + MULTIPART_BOUNDARY + "--\r\n").getBytes("ISO-8859-1");
+    contentLength += trailer.length;
+
+    response.setContentType("multipart/byteranges; boundary=" + MULTIPART_BOUNDARY);
+    setContentLength(response, contentLength);
+
+    ServletOutputStream out = response.getOutputStream();
+    FileInputStream in = new FileInputStream(file);
+    try {
+      WritableByteChannel channel = Channels.newChannel(out);
+      for (int i = 0; i < ranges.size(); i++) {
+        long[] r = ranges.get(i);
+        out.write(headers.get(i));
+        transfer(in.getChannel(), r[0], r[1] - r[0] + 1, channel);
+      }
+      out.write(trailer);
+    } finally {
+      in.close();
+    }
+    out.flush();
+  }
+
+  private void transfer(FileChannel in, long start, long length, WritableByteChannel out) throws IOException {
+    long position = start;
+    long end = start + length;
+    while (position < end) {
+      long transferred = in.transferTo(position, end - position, out);
+      if (transferred <= 0) {
+        // the file has been truncated since its length was taken
+        throw new EOFException("Unexpected end of " + file.getName());
+      }
+      position += transferred;
     }
   }
 
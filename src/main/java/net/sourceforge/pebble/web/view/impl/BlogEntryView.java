@@ -48,8 +48,10 @@ public class BlogEntryView extends HtmlView {
     context.setView(ContentDecoratorContext.DETAIL_VIEW);
     context.setMedia(ContentDecoratorContext.HTML_PAGE);
 
-    BlogEntry blogEntry = (BlogEntry)getModel().get(Constants.BLOG_ENTRY_KEY);
+    // the blog entry may be a shared, read-only instance, so a copy is decorated
+    BlogEntry blogEntry = (BlogEntry)((BlogEntry)getModel().get(Constants.BLOG_ENTRY_KEY)).clone();
     blogEntry.getBlog().getContentDecoratorChain().decorate(context, blogEntry);
+    getModel().put(Constants.BLOG_ENTRY_KEY, blogEntry);
   }
 
   /**
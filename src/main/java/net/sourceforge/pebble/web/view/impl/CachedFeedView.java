@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.ValidatorCache;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.web.view.BufferedResponseWrapper;
+import net.sourceforge.pebble.web.view.View;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sends a feed from the feed cache. If the feed isn't cached, the view that
+ * renders it is run into a buffer and the result is cached before being
+ * sent.
+ *
+ * @author Simon Brown
+ */
+public class CachedFeedView extends View {
+
+  private final FeedCache.Feed feed;
+  private final View view;
+  private final String key;
+  private final FeedCache.Scope scope;
+  private final long generation;
+
+  /**
+   * Creates a view that sends an already cached feed.
+   *
+   * @param feed    the cached Feed
+   */
+  public CachedFeedView(FeedCache.Feed feed) {
+    this.feed = feed;
+    this.view = null;
+    this.key = null;
+    this.scope = null;
+    this.generation = 0;
+  }
+
+  /**
+   * Creates a view that renders a feed and caches it.
+   *
+   * @param view          the View that renders the feed
+   * @param key           the key that the feed is cached under
+   * @param scope         the Scope describing what the feed contains
+   * @param generation    the generation number of the feed cache taken before
+   *                      the feed's content was looked up
+   */
+  public CachedFeedView(View view, String key, FeedCache.Scope scope, long generation) {
+    this.feed = null;
+    this.view = view;
+    this.key = key;
+    this.scope = scope;
+    this.generation = generation;
+  }
+
+  /**
+   * Gets the view used to render the feed, if it isn't already cached.
+   *
+   * @return  a View instance, or null
+   */
+  public View getView() {
+    return view;
+  }
+
+  /**
+   * Prepares the view for presentation.
+   */
+  public void prepare() {
+    if (view != null) {
+      view.setModel(getModel());
+      view.setServletContext(getServletContext());
+      view.prepare();
+    }
+  }
+
+  /**
+   * Gets the content type of this view.
+   *
+   * @return the content type as a String
+   */
+  public String getContentType() {
+    return feed != null ? feed.getContentType() : view.getContentType();
+  }
+
+  /**
+   * Dispatches this view.
+   *
+   * @param request  the HttpServletRequest instance
+   * @param response the HttpServletResponse instance
+   * @param context  the ServletContext instance
+   */
+  public void dispatch(HttpServletRequest request, HttpServletResponse response, ServletContext context) throws ServletException {
+    try {
+      FeedCache.Feed feedToSend = feed;
+      if (feedToSend == null) {
+        Blog blog = (Blog)getModel().get(Constants.BLOG_KEY);
+        BufferedResponseWrapper wrappedResponse = new BufferedResponseWrapper(response);
+        view.dispatch(request, wrappedResponse, context);
+
+        feedToSend = new FeedCache.Feed(scope, getContentType(), wrappedResponse.getContent(), ValidatorCache.getInstance().getLastModified(blog));
+        FeedCache.getInstance().putFeed(blog, key, feedToSend, generation);
+      }
+
+      send(feedToSend, request, response);
+    } catch (IOException ioe) {
+      throw new ServletException(ioe);
+    }
+  }
+
+  /**
+   * Sets the validators for a cached feed on the response, and determines
+   * whether the client already has the current version of the feed.
+   *
+   * @param feed      the cached Feed
+   * @param request   the HttpServletRequest instance
+   * @param response  the HttpServletResponse instance
+   * @return  true if a 304 (not modified) should be sent, false otherwise
+   */
+  public static boolean isNotModified(FeedCache.Feed feed, HttpServletRequest request, HttpServletResponse response) {
+    String eTag = getETag(feed, request);
+    response.setHeader("ETag", eTag);
+    response.setDateHeader("Last-Modified", feed.getLastModified().getTime());
+
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return ifNoneMatch.equals("*") || ifNoneMatch.indexOf(eTag) != -1;
+    }
+
+    long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    return ifModifiedSince != -1 && ifModifiedSince / 1000 >= feed.getLastModified().getTime() / 1000;
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1;
+  }
+
+  /**
+   * Gets the entity tag for the encoding that will be sent, since the
+   * gzipped and plain versions of a feed are different representations.
+   */
+  private static String getETag(FeedCache.Feed feed, HttpServletRequest request) {
+    String eTag = feed.getETag();
+    if (acceptsGzip(request)) {
+      eTag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+    }
+    return eTag;
+  }
+
+  private void send(FeedCache.Feed feed, HttpServletRequest request, HttpServletResponse response) throws IOException {
+    boolean gzip = acceptsGzip(request);
+    byte[] content = gzip ? feed.getGzippedContent() : feed.getContent();
+
+    response.setContentType(feed.getContentType());
+    response.setHeader("ETag", getETag(feed, request));
+    response.setDateHeader("Last-Modified", feed.getLastModified().getTime());
+    response.setHeader("Vary", "Accept-Encoding");
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentLength(content.length);
+
+    ServletOutputStream out = response.getOutputStream();
+    out.write(content);
+    out.flush();
+  }
+
+}
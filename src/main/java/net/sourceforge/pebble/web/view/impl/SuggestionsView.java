@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view.impl;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.AbstractBlog;
+import net.sourceforge.pebble.index.SuggestionIndex;
+import net.sourceforge.pebble.web.view.PlainTextView;
+
+import java.util.List;
+
+/**
+ * Represents a list of suggestions as a JSON array of objects, each with
+ * a value, type and weight.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestionsView extends PlainTextView {
+
+  /**
+   * Prepares the view for presentation.
+   */
+  public void prepare() {
+    List<SuggestionIndex.Suggestion> suggestions = (List<SuggestionIndex.Suggestion>)getModel().get("suggestions");
+    StringBuffer buf = new StringBuffer();
+
+    buf.append("[");
+    if (suggestions != null) {
+      for (int i = 0; i < suggestions.size(); i++) {
+        SuggestionIndex.Suggestion suggestion = suggestions.get(i);
+        if (i > 0) {
+          buf.append(",");
+        }
+        buf.append("{\"value\":");
+        append(buf, suggestion.getValue());
+        buf.append(",\"type\":");
+        append(buf, suggestion.getType());
+        buf.append(",\"weight\":");
+        buf.append(suggestion.getWeight());
+        buf.append("}");
+      }
+    }
+    buf.append("]");
+
+    getModel().put("text", buf.toString());
+  }
+
+  /**
+   * Appends a string as a quoted, escaped JSON string. The angle brackets
+   * and ampersand are escaped too, so that the output is safe to include in
+   * a page.
+   */
+  private void append(StringBuffer buf, String s) {
+    buf.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          buf.append("\\\"");
+          break;
+        case '\\':
+          buf.append("\\\\");
+          break;
+        case '\n':
+          buf.append("\\n");
+          break;
+        case '\r':
+          buf.append("\\r");
+          break;
+        case '\t':
+          buf.append("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == '<' || c == '>' || c == '&' || c == '\u2028' || c == '\u2029') {
+            String hex = Integer.toHexString(c);
+            buf.append("\\u");
+            for (int j = hex.length(); j < 4; j++) {
+              buf.append('0');
+            }
+            buf.append(hex);
+          } else {
+            buf.append(c);
+          }
+      }
+    }
+    buf.append('"');
+  }
+
+  /**
+   * Gets the content type of this view.
+   *
+   * @return the content type as a String
+   */
+  public String getContentType() {
+    AbstractBlog blog = (AbstractBlog)getModel().get(Constants.BLOG_KEY);
+    return "application/json; charset=" + blog.getCharacterEncoding();
+  }
+
+}
@@ -41,14 +41,19 @@ import java.util.Vector;
 
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogManager;
 import net.sourceforge.pebble.domain.BlogService;
 import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.index.SearchIndex;
+import net.sourceforge.pebble.search.FederatedSearch;
 import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
-import net.sourceforge.pebble.util.Pageable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.xmlrpc.XmlRpcException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 
 
 /**
@@ -98,23 +103,17 @@ public class SearchAPIHandler extends AbstractAPIHandler {
         try {
 
             Blog blog = getBlogWithBlogId(blogid);
-            SearchResults result = blog.getSearchIndex().search( searchString );
-
-            if ( sortBy != null && sortBy.equalsIgnoreCase("date") ) {
-                result.sortByDateDescending();
-            } else {
-                result.sortByScoreDescending();
-            }
+            SearchResults result = blog.getSearchIndex().search( searchString, getSort(sortBy), 0, Integer.MAX_VALUE );
 
             List<SearchHit> hits = result.getHits();
             BlogService service = new BlogService();
 
             for (SearchHit hit : hits) {
-                BlogEntry entry = service.getBlogEntry(hit.getBlog(), hit.getId());
+                BlogEntry entry = service.getReadOnlyBlogEntry(hit.getBlog(), hit.getId());
                 adaptBlogEntry(entry);
                 posts.add(adaptBlogEntry(entry));
             }
-            posts.add( searchResultSummary(hits, sortBy, searchString, 0, 0) );
+            posts.add( searchResultSummary(hits, result.getNumberOfHits(), sortBy, searchString, 0, 0) );
 
         } catch (Exception ex) {
             log.error(ex);
@@ -142,31 +141,81 @@ public class SearchAPIHandler extends AbstractAPIHandler {
         try {
 
             Blog blog = getBlogWithBlogId(blogid);
-            SearchResults result = blog.getSearchIndex().search( searchString );
-            
-            if ( sortBy != null && sortBy.equalsIgnoreCase("date") ) {
-                result.sortByDateDescending();
-            } else {
-                result.sortByScoreDescending();
-            }
-
             if ( pageSize <= 0 ) 
                 pageSize = PAGE_SIZE;
 
-            List<SearchHit> hits = result.getHits();
-            Pageable pageable = new Pageable(hits);
-            pageable.setPageSize(pageSize);
-            pageable.setPage(offset);
-            List<SearchHit> subList = pageable.getListForPage();
+            // only the hits on the requested page are loaded
+            SearchIndex index = blog.getSearchIndex();
+            int page = Math.max(offset, 1);
+            SearchResults result = index.search( searchString, getSort(sortBy), (page-1) * pageSize, pageSize );
+            int maxPages = (result.getNumberOfHits() + pageSize - 1) / pageSize;
+            if ( page > maxPages && maxPages > 0 ) {
+                page = maxPages;
+                result = index.search( searchString, getSort(sortBy), (page-1) * pageSize, pageSize );
+            }
+
+            List<SearchHit> subList = result.getHits();
 
             BlogService service = new BlogService();
 
             for (SearchHit hit : subList ) {
-                BlogEntry entry = service.getBlogEntry(hit.getBlog(), hit.getId());
+                BlogEntry entry = service.getReadOnlyBlogEntry(hit.getBlog(), hit.getId());
                 adaptBlogEntry(entry);
                 posts.add(adaptBlogEntry(entry));
             }
-            posts.add( searchResultSummary(subList, sortBy, searchString, pageSize, offset) );
+            posts.add( searchResultSummary(subList, result.getNumberOfHits(), sortBy, searchString, pageSize, offset) );
+
+        } catch (Exception ex) {
+            log.error(ex);
+        }
+        return posts;
+    }
+
+    /**
+     * Search all of the blogs that the user can read, which are the public
+     * blogs if no username is given.
+     *
+     * @param username  the username used for logging in via XML-RPC (optional)
+     * @param password  the password used for logging in via XML-RPC
+     */
+    public Vector searchAllBlogs(String username, String password,
+                        String searchString, String sortBy, int pageSize, int offset) throws XmlRpcException {
+        log.debug("search.searchAllBlogs(" +
+            username + ", xxxxxx, \"" +
+            searchString + "," +
+            sortBy + "\")");
+
+        Authentication auth = null;
+        if ( username != null && username.length() > 0 ) {
+            authenticate(null, username, password);
+            auth = SecurityContextHolder.getContext().getAuthentication();
+        }
+
+        Vector posts = new Vector();
+        try {
+            if ( pageSize <= 0 )
+                pageSize = PAGE_SIZE;
+
+            FederatedSearch search = new FederatedSearch(BlogManager.getInstance().getMultiBlog().getLocale());
+            List<Blog> blogs = FederatedSearch.getSearchableBlogs(auth);
+            int page = Math.max(offset, 1);
+            SearchResults result = search.search( blogs, searchString, getSort(sortBy), (page-1) * pageSize, pageSize );
+            int maxPages = (result.getNumberOfHits() + pageSize - 1) / pageSize;
+            if ( page > maxPages && maxPages > 0 ) {
+                page = maxPages;
+                result = search.search( blogs, searchString, getSort(sortBy), (page-1) * pageSize, pageSize );
+            }
+
+            List<SearchHit> subList = result.getHits();
+            BlogService service = new BlogService();
+
+            for (SearchHit hit : subList ) {
+                BlogEntry entry = service.getReadOnlyBlogEntry(hit.getBlog(), hit.getId());
+                if (entry != null) {
+                    posts.add(adaptBlogEntry(entry));
+                }
+            }
+            posts.add( searchResultSummary(subList, result.getNumberOfHits(), sortBy, searchString, pageSize, offset) );
 
         } catch (Exception ex) {
             log.error(ex);
@@ -174,6 +223,14 @@ public class SearchAPIHandler extends AbstractAPIHandler {
         return posts;
     }
 
+    private String getSort(String sortBy) {
+        if ( sortBy != null && sortBy.equalsIgnoreCase(SearchIndex.SORT_BY_DATE) ) {
+            return SearchIndex.SORT_BY_DATE;
+        } else {
+            return SearchIndex.SORT_BY_SCORE;
+        }
+    }
+
     /**
      * Helper method to adapt a blog entry into an XML-RPC compatible struct.
      * Since the Blogger API doesn't support titles, the title is wrapped in
@@ -205,11 +262,13 @@ public class SearchAPIHandler extends AbstractAPIHandler {
     /**
      * Auto create a Map of search result summary.
      * @param result of the search hits.
+     * @param total the number of hits across all pages.
      */
-    private Map searchResultSummary(List<SearchHit> result, String sortBy,
+    private Map searchResultSummary(List<SearchHit> result, int total, String sortBy,
                                         String query, int pageIndex, int offset) {
         Map data = new Hashtable();
         data.put("size", result.size() );
+        data.put("total", total );
         data.put("sortBy", sortBy);
         data.put("index", pageIndex);
         data.put("offset", offset);
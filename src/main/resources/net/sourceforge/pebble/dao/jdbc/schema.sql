@@ -0,0 +1,96 @@
+-- Schema used by the JDBC DAO implementations. Each statement is executed
+-- when a JdbcDAOFactory is created, so they must all be safe to re-run.
+
+CREATE TABLE IF NOT EXISTS blog_entry (
+  blog_id             VARCHAR(255)  NOT NULL,
+  id                  BIGINT        NOT NULL,
+  title               VARCHAR(4000),
+  subtitle            VARCHAR(4000),
+  excerpt             CLOB,
+  body                CLOB,
+  time_zone           VARCHAR(64),
+  published           BOOLEAN       NOT NULL,
+  author              VARCHAR(255),
+  original_permalink  VARCHAR(4000),
+  comments_enabled    BOOLEAN       NOT NULL,
+  trackbacks_enabled  BOOLEAN       NOT NULL,
+  tags                VARCHAR(4000),
+  attachment_url      VARCHAR(4000),
+  attachment_size     BIGINT,
+  attachment_type     VARCHAR(255),
+  PRIMARY KEY (blog_id, id)
+);
+
+CREATE INDEX IF NOT EXISTS blog_entry_author ON blog_entry (blog_id, author);
+
+CREATE TABLE IF NOT EXISTS blog_entry_category (
+  blog_id             VARCHAR(255)  NOT NULL,
+  blog_entry_id       BIGINT        NOT NULL,
+  category_id         VARCHAR(255)  NOT NULL,
+  PRIMARY KEY (blog_id, blog_entry_id, category_id)
+);
+
+CREATE INDEX IF NOT EXISTS blog_entry_category_category ON blog_entry_category (blog_id, category_id);
+
+-- comments (type 'c') and TrackBacks (type 't'); as with the XML files,
+-- two responses received in the same millisecond share an ID
+CREATE TABLE IF NOT EXISTS response (
+  blog_id             VARCHAR(255)  NOT NULL,
+  blog_entry_id       BIGINT        NOT NULL,
+  type                CHAR(1)       NOT NULL,
+  id                  BIGINT        NOT NULL,
+  title               VARCHAR(4000),
+  body                CLOB,
+  author              VARCHAR(255),
+  email               VARCHAR(255),
+  website             VARCHAR(4000),
+  avatar              VARCHAR(4000),
+  url                 VARCHAR(4000),
+  blog_name           VARCHAR(4000),
+  ip_address          VARCHAR(64),
+  state               VARCHAR(16)   NOT NULL,
+  authenticated       BOOLEAN       NOT NULL,
+  parent_id           BIGINT
+);
+
+CREATE INDEX IF NOT EXISTS response_id ON response (blog_id, blog_entry_id, type, id);
+
+CREATE INDEX IF NOT EXISTS response_state ON response (blog_id, state);
+
+CREATE TABLE IF NOT EXISTS static_page (
+  blog_id             VARCHAR(255)  NOT NULL,
+  id                  BIGINT        NOT NULL,
+  name                VARCHAR(255),
+  title               VARCHAR(4000),
+  subtitle            VARCHAR(4000),
+  body                CLOB,
+  tags                VARCHAR(4000),
+  author              VARCHAR(255),
+  original_permalink  VARCHAR(4000),
+  template            VARCHAR(255),
+  PRIMARY KEY (blog_id, id)
+);
+
+CREATE INDEX IF NOT EXISTS static_page_name ON static_page (blog_id, name);
+
+CREATE TABLE IF NOT EXISTS static_page_lock (
+  blog_id             VARCHAR(255)  NOT NULL,
+  id                  BIGINT        NOT NULL,
+  username            VARCHAR(255)  NOT NULL,
+  PRIMARY KEY (blog_id, id)
+);
+
+CREATE TABLE IF NOT EXISTS category (
+  blog_id             VARCHAR(255)  NOT NULL,
+  id                  VARCHAR(255)  NOT NULL,
+  name                VARCHAR(255),
+  tags                VARCHAR(4000),
+  PRIMARY KEY (blog_id, id)
+);
+
+CREATE TABLE IF NOT EXISTS referer_filter (
+  blog_id             VARCHAR(255)  NOT NULL,
+  position            BIGINT        AUTO_INCREMENT,
+  expression          VARCHAR(4000) NOT NULL,
+  PRIMARY KEY (blog_id, position)
+);
@@ -18,7 +18,8 @@
     <p>
       Pebble is distributed with the following logging implementations.
       <ul>
-        <li><code>net.sourceforge.pebble.logging.CombinedLogFormatLogger</code> : A logger that writes log files in the the <a href="http://httpd.apache.org/docs/logs.html#combined">Combined Log Format</a>. This is the default logger.</li>
+        <li><code>net.sourceforge.pebble.logging.AsyncCombinedLogFormatLogger</code> : A logger that writes log files in the the <a href="http://httpd.apache.org/docs/logs.html#combined">Combined Log Format</a> from a background thread, so that requests don't wait for the disk. The number of entries that can be waiting to be written and whether further entries are dropped or requests wait when that limit is reached can be configured on the <a href="viewPlugins.secureaction#logger">Plugins</a> page. This is the default logger.</li>
+        <li><code>net.sourceforge.pebble.logging.CombinedLogFormatLogger</code> : A logger that writes log files in the the Combined Log Format as each request is made.</li>
         <li><code>net.sourceforge.pebble.logging.NullLogger</code> : A no-op logger that can be used when Pebble logging isn't required, such as when something like Apache provides the necessary logging already. <b>Pebble will not capture any statistics when this logger is used.</b></li>
       </ul>
       To configure which logger is used by your blog, modify the "Logger" plugin on the <a href="viewPlugins.secureaction#logger">Plugins</a> page.
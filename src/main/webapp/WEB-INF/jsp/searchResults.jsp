@@ -38,7 +38,12 @@
             <td valign="top">
               <div class="searchResultTitle"><a href="${url:rewrite(hit.permalink)}" title="${hit.score}">${hit.title}</a></div>
               <c:if test="${not empty hit.subtitle}"><div class="searchResultSubTitle"><a href="${url:rewrite(hit.permalink)}" title="${hit.score}">${hit.subtitle}</a></div></c:if>
-              <div class="searchResultExcerpt">${hit.excerpt}</div>
+              <div class="searchResultExcerpt">
+                <c:choose>
+                  <c:when test="${not empty hit.snippet}">${hit.snippet}</c:when>
+                  <c:otherwise>${hit.excerpt}</c:otherwise>
+                </c:choose>
+              </div>
             </td>
             <td class="searchResultDatetime" align="right" valign="top" width="15%">
               <div><fmt:formatDate value="${hit.date}" type="date" dateStyle="medium" /></div>
@@ -13,7 +13,11 @@
     <h3>General utilities</h3>
     <ul>
       <li><a href="reloadBlog.secureaction?<pebble:token query="true"/>">Restart</a> : refresh your blog configuration from disk.</li>
-      <li><a href="utilities.secureaction?action=buildIndexes&amp;<pebble:token query="true"/>">Reindex</a> : rebuild the various indexes that your blog maintains internally.</li>
+      <li><a href="utilities.secureaction?action=buildIndexes&amp;<pebble:token query="true"/>">Reindex</a> : rebuild the various indexes that your blog maintains internally.
+        The search index is updated in the background, and currently has ${blog.searchIndexQueue.queueDepth} update(s) waiting
+        (the oldest for ${blog.searchIndexQueue.lag} ms).
+        Search results are cached until the index changes; ${searchResultCacheSize} are cached at the moment, and
+        ${searchResultCacheHits} search(es) have been answered from the cache (${searchResultCacheMisses} were not).</li>
       <li><a href="resetPlugins.secureaction?<pebble:token query="true"/>">Reset plugins</a> : reset your plugins back to their out-of-the-box default configuration.</li>
       <li><a href="utilities.secureaction?action=ipAddressListener&amp;<pebble:token query="true"/>">Build IP address whitelist and blacklist</a> : create the blacklist and whitelist from your current responses (the IP address of all approved responses
         will be placed into the whitelist, while the IP address of all rejected responses will be placed into the blacklist).</li>
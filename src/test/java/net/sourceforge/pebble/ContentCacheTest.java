@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.Date;
+
+/**
+ * Tests for the ContentCache class.
+ *
+ * @author    Simon Brown
+ */
+public class ContentCacheTest extends SingleBlogTestCase {
+
+  private ContentCache cache = ContentCache.getInstance();
+
+  public void testPutAndGetBlogEntry() {
+    BlogEntry blogEntry = createBlogEntry(1000);
+    cache.putBlogEntry(blogEntry);
+    assertSame(blogEntry, cache.getBlogEntry(blog, blogEntry.getId()));
+
+    cache.removeBlogEntry(blogEntry);
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  public void testPutAndGetStaticPage() {
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setDate(new Date(1000));
+    cache.putStaticPage(staticPage);
+    assertSame(staticPage, cache.getStaticPage(blog, staticPage.getId()));
+    assertNull(cache.getBlogEntry(blog, staticPage.getId()));
+
+    cache.removeStaticPage(staticPage);
+    assertNull(cache.getStaticPage(blog, staticPage.getId()));
+  }
+
+  public void testBlogsHaveSeparateShards() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000);
+    cache.putBlogEntry(blogEntry);
+
+    Blog otherBlog = new Blog(blog.getRoot());
+    otherBlog.setId("other");
+    assertNull(cache.getBlogEntry(otherBlog, blogEntry.getId()));
+    assertEquals(0, cache.getSize(otherBlog));
+  }
+
+  public void testEntriesForAReloadedBlogAreIgnored() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000);
+    cache.putBlogEntry(blogEntry);
+
+    Blog reloadedBlog = new Blog(blog.getRoot());
+    reloadedBlog.setId(blog.getId());
+    assertNull(cache.getBlogEntry(reloadedBlog, blogEntry.getId()));
+  }
+
+  public void testCacheIsClearedWhenBlogStopped() {
+    cache.putBlogEntry(createBlogEntry(1000));
+    assertEquals(1, cache.getSize(blog));
+
+    BlogManager.getInstance().reloadBlog(blog);
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testCacheIsClearedWhenBlogReindexed() {
+    cache.putBlogEntry(createBlogEntry(1000));
+    blog.reindex();
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testNumberOfItemsIsBounded() {
+    cache.removeBlog(blog);
+    PebbleContext.getInstance().getConfiguration().setContentCacheItemsPerBlog(10);
+
+    for (int i = 0; i < 100; i++) {
+      cache.putBlogEntry(createBlogEntry(i));
+    }
+    assertEquals(10, cache.getSize(blog));
+    assertNotNull(cache.getBlogEntry(blog, "99"));
+  }
+
+  public void testRecentlyReadItemsAreKept() {
+    cache.removeBlog(blog);
+    PebbleContext.getInstance().getConfiguration().setContentCacheItemsPerBlog(10);
+
+    for (int i = 0; i < 10; i++) {
+      cache.putBlogEntry(createBlogEntry(i));
+    }
+    assertNotNull(cache.getBlogEntry(blog, "0"));
+    cache.putBlogEntry(createBlogEntry(10));
+
+    assertNotNull(cache.getBlogEntry(blog, "0"));
+    assertNull(cache.getBlogEntry(blog, "1"));
+  }
+
+  public void testTidyingTheClockKeepsLiveItems() {
+    cache.removeBlog(blog);
+    PebbleContext.getInstance().getConfiguration().setContentCacheItemsPerBlog(10);
+
+    for (int i = 0; i < 10; i++) {
+      cache.putBlogEntry(createBlogEntry(i));
+    }
+    for (int i = 0; i < 20; i++) {
+      cache.putBlogEntry(createBlogEntry(9));
+    }
+    assertEquals(10, cache.getSize(blog));
+    assertNotNull(cache.getBlogEntry(blog, "0"));
+  }
+
+  public void testWeightIsBounded() {
+    cache.removeBlog(blog);
+    PebbleContext.getInstance().getConfiguration().setContentCacheWeightPerBlog(10000);
+
+    StringBuffer body = new StringBuffer();
+    for (int i = 0; i < 3000; i++) {
+      body.append('x');
+    }
+    for (int i = 0; i < 10; i++) {
+      BlogEntry blogEntry = createBlogEntry(i);
+      blogEntry.setBody(body.toString());
+      cache.putBlogEntry(blogEntry);
+    }
+    assertEquals(3, cache.getSize(blog));
+
+    // and something too big to cache at all
+    body.append(body).append(body).append(body);
+    BlogEntry blogEntry = createBlogEntry(100);
+    blogEntry.setBody(body.toString());
+    cache.putBlogEntry(blogEntry);
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  public void testCachingCanBeDisabled() {
+    cache.removeBlog(blog);
+    PebbleContext.getInstance().getConfiguration().setContentCacheItemsPerBlog(0);
+
+    BlogEntry blogEntry = createBlogEntry(1000);
+    cache.putBlogEntry(blogEntry);
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  public void testStalePutIsRefusedAfterRemoval() {
+    BlogEntry blogEntry = createBlogEntry(1000);
+    long generation = cache.getGeneration(blog);
+
+    // a writer stores a new version while the reader is loading the old one
+    cache.removeBlogEntry(blogEntry);
+
+    assertFalse(cache.putBlogEntry(blogEntry, generation));
+    assertNull(cache.getBlogEntry(blog, blogEntry.getId()));
+
+    assertTrue(cache.putBlogEntry(blogEntry, cache.getGeneration(blog)));
+    assertSame(blogEntry, cache.getBlogEntry(blog, blogEntry.getId()));
+  }
+
+  public void testStalePutIsRefusedAfterBlogRemoved() {
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setDate(new Date(1000));
+    long generation = cache.getGeneration(blog);
+
+    cache.removeBlog(blog);
+
+    assertFalse(cache.putStaticPage(staticPage, generation));
+    assertNull(cache.getStaticPage(blog, staticPage.getId()));
+  }
+
+  public void testBlogServiceHandsOutCopiesOfTheSnapshot() throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = createBlogEntry(1000);
+    service.putBlogEntry(blogEntry);
+
+    BlogEntry snapshot = service.getReadOnlyBlogEntry(blog, blogEntry.getId());
+    assertSame(snapshot, service.getReadOnlyBlogEntry(blog, blogEntry.getId()));
+
+    BlogEntry copy = service.getBlogEntry(blog, blogEntry.getId());
+    assertNotSame(snapshot, copy);
+    copy.setTitle("A new title");
+    assertEquals("A title", snapshot.getTitle());
+
+    service.putBlogEntry(copy);
+    assertEquals("A new title", service.getReadOnlyBlogEntry(blog, blogEntry.getId()).getTitle());
+  }
+
+  private BlogEntry createBlogEntry(long date) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(date));
+    return blogEntry;
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.api.event.comment.CommentEvent;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.event.ReaderCacheListener;
+
+import java.util.*;
+
+/**
+ * Tests for the FeedCache class.
+ *
+ * @author    Simon Brown
+ */
+public class FeedCacheTest extends SingleBlogTestCase {
+
+  private FeedCache cache = FeedCache.getInstance();
+  private BlogService service = new BlogService();
+
+  public void testPutAndGetFeed() throws Exception {
+    FeedCache.Feed feed = createFeed(FeedCache.Scope.forBlogEntries(null, null, null, new ArrayList<BlogEntry>()), "<rss/>");
+    assertTrue(cache.putFeed(blog, "rss", feed, cache.getGeneration(blog)));
+    assertSame(feed, cache.getFeed(blog, "rss"));
+    assertNull(cache.getFeed(blog, "atom"));
+  }
+
+  public void testETagIsDerivedFromContent() throws Exception {
+    FeedCache.Scope scope = FeedCache.Scope.forBlogEntries(null, null, null, new ArrayList<BlogEntry>());
+    assertEquals(createFeed(scope, "<rss/>").getETag(), createFeed(scope, "<rss/>").getETag());
+    assertFalse(createFeed(scope, "<rss/>").getETag().equals(createFeed(scope, "<rss></rss>").getETag()));
+    assertTrue(createFeed(scope, "<rss/>").getETag().startsWith("\""));
+  }
+
+  public void testFeedRenderedBeforeInvalidationIsNotStored() throws Exception {
+    long generation = cache.getGeneration(blog);
+    cache.removeBlog(blog);
+    FeedCache.Feed feed = createFeed(FeedCache.Scope.forBlogEntries(null, null, null, new ArrayList<BlogEntry>()), "<rss/>");
+    assertFalse(cache.putFeed(blog, "rss", feed, generation));
+  }
+
+  public void testNumberOfFeedsIsBounded() throws Exception {
+    FeedCache.Scope scope = FeedCache.Scope.forBlogEntries(null, null, null, new ArrayList<BlogEntry>());
+    for (int i = 0; i < FeedCache.MAX_FEEDS_PER_BLOG + 10; i++) {
+      cache.putFeed(blog, "rss/" + i, createFeed(scope, "<rss/>"), cache.getGeneration(blog));
+    }
+    assertEquals(FeedCache.MAX_FEEDS_PER_BLOG, cache.getSize(blog));
+  }
+
+  public void testPublishingBlogEntryOnlyRemovesFeedsItBelongsIn() throws Exception {
+    cacheFeeds();
+
+    BlogEntry blogEntry = createBlogEntry();
+    blogEntry.setTags("java");
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+
+    assertNull(cache.getFeed(blog, "rss"));
+    assertNull(cache.getFeed(blog, "rss/tag/java"));
+    assertNotNull(cache.getFeed(blog, "rss/tag/pebble"));
+    assertNotNull(cache.getFeed(blog, "responses"));
+  }
+
+  public void testChangingUnpublishedBlogEntryRemovesNothing() throws Exception {
+    BlogEntry blogEntry = createBlogEntry();
+    service.putBlogEntry(blogEntry);
+    cacheFeeds();
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry.setTitle("A new title");
+    service.putBlogEntry(blogEntry);
+
+    assertEquals(4, cache.getSize(blog));
+  }
+
+  public void testRemovingTagRemovesFeedShowingBlogEntry() throws Exception {
+    BlogEntry blogEntry = createBlogEntry();
+    blogEntry.setTags("pebble");
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    blogEntries.add(blogEntry);
+    cache.putFeed(blog, "rss/tag/pebble", createFeed(FeedCache.Scope.forBlogEntries(new Tag("pebble", blog), null, null, blogEntries), "<rss/>"), cache.getGeneration(blog));
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry.setTags("");
+    service.putBlogEntry(blogEntry);
+
+    assertNull(cache.getFeed(blog, "rss/tag/pebble"));
+  }
+
+  public void testApprovedCommentOnlyRemovesResponseFeeds() throws Exception {
+    BlogEntry blogEntry = createBlogEntry();
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+    cacheFeeds();
+
+    // fired directly, because other listeners store the blog's plugin
+    // properties when a comment is approved, which clears the whole cache
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    Comment comment = blogEntry.createComment("Title", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1");
+    blogEntry.addComment(comment);
+    new ReaderCacheListener().commentApproved(new CommentEvent(comment, CommentEvent.COMMENT_APPROVED));
+
+    assertNull(cache.getFeed(blog, "responses"));
+    assertNotNull(cache.getFeed(blog, "rss"));
+  }
+
+  public void testCacheIsClearedWhenBlogStopped() throws Exception {
+    cacheFeeds();
+    BlogManager.getInstance().reloadBlog(blog);
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  private void cacheFeeds() throws Exception {
+    List<BlogEntry> none = new ArrayList<BlogEntry>();
+    cache.putFeed(blog, "rss", createFeed(FeedCache.Scope.forBlogEntries(null, null, null, none), "<rss/>"), cache.getGeneration(blog));
+    cache.putFeed(blog, "rss/tag/java", createFeed(FeedCache.Scope.forBlogEntries(new Tag("java", blog), null, null, none), "<rss/>"), cache.getGeneration(blog));
+    cache.putFeed(blog, "rss/tag/pebble", createFeed(FeedCache.Scope.forBlogEntries(new Tag("pebble", blog), null, null, none), "<rss/>"), cache.getGeneration(blog));
+    cache.putFeed(blog, "responses", createFeed(FeedCache.Scope.forResponses(null, new ArrayList<Response>()), "<rss/>"), cache.getGeneration(blog));
+    assertEquals(4, cache.getSize(blog));
+  }
+
+  private BlogEntry createBlogEntry() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1000));
+    return blogEntry;
+  }
+
+  private FeedCache.Feed createFeed(FeedCache.Scope scope, String content) throws Exception {
+    return new FeedCache.Feed(scope, "application/xml; charset=UTF-8", content.getBytes("UTF-8"), new Date(1000));
+  }
+
+}
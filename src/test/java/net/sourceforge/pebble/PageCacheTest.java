@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.*;
+
+/**
+ * Tests for the PageCache class.
+ *
+ * @author    Simon Brown
+ */
+public class PageCacheTest extends SingleBlogTestCase {
+
+  private PageCache cache = PageCache.getInstance();
+  private BlogService service = new BlogService();
+
+  public void testPutAndGetPage() throws Exception {
+    PageCache.Page page = createPage("Some content");
+    assertTrue(cache.putPage(blog, "/", page, cache.getGeneration(blog)));
+    assertSame(page, cache.getPage(blog, "/"));
+    assertNull(cache.getPage(blog, "/?page=2"));
+  }
+
+  public void testPagesAreKeyedOnTheBlogLocale() throws Exception {
+    cache.putPage(blog, "/", createPage("Some content"), cache.getGeneration(blog));
+    blog.setProperty(Blog.LANGUAGE_KEY, "fr");
+    assertNull(cache.getPage(blog, "/"));
+  }
+
+  public void testPageIsGzipped() throws Exception {
+    PageCache.Page page = createPage("Some content");
+    assertEquals((byte)0x1f, page.getGzippedContent()[0]);
+    assertEquals((byte)0x8b, page.getGzippedContent()[1]);
+  }
+
+  public void testPageRenderedBeforeInvalidationIsNotStored() throws Exception {
+    long generation = cache.getGeneration(blog);
+    cache.removeBlog(blog);
+    assertFalse(cache.putPage(blog, "/", createPage("Some content"), generation));
+    assertNull(cache.getPage(blog, "/"));
+  }
+
+  public void testRemoveBlogEntryOnlyRemovesPagesShowingIt() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000));
+    cache.putPage(blog, "/a.html", createPage("A", blogEntry.getId()), cache.getGeneration(blog));
+    cache.putPage(blog, "/b.html", createPage("B", "123"), cache.getGeneration(blog));
+
+    cache.removeBlogEntry(blogEntry);
+    assertNull(cache.getPage(blog, "/a.html"));
+    assertNotNull(cache.getPage(blog, "/b.html"));
+  }
+
+  public void testBlogsAreRemovedSeparately() throws Exception {
+    Blog otherBlog = new Blog(blog.getRoot());
+    otherBlog.setId("other");
+    cache.putPage(blog, "/", createPage("A"), cache.getGeneration(blog));
+    cache.putPage(otherBlog, "/", createPage("B"), cache.getGeneration(otherBlog));
+
+    cache.removeBlog(otherBlog);
+    assertEquals(1, cache.getSize(blog));
+    assertEquals(0, cache.getSize(otherBlog));
+  }
+
+  public void testLeastRecentlyUsedPagesAreEvicted() throws Exception {
+    PebbleContext.getInstance().getConfiguration().setPageCacheSize(10000);
+
+    for (int i = 0; i < 10; i++) {
+      cache.putPage(blog, "/" + i + ".html", createPage(i, 1000), cache.getGeneration(blog));
+      cache.getPage(blog, "/0.html");
+    }
+
+    assertTrue(cache.getSize(blog) < 10);
+    assertNotNull(cache.getPage(blog, "/0.html"));
+    assertNull(cache.getPage(blog, "/1.html"));
+    assertNotNull(cache.getPage(blog, "/9.html"));
+
+    // and something too big to cache at all
+    assertFalse(cache.putPage(blog, "/big.html", createPage(0, 20000), cache.getGeneration(blog)));
+  }
+
+  public void testCacheIsClearedWhenBlogStopped() throws Exception {
+    cache.putPage(blog, "/", createPage("A"), cache.getGeneration(blog));
+    BlogManager.getInstance().reloadBlog(blog);
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testCacheIsClearedWhenPropertiesStored() throws Exception {
+    cache.putPage(blog, "/", createPage("A"), cache.getGeneration(blog));
+    blog.setProperty(Blog.NAME_KEY, "A new name");
+    blog.storeProperties();
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testChangingBodyRemovesPagesShowingBlogEntry() throws Exception {
+    BlogEntry blogEntry = createPublishedBlogEntry();
+    cachePages(blogEntry);
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry.setBody("A new body");
+    service.putBlogEntry(blogEntry);
+
+    assertNull(cache.getPage(blog, "/a.html"));
+    assertNotNull(cache.getPage(blog, "/b.html"));
+  }
+
+  public void testChangingTitleRemovesAllPages() throws Exception {
+    BlogEntry blogEntry = createPublishedBlogEntry();
+    cachePages(blogEntry);
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry.setTitle("A new title");
+    service.putBlogEntry(blogEntry);
+
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testChangingUnpublishedBlogEntryRemovesNothing() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setDate(new Date(1000));
+    service.putBlogEntry(blogEntry);
+    cachePages(blogEntry);
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    blogEntry.setTitle("A new title");
+    service.putBlogEntry(blogEntry);
+
+    assertEquals(2, cache.getSize(blog));
+  }
+
+  public void testApprovedCommentRemovesAllPages() throws Exception {
+    BlogEntry blogEntry = createPublishedBlogEntry();
+    cachePages(blogEntry);
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    Comment comment = blogEntry.createComment("Title", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1");
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+
+    // new comments from anonymous readers are moderated
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    cachePages(blogEntry);
+    blogEntry.getComments().get(0).setApproved();
+    service.putBlogEntry(blogEntry);
+
+    assertEquals(0, cache.getSize(blog));
+  }
+
+  public void testPendingCommentRemovesPagesShowingBlogEntry() throws Exception {
+    BlogEntry blogEntry = createPublishedBlogEntry();
+    cachePages(blogEntry);
+
+    blogEntry = service.getBlogEntry(blog, blogEntry.getId());
+    Comment comment = blogEntry.createComment("Title", "Body", "Author", "me@somedomain.com", "http://www.google.com", "http://graph.facebook.com/user/picture", "127.0.0.1");
+    comment.setPending();
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+
+    assertNull(cache.getPage(blog, "/a.html"));
+    assertNotNull(cache.getPage(blog, "/b.html"));
+  }
+
+  private BlogEntry createPublishedBlogEntry() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1000));
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+    return blogEntry;
+  }
+
+  private void cachePages(BlogEntry blogEntry) throws Exception {
+    cache.putPage(blog, "/a.html", createPage("A", blogEntry.getId()), cache.getGeneration(blog));
+    cache.putPage(blog, "/b.html", createPage("B", "123"), cache.getGeneration(blog));
+    assertEquals(2, cache.getSize(blog));
+  }
+
+  private PageCache.Page createPage(String content, String... blogEntryIds) throws Exception {
+    return new PageCache.Page("text/html; charset=UTF-8", new ArrayList<String[]>(), content.getBytes("UTF-8"), new HashSet<String>(Arrays.asList(blogEntryIds)));
+  }
+
+  private PageCache.Page createPage(int seed, int size) throws Exception {
+    // random content, so that gzipping doesn't make it any smaller
+    byte[] content = new byte[size];
+    new Random(seed).nextBytes(content);
+    return new PageCache.Page("text/html", new ArrayList<String[]>(), content, new HashSet<String>());
+  }
+
+}
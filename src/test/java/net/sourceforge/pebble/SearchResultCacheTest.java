@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.search.SearchHit;
+import net.sourceforge.pebble.search.SearchResults;
+
+import java.util.Date;
+
+/**
+ * Tests for the SearchResultCache class.
+ *
+ * @author    Simon Brown
+ */
+public class SearchResultCacheTest extends SingleBlogTestCase {
+
+  private SearchResultCache cache = SearchResultCache.getInstance();
+  private BlogService service = new BlogService();
+
+  public void testPutAndGetSearchResults() throws Exception {
+    String key = SearchResultCache.getKey("java", "score", 0, 20);
+    assertTrue(cache.putSearchResults(blog, key, createSearchResults(), cache.getGeneration(blog)));
+
+    SearchResults searchResults = cache.getSearchResults(blog, key);
+    assertEquals(1, searchResults.getNumberOfHits());
+    assertEquals("java", searchResults.getQuery());
+    assertNull(cache.getSearchResults(blog, SearchResultCache.getKey("java", "score", 20, 20)));
+    assertNull(cache.getSearchResults(blog, SearchResultCache.getKey("java", "date", 0, 20)));
+  }
+
+  public void testCopiesAreHandedOut() throws Exception {
+    String key = SearchResultCache.getKey("java", "score", 0, 20);
+    cache.putSearchResults(blog, key, createSearchResults(), cache.getGeneration(blog));
+
+    SearchHit hit = (SearchHit)cache.getSearchResults(blog, key).getHits().get(0);
+    hit.setNumber(10);
+    assertEquals(1, ((SearchHit)cache.getSearchResults(blog, key).getHits().get(0)).getNumber());
+  }
+
+  public void testKeyIgnoresWhitespace() {
+    assertEquals(SearchResultCache.getKey("java pebble", "score", 0, 20), SearchResultCache.getKey(" java \t  pebble\n", "SCORE", 0, 20));
+    assertFalse(SearchResultCache.getKey("java pebble", "score", 0, 20).equals(SearchResultCache.getKey("javapebble", "score", 0, 20)));
+  }
+
+  public void testHitsAndMissesAreCounted() throws Exception {
+    long hits = cache.getHits(blog);
+    long misses = cache.getMisses(blog);
+    String key = SearchResultCache.getKey("java", "score", 0, 20);
+
+    assertNull(cache.getSearchResults(blog, key));
+    cache.putSearchResults(blog, key, createSearchResults(), cache.getGeneration(blog));
+    assertNotNull(cache.getSearchResults(blog, key));
+    assertEquals(hits + 1, cache.getHits(blog));
+    assertEquals(misses + 1, cache.getMisses(blog));
+  }
+
+  public void testSearchResultsFoundBeforeInvalidationAreNotStored() throws Exception {
+    long generation = cache.getGeneration(blog);
+    cache.removeBlog(blog);
+    assertFalse(cache.putSearchResults(blog, "key", createSearchResults(), generation));
+  }
+
+  public void testNumberOfSearchResultsIsBounded() throws Exception {
+    for (int i = 0; i < SearchResultCache.MAX_RESULTS_PER_BLOG + 10; i++) {
+      cache.putSearchResults(blog, "key/" + i, createSearchResults(), cache.getGeneration(blog));
+    }
+    assertEquals(SearchResultCache.MAX_RESULTS_PER_BLOG, cache.getSize(blog));
+    assertNull(cache.getSearchResults(blog, "key/0"));
+  }
+
+  public void testLargeSearchResultsAreNotStored() throws Exception {
+    SearchResults searchResults = createSearchResults();
+    for (int i = 0; i < SearchResultCache.MAX_HITS_PER_RESULTS; i++) {
+      searchResults.add(new SearchHit(blog, "" + i, "/" + i + ".html", "Title", "", "Excerpt", new Date(), 1.0f));
+    }
+
+    String key = SearchResultCache.getKey("java", "score", 0, Integer.MAX_VALUE);
+    assertFalse(cache.putSearchResults(blog, key, searchResults, cache.getGeneration(blog)));
+    assertNull(cache.getSearchResults(blog, key));
+  }
+
+  public void testResponseEventsRemoveSearchResults() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+
+    String key = SearchResultCache.getKey("java", "score", 0, 20);
+    cache.putSearchResults(blog, key, createSearchResults(), cache.getGeneration(blog));
+
+    // a pending comment isn't searchable
+    Comment comment = blogEntry.createComment("Title", "Body", "Author", "", "", "", "127.0.0.1", new Date(), State.PENDING);
+    blogEntry.addComment(comment);
+    service.putBlogEntry(blogEntry);
+    assertNotNull(cache.getSearchResults(blog, key));
+
+    comment.setApproved();
+    service.putBlogEntry(blogEntry);
+    assertNull(cache.getSearchResults(blog, key));
+  }
+
+  private SearchResults createSearchResults() {
+    SearchResults searchResults = new SearchResults();
+    searchResults.setQuery("java");
+    SearchHit hit = new SearchHit(blog, "1", "/1.html", "Title", "", "Excerpt", new Date(), 1.0f);
+    hit.setNumber(1);
+    searchResults.add(hit);
+
+    return searchResults;
+  }
+
+}
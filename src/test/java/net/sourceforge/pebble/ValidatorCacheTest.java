@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble;
+
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.service.DefaultLastModifiedService;
+import net.sourceforge.pebble.util.SecurityUtils;
+
+import javax.servlet.http.Cookie;
+
+/**
+ * Tests for the ValidatorCache class.
+ *
+ * @author    Simon Brown
+ */
+public class ValidatorCacheTest extends SingleBlogTestCase {
+
+  private ValidatorCache cache = ValidatorCache.getInstance();
+  private BlogService service = new BlogService();
+
+  public void testValidatorIsCached() {
+    ValidatorCache.Validator validator = cache.getValidator(blog, "/");
+    assertSame(validator, cache.getValidator(blog, "/"));
+    assertTrue(validator.getETag().startsWith("\""));
+    assertTrue(validator.getETag().endsWith("\""));
+  }
+
+  public void testResourcesHaveDifferentETags() {
+    assertFalse(cache.getValidator(blog, "/").getETag().equals(cache.getValidator(blog, "/tags/java/").getETag()));
+  }
+
+  public void testRemoveBlogChangesValidators() {
+    ValidatorCache.Validator validator = cache.getValidator(blog, "/");
+    cache.removeBlog(blog);
+    assertEquals(0, cache.getSize(blog));
+
+    ValidatorCache.Validator newValidator = cache.getValidator(blog, "/");
+    assertFalse(validator.getETag().equals(newValidator.getETag()));
+    assertTrue(newValidator.getLastModified().getTime() / 1000 > validator.getLastModified().getTime() / 1000);
+  }
+
+  public void testValidatorsSurviveARestart() {
+    cache.removeBlog(blog);
+    ValidatorCache.Validator validator = cache.getValidator(blog, "/");
+
+    // a new instance reads the last modified date back from disk
+    ValidatorCache.Validator newValidator = new ValidatorCache().getValidator(blog, "/");
+    assertEquals(validator.getETag(), newValidator.getETag());
+    assertEquals(validator.getLastModified(), newValidator.getLastModified());
+  }
+
+  public void testPublishingBlogEntryChangesValidators() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    service.putBlogEntry(blogEntry);
+
+    String eTag = cache.getValidator(blog, "/").getETag();
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+    assertFalse(eTag.equals(cache.getValidator(blog, "/").getETag()));
+  }
+
+  public void testChangingUnpublishedBlogEntryDoesNotChangeValidators() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    service.putBlogEntry(blogEntry);
+
+    String eTag = cache.getValidator(blog, "/").getETag();
+    blogEntry.setTitle("A new title");
+    service.putBlogEntry(blogEntry);
+    assertEquals(eTag, cache.getValidator(blog, "/").getETag());
+  }
+
+  public void testConditionalRequestGetsNotModified() {
+    SecurityUtils.runAsUnauthenticated();
+    DefaultLastModifiedService lastModifiedService = new DefaultLastModifiedService();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setMethod("GET");
+    request.setAttribute(Constants.EXTERNAL_URI, "/2011/01/01.html");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assertFalse(lastModifiedService.checkAndProcessValidators(request, response, blog));
+    String eTag = response.getHeader("ETag");
+    assertNotNull(eTag);
+    assertNotNull(response.getHeader("Last-Modified"));
+
+    request.setHeader("If-None-Match", "\"abc\", " + eTag);
+    assertTrue(lastModifiedService.checkAndProcessValidators(request, response, blog));
+
+    cache.removeBlog(blog);
+    assertFalse(lastModifiedService.checkAndProcessValidators(request, response, blog));
+    assertFalse(eTag.equals(response.getHeader("ETag")));
+  }
+
+  public void testGzippedETagGetsNotModified() {
+    SecurityUtils.runAsUnauthenticated();
+    DefaultLastModifiedService lastModifiedService = new DefaultLastModifiedService();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setMethod("GET");
+    request.setAttribute(Constants.EXTERNAL_URI, "/2011/01/01.html");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    assertFalse(lastModifiedService.checkAndProcessValidators(request, response, blog));
+    String eTag = response.getHeader("ETag");
+    String gzippedETag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+
+    request.setHeader("If-None-Match", gzippedETag);
+    assertTrue(lastModifiedService.checkAndProcessValidators(request, response, blog));
+    assertEquals(gzippedETag, response.getHeader("ETag"));
+  }
+
+  public void testLoggedInUsersAreNotValidated() {
+    DefaultLastModifiedService lastModifiedService = new DefaultLastModifiedService();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setMethod("GET");
+    request.setHeader("If-None-Match", "*");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    SecurityUtils.runAsBlogOwner();
+    try {
+      assertFalse(lastModifiedService.checkAndProcessValidators(request, response, blog));
+      assertNull(response.getHeader("ETag"));
+    } finally {
+      SecurityUtils.runAsUnauthenticated();
+    }
+
+    request.setCookies(new Cookie[] { new Cookie("rememberMe", "true") });
+    assertFalse(lastModifiedService.checkAndProcessValidators(request, response, blog));
+  }
+
+}
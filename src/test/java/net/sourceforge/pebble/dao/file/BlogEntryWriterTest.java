@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.file;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.io.*;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Tests for the BlogEntryWriter class. The expected files were generated by
+ * the DOM/Transformer based serializer that FileBlogEntryDAO used previously,
+ * so these tests check that the on-disk format hasn't changed.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntryWriterTest extends SingleBlogTestCase {
+
+  private static final long ENTRY_DATE = 1081203335000L;
+
+  public void testFullBlogEntryMatchesExistingFormat() throws Exception {
+    assertEquals(expected("blogentry-full.xml"), write(createFullBlogEntry()));
+  }
+
+  public void testMinimalBlogEntryMatchesExistingFormat() throws Exception {
+    assertEquals(expected("blogentry-minimal.xml"), write(createMinimalBlogEntry()));
+  }
+
+  public void testEscapedBlogEntryMatchesExistingFormat() throws Exception {
+    assertEquals(expected("blogentry-escaping.xml"), write(createEscapedBlogEntry()));
+  }
+
+  public void testMarkupTerminatorInTextIsEscaped() throws Exception {
+    BlogEntry blogEntry = createMinimalBlogEntry();
+    blogEntry.setTitle("a]]>b");
+    assertTrue(write(blogEntry).indexOf("<title>a]]&gt;b</title>") > -1);
+  }
+
+  public void testStoredBlogEntryCanBeLoaded() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createFullBlogEntry();
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(blogEntry.getTitle(), loaded.getTitle());
+    assertEquals(blogEntry.getSubtitle(), loaded.getSubtitle());
+    assertEquals(blogEntry.getExcerpt(), loaded.getExcerpt());
+    assertEquals(blogEntry.getBody(), loaded.getBody());
+    assertEquals(blogEntry.getDate(), loaded.getDate());
+    assertEquals(blogEntry.getAuthor(), loaded.getAuthor());
+    assertEquals(blogEntry.getTags(), loaded.getTags());
+    assertEquals(blogEntry.getCategories(), loaded.getCategories());
+    assertEquals(blogEntry.getOriginalPermalink(), loaded.getOriginalPermalink());
+    assertEquals(blogEntry.getAttachment().getUrl(), loaded.getAttachment().getUrl());
+    assertEquals(3, loaded.getComments().size());
+    assertEquals(loaded.getComments().get(0), loaded.getComments().get(1).getParent());
+    assertEquals("Comment <b>body</b> 1 ]]> end", loaded.getComments().get(0).getBody());
+    assertEquals(1, loaded.getTrackBacks().size());
+
+    File path = new File(dao.getPath(blog, blogEntry.getId(), TimeZone.getTimeZone("GMT")));
+    assertFalse(new File(path, blogEntry.getId() + ".xml.tmp").exists());
+  }
+
+  public void testBackupIsTakenWhenOverwriting() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createMinimalBlogEntry();
+    dao.storeBlogEntry(blogEntry);
+    blogEntry.setTitle("New title");
+    dao.storeBlogEntry(blogEntry);
+
+    File path = new File(dao.getPath(blog, blogEntry.getId(), TimeZone.getTimeZone("GMT")));
+    assertTrue(new File(path, blogEntry.getId() + ".xml.bak").exists());
+    assertEquals("New title", dao.loadBlogEntry(blog, blogEntry.getId()).getTitle());
+  }
+
+  private BlogEntry createFullBlogEntry() {
+    Category category = new Category("/category1", "Category 1");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Blog entry title");
+    blogEntry.setSubtitle("Blog entry subtitle");
+    blogEntry.setExcerpt("<p>Blog entry excerpt.</p>");
+    blogEntry.setBody("<p>Blog entry body.</p>");
+    blogEntry.setDate(new Date(ENTRY_DATE));
+    blogEntry.setTimeZoneId("Europe/Paris");
+    blogEntry.setAuthor("simon");
+    blogEntry.setTags("java, pebble");
+    blogEntry.addCategory(category);
+    blogEntry.setOriginalPermalink("http://www.example.com/entry.html");
+    blogEntry.setCommentsEnabled(false);
+    blogEntry.setPublished(true);
+    blogEntry.setAttachment(new Attachment("./files/podcast.mp3", 3443670, "audio/mpeg"));
+
+    Comment comment1 = blogEntry.createComment("Comment title 1", "Comment <b>body</b> 1 ]]> end", "Comment author 1", "me@author1.com", "http://www.author1.com", "http://www.author1.com/avatar.png", "127.0.0.1", new Date(ENTRY_DATE + 1000), State.APPROVED);
+    blogEntry.addComment(comment1);
+    Comment comment2 = blogEntry.createComment("Re: Comment title 1", "Comment body 2", "Comment author 2", "me@author2.com", "http://www.author2.com", null, "192.168.0.1", new Date(ENTRY_DATE + 2000), State.PENDING);
+    comment2.setParent(comment1);
+    comment2.setAuthenticated(true);
+    blogEntry.addComment(comment2);
+    Comment comment3 = blogEntry.createComment(null, "Comment body 3", "Comment author 3", null, null, null, "10.0.0.1", new Date(ENTRY_DATE + 3000), State.REJECTED);
+    blogEntry.addComment(comment3);
+
+    TrackBack trackBack = blogEntry.createTrackBack("TrackBack title", "TrackBack excerpt.", "http://www.author1.com/entry", "Blog name", "127.0.0.1", new Date(ENTRY_DATE + 4000), State.PENDING);
+    blogEntry.addTrackBack(trackBack);
+
+    return blogEntry;
+  }
+
+  private BlogEntry createMinimalBlogEntry() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(ENTRY_DATE));
+    return blogEntry;
+  }
+
+  private BlogEntry createEscapedBlogEntry() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Tom & Jerry <3 \"quotes\" 'apostrophes' > \u00e9\u4e2d \ud83d\ude00 \u0085\u007f\u009f  ");
+    blogEntry.setSubtitle("Line 1\r\nLine 2\tTabbed\u0000");
+    blogEntry.setExcerpt("Excerpt ]]> with \ud83d\ude00 and \u0085\r\n");
+    blogEntry.setBody("   ");
+    blogEntry.setAuthor(" \n ");
+    blogEntry.setDate(new Date(ENTRY_DATE));
+    blogEntry.setTags("");
+
+    Comment comment = blogEntry.createComment("<script>", "]]>]]>", "A & B", "", "", "", "", new Date(ENTRY_DATE + 1000), State.APPROVED);
+    blogEntry.addComment(comment);
+    TrackBack trackBack = blogEntry.createTrackBack("", null, "http://www.example.com/?a=1&b=2", null, null, new Date(ENTRY_DATE + 2000), State.APPROVED);
+    blogEntry.addTrackBack(trackBack);
+
+    return blogEntry;
+  }
+
+  private String write(BlogEntry blogEntry) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+    new BlogEntryWriter(writer).write(blogEntry);
+    writer.close();
+
+    return new String(out.toByteArray(), "UTF-8");
+  }
+
+  private String expected(String filename) throws Exception {
+    File file = new File(TEST_RESOURCE_LOCATION, filename);
+    InputStream in = new FileInputStream(file);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int length;
+    while ((length = in.read(buf)) != -1) {
+      out.write(buf, 0, length);
+    }
+    in.close();
+
+    // the expected files use \n, whereas the writer uses the platform line separator
+    return new String(out.toByteArray(), "UTF-8").replace("\n", System.getProperty("line.separator"));
+  }
+
+}
@@ -32,14 +32,20 @@
 package net.sourceforge.pebble.dao.file;
 
 import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.*;
 import net.sourceforge.pebble.util.FileUtils;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * Tests for the FileBlogEntryDAO class.
@@ -167,4 +173,229 @@ public class FileBlogEntryDAOTest extends SingleBlogTestCase {
     assertEquals("A title", loaded.getComments().get(0).getTitle());
   }
 
+  public void testLoadBlogEntries() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    List<String> ids = storeBlogEntriesOverSeveralDays(dao);
+
+    Collection<BlogEntry> blogEntries = dao.loadBlogEntries(blog);
+    assertEquals(ids, getIds(blogEntries));
+  }
+
+  public void testLoadBlogEntriesInParallel() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO(4);
+    List<String> ids = storeBlogEntriesOverSeveralDays(dao);
+
+    Collection<BlogEntry> blogEntries = dao.loadBlogEntries(blog);
+    assertEquals(ids, getIds(blogEntries));
+    for (BlogEntry blogEntry : blogEntries) {
+      assertEquals("Title " + blogEntry.getId(), blogEntry.getTitle());
+      assertEquals(1, blogEntry.getComments().size());
+    }
+  }
+
+  public void testLoadBlogEntriesInParallelReportsCorruptFiles() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO(4);
+    List<String> ids = storeBlogEntriesOverSeveralDays(dao);
+
+    File corrupt = new File(dao.getPath(blog, ids.get(3), TimeZone.getTimeZone("GMT")), ids.get(3) + ".xml");
+    FileUtils.deleteFile(corrupt);
+    new FileWriter(corrupt).append("<blogEntry><title>").close();
+
+    try {
+      dao.loadBlogEntries(blog);
+      fail();
+    } catch (PersistenceException pe) {
+      // expected
+    }
+  }
+
+  public void testStoreResponsesAppendsToJournal() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    File file = getBlogEntryFile(dao, blogEntry);
+    long length = file.length();
+
+    Comment comment = blogEntry.createComment("Comment 2", "Comment body 2", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.PENDING);
+    blogEntry.addComment(comment);
+    TrackBack trackBack = blogEntry.createTrackBack("TrackBack", "Excerpt", "http://www.example.com", "Blog", "127.0.0.1", new Date(blogEntry.getDate().getTime() + 3000), State.APPROVED);
+    blogEntry.addTrackBack(trackBack);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment, trackBack));
+
+    assertEquals(length, file.length());
+    assertTrue(getJournalFile(file).exists());
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(2, loaded.getComments().size());
+    assertEquals("Comment body 2", loaded.getComments().get(1).getBody());
+    assertTrue(loaded.getComments().get(1).isPending());
+    assertEquals(1, loaded.getTrackBacks().size());
+    assertEquals("http://www.example.com", loaded.getTrackBacks().get(0).getUrl());
+  }
+
+  public void testStoreResponsesRecordsStateChangesAndRemovals() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    Comment comment = blogEntry.getComments().get(0);
+    Comment reply = blogEntry.createComment("Reply", "Reply body", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    reply.setParent(comment);
+    blogEntry.addComment(reply);
+    TrackBack trackBack = blogEntry.createTrackBack("TrackBack", "Excerpt", "http://www.example.com", "Blog", "127.0.0.1", new Date(blogEntry.getDate().getTime() + 3000), State.PENDING);
+    blogEntry.addTrackBack(trackBack);
+    dao.storeBlogEntry(blogEntry);
+
+    trackBack.setApproved();
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(trackBack));
+    assertTrue(dao.loadBlogEntry(blog, blogEntry.getId()).getTrackBacks().get(0).isApproved());
+
+    blogEntry.removeComment(comment.getId());
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment, reply));
+    trackBack.setRejected();
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(trackBack));
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(0, loaded.getComments().size());
+    assertEquals(1, loaded.getTrackBacks().size());
+    assertTrue(loaded.getTrackBacks().get(0).isRejected());
+  }
+
+  public void testCompactResponses() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    Comment comment = blogEntry.createComment("Comment 2", "Comment body 2", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    blogEntry.addComment(comment);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment));
+
+    dao.compactResponses(blog, blogEntry.getId());
+
+    File file = getBlogEntryFile(dao, blogEntry);
+    assertFalse(getJournalFile(file).exists());
+    assertEquals(2, dao.loadBlogEntry(blog, blogEntry.getId()).getComments().size());
+  }
+
+  public void testLargeJournalIsCompactedInTheBackground() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    File journal = getJournalFile(getBlogEntryFile(dao, blogEntry));
+
+    StringBuffer body = new StringBuffer();
+    while (body.length() <= FileBlogEntryDAO.JOURNAL_COMPACTION_THRESHOLD) {
+      body.append("Some comment text. ");
+    }
+    Comment comment = blogEntry.createComment("Comment 2", body.toString(), "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    blogEntry.addComment(comment);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment));
+
+    waitForCompaction(journal);
+    assertFalse(journal.exists());
+    assertEquals(2, dao.loadBlogEntry(blog, blogEntry.getId()).getComments().size());
+  }
+
+  public void testIncompleteJournalRecordIsIgnored() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    Comment comment = blogEntry.createComment("Comment 2", "Comment body 2", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    blogEntry.addComment(comment);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment));
+
+    File journal = getJournalFile(getBlogEntryFile(dao, blogEntry));
+    new FileWriter(journal, true).append("<comment><title>Torn").close();
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(2, loaded.getComments().size());
+
+    waitForCompaction(journal);
+    assertFalse(journal.exists());
+    assertEquals(2, dao.loadBlogEntry(blog, blogEntry.getId()).getComments().size());
+  }
+
+  public void testResponsesAppendedAfterIncompleteJournalRecordAreKept() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    Comment comment = blogEntry.createComment("Comment 2", "Comment body 2", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    blogEntry.addComment(comment);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment));
+
+    File journal = getJournalFile(getBlogEntryFile(dao, blogEntry));
+    new FileWriter(journal, true).append("<comment><title>Torn").close();
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    Comment approved = loaded.createComment("Comment 3", "Comment body 3", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 3000), State.APPROVED);
+    loaded.addComment(approved);
+    dao.storeResponses(loaded, Arrays.<Response>asList(approved));
+
+    dao.compactResponses(blog, blogEntry.getId());
+
+    assertFalse(journal.exists());
+    List<Comment> comments = dao.loadBlogEntry(blog, blogEntry.getId()).getComments();
+    assertEquals(3, comments.size());
+    assertEquals("Comment body 3", comments.get(2).getBody());
+  }
+
+  public void testRemoveBlogEntryRemovesJournal() throws Exception {
+    FileBlogEntryDAO dao = new FileBlogEntryDAO();
+    BlogEntry blogEntry = createBlogEntryWithComment();
+    dao.storeBlogEntry(blogEntry);
+    Comment comment = blogEntry.createComment("Comment 2", "Comment body 2", "Author", "", "", "", "", new Date(blogEntry.getDate().getTime() + 2000), State.APPROVED);
+    blogEntry.addComment(comment);
+    dao.storeResponses(blogEntry, Arrays.<Response>asList(comment));
+
+    dao.removeBlogEntry(blogEntry);
+    assertFalse(getJournalFile(getBlogEntryFile(dao, blogEntry)).exists());
+  }
+
+  private BlogEntry createBlogEntryWithComment() {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1081203335000L));
+    blogEntry.setTitle("Title");
+    blogEntry.setBody("Body");
+    blogEntry.addComment(blogEntry.createComment("Comment", "Comment body", "Author", "", "", "", "", new Date(1081203335000L + 1000), State.APPROVED));
+    return blogEntry;
+  }
+
+  private File getBlogEntryFile(FileBlogEntryDAO dao, BlogEntry blogEntry) {
+    return new File(dao.getPath(blog, blogEntry.getId(), TimeZone.getTimeZone("GMT")), blogEntry.getId() + ".xml");
+  }
+
+  private File getJournalFile(File blogEntryFile) {
+    return new File(blogEntryFile.getParentFile(), blogEntryFile.getName() + ".journal");
+  }
+
+  private void waitForCompaction(File journal) throws InterruptedException {
+    for (int i = 0; i < 100 && journal.exists(); i++) {
+      Thread.sleep(50);
+    }
+  }
+
+  private List<String> storeBlogEntriesOverSeveralDays(BlogEntryDAO dao) throws Exception {
+    List<String> ids = new ArrayList<String>();
+    long date = 1081203335000L;
+    for (int i = 0; i < 20; i++) {
+      // spread the entries over a number of days, with some days having more than one
+      date += (i % 3 == 0) ? 1000 * 60 * 60 * 24 : 1000 * 60;
+      BlogEntry blogEntry = new BlogEntry(blog);
+      blogEntry.setDate(new Date(date));
+      blogEntry.setTitle("Title " + blogEntry.getId());
+      blogEntry.setBody("Body");
+      blogEntry.addComment(blogEntry.createComment("Comment", "Comment body", "Author", "", "", "", ""));
+      dao.storeBlogEntry(blogEntry);
+      ids.add(blogEntry.getId());
+    }
+
+    return ids;
+  }
+
+  private List<String> getIds(Collection<BlogEntry> blogEntries) {
+    List<String> ids = new ArrayList<String>();
+    for (BlogEntry blogEntry : blogEntries) {
+      ids.add(blogEntry.getId());
+    }
+
+    return ids;
+  }
+
 }
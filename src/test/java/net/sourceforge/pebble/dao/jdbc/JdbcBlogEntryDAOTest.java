@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.domain.*;
+
+import java.util.*;
+
+/**
+ * Tests for the JdbcBlogEntryDAO class.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcBlogEntryDAOTest extends SingleBlogTestCase {
+
+  private static final long ENTRY_DATE = 1081203335000L;
+
+  private BlogEntryDAO dao;
+  private Category category;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    dao = new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", "").getBlogEntryDAO();
+    category = new Category("/category1", "Category 1");
+    blog.addCategory(category);
+  }
+
+  public void testStoredBlogEntryCanBeLoaded() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(ENTRY_DATE);
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(blogEntry.getTitle(), loaded.getTitle());
+    assertEquals(blogEntry.getSubtitle(), loaded.getSubtitle());
+    assertEquals(blogEntry.getExcerpt(), loaded.getExcerpt());
+    assertEquals(blogEntry.getBody(), loaded.getBody());
+    assertEquals(blogEntry.getDate(), loaded.getDate());
+    assertEquals("Europe/Paris", loaded.getTimeZoneId());
+    assertTrue(loaded.isPublished());
+    assertEquals(blogEntry.getAuthor(), loaded.getAuthor());
+    assertEquals(blogEntry.getTags(), loaded.getTags());
+    assertEquals(blogEntry.getCategories(), loaded.getCategories());
+    assertEquals(blogEntry.getOriginalPermalink(), loaded.getOriginalPermalink());
+    assertFalse(loaded.isCommentsEnabled());
+    assertTrue(loaded.isTrackBacksEnabled());
+    assertEquals(blogEntry.getAttachment(), loaded.getAttachment());
+
+    assertEquals(2, loaded.getComments().size());
+    Comment reply = loaded.getComments().get(1);
+    assertEquals(loaded.getComments().get(0), reply.getParent());
+    assertTrue(reply.isAuthenticated());
+    assertEquals(State.PENDING, reply.getState());
+    assertEquals("me@author2.com", reply.getEmail());
+
+    assertEquals(1, loaded.getTrackBacks().size());
+    TrackBack trackBack = loaded.getTrackBacks().get(0);
+    assertEquals("TrackBack excerpt.", trackBack.getExcerpt());
+    assertEquals("http://www.author1.com/entry", trackBack.getUrl());
+    assertEquals("Blog name", trackBack.getBlogName());
+  }
+
+  public void testLoadBlogEntryThatDoesNotExist() throws Exception {
+    assertNull(dao.loadBlogEntry(blog, "" + ENTRY_DATE));
+  }
+
+  public void testStoringReplacesPreviousVersion() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(ENTRY_DATE);
+    dao.storeBlogEntry(blogEntry);
+    blogEntry.setTitle("New title");
+    blogEntry.removeAllCategories();
+    blogEntry.removeComment(blogEntry.getComments().get(1).getId());
+    dao.storeBlogEntry(blogEntry);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals("New title", loaded.getTitle());
+    assertTrue(loaded.getCategories().isEmpty());
+    assertEquals(1, loaded.getComments().size());
+  }
+
+  public void testLoadBlogEntries() throws Exception {
+    dao.storeBlogEntry(createBlogEntry(ENTRY_DATE + 10000));
+    dao.storeBlogEntry(createBlogEntry(ENTRY_DATE));
+
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>(dao.loadBlogEntries(blog));
+    assertEquals(2, blogEntries.size());
+    assertEquals(new Date(ENTRY_DATE), blogEntries.get(0).getDate());
+    assertEquals(new Date(ENTRY_DATE + 10000), blogEntries.get(1).getDate());
+    for (BlogEntry blogEntry : blogEntries) {
+      assertTrue(blogEntry.inCategory(category));
+      assertEquals(2, blogEntry.getComments().size());
+      assertEquals(1, blogEntry.getTrackBacks().size());
+    }
+  }
+
+  public void testBlogEntriesAreScopedToTheirBlog() throws Exception {
+    dao.storeBlogEntry(createBlogEntry(ENTRY_DATE));
+
+    Blog otherBlog = new Blog(blog.getRoot());
+    otherBlog.setId("other");
+    assertTrue(dao.loadBlogEntries(otherBlog).isEmpty());
+    assertNull(dao.loadBlogEntry(otherBlog, "" + ENTRY_DATE));
+  }
+
+  public void testStoreResponses() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(ENTRY_DATE);
+    dao.storeBlogEntry(blogEntry);
+
+    Comment approved = blogEntry.getComments().get(1);
+    approved.setApproved();
+    Comment added = blogEntry.createComment("Title", "Body", "Author", null, null, null, "127.0.0.1", new Date(ENTRY_DATE + 5000), State.APPROVED);
+    blogEntry.addComment(added);
+    TrackBack removed = blogEntry.getTrackBacks().get(0);
+    blogEntry.removeTrackBack(removed.getId());
+
+    List<Response> responses = new ArrayList<Response>();
+    responses.add(approved);
+    responses.add(added);
+    responses.add(removed);
+    dao.storeResponses(blogEntry, responses);
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(3, loaded.getComments().size());
+    assertEquals(State.APPROVED, loaded.getComments().get(1).getState());
+    assertEquals(loaded.getComments().get(0), loaded.getComments().get(1).getParent());
+    assertEquals("Body", loaded.getComments().get(2).getBody());
+    assertTrue(loaded.getTrackBacks().isEmpty());
+  }
+
+  public void testStoreResponsesForNewBlogEntryStoresEverything() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(ENTRY_DATE);
+    dao.storeResponses(blogEntry, new ArrayList<Response>());
+
+    BlogEntry loaded = dao.loadBlogEntry(blog, blogEntry.getId());
+    assertEquals(blogEntry.getTitle(), loaded.getTitle());
+    assertEquals(2, loaded.getComments().size());
+  }
+
+  public void testRemoveBlogEntry() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(ENTRY_DATE);
+    dao.storeBlogEntry(blogEntry);
+    dao.removeBlogEntry(blogEntry);
+
+    assertNull(dao.loadBlogEntry(blog, blogEntry.getId()));
+    assertTrue(dao.loadBlogEntries(blog).isEmpty());
+
+    try {
+      dao.removeBlogEntry(blogEntry);
+      fail();
+    } catch (PersistenceException pe) {
+      // expected
+    }
+  }
+
+  private BlogEntry createBlogEntry(long date) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Blog entry title");
+    blogEntry.setSubtitle("Blog entry subtitle");
+    blogEntry.setExcerpt("<p>Blog entry excerpt.</p>");
+    blogEntry.setBody("<p>Blog entry body.</p>");
+    blogEntry.setDate(new Date(date));
+    blogEntry.setTimeZoneId("Europe/Paris");
+    blogEntry.setAuthor("simon");
+    blogEntry.setTags("java, pebble");
+    blogEntry.addCategory(category);
+    blogEntry.setOriginalPermalink("http://www.example.com/entry.html");
+    blogEntry.setCommentsEnabled(false);
+    blogEntry.setPublished(true);
+    blogEntry.setAttachment(new Attachment("./files/podcast.mp3", 3443670, "audio/mpeg"));
+
+    Comment comment1 = blogEntry.createComment("Comment title 1", "Comment body 1", "Comment author 1", "me@author1.com", "http://www.author1.com", "http://www.author1.com/avatar.png", "127.0.0.1", new Date(date + 1000), State.APPROVED);
+    blogEntry.addComment(comment1);
+    Comment comment2 = blogEntry.createComment("Re: Comment title 1", "Comment body 2", "Comment author 2", "me@author2.com", "http://www.author2.com", null, "192.168.0.1", new Date(date + 2000), State.PENDING);
+    comment2.setParent(comment1);
+    comment2.setAuthenticated(true);
+    blogEntry.addComment(comment2);
+
+    TrackBack trackBack = blogEntry.createTrackBack("TrackBack title", "TrackBack excerpt.", "http://www.author1.com/entry", "Blog name", "127.0.0.1", new Date(date + 4000), State.PENDING);
+    blogEntry.addTrackBack(trackBack);
+
+    return blogEntry;
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.CategoryDAO;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+/**
+ * Tests for the JdbcCategoryDAO class.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcCategoryDAOTest extends SingleBlogTestCase {
+
+  private CategoryDAO dao;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    dao = new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", "").getCategoryDAO();
+  }
+
+  public void testCategoriesCanBeStoredAndLoaded() throws Exception {
+    Category java = new Category("/java", "Java");
+    java.setTags("java");
+    blog.addCategory(java);
+    dao.addCategory(java, blog);
+    Category junit = new Category("/java/junit", "JUnit");
+    blog.addCategory(junit);
+    dao.addCategory(junit, blog);
+
+    Category root = dao.getCategories(blog);
+    assertEquals("/", root.getId());
+    assertEquals(1, root.getSubCategories().size());
+    Category loaded = (Category)root.getSubCategories().get(0);
+    assertEquals("Java", loaded.getName());
+    assertEquals("java", loaded.getTags());
+    assertEquals(1, loaded.getSubCategories().size());
+    assertEquals("JUnit", ((Category)loaded.getSubCategories().get(0)).getName());
+  }
+
+  public void testDeleteCategory() throws Exception {
+    Category java = new Category("/java", "Java");
+    blog.addCategory(java);
+    dao.addCategory(java, blog);
+    blog.removeCategory(java);
+    dao.deleteCategory(java, blog);
+
+    assertTrue(dao.getCategories(blog).getSubCategories().isEmpty());
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.RefererFilterDAO;
+import net.sourceforge.pebble.domain.RefererFilter;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the JdbcRefererFilterDAO class.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcRefererFilterDAOTest extends SingleBlogTestCase {
+
+  private RefererFilterDAO dao;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    dao = new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", "").getRefererFilterDAO();
+  }
+
+  public void testFiltersAreLoadedInTheOrderTheyWereAdded() throws Exception {
+    dao.addRefererFilter(new RefererFilter(".*www.b.com.*"), blog);
+    dao.addRefererFilter(new RefererFilter(".*www.a.com.*"), blog);
+
+    List filters = new ArrayList(dao.getRefererFilters(blog));
+    assertEquals(2, filters.size());
+    assertEquals(".*www.b.com.*", ((RefererFilter)filters.get(0)).getExpression());
+    assertEquals(".*www.a.com.*", ((RefererFilter)filters.get(1)).getExpression());
+  }
+
+  public void testDeleteRefererFilter() throws Exception {
+    RefererFilter filter = new RefererFilter(".*www.a.com.*");
+    dao.addRefererFilter(filter, blog);
+    dao.deleteRefererFilter(filter, blog);
+
+    assertTrue(dao.getRefererFilters(blog).isEmpty());
+  }
+
+}
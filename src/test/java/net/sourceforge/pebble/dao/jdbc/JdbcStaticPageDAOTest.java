@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.dao.jdbc;
+
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.StaticPageDAO;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.domain.StaticPage;
+import net.sourceforge.pebble.util.SecurityUtils;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the JdbcStaticPageDAO class.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcStaticPageDAOTest extends SingleBlogTestCase {
+
+  private StaticPageDAO dao;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    dao = new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", "").getStaticPageDAO();
+  }
+
+  protected void tearDown() throws Exception {
+    SecurityContextHolder.clearContext();
+
+    super.tearDown();
+  }
+
+  public void testStoredStaticPageCanBeLoaded() throws Exception {
+    StaticPage staticPage = createStaticPage(1152083300843L);
+    dao.storeStaticPage(staticPage);
+
+    StaticPage loaded = dao.loadStaticPage(blog, staticPage.getId());
+    assertEquals("Static page title", loaded.getTitle());
+    assertEquals("Static page subtitle", loaded.getSubtitle());
+    assertEquals("<p>Static page body.</p>", loaded.getBody());
+    assertEquals("some tags", loaded.getTags());
+    assertEquals("simon", loaded.getAuthor());
+    assertEquals("Page", loaded.getName());
+    assertEquals("template", loaded.getTemplate());
+    assertEquals(new Date(1152083300843L), loaded.getDate());
+    assertNull(loaded.getLockedBy());
+  }
+
+  public void testLoadStaticPages() throws Exception {
+    dao.storeStaticPage(createStaticPage(1152083300843L));
+    dao.storeStaticPage(createStaticPage(1152083300844L));
+    dao.storeStaticPage(createStaticPage(1152083300844L));
+
+    List<StaticPage> staticPages = new ArrayList<StaticPage>(dao.loadStaticPages(blog));
+    assertEquals(2, staticPages.size());
+    assertEquals("1152083300843", staticPages.get(0).getId());
+    assertEquals("1152083300844", staticPages.get(1).getId());
+  }
+
+  public void testRemoveStaticPage() throws Exception {
+    StaticPage staticPage = createStaticPage(1152083300843L);
+    dao.storeStaticPage(staticPage);
+    dao.removeStaticPage(staticPage);
+    assertNull(dao.loadStaticPage(blog, staticPage.getId()));
+
+    try {
+      dao.removeStaticPage(staticPage);
+      fail();
+    } catch (PersistenceException pe) {
+      // expected
+    }
+  }
+
+  public void testLockAndUnlock() throws Exception {
+    StaticPage staticPage = createStaticPage(1152083300843L);
+    dao.storeStaticPage(staticPage);
+
+    SecurityUtils.runAsBlogOwner();
+    assertTrue(dao.lock(staticPage));
+    assertTrue(dao.lock(staticPage));
+    assertEquals("username", dao.loadStaticPage(blog, staticPage.getId()).getLockedBy());
+
+    SecurityContextHolder.getContext().setAuthentication(
+        new TestingAuthenticationToken("someoneelse", "password", new GrantedAuthority[] {}));
+    assertFalse(dao.lock(staticPage));
+
+    assertTrue(dao.unlock(staticPage));
+    assertNull(dao.loadStaticPage(blog, staticPage.getId()).getLockedBy());
+    assertTrue(dao.lock(staticPage));
+    assertEquals("someoneelse", dao.loadStaticPage(blog, staticPage.getId()).getLockedBy());
+  }
+
+  private StaticPage createStaticPage(long date) {
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setTitle("Static page title");
+    staticPage.setSubtitle("Static page subtitle");
+    staticPage.setBody("<p>Static page body.</p>");
+    staticPage.setTags("some tags");
+    staticPage.setAuthor("simon");
+    staticPage.setName("Page");
+    staticPage.setTemplate("template");
+    staticPage.setDate(new Date(date));
+
+    return staticPage;
+  }
+
+}
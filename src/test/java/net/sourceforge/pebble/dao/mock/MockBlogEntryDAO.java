@@ -36,6 +36,7 @@ import net.sourceforge.pebble.dao.BlogEntryDAO;
 import net.sourceforge.pebble.dao.PersistenceException;
 import net.sourceforge.pebble.domain.Blog;
 import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.Response;
 
 import java.util.*;
 
@@ -87,6 +88,17 @@ public class MockBlogEntryDAO implements BlogEntryDAO {
     blogEntries.put(blogEntry.getId(), blogEntry);
   }
 
+  /**
+   * Stores changes to the responses of the specified blog entry.
+   *
+   * @param blogEntry   the blog entry that owns the responses
+   * @param responses   the responses that have been added, changed or removed
+   * @throws PersistenceException   if something goes wrong storing the responses
+   */
+  public void storeResponses(BlogEntry blogEntry, Collection<Response> responses) throws PersistenceException {
+    blogEntries.put(blogEntry.getId(), blogEntry);
+  }
+
   /**
    * Removes the specified blog entry.
    *
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.decorator;
+
+import net.sourceforge.pebble.api.decorator.ContentDecoratorContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.List;
+
+/**
+ * Tests for the ContentDecoratorChain class.
+ *
+ * @author    Simon Brown
+ */
+public class ContentDecoratorChainTest extends SingleBlogTestCase {
+
+  /**
+   * Tests that decorating a list of blog entries leaves the shared,
+   * read-only instances alone.
+   */
+  public void testBlogEntriesAreCopiedBeforeDecoration() throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setPublished(true);
+    blogEntry.setCommentsEnabled(true);
+    service.putBlogEntry(blogEntry);
+    blog.getContentDecoratorChain().add(new DisableCommentsDecorator());
+
+    List<BlogEntry> blogEntries = blog.getRecentPublishedBlogEntries();
+    BlogEntry readOnlyBlogEntry = blogEntries.get(0);
+    ContentDecoratorChain.decorate(new ContentDecoratorContext(), blogEntries);
+
+    assertNotSame(readOnlyBlogEntry, blogEntries.get(0));
+    assertFalse(blogEntries.get(0).isCommentsEnabled());
+    assertTrue(readOnlyBlogEntry.isCommentsEnabled());
+    assertTrue(service.getReadOnlyBlogEntry(blog, blogEntry.getId()).isCommentsEnabled());
+  }
+
+}
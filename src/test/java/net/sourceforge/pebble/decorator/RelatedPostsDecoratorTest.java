@@ -74,6 +74,11 @@ public class RelatedPostsDecoratorTest extends SingleBlogTestCase {
     blogEntrySeven = new BlogEntry(blog);
     blogEntryEight = new BlogEntry(blog);
 
+    // only published blog entries are related to others
+    for (BlogEntry blogEntry : new BlogEntry[] { blogEntryOne, blogEntryTwo, blogEntryThree, blogEntryFour, blogEntryFive, blogEntrySix, blogEntrySeven, blogEntryEight }) {
+      blogEntry.setPublished(true);
+    }
+
     service = new BlogService();
 
     decorator = new RelatedPostsDecorator();
@@ -39,6 +39,11 @@ import net.sourceforge.pebble.api.event.trackback.TrackBackEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryEvent;
 import net.sourceforge.pebble.api.event.blogentry.BlogEntryListener;
 
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileBlogEntryDAO;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+
+import java.io.File;
 import java.util.*;
 
 /**
@@ -529,4 +534,29 @@ public class BlogServiceTest extends SingleBlogTestCase {
     assertEquals(trackBack2, trackBacks.get(1));
     assertEquals(trackBack3, trackBacks.get(2));
   }
+
+  /**
+   * Tests that only the responses are stored when nothing else about the
+   * blog entry has changed.
+   */
+  public void testResponsesJournalledWhenBlogEntryUnchanged() throws Exception {
+    DAOFactory.setConfiguredFactory(new FileDAOFactory());
+    service.putBlogEntry(blogEntry);
+    File file = new File(new FileBlogEntryDAO().getPath(blog, blogEntry.getId(), TimeZone.getTimeZone("GMT")), blogEntry.getId() + ".xml");
+    File journal = new File(file.getParentFile(), file.getName() + ".journal");
+
+    BlogEntry be = service.getBlogEntry(blog, blogEntry.getId());
+    Comment comment = be.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    be.addComment(comment);
+    service.putBlogEntry(be);
+    assertTrue(journal.exists());
+
+    be = service.getBlogEntry(blog, blogEntry.getId());
+    assertEquals(1, be.getComments().size());
+    be.setTitle("A new title");
+    service.putBlogEntry(be);
+    assertFalse(journal.exists());
+    assertEquals(1, service.getBlogEntry(blog, blogEntry.getId()).getComments().size());
+  }
+
 }
@@ -36,6 +36,7 @@ import net.sourceforge.pebble.PebbleContext;
 import net.sourceforge.pebble.event.DefaultEventDispatcher;
 import net.sourceforge.pebble.api.event.blog.BlogEvent;
 import net.sourceforge.pebble.api.event.blog.BlogListener;
+import net.sourceforge.pebble.logging.AsyncCombinedLogFormatLogger;
 import net.sourceforge.pebble.logging.CombinedLogFormatLogger;
 import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
 
@@ -68,8 +69,8 @@ public class BlogTest extends SingleBlogTestCase {
     assertTrue(blog.getPermalinkProvider() instanceof DefaultPermalinkProvider);
     assertEquals("net.sourceforge.pebble.event.DefaultEventDispatcher", blog.getEventDispatcherName());
     assertTrue(blog.getEventDispatcher() instanceof DefaultEventDispatcher);
-    assertEquals("net.sourceforge.pebble.logging.CombinedLogFormatLogger", blog.getLoggerName());
-    assertTrue(blog.getLogger() instanceof CombinedLogFormatLogger);
+    assertEquals("net.sourceforge.pebble.logging.AsyncCombinedLogFormatLogger", blog.getLoggerName());
+    assertTrue(blog.getLogger() instanceof AsyncCombinedLogFormatLogger);
   }
 
   /**
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.domain;
+
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.jdbc.JdbcDAOFactory;
+
+/**
+ * Runs the BlogService tests against blog entries stored in a database.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcBlogServiceTest extends BlogServiceTest {
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    DAOFactory.setConfiguredFactory(new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", ""));
+  }
+
+  /**
+   * The database has no journal, so this checks that responses stored on
+   * their own survive the blog entry being changed.
+   */
+  public void testResponsesJournalledWhenBlogEntryUnchanged() throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    service.putBlogEntry(blogEntry);
+
+    BlogEntry be = service.getBlogEntry(blog, blogEntry.getId());
+    Comment comment = be.createComment("title", "body", "author", "email", "website", "avatar", "127.0.0.1");
+    be.addComment(comment);
+    service.putBlogEntry(be);
+
+    be = service.getBlogEntry(blog, blogEntry.getId());
+    assertEquals(1, be.getComments().size());
+    be.setTitle("A new title");
+    service.putBlogEntry(be);
+    be = service.getBlogEntry(blog, blogEntry.getId());
+    assertEquals("A new title", be.getTitle());
+    assertEquals(1, be.getComments().size());
+  }
+
+}
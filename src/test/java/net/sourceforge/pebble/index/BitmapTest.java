@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Tests for the Bitmap class.
+ *
+ * @author    Simon Brown
+ */
+public class BitmapTest extends TestCase {
+
+  public void testAddAndRemove() {
+    Bitmap bitmap = new Bitmap();
+    assertTrue(bitmap.isEmpty());
+    assertEquals(-1, bitmap.first());
+
+    assertTrue(bitmap.add(5));
+    assertTrue(bitmap.add(1));
+    assertFalse(bitmap.add(5));
+    assertEquals(2, bitmap.getCardinality());
+    assertTrue(bitmap.contains(1));
+    assertFalse(bitmap.contains(2));
+    assertEquals(1, bitmap.first());
+
+    assertTrue(bitmap.remove(1));
+    assertFalse(bitmap.remove(1));
+    assertTrue(Arrays.equals(new int[] { 5 }, bitmap.toArray()));
+  }
+
+  public void testRepresentationFollowsDensity() {
+    Bitmap bitmap = new Bitmap();
+    bitmap.add(10000);
+    assertFalse(bitmap.isDense());
+
+    for (int i = 0; i < 1000; i++) {
+      bitmap.add(i);
+    }
+    assertTrue(bitmap.isDense());
+    assertEquals(1001, bitmap.getCardinality());
+
+    for (int i = 0; i < 1000; i++) {
+      bitmap.remove(i);
+    }
+    assertFalse(bitmap.isDense());
+    assertTrue(Arrays.equals(new int[] { 10000 }, bitmap.toArray()));
+  }
+
+  /**
+   * Compares the set operations against TreeSets, for every combination
+   * of sparse and dense.
+   */
+  public void testSetOperationsMatchTreeSets() {
+    Random random = new Random(42);
+    int[] sizes = { 0, 10, 500, 1900 };
+    for (int size1 : sizes) {
+      for (int size2 : sizes) {
+        TreeSet<Integer> set1 = new TreeSet<Integer>();
+        TreeSet<Integer> set2 = new TreeSet<Integer>();
+        Bitmap bitmap1 = randomBitmap(random, size1, set1);
+        Bitmap bitmap2 = randomBitmap(random, size2, set2);
+
+        TreeSet<Integer> and = new TreeSet<Integer>(set1);
+        and.retainAll(set2);
+        TreeSet<Integer> or = new TreeSet<Integer>(set1);
+        or.addAll(set2);
+        TreeSet<Integer> andNot = new TreeSet<Integer>(set1);
+        andNot.removeAll(set2);
+
+        assertEquals(and, toSet(Bitmap.and(bitmap1, bitmap2)));
+        assertEquals(and.size(), Bitmap.andCardinality(bitmap1, bitmap2));
+        assertEquals(or, toSet(Bitmap.or(bitmap1, bitmap2)));
+        assertEquals(andNot, toSet(Bitmap.andNot(bitmap1, bitmap2)));
+
+        // the arguments are left alone
+        assertEquals(set1, toSet(bitmap1));
+        assertEquals(set2, toSet(bitmap2));
+      }
+    }
+  }
+
+  private Bitmap randomBitmap(Random random, int size, TreeSet<Integer> set) {
+    Bitmap bitmap = new Bitmap();
+    for (int i = 0; i < size; i++) {
+      int value = random.nextInt(2000);
+      bitmap.add(value);
+      set.add(value);
+    }
+
+    return bitmap;
+  }
+
+  private TreeSet<Integer> toSet(Bitmap bitmap) {
+    TreeSet<Integer> set = new TreeSet<Integer>();
+    for (int value : bitmap.toArray()) {
+      set.add(value);
+    }
+    assertEquals(set.size(), bitmap.getCardinality());
+
+    return set;
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogEntrySummary;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.domain.Category;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests for the BlogEntrySummaryIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class BlogEntrySummaryIndexTest extends SingleBlogTestCase {
+
+  private BlogEntrySummaryIndex index;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    this.index = new BlogEntrySummaryIndex(blog);
+  }
+
+  /**
+   * Tests that a single blog entry can be indexed.
+   */
+  public void testIndexBlogEntry() throws Exception {
+    Category category = new Category("/java", "Java");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setSubtitle("A subtitle");
+    blogEntry.setAuthor("sbrown");
+    blogEntry.setTags("java, pebble");
+    blogEntry.addCategory(category);
+    blogEntry.setPublished(true);
+    index.index(blogEntry);
+
+    BlogEntrySummary summary = index.getBlogEntrySummary(blogEntry.getId());
+    assertEquals(blogEntry.getId(), summary.getId());
+    assertEquals(blogEntry.getDate(), summary.getDate());
+    assertEquals("A title", summary.getTitle());
+    assertEquals("A subtitle", summary.getSubtitle());
+    assertEquals("sbrown", summary.getAuthor());
+    assertEquals(blogEntry.getTags(), summary.getTags());
+    assertEquals(Arrays.asList("/java"), summary.getCategories());
+    assertTrue(summary.isPublished());
+  }
+
+  /**
+   * Tests that reindexing a blog entry replaces its summary.
+   */
+  public void testReindexBlogEntry() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    index.index(blogEntry);
+
+    blogEntry.setTitle("A new title");
+    blogEntry.setPublished(false);
+    index.index(blogEntry);
+
+    assertEquals(1, index.getNumberOfBlogEntrySummaries());
+    assertEquals("A new title", index.getBlogEntrySummary(blogEntry.getId()).getTitle());
+    assertTrue(index.getBlogEntrySummary(blogEntry.getId()).isUnpublished());
+  }
+
+  /**
+   * Tests that a single blog entry can be unindexed.
+   */
+  public void testUnindexBlogEntry() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    index.index(blogEntry);
+    index.unindex(blogEntry);
+
+    assertNull(index.getBlogEntrySummary(blogEntry.getId()));
+    assertEquals(0, index.getNumberOfBlogEntrySummaries());
+  }
+
+  /**
+   * Tests that the index survives being written to and read from disk,
+   * including awkward characters.
+   */
+  public void testIndexIsPersisted() throws Exception {
+    Category category = new Category("/a,b", "A, B");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A | title\nwith é and %20");
+    blogEntry.setAuthor("sbrown");
+    blogEntry.addCategory(category);
+    blogEntry.setPublished(true);
+    index.index(blogEntry);
+
+    BlogEntrySummary summary = new BlogEntrySummaryIndex(blog).getBlogEntrySummary(blogEntry.getId());
+    assertEquals("A | title\nwith é and %20", summary.getTitle());
+    assertNull(summary.getSubtitle());
+    assertEquals("sbrown", summary.getAuthor());
+    assertEquals(Arrays.asList("/a,b"), summary.getCategories());
+    assertTrue(summary.isPublished());
+  }
+
+  /**
+   * Tests that the index is kept up to date as blog entries are stored.
+   */
+  public void testIndexIsUpdatedByListener() throws Exception {
+    BlogService service = new BlogService();
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    service.putBlogEntry(blogEntry);
+    assertEquals("A title", blog.getBlogEntrySummaryIndex().getBlogEntrySummary(blogEntry.getId()).getTitle());
+
+    blogEntry.setTitle("A new title");
+    service.putBlogEntry(blogEntry);
+    assertEquals("A new title", blog.getBlogEntrySummaryIndex().getBlogEntrySummary(blogEntry.getId()).getTitle());
+
+    service.removeBlogEntry(blogEntry);
+    assertNull(blog.getBlogEntrySummaryIndex().getBlogEntrySummary(blogEntry.getId()));
+  }
+
+  /**
+   * Tests that blog entries missing from the index are added when their
+   * summaries are requested.
+   */
+  public void testMissingSummariesAreCreated() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    new BlogService().putBlogEntry(blogEntry);
+    blog.getBlogEntrySummaryIndex().clear();
+
+    assertEquals(1, blog.getBlogEntrySummaries().size());
+    assertEquals("A title", blog.getBlogEntrySummaries().get(0).getTitle());
+    assertNotNull(blog.getBlogEntrySummaryIndex().getBlogEntrySummary(blogEntry.getId()));
+  }
+
+}
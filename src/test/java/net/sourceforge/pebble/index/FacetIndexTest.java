@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the FacetIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class FacetIndexTest extends SingleBlogTestCase {
+
+  private FacetIndex index;
+  private Category java;
+  private Category jvm;
+  private BlogEntry blogEntry1;
+  private BlogEntry blogEntry2;
+  private BlogEntry blogEntry3;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    index = new FacetIndex(blog);
+
+    java = new Category("/java", "Java");
+    blog.addCategory(java);
+    jvm = new Category("/java/jvm", "JVM");
+    blog.addCategory(jvm);
+
+    Calendar cal = blog.getCalendar();
+    cal.set(2011, Calendar.MARCH, 10, 12, 0, 0);
+    blogEntry1 = createBlogEntry(cal.getTime(), "java, performance", "simon", true);
+    blogEntry1.addCategory(jvm);
+    cal.set(2011, Calendar.APRIL, 10, 12, 0, 0);
+    blogEntry2 = createBlogEntry(cal.getTime(), "java", "sam", true);
+    blogEntry2.addCategory(java);
+    cal.set(2011, Calendar.APRIL, 11, 12, 0, 0);
+    blogEntry3 = createBlogEntry(cal.getTime(), "performance", "simon", false);
+
+    index.index(Arrays.asList(blogEntry1, blogEntry2, blogEntry3));
+  }
+
+  private BlogEntry createBlogEntry(Date date, String tags, String author, boolean published) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(date);
+    blogEntry.setTags(tags);
+    blogEntry.setAuthor(author);
+    blogEntry.setPublished(published);
+
+    return blogEntry;
+  }
+
+  public void testEmptyQueryMatchesEverythingNewestFirst() {
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries(new FacetQuery()));
+    assertEquals(3, index.getNumberOfBlogEntries());
+  }
+
+  public void testIntersection() {
+    FacetQuery query = new FacetQuery().require(FacetIndex.TAG, "java").require(FacetIndex.TAG, "performance");
+    assertEquals(Arrays.asList(blogEntry1.getId()), index.getBlogEntries(query));
+
+    query = new FacetQuery().require(FacetIndex.AUTHOR, "simon").require(FacetIndex.STATE, FacetIndex.PUBLISHED);
+    assertEquals(Arrays.asList(blogEntry1.getId()), index.getBlogEntries(query));
+  }
+
+  public void testUnion() {
+    FacetQuery query = new FacetQuery().add(FacetIndex.AUTHOR, "sam,nobody").add(FacetIndex.MONTH, "2011/03");
+    assertTrue(index.getBlogEntries(query).isEmpty());
+
+    query = new FacetQuery().add(FacetIndex.MONTH, "2011/03,2011/04").add(FacetIndex.TAG, "java");
+    assertEquals(Arrays.asList(blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries(query));
+  }
+
+  public void testExclusion() {
+    FacetQuery query = new FacetQuery().add(FacetIndex.TAG, "-performance");
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getBlogEntries(query));
+    assertEquals(1, index.getNumberOfBlogEntries(query));
+  }
+
+  public void testCategoriesIncludeSubcategories() {
+    FacetQuery query = new FacetQuery().require(FacetIndex.CATEGORY, "/java");
+    assertEquals(Arrays.asList(blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntries(query));
+
+    query = new FacetQuery().require(FacetIndex.CATEGORY, "/java/jvm");
+    assertEquals(Arrays.asList(blogEntry1.getId()), index.getBlogEntries(query));
+  }
+
+  public void testPaging() {
+    List<String> page = index.getBlogEntries(new FacetQuery(), 1, 1);
+    assertEquals(Arrays.asList(blogEntry2.getId()), page);
+    assertTrue(index.getBlogEntries(new FacetQuery(), 3, 10).isEmpty());
+  }
+
+  public void testCounts() {
+    FacetQuery query = new FacetQuery().require(FacetIndex.STATE, FacetIndex.PUBLISHED);
+    assertEquals(2, (int)index.getCounts(FacetIndex.TAG, query).get("java"));
+    assertEquals(1, (int)index.getCounts(FacetIndex.TAG, query).get("performance"));
+    assertEquals(1, (int)index.getCounts(FacetIndex.MONTH, query).get("2011/03"));
+    assertEquals(1, (int)index.getCounts(FacetIndex.MONTH, query).get("2011/04"));
+    assertFalse(index.getCounts(FacetIndex.STATE, query).containsKey(FacetIndex.UNPUBLISHED));
+  }
+
+  public void testReindexingReplacesValues() {
+    blogEntry3.setPublished(true);
+    blogEntry3.setTags("java");
+    index.index(blogEntry3);
+
+    FacetQuery query = new FacetQuery().require(FacetIndex.TAG, "java").require(FacetIndex.STATE, FacetIndex.PUBLISHED);
+    assertEquals(3, index.getNumberOfBlogEntries(query));
+    assertEquals(0, index.getNumberOfBlogEntries(new FacetQuery().require(FacetIndex.TAG, "performance").require(FacetIndex.AUTHOR, "simon").exclude(FacetIndex.CATEGORY, "/java")));
+    assertEquals(3, index.getNumberOfBlogEntries());
+  }
+
+  public void testUnindexedOrdinalsAreReused() {
+    index.unindex(blogEntry2);
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry1.getId()), index.getBlogEntries(new FacetQuery()));
+    assertTrue(index.getBlogEntries(new FacetQuery().require(FacetIndex.AUTHOR, "sam")).isEmpty());
+
+    BlogEntry blogEntry4 = createBlogEntry(new Date(), "jvm", "sam", true);
+    index.index(blogEntry4);
+    assertEquals(Arrays.asList(blogEntry4.getId()), index.getBlogEntries(new FacetQuery().require(FacetIndex.AUTHOR, "sam")));
+    assertEquals(blogEntry4.getId(), index.getBlogEntries(new FacetQuery()).get(0));
+  }
+
+  public void testChangesSurviveReload() {
+    index.unindex(blogEntry1);
+    blogEntry2.setTags("java, jvm");
+    index.index(blogEntry2);
+
+    index = new FacetIndex(blog);
+    assertEquals(2, index.getNumberOfBlogEntries());
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getBlogEntries(new FacetQuery().require(FacetIndex.TAG, "jvm")));
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getBlogEntries(new FacetQuery().require(FacetIndex.CATEGORY, "/java")));
+  }
+
+  public void testQueryMatchesBlogEntry() {
+    FacetQuery query = new FacetQuery().add(FacetIndex.TAG, "Java").add(FacetIndex.AUTHOR, "-sam");
+    assertTrue(query.matches(blogEntry1));
+    assertFalse(query.matches(blogEntry2));
+    assertFalse(query.matches(blogEntry3));
+  }
+
+  public void testQueryStringIsCanonical() {
+    FacetQuery query1 = new FacetQuery().add(FacetIndex.TAG, "jvm,java").add(FacetIndex.AUTHOR, "simon");
+    FacetQuery query2 = new FacetQuery().add(FacetIndex.AUTHOR, "simon").add(FacetIndex.TAG, "java,jvm");
+    assertEquals("author=simon&tag=java,jvm", query1.toString());
+    assertEquals(query1, query2);
+    assertEquals("category=%2Fjava&tag=-applets", new FacetQuery().add(FacetIndex.CATEGORY, "/java").add(FacetIndex.TAG, "-applets").toString());
+  }
+
+}
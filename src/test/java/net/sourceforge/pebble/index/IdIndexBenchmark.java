@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.comparator.ReverseBlogEntryIdComparator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A simple microbenchmark comparing the sorted ArrayList of Strings that
+ * BlogEntryIndex used to use with SortedIdList, for a blog with 100,000
+ * blog entries. This isn't run as part of the build; run it by hand with
+ * something like:
+ *
+ * <pre>java -cp target/classes:target/test-classes net.sourceforge.pebble.index.IdIndexBenchmark</pre>
+ *
+ * @author    Simon Brown
+ */
+public class IdIndexBenchmark {
+
+  private static final int NUMBER_OF_IDS = 100000;
+  private static final int NUMBER_OF_UPDATES = 200;
+  private static final int NUMBER_OF_PAGE_VIEWS = 10000;
+  private static final int PAGE_SIZE = 10;
+
+  private static long[] ids;
+  private static long[] newIds;
+
+  public static void main(String[] args) {
+    Random random = new Random(42);
+    ids = new long[NUMBER_OF_IDS];
+    for (int i = 0; i < NUMBER_OF_IDS; i++) {
+      ids[i] = 1000000000000L + (long)i * 60000 + random.nextInt(60000);
+    }
+    newIds = new long[NUMBER_OF_UPDATES];
+    for (int i = 0; i < NUMBER_OF_UPDATES; i++) {
+      newIds[i] = ids[random.nextInt(NUMBER_OF_IDS)] + 1;
+    }
+
+    // run everything twice, so that the second run is warmed up
+    for (int run = 0; run < 2; run++) {
+      System.out.println("Run " + (run + 1) + " (" + NUMBER_OF_IDS + " IDs)");
+      report("  ArrayList<String>", benchmarkArrayList());
+      report("  SortedIdList     ", benchmarkSortedIdList());
+    }
+  }
+
+  private static void report(String name, long[] timings) {
+    System.out.println(name + " : load " + (timings[0] / 1000000) + "ms"
+        + ", " + NUMBER_OF_UPDATES + " inserts+removes " + (timings[1] / 1000000) + "ms"
+        + ", " + NUMBER_OF_PAGE_VIEWS + " page views " + (timings[2] / 1000000) + "ms");
+  }
+
+  private static long[] benchmarkArrayList() {
+    long[] timings = new long[3];
+    long start = System.nanoTime();
+    List<String> list = new ArrayList<String>();
+    for (long id : ids) {
+      list.add("" + id);
+    }
+    Collections.sort(list, new ReverseBlogEntryIdComparator());
+    timings[0] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (long id : newIds) {
+      list.add("" + id);
+      Collections.sort(list, new ReverseBlogEntryIdComparator());
+      list.remove("" + id);
+    }
+    timings[1] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int count = 0;
+    for (int i = 0; i < NUMBER_OF_PAGE_VIEWS; i++) {
+      List<String> copy = new ArrayList<String>(list);
+      int offset = (i % 100) * PAGE_SIZE;
+      count += copy.subList(offset, offset + PAGE_SIZE).get(0).length();
+    }
+    timings[2] = System.nanoTime() - start;
+    consume(count);
+
+    return timings;
+  }
+
+  private static long[] benchmarkSortedIdList() {
+    long[] timings = new long[3];
+    long start = System.nanoTime();
+    SortedIdList list = SortedIdList.valueOf(ids, ids.length);
+    timings[0] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (long id : newIds) {
+      list = list.add(id).remove(id);
+    }
+    timings[1] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int count = 0;
+    for (int i = 0; i < NUMBER_OF_PAGE_VIEWS; i++) {
+      int offset = (i % 100) * PAGE_SIZE;
+      count += list.asList(offset, PAGE_SIZE).get(0).length();
+    }
+    timings[2] = System.nanoTime() - start;
+    consume(count);
+
+    return timings;
+  }
+
+  private static void consume(int count) {
+    if (count == 0) {
+      System.out.println("Unexpected result");
+    }
+  }
+
+}
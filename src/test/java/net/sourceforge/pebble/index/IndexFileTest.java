@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the IndexFile class.
+ *
+ * @author    Simon Brown
+ */
+public class IndexFileTest extends SingleBlogTestCase {
+
+  private File file;
+  private File logFile;
+  private List<String> records;
+  private IndexFile indexFile;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = new File(blog.getIndexesDirectory(), "test.index");
+    logFile = new File(blog.getIndexesDirectory(), "test.index.log");
+    records = new ArrayList<String>();
+    indexFile = createIndexFile(records);
+  }
+
+  public void testChangesAreAppendedToTheLog() throws Exception {
+    records.add("a");
+    indexFile.checkpoint();
+    long lastModified = file.lastModified();
+    long length = file.length();
+
+    records.add("b");
+    indexFile.add("b");
+    records.remove("a");
+    indexFile.remove("a");
+
+    assertEquals(length, file.length());
+    assertEquals(lastModified, file.lastModified());
+    assertEquals("+b\n-a\n", read(logFile));
+    assertEquals(2, indexFile.getNumberOfRecords());
+    assertEquals(records, reload());
+  }
+
+  public void testCheckpointReplacesTheLog() throws Exception {
+    records.add("a");
+    indexFile.add("a");
+    records.add("b");
+    indexFile.add("b");
+    indexFile.checkpoint();
+
+    assertFalse(logFile.exists());
+    assertFalse(new File(blog.getIndexesDirectory(), "test.index.tmp").exists());
+    assertEquals(0, indexFile.getNumberOfRecords());
+    assertEquals("a" + System.getProperty("line.separator") + "b" + System.getProperty("line.separator"), read(file));
+    assertEquals(records, reload());
+  }
+
+  public void testReplayingTheLogOverANewerCheckpointChangesNothing() throws Exception {
+    records.add("a");
+    indexFile.add("a");
+    records.add("b");
+    indexFile.add("b");
+    records.remove("a");
+    indexFile.remove("a");
+
+    // as if the checkpoint was written but the log wasn't deleted
+    String log = read(logFile);
+    indexFile.checkpoint();
+    write(logFile, log);
+
+    assertEquals(records, reload());
+  }
+
+  public void testIncompleteRecordIsIgnoredAndTheIndexIsCheckpointed() throws Exception {
+    write(logFile, "+a\n+bc");
+
+    List<String> reloaded = reload();
+    assertEquals(1, reloaded.size());
+    assertEquals("a", reloaded.get(0));
+    assertFalse(logFile.exists());
+    assertEquals("a" + System.getProperty("line.separator"), read(file));
+  }
+
+  public void testLogIsCompactedInTheBackground() throws Exception {
+    for (int i = 0; i < IndexFile.COMPACTION_THRESHOLD; i++) {
+      synchronized (records) {
+        records.add("" + i);
+        indexFile.add("" + i);
+      }
+    }
+
+    for (int i = 0; i < 100 && logFile.exists(); i++) {
+      Thread.sleep(50);
+    }
+
+    assertFalse(logFile.exists());
+    assertEquals(IndexFile.COMPACTION_THRESHOLD, reload().size());
+  }
+
+  public void testRecordsAreWrittenAsUtf8() throws Exception {
+    records.add("caf\u00e9");
+    indexFile.add("caf\u00e9");
+    assertEquals(records, reload());
+
+    indexFile.checkpoint();
+    assertEquals(records, reload());
+  }
+
+  public void testOldCheckpointIsReadIfTheNewOneIsMissing() throws Exception {
+    records.add("a");
+    indexFile.checkpoint();
+    records.add("b");
+    indexFile.add("b");
+
+    // as if the old checkpoint was moved aside but the new one wasn't renamed
+    assertTrue(file.renameTo(new File(blog.getIndexesDirectory(), "test.index.bak")));
+
+    assertEquals(records, reload());
+  }
+
+  private IndexFile createIndexFile(final List<String> list) {
+    return new IndexFile(file, list, new IndexFile.Handler() {
+      public void read(String line) {
+        list.add(line);
+      }
+
+      public void add(String record) {
+        // as with the real indexes, adding a record twice has no effect
+        if (!list.contains(record)) {
+          list.add(record);
+        }
+      }
+
+      public void remove(String record) {
+        list.remove(record);
+      }
+
+      public void write(BufferedWriter writer) throws IOException {
+        for (String record : list) {
+          writer.write(record);
+          writer.newLine();
+        }
+      }
+    });
+  }
+
+  private List<String> reload() {
+    List<String> list = new ArrayList<String>();
+    synchronized (list) {
+      createIndexFile(list).read();
+    }
+    return list;
+  }
+
+  private String read(File f) throws IOException {
+    Reader reader = new FileReader(f);
+    StringBuffer buf = new StringBuffer();
+    int c;
+    while ((c = reader.read()) != -1) {
+      buf.append((char)c);
+    }
+    reader.close();
+    return buf.toString();
+  }
+
+  private void write(File f, String s) throws IOException {
+    Writer writer = new FileWriter(f);
+    writer.write(s);
+    writer.close();
+  }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.mock.MockBlogEntryDAO;
+import net.sourceforge.pebble.dao.mock.MockDAOFactory;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.permalink.DefaultPermalinkProvider;
+import net.sourceforge.pebble.permalink.Latin1SeoPermalinkProvider;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Tests for the PermalinkIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class PermalinkIndexTest extends SingleBlogTestCase {
+
+  private BlogService service;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    blog.setPermalinkProvider(new Latin1SeoPermalinkProvider());
+    service = new BlogService();
+  }
+
+  private BlogEntry createBlogEntry(long date, String title) throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(date));
+    blogEntry.setTitle(title);
+    service.putBlogEntry(blogEntry);
+
+    return blogEntry;
+  }
+
+  public void testPermalinksAreResolved() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "A title");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "Another title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+
+    assertEquals("/a-title", index.getPermalink(blogEntry1.getId()));
+    assertEquals(blogEntry1.getId(), index.getBlogEntryId("/a-title"));
+    assertEquals(blogEntry2.getId(), index.getBlogEntryId("/another-title"));
+    assertNull(index.getBlogEntryId("/no-such-title"));
+  }
+
+  public void testDuplicateTitles() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "A title");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+
+    assertEquals(Arrays.asList(blogEntry2.getId(), blogEntry1.getId()), index.getBlogEntriesWithTitle("A title"));
+    assertEquals(blogEntry1.getId(), index.getBlogEntryId("/a-title"));
+    assertEquals(blogEntry2.getId(), index.getBlogEntryId("/a-title_2000"));
+
+    // the newer blog entry takes over the plain permalink
+    service.removeBlogEntry(blogEntry1);
+    assertEquals(blogEntry2.getId(), index.getBlogEntryId("/a-title"));
+    assertNull(index.getBlogEntryId("/a-title_2000"));
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getBlogEntriesWithTitle("A title"));
+  }
+
+  public void testRetitlingUpdatesOtherBlogEntries() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "A title");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+
+    blogEntry1 = service.getBlogEntry(blog, blogEntry1.getId());
+    blogEntry1.setTitle("A new title");
+    service.putBlogEntry(blogEntry1);
+
+    assertEquals(blogEntry1.getId(), index.getBlogEntryId("/a-new-title"));
+    assertEquals(blogEntry2.getId(), index.getBlogEntryId("/a-title"));
+    assertNull(index.getBlogEntryId("/a-title_2000"));
+    assertTrue(index.getBlogEntriesWithTitle("A title").contains(blogEntry2.getId()));
+    assertFalse(index.getBlogEntriesWithTitle("A title").contains(blogEntry1.getId()));
+  }
+
+  public void testIndexIsReadBackFromDisk() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "A title");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "A title | with a separator");
+
+    PermalinkIndex index = new PermalinkIndex(blog);
+    assertEquals(blogEntry1.getId(), index.getBlogEntryId("/a-title"));
+    assertEquals(blogEntry2.getId(), index.getBlogEntryId("/a-title-with-a-separator"));
+    assertEquals(Arrays.asList(blogEntry2.getId()), index.getBlogEntriesWithTitle("A title | with a separator"));
+  }
+
+  public void testIndexIsRebuiltWhenPermalinkProviderChanges() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+    assertEquals(blogEntry.getId(), index.getBlogEntryId("/a-title"));
+
+    blog.setPermalinkProvider(new DefaultPermalinkProvider());
+    String permalink = blog.getPermalinkProvider().getPermalink(blogEntry);
+    assertEquals(blogEntry.getId(), index.getBlogEntryId(permalink));
+    assertNull(index.getBlogEntryId("/a-title"));
+  }
+
+  public void testPermalinkProviderUsesTheIndex() throws Exception {
+    createBlogEntry(1000, "A title");
+    BlogEntry blogEntry = createBlogEntry(2000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+
+    assertEquals("/a-title_2000", index.getPermalink(blogEntry));
+    assertEquals("/a-title_2000", blog.getPermalinkProvider().getPermalink(blogEntry));
+
+    // a blog entry whose title has changed since it was indexed isn't looked up
+    BlogEntry retitled = (BlogEntry)blogEntry.clone();
+    retitled.setTitle("A new title");
+    assertNull(index.getPermalink(retitled));
+    assertEquals("/a-new-title", blog.getPermalinkProvider().getPermalink(retitled));
+  }
+
+  public void testFailedRebuildIsRetried() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+    assertEquals(blogEntry.getId(), index.getBlogEntryId("/a-title"));
+
+    DAOFactory factory = DAOFactory.getConfiguredFactory();
+    DAOFactory.setConfiguredFactory(new MockDAOFactory() {
+      public BlogEntryDAO getBlogEntryDAO() {
+        return new MockBlogEntryDAO() {
+          public Collection<BlogEntry> loadBlogEntries(Blog blog) throws PersistenceException {
+            throw new PersistenceException("Simulated failure");
+          }
+        };
+      }
+    });
+    blog.setPermalinkProvider(new DefaultPermalinkProvider());
+    String permalink = blog.getPermalinkProvider().getPermalink(blogEntry);
+    try {
+      // the old permalinks are kept until the rebuild works
+      assertNull(index.getBlogEntryId(permalink));
+      assertEquals(blogEntry.getId(), index.getBlogEntryId("/a-title"));
+    } finally {
+      DAOFactory.setConfiguredFactory(factory);
+    }
+
+    assertEquals(blogEntry.getId(), index.getBlogEntryId(permalink));
+    assertNull(index.getBlogEntryId("/a-title"));
+  }
+
+  public void testReindex() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000, "A title");
+    PermalinkIndex index = blog.getPermalinkIndex();
+    index.clear();
+    assertNull(index.getBlogEntryId("/a-title"));
+
+    blog.reindexBlogEntries();
+    assertEquals(blogEntry.getId(), index.getBlogEntryId("/a-title"));
+  }
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.*;
+
+/**
+ * Tests for the RelatedPostsIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class RelatedPostsIndexTest extends SingleBlogTestCase {
+
+  private RelatedPostsIndex index;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    index = new RelatedPostsIndex(blog);
+  }
+
+  private BlogEntry createBlogEntry(long date, String tags) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(date));
+    blogEntry.setTags(tags);
+    blogEntry.setPublished(true);
+
+    return blogEntry;
+  }
+
+  public void testSharedTagsOutweighRecency() {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "java, jvm");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "java");
+    BlogEntry blogEntry3 = createBlogEntry(3000, "ruby");
+    BlogEntry blogEntry4 = createBlogEntry(4000, "java, jvm, performance");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    index.index(blogEntry3);
+    index.index(blogEntry4);
+
+    assertEquals(Arrays.asList(blogEntry1.getId(), blogEntry2.getId()), index.getRelatedBlogEntries(blogEntry4, 5));
+    assertEquals(Arrays.asList(blogEntry4.getId(), blogEntry2.getId()), index.getRelatedBlogEntries(blogEntry1, 5));
+    assertEquals(Arrays.asList(blogEntry4.getId()), index.getRelatedBlogEntries(blogEntry1, 1));
+    assertTrue(index.getRelatedBlogEntries(blogEntry3, 5).isEmpty());
+  }
+
+  public void testCategoriesAloneDoNotMakeBlogEntriesRelated() {
+    Category category = new Category("/java", "Java");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry1 = createBlogEntry(1000, "ruby");
+    blogEntry1.addCategory(category);
+    BlogEntry blogEntry2 = createBlogEntry(2000, "perl");
+    blogEntry2.addCategory(category);
+    index.index(Arrays.asList(blogEntry1, blogEntry2));
+
+    assertTrue(index.getRelatedBlogEntries(blogEntry1, 5).isEmpty());
+    assertTrue(index.getRelatedBlogEntries(blogEntry2, 5).isEmpty());
+  }
+
+  public void testCategoriesBreakTiesBetweenTagMatches() {
+    Category category = new Category("/java", "Java");
+    blog.addCategory(category);
+
+    BlogEntry blogEntry1 = createBlogEntry(1000, "jvm");
+    blogEntry1.addCategory(category);
+    BlogEntry blogEntry2 = createBlogEntry(2000, "jvm");
+    BlogEntry blogEntry3 = createBlogEntry(3000, "jvm, performance");
+    BlogEntry blogEntry4 = createBlogEntry(4000, "jvm, performance");
+    blogEntry4.addCategory(category);
+    index.index(Arrays.asList(blogEntry1, blogEntry2, blogEntry3, blogEntry4));
+
+    // one more shared tag beats a shared category, which beats recency
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry1.getId(), blogEntry2.getId()), index.getRelatedBlogEntries(blogEntry4, 5));
+
+    // and the same holds when blog entries are indexed one at a time
+    blogEntry2.addCategory(category);
+    index.index(blogEntry2);
+    assertEquals(Arrays.asList(blogEntry3.getId(), blogEntry2.getId(), blogEntry1.getId()), index.getRelatedBlogEntries(blogEntry4, 5));
+  }
+
+  public void testUnindexedBlogEntriesAreComparedWithTheIndex() {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "java");
+    index.index(blogEntry1);
+
+    BlogEntry preview = createBlogEntry(2000, "java");
+    preview.setPublished(false);
+    assertEquals(Arrays.asList(blogEntry1.getId()), index.getRelatedBlogEntries(preview, 5));
+    assertTrue(index.getRelatedBlogEntries(blogEntry1, 5).isEmpty());
+  }
+
+  public void testUnindexRemovesFromOtherLists() {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "java");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "java");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    index.unindex(blogEntry2);
+
+    assertTrue(index.getRelatedBlogEntries(blogEntry1, 5).isEmpty());
+  }
+
+  /**
+   * Checks that the lists maintained as blog entries are indexed, changed
+   * and unindexed one at a time are the same as those calculated from
+   * scratch, including when lists fill up.
+   */
+  public void testIncrementalUpdatesMatchFullCalculation() {
+    Random random = new Random(7);
+    String[] tags = { "a", "b", "c", "d", "e" };
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+    for (int i = 0; i < 40; i++) {
+      blogEntries.add(createBlogEntry(1000 * (i + 1), randomTags(random, tags)));
+    }
+
+    for (int i = 0; i < 200; i++) {
+      BlogEntry blogEntry = blogEntries.get(random.nextInt(blogEntries.size()));
+      if (random.nextInt(4) == 0) {
+        index.unindex(blogEntry);
+      } else {
+        blogEntry.setTags(randomTags(random, tags));
+        index.index(blogEntry);
+      }
+    }
+
+    Map<String,List<String>> incremental = getAllRelatedBlogEntries(blogEntries);
+
+    RelatedPostsIndex full = new RelatedPostsIndex(blog);
+    List<BlogEntry> indexed = new ArrayList<BlogEntry>();
+    for (BlogEntry blogEntry : blogEntries) {
+      if (incremental.containsKey(blogEntry.getId())) {
+        indexed.add(blogEntry);
+      }
+    }
+    full.clear();
+    full.index(indexed);
+    index = full;
+
+    assertEquals(getAllRelatedBlogEntries(blogEntries), incremental);
+  }
+
+  public void testChangesSurviveReload() {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "java");
+    BlogEntry blogEntry2 = createBlogEntry(2000, "java");
+    BlogEntry blogEntry3 = createBlogEntry(3000, "java");
+    index.index(blogEntry1);
+    index.index(blogEntry2);
+    index.index(blogEntry3);
+    index.unindex(blogEntry2);
+
+    index = new RelatedPostsIndex(blog);
+    assertEquals(Arrays.asList(blogEntry3.getId()), index.getRelatedBlogEntries(blogEntry1, 5));
+
+    // the tags and categories are persisted too, so updates carry on working
+    BlogEntry blogEntry4 = createBlogEntry(4000, "java");
+    index.index(blogEntry4);
+    assertEquals(Arrays.asList(blogEntry4.getId(), blogEntry3.getId()), index.getRelatedBlogEntries(blogEntry1, 5));
+  }
+
+  private String randomTags(Random random, String[] tags) {
+    StringBuilder buf = new StringBuilder();
+    for (String tag : tags) {
+      if (random.nextBoolean()) {
+        buf.append(tag).append(" ");
+      }
+    }
+
+    return buf.toString();
+  }
+
+  /**
+   * Gets the related blog entries of every indexed blog entry, using the
+   * fact that indexed blog entries always have at least an empty list.
+   */
+  private Map<String,List<String>> getAllRelatedBlogEntries(List<BlogEntry> blogEntries) {
+    Map<String,List<String>> map = new HashMap<String,List<String>>();
+    for (BlogEntry blogEntry : blogEntries) {
+      List<String> list = index.getRelatedBlogEntries(blogEntry, RelatedPostsIndex.MAX_RELATED_BLOG_ENTRIES);
+      if (index.isIndexed(blogEntry)) {
+        map.put(blogEntry.getId(), list);
+      }
+    }
+
+    return map;
+  }
+
+}
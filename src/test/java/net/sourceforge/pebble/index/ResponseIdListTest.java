@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the ResponseIdList class.
+ *
+ * @author    Simon Brown
+ */
+public class ResponseIdListTest extends TestCase {
+
+  public void testValueOfSortsMostRecentFirst() {
+    ResponseIdList list = ResponseIdList.valueOf(Arrays.asList("c/100/1002", "t/200/1003", "c/100/1001", "c/100/1002", "rubbish"));
+    assertEquals(Arrays.asList("t/200/1003", "c/100/1002", "c/100/1001"), list.asList());
+  }
+
+  public void testAddAndRemove() {
+    ResponseIdList list = ResponseIdList.EMPTY.add("c/100/1002").add("t/200/1003").add("c/100/1001");
+    assertEquals(Arrays.asList("t/200/1003", "c/100/1002", "c/100/1001"), list.asList());
+    assertSame(list, list.add("c/100/1002"));
+    assertSame(list, list.add("c/100"));
+
+    assertEquals(Arrays.asList("t/200/1003", "c/100/1001"), list.remove("c/100/1002").asList());
+    assertSame(list, list.remove("t/100/1002"));
+  }
+
+  public void testResponsesWithTheSameIdAreKeptApart() {
+    ResponseIdList list = ResponseIdList.EMPTY.add("c/100/1000").add("c/200/1000").add("t/100/1000");
+    assertEquals(3, list.size());
+    assertTrue(list.contains("c/200/1000"));
+    assertEquals(2, list.remove("c/100/1000").size());
+  }
+
+  public void testContainsAndPages() {
+    ResponseIdList list = ResponseIdList.valueOf(Arrays.asList("c/100/1001", "c/100/1002", "c/100/1003"));
+    assertTrue(list.contains("c/100/1002"));
+    assertFalse(list.contains("t/100/1002"));
+    assertFalse(list.contains("c/100/01002"));
+
+    List<String> page = list.asList(1, 5);
+    assertEquals(Arrays.asList("c/100/1002", "c/100/1001"), page);
+    assertFalse(page.contains("c/100/1003"));
+    assertEquals(1, page.indexOf("c/100/1001"));
+    assertEquals(Arrays.asList("c/100/1003"), list.asList(0, 1));
+  }
+
+}
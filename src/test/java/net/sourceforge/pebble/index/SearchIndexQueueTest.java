@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.ContentCache;
+import net.sourceforge.pebble.dao.BlogEntryDAO;
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.PersistenceException;
+import net.sourceforge.pebble.dao.mock.MockBlogEntryDAO;
+import net.sourceforge.pebble.dao.mock.MockDAOFactory;
+import net.sourceforge.pebble.domain.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+
+/**
+ * Tests for the SearchIndexQueue class.
+ *
+ * @author    Simon Brown
+ */
+public class SearchIndexQueueTest extends SingleBlogTestCase {
+
+  private BlogService service;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new BlogService();
+  }
+
+  private BlogEntry createBlogEntry(String title) throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle(title);
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+
+    return blogEntry;
+  }
+
+  public void testChangesAreCoalesced() throws Exception {
+    SearchIndexQueue queue = blog.getSearchIndexQueue();
+    queue.flush();
+    long updates = queue.getNumberOfUpdates();
+
+    BlogEntry blogEntry = createBlogEntry("Some JSP topic");
+    blogEntry.setBody("Body 1");
+    service.putBlogEntry(blogEntry);
+    blogEntry.setBody("Body 2");
+    service.putBlogEntry(blogEntry);
+    queue.flush();
+
+    assertEquals(0, queue.getQueueDepth());
+    assertEquals(0, queue.getLag());
+    assertEquals(updates + 1, queue.getNumberOfUpdates());
+    assertEquals(1, blog.getSearchIndex().search("jsp").getNumberOfHits());
+  }
+
+  public void testRemovedAndUnpublishedBlogEntriesAreUnindexed() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry("Some JSP topic");
+    BlogEntry blogEntry2 = createBlogEntry("Another JSP topic");
+    blog.getSearchIndexQueue().flush();
+    assertEquals(2, blog.getSearchIndex().search("jsp").getNumberOfHits());
+
+    service.removeBlogEntry(blogEntry1);
+    blogEntry2.setPublished(false);
+    service.putBlogEntry(blogEntry2);
+    blog.getSearchIndexQueue().flush();
+    assertEquals(0, blog.getSearchIndex().search("jsp").getNumberOfHits());
+  }
+
+  public void testQueueIsReadBackFromDisk() throws Exception {
+    BlogEntry blogEntry = createBlogEntry("Some JSP topic");
+    blog.getSearchIndexQueue().flush();
+    blog.getSearchIndex().unindex(blogEntry);
+    assertEquals(0, blog.getSearchIndex().search("jsp").getNumberOfHits());
+
+    // simulate the blog having stopped before the queue was written
+    Writer writer = new FileWriter(new File(blog.getIndexesDirectory(), SearchIndexQueue.QUEUE_FILE));
+    writer.write("b" + blogEntry.getId() + "\n");
+    writer.close();
+
+    SearchIndexQueue queue = new SearchIndexQueue(blog);
+    assertEquals(1, queue.getQueueDepth());
+    assertTrue(queue.getLag() >= 0);
+
+    queue.flush();
+    assertEquals(0, queue.getQueueDepth());
+    assertEquals(1, queue.getNumberOfBatches());
+    assertEquals(1, blog.getSearchIndex().search("jsp").getNumberOfHits());
+    assertFalse(new File(blog.getIndexesDirectory(), SearchIndexQueue.QUEUE_FILE).exists());
+  }
+
+  public void testBlogEntriesThatCantBeLoadedAreRequeued() throws Exception {
+    BlogEntry blogEntry = createBlogEntry("Some JSP topic");
+    SearchIndexQueue queue = blog.getSearchIndexQueue();
+    queue.flush();
+    assertEquals(1, blog.getSearchIndex().search("jsp").getNumberOfHits());
+
+    // the blog entry changes, but then can't be loaded when the batch is written
+    DAOFactory factory = DAOFactory.getConfiguredFactory();
+    DAOFactory.setConfiguredFactory(new MockDAOFactory() {
+      public BlogEntryDAO getBlogEntryDAO() {
+        return new MockBlogEntryDAO() {
+          public BlogEntry loadBlogEntry(Blog blog, String blogEntryId) throws PersistenceException {
+            throw new PersistenceException("Simulated failure");
+          }
+        };
+      }
+    });
+    try {
+      ContentCache.getInstance().removeBlogEntry(blogEntry);
+      queue.addBlogEntry(blogEntry.getId());
+      queue.flush();
+    } finally {
+      DAOFactory.setConfiguredFactory(factory);
+    }
+
+    // the blog entry is still indexed, and is retried next time
+    assertEquals(1, blog.getSearchIndex().search("jsp").getNumberOfHits());
+    assertEquals(1, queue.getQueueDepth());
+    assertTrue(new File(blog.getIndexesDirectory(), SearchIndexQueue.QUEUE_FILE).exists());
+
+    queue.flush();
+    assertEquals(0, queue.getQueueDepth());
+    assertEquals(1, blog.getSearchIndex().search("jsp").getNumberOfHits());
+  }
+
+}
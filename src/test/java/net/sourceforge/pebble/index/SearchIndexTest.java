@@ -31,9 +31,16 @@
  */
 package net.sourceforge.pebble.index;
 
+import net.sourceforge.pebble.SearchResultCache;
 import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.search.SearchHit;
 import net.sourceforge.pebble.search.SearchResults;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
 /**
  * Tests for the SearchResults class.
  *
@@ -184,4 +191,147 @@ public class SearchIndexTest extends SingleBlogTestCase {
      }
    }
 
+   /**
+    * Tests that the index records the format and analyzer it was written with.
+    */
+   public void testIndexIsCurrent() {
+     assertTrue(index.isCurrent());
+
+     blog.setProperty(Blog.LUCENE_ANALYZER_KEY, "org.apache.lucene.analysis.standard.StandardAnalyzer");
+     assertFalse(index.isCurrent());
+
+     index.clear();
+     assertTrue(index.isCurrent());
+   }
+
+   /**
+    * Tests that searches still work after the index has been closed.
+    */
+   public void testSearchAfterClose() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+     index.close();
+
+     assertEquals(1, index.search("jsp").getNumberOfHits());
+     assertEquals(1, new SearchIndex(blog).search("jsp").getNumberOfHits());
+   }
+
+   /**
+    * Tests that repeated searches are answered from the cache until the
+    * index changes.
+    */
+   public void testSearchResultsAreCachedUntilIndexChanges() throws Exception {
+     SearchResultCache cache = SearchResultCache.getInstance();
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     long hits = cache.getHits(blog);
+     assertEquals(1, index.search("jsp", "score", 0, 20).getNumberOfHits());
+     assertEquals(hits, cache.getHits(blog));
+     assertEquals(1, index.search("  jsp ", "SCORE", 0, 20).getNumberOfHits());
+     assertEquals(hits + 1, cache.getHits(blog));
+
+     // changes to the cached copy aren't seen by later searches
+     ((SearchHit)index.search("jsp", "score", 0, 20).getHits().get(0)).setNumber(99);
+     assertEquals(1, ((SearchHit)index.search("jsp", "score", 0, 20).getHits().get(0)).getNumber());
+
+     index.unindex(blogEntry);
+     assertEquals(0, index.search("jsp", "score", 0, 20).getNumberOfHits());
+   }
+
+   /**
+    * Tests that searches for every hit aren't cached, because there's no
+    * bound on how big they are.
+    */
+   public void testUnboundedSearchesAreNotCached() throws Exception {
+     SearchResultCache cache = SearchResultCache.getInstance();
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some JSP topic");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     int size = cache.getSize(blog);
+     assertEquals(1, index.search("jsp").getNumberOfHits());
+     assertEquals(1, index.search("jsp").getNumberOfHits());
+     assertEquals(size, cache.getSize(blog));
+   }
+
+   /**
+    * Tests that hits include a highlighted snippet from around the match.
+    */
+   public void testSnippetsAreHighlighted() throws Exception {
+     BlogEntry blogEntry = new BlogEntry(blog);
+     blogEntry.setTitle("Some topic");
+     blogEntry.setBody("<p>Some text about JSP &amp; servlets.</p>");
+     blogEntry.setPublished(true);
+     index.index(blogEntry);
+
+     SearchHit hit = (SearchHit)index.search("jsp").getHits().get(0);
+     assertEquals("Some text about <b>JSP</b> &amp; servlets.", hit.getSnippet());
+     hit = (SearchHit)index.search("title:topic").getHits().get(0);
+     assertNull(hit.getSnippet());
+   }
+
+   /**
+    * Tests that a batch of blog entries is indexed together.
+    */
+   public void testIndexBlogEntries() throws Exception {
+     BlogEntry blogEntry1 = new BlogEntry(blog);
+     blogEntry1.setTitle("Some JSP topic");
+     blogEntry1.setPublished(true);
+     BlogEntry blogEntry2 = new BlogEntry(blog);
+     blogEntry2.setDate(new Date(blogEntry1.getDate().getTime() + 1000));
+     blogEntry2.setTitle("Another JSP topic");
+     blogEntry2.setPublished(true);
+     BlogEntry blogEntry3 = new BlogEntry(blog);
+     blogEntry3.setDate(new Date(blogEntry1.getDate().getTime() + 2000));
+     blogEntry3.setTitle("An unpublished JSP topic");
+     blogEntry3.setPublished(false);
+     index.indexBlogEntries(Arrays.asList(blogEntry1, blogEntry2, blogEntry3));
+
+     assertEquals(2, index.search("jsp").getNumberOfHits());
+   }
+
+   /**
+    * Tests that only the requested page of hits is returned, along with the
+    * total number of hits.
+    */
+   public void testPagedSearch() throws Exception {
+     List<BlogEntry> blogEntries = new ArrayList<BlogEntry>();
+     for (int i = 0; i < 25; i++) {
+       BlogEntry blogEntry = new BlogEntry(blog);
+       blogEntry.setDate(new Date(1000L * (i+1)));
+       blogEntry.setTitle("JSP topic " + i);
+       // later blog entries mention JSP more often, so are more relevant
+       blogEntry.setBody(i % 2 == 0 ? "jsp" : "jsp jsp jsp jsp jsp");
+       blogEntry.setPublished(true);
+       blogEntries.add(blogEntry);
+     }
+     index.indexBlogEntries(blogEntries);
+
+     SearchResults results = index.search("jsp", SearchIndex.SORT_BY_DATE, 20, 10);
+     assertEquals(25, results.getNumberOfHits());
+     assertEquals(5, results.getHits().size());
+     SearchHit hit = (SearchHit)results.getHits().get(0);
+     assertEquals(21, hit.getNumber());
+     assertEquals(blogEntries.get(4).getId(), hit.getId());
+     hit = (SearchHit)results.getHits().get(4);
+     assertEquals(blogEntries.get(0).getId(), hit.getId());
+
+     results = index.search("jsp", SearchIndex.SORT_BY_SCORE, 0, 3);
+     assertEquals(25, results.getNumberOfHits());
+     assertEquals(3, results.getHits().size());
+     for (Object o : results.getHits()) {
+       assertTrue(((SearchHit)o).getTitle().matches("JSP topic \\d*[13579]"));
+     }
+
+     results = index.search("jsp", SearchIndex.SORT_BY_SCORE, 30, 10);
+     assertEquals(25, results.getNumberOfHits());
+     assertEquals(0, results.getHits().size());
+   }
+
 }
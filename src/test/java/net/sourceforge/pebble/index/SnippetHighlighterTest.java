@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import junit.framework.TestCase;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.queryParser.QueryParser;
+
+/**
+ * Tests for the SnippetHighlighter class.
+ *
+ * @author    Simon Brown
+ */
+public class SnippetHighlighterTest extends TestCase {
+
+  private Analyzer analyzer = new StandardAnalyzer();
+
+  private SnippetHighlighter highlighter(String query) throws Exception {
+    return new SnippetHighlighter(QueryParser.parse(query, "blogEntry", analyzer), analyzer);
+  }
+
+  public void testSourceIsPlainText() {
+    assertEquals("Tom & Jerry say hello", SnippetHighlighter.getSource("<p>Tom &amp; Jerry\n\n  say <b>hello</b></p>"));
+    assertEquals("", SnippetHighlighter.getSource(null));
+    assertEquals(SnippetHighlighter.MAX_SOURCE_LENGTH, SnippetHighlighter.getSource(repeat("word ", 5000)).length());
+  }
+
+  public void testMatchingWordsAreHighlighted() throws Exception {
+    String snippet = highlighter("java OR pebble").getSnippet("Pebble is written in Java & runs <anywhere>");
+    assertEquals("<b>Pebble</b> is written in <b>Java</b> &amp; runs &lt;anywhere&gt;", snippet);
+  }
+
+  public void testProhibitedAndOtherFieldsAreNotHighlighted() throws Exception {
+    assertEquals("Pebble is written in <b>Java</b>", highlighter("java -pebble").getSnippet("Pebble is written in Java"));
+    assertNull(highlighter("tag:java").getSnippet("Pebble is written in Java"));
+  }
+
+  public void testSnippetIsTakenFromAroundTheMatches() throws Exception {
+    String text = repeat("filler ", 100) + "the pebble blog " + repeat("padding ", 100);
+    String snippet = highlighter("pebble").getSnippet(text);
+
+    assertTrue(snippet.startsWith("...filler"));
+    assertTrue(snippet.endsWith("..."));
+    assertTrue(snippet.indexOf("the <b>pebble</b> blog") > -1);
+    assertTrue(snippet.length() < SnippetHighlighter.SNIPPET_LENGTH + 20);
+  }
+
+  public void testNoSnippetWithoutMatches() throws Exception {
+    assertNull(highlighter("java").getSnippet("Nothing to see here"));
+    assertNull(highlighter("java").getSnippet(""));
+  }
+
+  private String repeat(String s, int times) {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < times; i++) {
+      buf.append(s);
+    }
+
+    return buf.toString();
+  }
+
+}
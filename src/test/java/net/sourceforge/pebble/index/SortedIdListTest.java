@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the SortedIdList class.
+ *
+ * @author    Simon Brown
+ */
+public class SortedIdListTest extends TestCase {
+
+  public void testValueOfSortsMostRecentFirstAndRemovesDuplicates() {
+    SortedIdList list = SortedIdList.valueOf(new long[] { 2000, 1000, 3000, 2000, 999 }, 5);
+    assertEquals(Arrays.asList("3000", "2000", "1000", "999"), list.asList());
+    assertEquals(4, list.size());
+  }
+
+  public void testAddKeepsOrder() {
+    SortedIdList list = SortedIdList.EMPTY.add(2000).add(3000).add(1000);
+    assertEquals(Arrays.asList("3000", "2000", "1000"), list.asList());
+    assertSame(list, list.add(2000));
+  }
+
+  public void testAddAll() {
+    SortedIdList list = SortedIdList.EMPTY.add(2000).addAll(new long[] { 4000, 1000, 2000, 0 }, 3);
+    assertEquals(Arrays.asList("4000", "2000", "1000"), list.asList());
+  }
+
+  public void testRemove() {
+    SortedIdList list = SortedIdList.valueOf(new long[] { 1000, 2000, 3000 }, 3);
+    assertEquals(Arrays.asList("3000", "1000"), list.remove(2000).asList());
+    assertEquals(Arrays.asList("2000", "1000"), list.remove(3000).asList());
+    assertEquals(Arrays.asList("3000", "2000"), list.remove(1000).asList());
+    assertSame(list, list.remove(4000));
+    assertTrue(SortedIdList.EMPTY.add(1000).remove(1000).asList().isEmpty());
+  }
+
+  public void testListsAreUnaffectedByLaterChanges() {
+    SortedIdList list = SortedIdList.valueOf(new long[] { 1000, 2000 }, 2);
+    List<String> ids = list.asList();
+    list.add(3000).remove(1000);
+    assertEquals(Arrays.asList("2000", "1000"), ids);
+  }
+
+  public void testListsAreReadOnly() {
+    try {
+      SortedIdList.EMPTY.add(1000).asList().add("2000");
+      fail();
+    } catch (UnsupportedOperationException uoe) {
+      // expected
+    }
+  }
+
+  public void testPages() {
+    SortedIdList list = SortedIdList.valueOf(new long[] { 1, 2, 3, 4, 5 }, 5);
+    assertEquals(Arrays.asList("5", "4"), list.asList(0, 2));
+    assertEquals(Arrays.asList("3", "2"), list.asList(2, 2));
+    assertEquals(Arrays.asList("1"), list.asList(4, 2));
+    assertTrue(list.asList(5, 2).isEmpty());
+    assertTrue(list.asList(10, 2).isEmpty());
+    assertEquals(Arrays.asList("4", "3"), list.asList().subList(1, 3));
+    assertEquals(Arrays.asList("3"), list.asList(1, 3).subList(1, 2));
+  }
+
+  public void testContainsAndIndexOf() {
+    SortedIdList list = SortedIdList.valueOf(new long[] { 1000, 2000, 3000 }, 3);
+    assertTrue(list.contains(2000));
+    assertFalse(list.contains(2500));
+
+    List<String> ids = list.asList();
+    assertEquals(0, ids.indexOf("3000"));
+    assertEquals(2, ids.indexOf("1000"));
+    assertEquals(-1, ids.indexOf("01000"));
+    assertEquals(-1, ids.indexOf("abc"));
+    assertEquals(-1, ids.indexOf(null));
+
+    List<String> page = list.asList(1, 1);
+    assertTrue(page.contains("2000"));
+    assertFalse(page.contains("3000"));
+    assertEquals(0, page.indexOf("2000"));
+  }
+
+}
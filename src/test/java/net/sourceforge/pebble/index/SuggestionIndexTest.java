@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.index;
+
+import net.sourceforge.pebble.domain.*;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the SuggestionIndex class.
+ *
+ * @author    Simon Brown
+ */
+public class SuggestionIndexTest extends SingleBlogTestCase {
+
+  private BlogService service;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    service = new BlogService();
+  }
+
+  private BlogEntry createBlogEntry(long date, String title, String tags, boolean published) throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(date));
+    blogEntry.setTitle(title);
+    blogEntry.setTags(tags);
+    blogEntry.setAuthor("simon");
+    blogEntry.setPublished(published);
+    service.putBlogEntry(blogEntry);
+
+    return blogEntry;
+  }
+
+  public void testSuggestionsAreMatchedByPrefixIgnoringCase() throws Exception {
+    createBlogEntry(1000, "Java performance", "java, jvm", true);
+    createBlogEntry(2000, "Pebble internals", "java, pebble", true);
+    SuggestionIndex index = blog.getSuggestionIndex();
+
+    List<SuggestionIndex.Suggestion> suggestions = index.getSuggestions("JA", null, 10);
+    assertEquals(2, suggestions.size());
+    assertEquals("java", suggestions.get(0).getValue());
+    assertEquals(SuggestionIndex.TAG, suggestions.get(0).getType());
+    assertEquals(2, suggestions.get(0).getWeight());
+    assertEquals("Java performance", suggestions.get(1).getValue());
+    assertEquals(SuggestionIndex.TITLE, suggestions.get(1).getType());
+
+    assertEquals(1, index.getSuggestions("ja", SuggestionIndex.TITLE, 10).size());
+    assertEquals(1, index.getSuggestions("ja", null, 1).size());
+    assertEquals("simon", index.getSuggestions("s", SuggestionIndex.AUTHOR, 10).get(0).getValue());
+    assertTrue(index.getSuggestions("x", null, 10).isEmpty());
+    assertTrue(index.getSuggestions("", null, 10).isEmpty());
+  }
+
+  public void testUnpublishedBlogEntriesAreNotSuggested() throws Exception {
+    BlogEntry blogEntry = createBlogEntry(1000, "Draft", "draft", false);
+    SuggestionIndex index = blog.getSuggestionIndex();
+    assertTrue(index.getSuggestions("dr", null, 10).isEmpty());
+
+    blogEntry.setPublished(true);
+    service.putBlogEntry(blogEntry);
+    assertEquals(2, index.getSuggestions("dr", null, 10).size());
+  }
+
+  public void testSuggestionsAreRemovedWithTheirBlogEntries() throws Exception {
+    BlogEntry blogEntry1 = createBlogEntry(1000, "First", "java", true);
+    createBlogEntry(2000, "Second", "java", true);
+    SuggestionIndex index = blog.getSuggestionIndex();
+    assertEquals(2, index.getSuggestions("java", null, 10).get(0).getWeight());
+
+    blogEntry1.setTags("pebble");
+    service.putBlogEntry(blogEntry1);
+    assertEquals(1, index.getSuggestions("java", null, 10).get(0).getWeight());
+    assertEquals(1, index.getSuggestions("peb", null, 10).size());
+
+    service.removeBlogEntry(blogEntry1);
+    assertTrue(index.getSuggestions("fir", null, 10).isEmpty());
+    assertTrue(index.getSuggestions("peb", null, 10).isEmpty());
+  }
+
+  public void testIndexIsLoadedFromBlogEntrySummaries() throws Exception {
+    createBlogEntry(1000, "Java performance", "java", true);
+
+    SuggestionIndex index = new SuggestionIndex(blog);
+    assertEquals(1, index.getSuggestions("java p", null, 10).size());
+    assertEquals("java", index.getSuggestions("java", SuggestionIndex.TAG, 10).get(0).getValue());
+  }
+
+}
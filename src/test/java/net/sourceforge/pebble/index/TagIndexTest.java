@@ -77,6 +77,27 @@ public class TagIndexTest extends SingleBlogTestCase {
     assertEquals(0, index.getTags().size());
   }
 
+  /**
+   * Tests that changes are persisted and can be read back.
+   */
+  public void testChangesSurviveReload() throws Exception {
+    BlogEntry blogEntry1 = new BlogEntry(blog);
+    blogEntry1.setTags("junit, java");
+    blogEntry1.setPublished(true);
+    index.index(blogEntry1);
+    BlogEntry blogEntry2 = new BlogEntry(blog);
+    blogEntry2.setDate(new java.util.Date(blogEntry1.getDate().getTime() + 1));
+    blogEntry2.setTags("java");
+    blogEntry2.setPublished(true);
+    index.index(blogEntry2);
+    index.unindex(blogEntry1);
+
+    index = new TagIndex(blog);
+    assertEquals(0, index.getTag("junit").getNumberOfBlogEntries());
+    assertEquals(1, index.getTag("java").getNumberOfBlogEntries());
+    assertEquals(blogEntry2.getId(), index.getTag("java").getBlogEntries().get(0));
+  }
+
 //  /**
 //   * Tests that category/tag statistics are updated.
 //   */
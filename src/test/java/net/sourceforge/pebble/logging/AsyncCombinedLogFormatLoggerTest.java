@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.File;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for the AsyncCombinedLogFormatLogger class.
+ *
+ * @author    Simon Brown
+ */
+public class AsyncCombinedLogFormatLoggerTest extends SingleBlogTestCase {
+
+  private AsyncCombinedLogFormatLogger logger;
+  private CountDownLatch latch;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    latch = new CountDownLatch(0);
+    logger = new AsyncCombinedLogFormatLogger(blog) {
+      protected LogEntry createLogEntry(HttpServletRequest request, int status) {
+        LogEntry entry = new LogEntry() {
+          public Date getDate() {
+            // lets tests hold up the background thread
+            try {
+              latch.await();
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+            }
+            return super.getDate();
+          }
+        };
+        LogEntry created = super.createLogEntry(request, status);
+        entry.setHost(created.getHost());
+        entry.setRequest(created.getRequest());
+        entry.setStatusCode(created.getStatusCode());
+        entry.setDate(created.getDate());
+        Long date = (Long)request.getAttribute("date");
+        if (date != null) {
+          entry.setDate(new Date(date));
+        }
+        return entry;
+      }
+    };
+  }
+
+  protected void tearDown() throws Exception {
+    latch = new CountDownLatch(0);
+    logger.stop();
+
+    super.tearDown();
+  }
+
+  public void testEntriesAreWrittenInBackground() {
+    logger.start();
+    logger.log(createRequest("/"), 200);
+    logger.log(createRequest("/about.html"), 200);
+    logger.log(createRequest("/missing.html"), 404);
+
+    Log log = logger.getLog();
+    assertEquals(3, log.getLogEntries().size());
+    assertEquals(3, logger.getWritten());
+    assertEquals(0, logger.getPending());
+    assertTrue(logger.getLogFile().indexOf("\"GET /missing.html\" 404") > -1);
+  }
+
+  public void testOutstandingEntriesAreWrittenWhenStopped() {
+    logger.start();
+    logger.log(createRequest("/"), 200);
+    logger.stop();
+
+    assertEquals(1, logger.getLog().getLogEntries().size());
+  }
+
+  public void testEntriesArrivingAfterTheLastDrainAreCountedAsDropped() {
+    logger = new AsyncCombinedLogFormatLogger(blog) {
+      protected LogEntry createLogEntry(HttpServletRequest request, int status) {
+        // stops between the request checking that the logger is running and adding its entry
+        stop();
+        return super.createLogEntry(request, status);
+      }
+    };
+    logger.start();
+    logger.log(createRequest("/"), 200);
+
+    assertEquals(1, logger.getDropped());
+    assertEquals(0, logger.getPending());
+  }
+
+  public void testEntriesAreWrittenDirectlyWhenNotStarted() {
+    logger.log(createRequest("/"), 200);
+
+    assertEquals(1, logger.getLog().getLogEntries().size());
+  }
+
+  public void testFilesAreRotatedAtMidnightInTheBlogTimeZone() {
+    Calendar cal = blog.getCalendar();
+    cal.set(2011, Calendar.MARCH, 4, 23, 59, 59);
+    long beforeMidnight = cal.getTimeInMillis();
+    long afterMidnight = beforeMidnight + 2000;
+
+    logger.start();
+    logger.log(createRequest("/", beforeMidnight), 200);
+    logger.log(createRequest("/", afterMidnight), 200);
+    logger.log(createRequest("/", beforeMidnight), 200);
+    logger.flush();
+
+    assertEquals(2, logger.getLog(2011, 3, 4).getLogEntries().size());
+    assertEquals(1, logger.getLog(2011, 3, 5).getLogEntries().size());
+    assertTrue(new File(blog.getLogsDirectory(), "blog-20110305.log").exists());
+  }
+
+  public void testEntriesAreDroppedWhenBufferIsFull() throws Exception {
+    blog.getPluginProperties().setProperty(AsyncCombinedLogFormatLogger.CAPACITY_KEY, "2");
+    latch = new CountDownLatch(1);
+    logger.start();
+
+    // the background thread takes the first entry and waits
+    logger.log(createRequest("/1"), 200);
+    waitUntilTaken();
+
+    logger.log(createRequest("/2"), 200);
+    logger.log(createRequest("/3"), 200);
+    logger.log(createRequest("/4"), 200);
+    assertEquals(1, logger.getDropped());
+
+    latch.countDown();
+    logger.flush();
+    assertEquals(3, logger.getWritten());
+    assertEquals(0, logger.getBlocked());
+  }
+
+  public void testRequestsWaitWhenBufferIsFullAndPolicyIsBlock() throws Exception {
+    blog.getPluginProperties().setProperty(AsyncCombinedLogFormatLogger.CAPACITY_KEY, "2");
+    blog.getPluginProperties().setProperty(AsyncCombinedLogFormatLogger.OVERFLOW_POLICY_KEY, AsyncCombinedLogFormatLogger.BLOCK);
+    latch = new CountDownLatch(1);
+    logger.start();
+
+    logger.log(createRequest("/1"), 200);
+    waitUntilTaken();
+    logger.log(createRequest("/2"), 200);
+    logger.log(createRequest("/3"), 200);
+
+    Thread request = new Thread() {
+      public void run() {
+        logger.log(createRequest("/4"), 200);
+      }
+    };
+    request.start();
+    request.join(200);
+    assertTrue(request.isAlive());
+    assertEquals(1, logger.getBlocked());
+
+    latch.countDown();
+    request.join(5000);
+    assertFalse(request.isAlive());
+    logger.flush();
+    assertEquals(4, logger.getWritten());
+    assertEquals(0, logger.getDropped());
+  }
+
+  private void waitUntilTaken() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (logger.getPending() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(0, logger.getPending());
+  }
+
+  private HttpServletRequest createRequest(String uri) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setMethod("GET");
+    request.setAttribute(Constants.EXTERNAL_URI, uri);
+    return request;
+  }
+
+  private HttpServletRequest createRequest(String uri, long date) {
+    HttpServletRequest request = createRequest(uri);
+    request.setAttribute("date", date);
+    return request;
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.logging;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the RingBuffer class.
+ *
+ * @author    Simon Brown
+ */
+public class RingBufferTest extends TestCase {
+
+  public void testCapacityIsRoundedUpToPowerOfTwo() {
+    assertEquals(2, new RingBuffer<String>(1).getCapacity());
+    assertEquals(8, new RingBuffer<String>(5).getCapacity());
+    assertEquals(8192, new RingBuffer<String>(8192).getCapacity());
+  }
+
+  public void testElementsAreTakenInOrderUntilEmpty() {
+    RingBuffer<String> buffer = new RingBuffer<String>(4);
+    assertTrue(buffer.offer("a"));
+    assertTrue(buffer.offer("b"));
+    assertEquals(2, buffer.size());
+
+    assertEquals("a", buffer.poll());
+    assertEquals("b", buffer.poll());
+    assertNull(buffer.poll());
+    assertEquals(2, buffer.getHead());
+    assertEquals(2, buffer.getTail());
+  }
+
+  public void testOfferFailsWhenFullAndSucceedsOnceSpaceIsFreed() {
+    RingBuffer<String> buffer = new RingBuffer<String>(2);
+    assertTrue(buffer.offer("a"));
+    assertTrue(buffer.offer("b"));
+    assertFalse(buffer.offer("c"));
+
+    assertEquals("a", buffer.poll());
+    assertTrue(buffer.offer("c"));
+
+    List<String> drained = new ArrayList<String>();
+    assertEquals(2, buffer.drainTo(drained, 10));
+    assertEquals("b", drained.get(0));
+    assertEquals("c", drained.get(1));
+  }
+
+  public void testConcurrentProducersLoseNothing() throws Exception {
+    final RingBuffer<Integer> buffer = new RingBuffer<Integer>(64);
+    final int producers = 4;
+    final int perProducer = 10000;
+
+    Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      final int id = i;
+      threads[i] = new Thread() {
+        public void run() {
+          for (int j = 0; j < perProducer; j++) {
+            while (!buffer.offer(id * perProducer + j)) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+
+    boolean[] seen = new boolean[producers * perProducer];
+    int count = 0;
+    while (count < seen.length) {
+      Integer value = buffer.poll();
+      if (value == null) {
+        Thread.yield();
+      } else {
+        assertFalse(seen[value]);
+        seen[value] = true;
+        count++;
+      }
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(buffer.poll());
+  }
+
+}
@@ -61,13 +61,19 @@ public class MockHttpServletRequest implements HttpServletRequest {
   private RequestDispatcher requestDispatcher;
 
   private MockPrincipal userPrincipal;
+  private String method;
+  private Cookie[] cookies = new Cookie[0];
 
   public String getAuthType() {
     return null;
   }
 
   public Cookie[] getCookies() {
-    return new Cookie[0];
+    return cookies;
+  }
+
+  public void setCookies(Cookie[] cookies) {
+    this.cookies = cookies;
   }
 
   public long getDateHeader(String name) {
@@ -104,7 +110,11 @@ public class MockHttpServletRequest implements HttpServletRequest {
   }
 
   public String getMethod() {
-    return null;
+    return method;
+  }
+
+  public void setMethod(String method) {
+    this.method = method;
   }
 
   public String getPathInfo() {
@@ -34,6 +34,7 @@ package net.sourceforge.pebble.mock;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -59,12 +60,14 @@ public class MockHttpServletResponse implements HttpServletResponse {
 
   private PrintWriter writer = new PrintWriter(new StringWriter());
   private String sendRedirect;
+  private String characterEncoding;
+  private ByteArrayOutputStream content = new ByteArrayOutputStream();
 
   public void addCookie(Cookie cookie) {
   }
 
   public boolean containsHeader(String s) {
-    return false;
+    return headers.containsKey(s);
   }
 
   public String encodeURL(String s) {
@@ -139,11 +142,19 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public String getCharacterEncoding() {
-    return null;
+    return characterEncoding;
   }
 
   public ServletOutputStream getOutputStream() throws IOException {
-    return null;
+    return new ServletOutputStream() {
+      public void write(int b) throws IOException {
+        content.write(b);
+      }
+    };
+  }
+
+  public byte[] getContent() {
+    return content.toByteArray();
   }
 
   public PrintWriter getWriter() throws IOException {
@@ -156,6 +167,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public void setContentLength(int i) {
+    headers.put("Content-Length", "" + i);
   }
 
   public void setContentType(String s) {
@@ -194,7 +206,7 @@ public class MockHttpServletResponse implements HttpServletResponse {
   }
 
   public void setCharacterEncoding(String s) {
-    //To change body of implemented methods use File | Settings | File Templates.
+    this.characterEncoding = s;
   }
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.search;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.*;
+import net.sourceforge.pebble.index.SearchIndex;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.GrantedAuthorityImpl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tests for the FederatedSearch class.
+ *
+ * @author    Simon Brown
+ */
+public class FederatedSearchTest extends MultiBlogTestCase {
+
+  private BlogEntry index(Blog blog, long date, String title) {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(date));
+    blogEntry.setTitle(title);
+    blogEntry.setPublished(true);
+    blog.getSearchIndex().index(blogEntry);
+
+    return blogEntry;
+  }
+
+  public void testHitsFromAllBlogsAreMerged() {
+    BlogEntry blogEntry1 = index(blog1, 1000, "Some JSP topic");
+    BlogEntry blogEntry2 = index(blog2, 2000, "Another JSP topic");
+    BlogEntry blogEntry3 = index(blog1, 3000, "A third JSP topic");
+    index(blog2, 4000, "Something else");
+
+    FederatedSearch search = new FederatedSearch(Locale.ENGLISH);
+    SearchResults results = search.search(Arrays.asList(blog1, blog2), "jsp", SearchIndex.SORT_BY_DATE, 0, 10);
+    assertEquals(3, results.getNumberOfHits());
+    assertEquals(blogEntry3.getId(), ((SearchHit)results.getHits().get(0)).getId());
+    assertEquals(blogEntry2.getId(), ((SearchHit)results.getHits().get(1)).getId());
+    assertSame(blog2, ((SearchHit)results.getHits().get(1)).getBlog());
+    assertEquals(blogEntry1.getId(), ((SearchHit)results.getHits().get(2)).getId());
+    assertNull(results.getMessage());
+
+    results = search.search(Arrays.asList(blog1, blog2), "jsp", SearchIndex.SORT_BY_DATE, 1, 1);
+    assertEquals(3, results.getNumberOfHits());
+    assertEquals(1, results.getHits().size());
+    assertEquals(blogEntry2.getId(), ((SearchHit)results.getHits().get(0)).getId());
+    assertEquals(2, ((SearchHit)results.getHits().get(0)).getNumber());
+  }
+
+  public void testPrivateBlogsAreOnlySearchableByAuthorisedUsers() {
+    blog2.setProperty(Blog.PRIVATE_KEY, "true");
+    blog2.setProperty(Blog.BLOG_READERS_KEY, "reader");
+
+    assertEquals(Arrays.asList(blog1), FederatedSearch.getSearchableBlogs(null));
+
+    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken("someone", "password", new GrantedAuthority[0]);
+    assertEquals(Arrays.asList(blog1), FederatedSearch.getSearchableBlogs(auth));
+
+    auth = new UsernamePasswordAuthenticationToken("reader", "password", new GrantedAuthority[0]);
+    List<Blog> blogs = FederatedSearch.getSearchableBlogs(auth);
+    assertEquals(2, blogs.size());
+    assertTrue(blogs.contains(blog2));
+
+    auth = new UsernamePasswordAuthenticationToken("admin", "password", new GrantedAuthority[] {new GrantedAuthorityImpl(Constants.BLOG_ADMIN_ROLE)});
+    assertEquals(2, FederatedSearch.getSearchableBlogs(auth).size());
+  }
+
+  public void testSlowBlogsAreLeftOut() throws Exception {
+    File blogDirectory = new File(TEST_BLOG_LOCATION, "blogs/blog3");
+    blogDirectory.mkdir();
+    final SearchIndex slowIndex = new SearchIndex(blog2) {
+      public SearchResults search(String queryString, String sort, int offset, int limit) throws SearchException {
+        try {
+          Thread.sleep(2000);
+        } catch (InterruptedException ie) {
+          // the search has been cancelled
+        }
+        return new SearchResults();
+      }
+    };
+    Blog slowBlog = new Blog(blogDirectory.getAbsolutePath()) {
+      public SearchIndex getSearchIndex() {
+        return slowIndex;
+      }
+    };
+    slowBlog.setId("blog3");
+    slowBlog.setProperty(Blog.NAME_KEY, "Slow blog");
+
+    index(blog1, 1000, "Some JSP topic");
+
+    long start = System.currentTimeMillis();
+    SearchResults results = new FederatedSearch(Locale.ENGLISH, 200).search(Arrays.asList(blog1, slowBlog), "jsp", SearchIndex.SORT_BY_SCORE, 0, 10);
+    assertTrue(System.currentTimeMillis() - start < 1500);
+    assertEquals(1, results.getNumberOfHits());
+    assertEquals("Results from the following blogs could not be included : [Slow blog]", results.getMessage());
+  }
+
+}
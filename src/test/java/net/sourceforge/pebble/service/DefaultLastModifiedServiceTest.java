@@ -65,7 +65,7 @@ public class DefaultLastModifiedServiceTest {
   public void testResponseHeaders() {
     assertFalse(service.checkAndProcessLastModified(request, response, new Date(10000000), null));
     assertEquals(httpFormat.format(new Date(10000000)), response.getHeader("Last-Modified"));
-    assertEquals("\"" + httpFormat.format(new Date(10000000)) + "\"", response.getHeader("ETag"));
+    assertEquals("\"" + Long.toHexString(10000000) + "\"", response.getHeader("ETag"));
   }
 
   @Test
@@ -83,15 +83,15 @@ public class DefaultLastModifiedServiceTest {
 
   @Test
   public void testIfNoneMatchMatch() {
-    request.setHeader("If-None-Match", "\"" + httpFormat.format(new Date(10000000)) + "\"");
+    request.setHeader("If-None-Match", "\"" + Long.toHexString(10000000) + "\"");
     assertTrue(service.checkAndProcessLastModified(request, response, new Date(10000000), null));
   }
 
   @Test
   public void testIfNoneMatchNotMatch() {
-    request.setHeader("If-None-Match", "\"" + httpFormat.format(new Date(5000000)) + "\"");
+    request.setHeader("If-None-Match", "\"" + Long.toHexString(5000000) + "\"");
     assertFalse(service.checkAndProcessLastModified(request, response, new Date(10000000), null));
-    assertEquals("\"" + httpFormat.format(new Date(10000000)) + "\"", response.getHeader("ETag"));
+    assertEquals("\"" + Long.toHexString(10000000) + "\"", response.getHeader("ETag"));
   }
 
   @Test
@@ -187,4 +187,15 @@ public class PageableTest extends TestCase {
     assertEquals(13, pageable.getMaxPageRange());
   }
 
+  public void testSinglePageOfLargerList() {
+    pageable = new Pageable(list.subList(10, 20), 45, 10, 2);
+
+    assertEquals(2, pageable.getPage());
+    assertEquals(5, pageable.getMaxPages());
+    assertEquals(1, pageable.getPreviousPage());
+    assertEquals(3, pageable.getNextPage());
+    assertEquals(45, pageable.getList().size());
+    assertEquals(list.subList(10, 20), pageable.getListForPage());
+  }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.util.importer;
+
+import net.sourceforge.pebble.dao.DAOFactory;
+import net.sourceforge.pebble.dao.file.FileDAOFactory;
+import net.sourceforge.pebble.dao.jdbc.JdbcDAOFactory;
+import net.sourceforge.pebble.domain.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the JdbcImporter class.
+ *
+ * @author    Simon Brown
+ */
+public class JdbcImporterTest extends SingleBlogTestCase {
+
+  public void testImport() throws Exception {
+    DAOFactory from = new FileDAOFactory();
+    DAOFactory to = new JdbcDAOFactory("jdbc:h2:mem:" + getName(), "sa", "");
+
+    Category category = new Category("/java", "Java");
+    blog.addCategory(category);
+    from.getCategoryDAO().addCategory(category, blog);
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("Title");
+    blogEntry.setBody("Body");
+    blogEntry.setDate(new Date(1081203335000L));
+    blogEntry.addCategory(category);
+    blogEntry.addComment(blogEntry.createComment("Re: Title", "Comment", "Author", null, null, null, "127.0.0.1", new Date(1081203336000L), State.APPROVED));
+    from.getBlogEntryDAO().storeBlogEntry(blogEntry);
+
+    StaticPage staticPage = new StaticPage(blog);
+    staticPage.setTitle("About");
+    staticPage.setName("about");
+    staticPage.setDate(new Date(1152083300843L));
+    from.getStaticPageDAO().storeStaticPage(staticPage);
+
+    from.getRefererFilterDAO().addRefererFilter(new RefererFilter(".*www.a.com.*"), blog);
+
+    JdbcImporter.importBlog(blog, from, to);
+
+    assertEquals("Java", ((Category)to.getCategoryDAO().getCategories(blog).getSubCategories().get(0)).getName());
+
+    List<BlogEntry> blogEntries = new ArrayList<BlogEntry>(to.getBlogEntryDAO().loadBlogEntries(blog));
+    assertEquals(1, blogEntries.size());
+    BlogEntry imported = blogEntries.get(0);
+    assertEquals("Title", imported.getTitle());
+    assertTrue(imported.inCategory(category));
+    assertEquals("Comment", imported.getComments().get(0).getBody());
+
+    assertEquals("about", to.getStaticPageDAO().loadStaticPage(blog, staticPage.getId()).getName());
+    assertEquals(1, to.getRefererFilterDAO().getRefererFilters(blog).size());
+  }
+
+}
@@ -31,9 +31,18 @@
  */
 package net.sourceforge.pebble.web.action;
 
+import net.sourceforge.pebble.FeedCache;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
 import net.sourceforge.pebble.service.LastModifiedService;
 import net.sourceforge.pebble.web.view.NotModifiedView;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.CachedFeedView;
 import net.sourceforge.pebble.web.view.impl.FeedView;
+import net.sourceforge.pebble.web.view.impl.RdfView;
+
+import java.util.Date;
 
 import static org.mockito.Mockito.*;
 
@@ -55,11 +64,85 @@ public class SingleBlogFeedActionTest extends SingleBlogActionTestCase {
   }
 
   public void testStatusIsOkay() throws Exception {
-    assertTrue(action.process(request, response) instanceof FeedView);
+    View view = action.process(request, response);
+    assertTrue(view instanceof CachedFeedView);
+    assertTrue(((CachedFeedView)view).getView() instanceof FeedView);
+  }
+
+  public void testRdfFlavor() throws Exception {
+    request.setParameter("flavor", "rdf");
+    View view = action.process(request, response);
+    assertTrue(((CachedFeedView)view).getView() instanceof RdfView);
+  }
+
+  public void testFeedIsRenderedOnceAndThenServedFromCache() throws Exception {
+    render(action.process(request, response));
+    assertEquals(1, FeedCache.getInstance().getSize(blog));
+    String content = new String(response.getContent(), "UTF-8");
+    assertTrue(content.indexOf("<rss") > -1);
+    assertNotNull(response.getHeader("ETag"));
+
+    View view = action.process(request, response);
+    assertTrue(view instanceof CachedFeedView);
+    assertNull(((CachedFeedView)view).getView());
+  }
+
+  public void testCachedFeedIsNotModifiedWhenETagMatches() throws Exception {
+    render(action.process(request, response));
+
+    request.setHeader("If-None-Match", response.getHeader("ETag"));
+    assertTrue(action.process(request, response) instanceof NotModifiedView);
+  }
+
+  public void testCachedFeedIsRemovedWhenBlogEntryPublished() throws Exception {
+    render(action.process(request, response));
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setDate(new Date(1000));
+    blogEntry.setPublished(true);
+    new BlogService().putBlogEntry(blogEntry);
+
+    assertEquals(0, FeedCache.getInstance().getSize(blog));
+  }
+
+  public void testTagFeedsAreCachedSeparately() throws Exception {
+    render(action.process(request, response));
+    request.setParameter("tag", "java");
+    render(action.process(request, response));
+    assertEquals(2, FeedCache.getInstance().getSize(blog));
+  }
+
+  public void testFacetFeedIsOnlyRemovedWhenMatchingBlogEntryChanges() throws Exception {
+    request.setParameter("facets", "true");
+    request.setParameter("tag", new String[] { "java" });
+    render(action.process(request, response));
+    assertEquals(1, FeedCache.getInstance().getSize(blog));
+
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setTitle("A title");
+    blogEntry.setBody("Some body");
+    blogEntry.setTags("apple");
+    blogEntry.setDate(new Date(1000));
+    FeedCache.getInstance().removeBlogEntry(blogEntry);
+    assertEquals(1, FeedCache.getInstance().getSize(blog));
+
+    blogEntry.setTags("java");
+    FeedCache.getInstance().removeBlogEntry(blogEntry);
+    assertEquals(0, FeedCache.getInstance().getSize(blog));
+  }
+
+  private void render(View view) throws Exception {
+    response = new MockHttpServletResponse();
+    response.setCharacterEncoding("UTF-8");
+    view.setModel(model);
+    view.prepare();
+    view.dispatch(request, response, null);
   }
 
   public void testStatusIsNotModifiedWhenBlogNotChanged() throws Exception {
-    when(lastModifiedService.checkAndProcessLastModified(request, response, blog.getLastModified(), null)).thenReturn(true);
+    when(lastModifiedService.checkAndProcessValidators(request, response, blog)).thenReturn(true);
     assertTrue(action.process(request, response) instanceof NotModifiedView);
   }
 
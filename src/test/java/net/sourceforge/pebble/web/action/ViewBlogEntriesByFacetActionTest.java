@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.action;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.index.FacetIndex;
+import net.sourceforge.pebble.index.FacetQuery;
+import net.sourceforge.pebble.web.view.View;
+import net.sourceforge.pebble.web.view.impl.BlogEntriesView;
+import net.sourceforge.pebble.service.DefaultLastModifiedService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the ViewBlogEntriesByFacetAction class.
+ *
+ * @author    Simon Brown
+ */
+public class ViewBlogEntriesByFacetActionTest extends SingleBlogActionTestCase {
+
+  private BlogEntry blogEntry1;
+  private BlogEntry blogEntry2;
+
+  protected void setUp() throws Exception {
+    action = new ViewBlogEntriesByFacetAction();
+    action.setLastModifiedService(new DefaultLastModifiedService());
+
+    super.setUp();
+
+    BlogService service = new BlogService();
+    blogEntry1 = new BlogEntry(blog);
+    blogEntry1.setDate(new Date(1000));
+    blogEntry1.setTags("java");
+    blogEntry1.setPublished(true);
+    service.putBlogEntry(blogEntry1);
+    blogEntry2 = new BlogEntry(blog);
+    blogEntry2.setDate(new Date(2000));
+    blogEntry2.setTags("java");
+    service.putBlogEntry(blogEntry2);
+  }
+
+  public void testAnonymousReadersOnlySeePublishedBlogEntries() throws Exception {
+    request.setParameter("tag", new String[] { "java" });
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof BlogEntriesView);
+    List blogEntries = (List)model.get(Constants.BLOG_ENTRIES);
+    assertEquals(1, blogEntries.size());
+    assertEquals(blogEntry1, blogEntries.get(0));
+    assertEquals(new FacetQuery().require(FacetIndex.TAG, "java"), model.get("facetQuery"));
+
+    Map counts = (Map)model.get("facetCounts");
+    assertEquals(1, ((Map)counts.get(FacetIndex.TAG)).get("java"));
+  }
+
+}
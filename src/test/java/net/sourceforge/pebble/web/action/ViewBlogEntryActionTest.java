@@ -34,11 +34,13 @@ package net.sourceforge.pebble.web.action;
 
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.NotFoundView;
+import net.sourceforge.pebble.web.view.NotModifiedView;
 import net.sourceforge.pebble.web.view.impl.BlogEntryView;
 import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.util.SecurityUtils;
 import net.sourceforge.pebble.domain.BlogEntry;
 import net.sourceforge.pebble.domain.BlogService;
+import net.sourceforge.pebble.service.DefaultLastModifiedService;
 
 /**
  * Tests for the ViewBlogEntryAction class.
@@ -49,6 +51,7 @@ public class ViewBlogEntryActionTest extends SingleBlogActionTestCase {
 
   protected void setUp() throws Exception {
     action = new ViewBlogEntryAction();
+    action.setLastModifiedService(new DefaultLastModifiedService());
 
     super.setUp();
   }
@@ -59,6 +62,32 @@ public class ViewBlogEntryActionTest extends SingleBlogActionTestCase {
     assertTrue(view instanceof NotFoundView);
   }
 
+  public void testNonExistentBlogEntryIsNotValidated() throws Exception {
+    SecurityUtils.runAsUnauthenticated();
+    request.setMethod("GET");
+    request.setHeader("If-None-Match", "*");
+    request.setParameter("entry", "1234567890123");
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof NotFoundView);
+    assertNull(response.getHeader("ETag"));
+  }
+
+  public void testExistingBlogEntryIsValidated() throws Exception {
+    BlogEntry blogEntry = new BlogEntry(blog);
+    blogEntry.setPublished(true);
+    BlogService service = new BlogService();
+    service.putBlogEntry(blogEntry);
+
+    SecurityUtils.runAsUnauthenticated();
+    request.setMethod("GET");
+    request.setHeader("If-None-Match", "*");
+    request.setParameter("entry", blogEntry.getId());
+    View view = action.process(request, response);
+
+    assertTrue(view instanceof NotModifiedView);
+  }
+
   public void testViewNonExistentBlogEntry() throws Exception {
     request.setParameter("entry", "1234567890123");
     View view = action.process(request, response);
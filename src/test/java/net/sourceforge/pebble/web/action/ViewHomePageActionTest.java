@@ -35,6 +35,7 @@ import net.sourceforge.pebble.Constants;
 import net.sourceforge.pebble.web.model.Model;
 import net.sourceforge.pebble.web.view.View;
 import net.sourceforge.pebble.web.view.impl.BlogEntriesView;
+import net.sourceforge.pebble.service.DefaultLastModifiedService;
 
 /**
  * Tests for the ViewHomePageAction class.
@@ -45,6 +46,7 @@ public class ViewHomePageActionTest extends SingleBlogActionTestCase {
 
   protected void setUp() throws Exception {
     action = new ViewBlogEntriesByPageAction();
+    action.setLastModifiedService(new DefaultLastModifiedService());
 
     super.setUp();
   }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockFilterConfig;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for the GZIPFilter class.
+ *
+ * @author    Simon Brown
+ */
+public class GZIPFilterTest extends SingleBlogTestCase {
+
+  private GZIPFilter filter;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    MockFilterConfig config = new MockFilterConfig();
+    config.setInitParameter("minimumSize", "100");
+    filter = new GZIPFilter();
+    filter.init(config);
+
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.BLOG_KEY, blog);
+    request.setHeader("Accept-Encoding", "gzip, deflate");
+    response = new MockHttpServletResponse();
+  }
+
+  public void testLargeResponsesAreGzipped() throws Exception {
+    String content = repeat("Some content. ", 100);
+    filter.doFilter(request, response, new WriterChain("text/html", content));
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.getHeader("Vary"));
+    assertNull(response.getHeader("Content-Length"));
+    assertEquals(content, new String(gunzip(response.getContent()), "UTF-8"));
+  }
+
+  public void testSmallResponsesAreNotGzipped() throws Exception {
+    filter.doFilter(request, response, new WriterChain("text/html", "Some content."));
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.getHeader("Vary"));
+    assertEquals("13", response.getHeader("Content-Length"));
+    assertEquals("Some content.", new String(response.getContent(), "UTF-8"));
+  }
+
+  public void testNothingIsGzippedWhenNotAccepted() throws Exception {
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.BLOG_KEY, blog);
+    String content = repeat("Some content. ", 100);
+    filter.doFilter(request, response, new WriterChain("text/html", content));
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.getHeader("Vary"));
+  }
+
+  public void testCompressedContentTypesAreNotGzipped() throws Exception {
+    byte[] content = randomBytes(1000);
+    filter.doFilter(request, response, new StreamChain("image/png", content, true));
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("1000", response.getHeader("Content-Length"));
+    assertTrue(Arrays.equals(content, response.getContent()));
+  }
+
+  public void testBinaryContentWithKnownLengthIsGzipped() throws Exception {
+    byte[] content = repeat("body { color: black; } ", 100).getBytes("UTF-8");
+    filter.doFilter(request, response, new StreamChain("text/css", content, true));
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertNull(response.getHeader("Content-Length"));
+    assertTrue(Arrays.equals(content, gunzip(response.getContent())));
+  }
+
+  public void testEncodedContentIsNotGzippedAgain() throws Exception {
+    final byte[] content = randomBytes(1000);
+    filter.doFilter(request, response, new StreamChain("text/html", content, false) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setHeader("Content-Encoding", "gzip");
+        super.doFilter(request, response);
+      }
+    });
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertTrue(Arrays.equals(content, response.getContent()));
+  }
+
+  public void testCompressedContentIsSentBeforeTheResponseEnds() throws Exception {
+    final int[] sent = new int[1];
+    filter.doFilter(request, response, new FilterChain() {
+      public void doFilter(ServletRequest req, ServletResponse res) throws IOException, ServletException {
+        res.setContentType("text/plain");
+        ServletOutputStream out = res.getOutputStream();
+        out.write(randomBytes(100000));
+        out.flush();
+        sent[0] = response.getContent().length;
+        out.write(randomBytes(100));
+      }
+    });
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertTrue(sent[0] > 50000);
+    assertEquals(100100, gunzip(response.getContent()).length);
+  }
+
+  public void testETagsAreChangedForGzippedContent() throws Exception {
+    byte[] content = repeat("body { color: black; } ", 100).getBytes("UTF-8");
+    filter.doFilter(request, response, new StreamChain("text/css", content, true) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setHeader("ETag", "\"abc\"");
+        super.doFilter(request, response);
+      }
+    });
+
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertEquals("\"abc-gzip\"", response.getHeader("ETag"));
+  }
+
+  public void testETagsAreLeftAloneForContentThatIsNotGzipped() throws Exception {
+    filter.doFilter(request, response, new StreamChain("text/css", new byte[10], true) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setHeader("ETag", "\"abc\"");
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("\"abc\"", response.getHeader("ETag"));
+  }
+
+  public void testPartialContentIsNotGzipped() throws Exception {
+    byte[] content = repeat("body { color: black; } ", 100).getBytes("UTF-8");
+    filter.doFilter(request, response, new StreamChain("text/css", content, true) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertTrue(Arrays.equals(content, response.getContent()));
+  }
+
+  public void testContentRangesAreNotGzipped() throws Exception {
+    byte[] content = repeat("body { color: black; } ", 100).getBytes("UTF-8");
+    filter.doFilter(request, response, new StreamChain("text/css", content, true) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setHeader("Content-Range", "bytes 0-2299/5000");
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("bytes 0-2299/5000", response.getHeader("Content-Range"));
+    assertTrue(Arrays.equals(content, response.getContent()));
+  }
+
+  public void testContentLengthThatCannotBeParsedIsPassedThrough() throws Exception {
+    final byte[] content = repeat("body { color: black; } ", 100).getBytes("UTF-8");
+    filter.doFilter(request, response, new StreamChain("text/css", content, false) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setHeader("Content-Length", "3000000000");
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("3000000000", response.getHeader("Content-Length"));
+    assertTrue(Arrays.equals(content, response.getContent()));
+  }
+
+  public void testEmptyResponsesKeepTheirContentLength() throws Exception {
+    filter.doFilter(request, response, new StreamChain("text/css", new byte[0], false) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        response.setContentLength(2300);
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Encoding"));
+    assertEquals("2300", response.getHeader("Content-Length"));
+  }
+
+  public void testRedirectsAreNotGivenAContentLength() throws Exception {
+    filter.doFilter(request, response, new StreamChain("text/html", new byte[0], false) {
+      public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+        ((HttpServletResponse)response).setStatus(HttpServletResponse.SC_MOVED_PERMANENTLY);
+        super.doFilter(request, response);
+      }
+    });
+
+    assertNull(response.getHeader("Content-Length"));
+    assertEquals(0, response.getContent().length);
+  }
+
+  private String repeat(String s, int times) {
+    StringBuffer buf = new StringBuffer();
+    for (int i = 0; i < times; i++) {
+      buf.append(s);
+    }
+
+    return buf.toString();
+  }
+
+  private byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+
+    return bytes;
+  }
+
+  private byte[] gunzip(byte[] content) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int length;
+    while ((length = in.read(buf)) != -1) {
+      out.write(buf, 0, length);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Renders content through the response's writer, as a JSP would.
+   */
+  private class WriterChain implements FilterChain {
+
+    private final String contentType;
+    private final String content;
+
+    private WriterChain(String contentType, String content) {
+      this.contentType = contentType;
+      this.content = content;
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+      response.setContentType(contentType);
+      PrintWriter writer = response.getWriter();
+      writer.print(content);
+    }
+
+  }
+
+  /**
+   * Writes content through the response's output stream, as a BinaryView
+   * would.
+   */
+  private class StreamChain implements FilterChain {
+
+    private final String contentType;
+    private final byte[] content;
+    private final boolean contentLength;
+
+    private StreamChain(String contentType, byte[] content, boolean contentLength) {
+      this.contentType = contentType;
+      this.content = content;
+      this.contentLength = contentLength;
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+      response.setContentType(contentType);
+      if (contentLength) {
+        response.setContentLength(content.length);
+      }
+      ServletOutputStream out = response.getOutputStream();
+      out.write(content);
+      out.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.PageCache;
+import net.sourceforge.pebble.PebbleContext;
+import net.sourceforge.pebble.domain.BlogEntry;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockFilterConfig;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for the PageCacheFilter class.
+ *
+ * @author    Simon Brown
+ */
+public class PageCacheFilterTest extends SingleBlogTestCase {
+
+  private PageCacheFilter filter;
+  private RenderingFilterChain chain;
+  private BlogEntry blogEntry;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    PebbleContext.getInstance().getConfiguration().setPageCacheEnabled(true);
+    filter = new PageCacheFilter();
+    filter.init(new MockFilterConfig());
+    chain = new RenderingFilterChain();
+
+    blogEntry = new BlogEntry(blog);
+    blogEntry.setDate(new Date(1000));
+  }
+
+  public void tearDown() throws Exception {
+    super.tearDown();
+
+    filter.destroy();
+  }
+
+  public void testPageIsRenderedOnceAndThenServedFromCache() throws Exception {
+    MockHttpServletResponse response = doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals("Some content", new String(response.getContent(), "UTF-8"));
+    assertEquals(1, chain.count);
+    assertEquals(1, PageCache.getInstance().getSize(blog));
+
+    response = doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals("Some content", new String(response.getContent(), "UTF-8"));
+    assertEquals("text/html; charset=UTF-8", response.getContentType());
+    assertEquals("no-cache", response.getHeader("Pragma"));
+    assertEquals(1, chain.count);
+  }
+
+  public void testGzippedPageIsServedWhenAccepted() throws Exception {
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+
+    MockHttpServletRequest request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setHeader("Accept-Encoding", "gzip, deflate");
+    MockHttpServletResponse response = doFilter(request);
+    assertEquals("gzip", response.getHeader("Content-Encoding"));
+    assertEquals("Accept-Encoding", response.getHeader("Vary"));
+    assertEquals("Some content", gunzip(response.getContent()));
+    assertEquals(1, chain.count);
+  }
+
+  public void testCachedPageAnswersConditionalRequests() throws Exception {
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+
+    MockHttpServletRequest request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setHeader("If-None-Match", "\"abc\"");
+    MockHttpServletResponse response = doFilter(request);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    assertEquals("\"abc\"", response.getHeader("ETag"));
+    assertEquals(0, response.getContent().length);
+    assertEquals(1, chain.count);
+  }
+
+  public void testGzippedPageHasItsOwnETag() throws Exception {
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+
+    MockHttpServletRequest request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setHeader("Accept-Encoding", "gzip, deflate");
+    MockHttpServletResponse response = doFilter(request);
+    assertEquals("\"abc-gzip\"", response.getHeader("ETag"));
+
+    request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setHeader("Accept-Encoding", "gzip, deflate");
+    request.setHeader("If-None-Match", "\"abc-gzip\"");
+    response = doFilter(request);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    assertEquals("\"abc-gzip\"", response.getHeader("ETag"));
+    assertEquals(1, chain.count);
+  }
+
+  public void testPageIsRemovedWhenBlogEntryChanges() throws Exception {
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    PageCache.getInstance().removeBlogEntry(blogEntry);
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals(2, chain.count);
+  }
+
+  public void testAuthenticatedUsersBypassCache() throws Exception {
+    SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("username", "password"));
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals(2, chain.count);
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testRememberedCommentersBypassCache() throws Exception {
+    MockHttpServletRequest request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setCookies(new Cookie[] { new Cookie("rememberMe", "true") });
+    doFilter(request);
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testPostsBypassCache() throws Exception {
+    MockHttpServletRequest request = createRequest("/viewBlogEntry.action?entry=1");
+    request.setMethod("POST");
+    doFilter(request);
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testOtherActionsBypassCache() throws Exception {
+    doFilter(createRequest("/viewStaticPage.action?name=about"));
+    doFilter(createRequest("/search.action?query=pebble"));
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testErrorsAreNotCached() throws Exception {
+    chain.status = HttpServletResponse.SC_NOT_FOUND;
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testResponsesSettingCookiesAreNotCached() throws Exception {
+    chain.cookie = new Cookie("name", "value");
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  public void testNothingIsCachedWhenDisabled() throws Exception {
+    PebbleContext.getInstance().getConfiguration().setPageCacheEnabled(false);
+    doFilter(createRequest("/viewBlogEntry.action?entry=1"));
+    assertEquals(0, PageCache.getInstance().getSize(blog));
+  }
+
+  private MockHttpServletRequest createRequest(String internalUri) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setMethod("GET");
+    request.setAttribute(Constants.BLOG_KEY, blog);
+    request.setAttribute(Constants.EXTERNAL_URI, "/2011/01/01/entry.html");
+    request.setAttribute(Constants.INTERNAL_URI, internalUri);
+    return request;
+  }
+
+  private MockHttpServletResponse doFilter(MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    response.setCharacterEncoding("UTF-8");
+    filter.doFilter(request, response, chain);
+    return response;
+  }
+
+  private String gunzip(byte[] content) throws IOException {
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int length;
+    while ((length = in.read(buf)) != -1) {
+      out.write(buf, 0, length);
+    }
+    return new String(out.toByteArray(), "UTF-8");
+  }
+
+  /**
+   * Stands in for the rest of the filter chain, rendering a page that
+   * shows a single blog entry.
+   */
+  private class RenderingFilterChain implements FilterChain {
+
+    private int count;
+    private int status = HttpServletResponse.SC_OK;
+    private Cookie cookie;
+
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+      count++;
+      HttpServletResponse httpResponse = (HttpServletResponse)response;
+      request.setAttribute(Constants.BLOG_ENTRY_KEY, blogEntry);
+      httpResponse.setStatus(status);
+      httpResponse.setContentType("text/html; charset=UTF-8");
+      httpResponse.setHeader("Pragma", "no-cache");
+      httpResponse.setHeader("ETag", "\"abc\"");
+      if (cookie != null) {
+        httpResponse.addCookie(cookie);
+      }
+      PrintWriter writer = httpResponse.getWriter();
+      writer.print("Some content");
+    }
+
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import net.sourceforge.pebble.domain.FileMetaData;
+import net.sourceforge.pebble.domain.Tag;
+
+/**
+ * A simple microbenchmark comparing the if/else chain of String.matches and
+ * startsWith checks that UriTransformer used to use with UriRouter, for a
+ * set of representative URIs. Permalinks aren't included, since both use
+ * the same precompiled patterns for those. This isn't run as part of the
+ * build; run it by hand with something like:
+ *
+ * <pre>java -cp target/classes:target/test-classes:... net.sourceforge.pebble.web.filter.UriRouterBenchmark</pre>
+ *
+ * @author    Simon Brown
+ */
+public class UriRouterBenchmark {
+
+  private static final int NUMBER_OF_ITERATIONS = 200000;
+
+  private static final String[] URIS = {
+      "/",
+      "/rss.xml",
+      "/atom.xml",
+      "/responses/rss.xml",
+      "/categories/",
+      "/categories/java/atom.xml",
+      "/categories/java/",
+      "/tags/pebble/rss.xml",
+      "/tags/pebble/",
+      "/authors/simon/",
+      "/pages/about.html",
+      "/images/photo.jpg",
+  };
+
+  public static void main(String[] args) {
+    UriRouter cachedRouter = UriTransformer.createBlogRouter(UriRouter.DEFAULT_CACHE_SIZE);
+    UriRouter uncachedRouter = UriTransformer.createBlogRouter(0);
+
+    for (String uri : URIS) {
+      String expected = getUriWithChain(uri);
+      if (!expected.equals(cachedRouter.getUri(uri))) {
+        System.out.println("Mismatch for " + uri + " : " + expected + " != " + cachedRouter.getUri(uri));
+      }
+    }
+
+    // run everything twice, so that the second run is warmed up
+    for (int run = 0; run < 2; run++) {
+      System.out.println("Run " + (run + 1) + " (" + NUMBER_OF_ITERATIONS + " x " + URIS.length + " URIs)");
+      report("  if/else chain       ", benchmarkChain());
+      report("  UriRouter (uncached)", benchmarkRouter(uncachedRouter));
+      report("  UriRouter (cached)  ", benchmarkRouter(cachedRouter));
+    }
+  }
+
+  private static void report(String name, long timing) {
+    long calls = (long)NUMBER_OF_ITERATIONS * URIS.length;
+    System.out.println(name + " : " + (timing / 1000000) + "ms, "
+        + (timing / calls) + "ns per URI");
+  }
+
+  private static long benchmarkChain() {
+    long start = System.nanoTime();
+    int count = 0;
+    for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+      for (String uri : URIS) {
+        count += getUriWithChain(uri).length();
+      }
+    }
+    long timing = System.nanoTime() - start;
+    consume(count);
+
+    return timing;
+  }
+
+  private static long benchmarkRouter(UriRouter router) {
+    long start = System.nanoTime();
+    int count = 0;
+    for (int i = 0; i < NUMBER_OF_ITERATIONS; i++) {
+      for (String uri : URIS) {
+        count += router.getUri(uri).length();
+      }
+    }
+    long timing = System.nanoTime() - start;
+    consume(count);
+
+    return timing;
+  }
+
+  private static void consume(int count) {
+    if (count == 0) {
+      System.out.println("Unexpected result");
+    }
+  }
+
+  /**
+   * The non-permalink part of UriTransformer.getUri(String, Blog), as it was
+   * before UriRouter was introduced.
+   */
+  private static String getUriWithChain(String uri) {
+    String result;
+    if (uri.equals("/categories") || uri.equals("/categories/")) {
+      result = "/viewCategories.action";
+    } else if (uri.matches("\\/categories\\/.*\\/.*xml")) {
+      int indexOfLastSlash = uri.lastIndexOf("/");
+      String categoryId = uri.substring("/categories".length(), indexOfLastSlash);
+      if (uri.endsWith("rdf.xml")) {
+        result = "/feed.action?category=" + categoryId + "&flavor=rdf";
+      } else if (uri.endsWith("atom.xml")) {
+        result = "/feed.action?category=" + categoryId + "&flavor=atom";
+      } else {
+        result = "/feed.action?category=" + categoryId + "&flavor=rss20";
+      }
+    } else if (uri.startsWith("/categories")) {
+      String category = uri.substring("/categories".length());
+      if (category.endsWith("/")) {
+        category = category.substring(0, category.length()-1);
+      }
+      result = "/viewCategory.action?category=" + category;
+    } else if (uri.equals("/tags") || uri.equals("/tags/")) {
+      result = "/viewTags.action";
+    } else if (uri.matches("\\/tags\\/.*\\/.*xml")) {
+      int indexOfLastSlash = uri.lastIndexOf("/");
+      String tag = uri.substring("/tags/".length(), indexOfLastSlash);
+      if (uri.endsWith("rdf.xml")) {
+        result = "/feed.action?tag=" + tag + "&flavor=rdf";
+      } else if (uri.endsWith("atom.xml")) {
+        result = "/feed.action?tag=" + tag + "&flavor=atom";
+      } else {
+        result = "/feed.action?tag=" + tag + "&flavor=rss20";
+      }
+    } else if (uri.matches("\\/authors\\/.*\\/.*xml")) {
+      int indexOfLastSlash = uri.lastIndexOf("/");
+      String author = uri.substring("/authors/".length(), indexOfLastSlash);
+      if (uri.endsWith("rdf.xml")) {
+        result = "/feed.action?author=" + author + "&flavor=rdf";
+      } else if (uri.endsWith("atom.xml")) {
+        result = "/feed.action?author=" + author + "&flavor=atom";
+      } else {
+        result = "/feed.action?author=" + author + "&flavor=rss20";
+      }
+    } else if (uri.equals("/facets") || uri.equals("/facets/")) {
+      result = "/viewBlogEntriesByFacet.action";
+    } else if (uri.matches("\\/facets\\/(rss|rdf|atom)\\.xml")) {
+      if (uri.endsWith("rdf.xml")) {
+        result = "/feed.action?facets=true&flavor=rdf";
+      } else if (uri.endsWith("atom.xml")) {
+        result = "/feed.action?facets=true&flavor=atom";
+      } else {
+        result = "/feed.action?facets=true&flavor=rss20";
+      }
+    } else if (uri.startsWith("/tags/")) {
+      String tag = uri.substring("/tags/".length());
+      if (tag.endsWith("/")) {
+        tag = tag.substring(0, tag.length()-1);
+      }
+      result = "/viewTag.action?tag=" + Tag.encode(tag);
+    } else if (uri.startsWith("/authors/")) {
+      String author = uri.substring("/authors/".length());
+      if (author.endsWith("/")) {
+        author = author.substring(0, author.length()-1);
+      }
+      result = "/aboutAuthor.action?user=" + author;
+    } else if (uri.equals("/pages/") || uri.equals("/pages")) {
+      result = "/viewStaticPage.action?name=index";
+    } else if (uri.startsWith("/pages/")) {
+      result = "/viewStaticPage.action?name=" + uri.substring(7, uri.length()-5);
+    } else if (uri.startsWith("/images/")) {
+      result = "/file.action?type=" + FileMetaData.BLOG_IMAGE + "&name=" + uri.substring(7);
+    } else if (uri.startsWith("/files/")) {
+      result = "/file.action?type=" + FileMetaData.BLOG_FILE + "&name=" + uri.substring(6);
+    } else if (uri.startsWith("/theme/")) {
+      result = "/file.action?type=" + FileMetaData.THEME_FILE + "&name=" + uri.substring(6);
+    } else if (uri.matches("\\/help\\/\\w*\\.html")) {
+      String name = uri.substring(6);
+      result = "/viewHelp.secureaction?name=" + name.substring(0, name.length()-5);
+    } else if (uri.equals("/help") || uri.equals("/help/")) {
+      result = "/viewHelp.secureaction?name=index";
+    } else if (uri.equals("/responses/rss.xml")) {
+      result = "/responseFeed.action?flavor=rss20";
+    } else if (uri.startsWith("/responses/rss.xml?entry=")) {
+      result = "/responseFeed.action?flavor=rss20&" + uri.substring("/responses/rss.xml?".length());
+    } else if (uri.startsWith("/rss.xml")) {
+      result = "/feed.action?flavor=rss20";
+    } else if (uri.startsWith("/feed.xml")) {
+      result = "/feed.action?flavor=rss20";
+    } else if (uri.startsWith("/rdf.xml")) {
+      result = "/feed.action?flavor=rdf";
+    } else if (uri.startsWith("/responses/atom.xml")) {
+      result = "/responseFeed.action?flavor=atom";
+    } else if (uri.startsWith("/atom.xml")) {
+      result = "/feed.action?flavor=atom";
+    } else if (uri.equals("/today.html")) {
+      result = "/viewDay.action";
+    } else if (uri.equals("/about.html")) {
+      result = "/about.action";
+    } else if (uri.startsWith("/blogentries/")) {
+      result = "/viewBlogEntriesByPage.action?page=" + uri.substring(13, uri.length()-5);
+    } else if (uri.equals("/") || uri.equals("/index.jsp") || uri.equals("/index.html")) {
+      result = "/viewHomePage.action";
+    } else {
+      result = uri;
+    }
+
+    return result;
+  }
+
+}
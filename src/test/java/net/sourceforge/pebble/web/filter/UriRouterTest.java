@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.filter;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+/**
+ * Tests for the UriRouter class.
+ *
+ * @author    Simon Brown
+ */
+public class UriRouterTest extends TestCase {
+
+  private UriRouter router;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    router = new UriRouter();
+  }
+
+  public void testLiteralRoutes() {
+    router.addRoute("/", "/home.action");
+    router.addRoute("/about.html", "/about.action");
+
+    assertEquals("/home.action", router.getUri("/"));
+    assertEquals("/about.action", router.getUri("/about.html"));
+    assertNull(router.getUri("/about.htm"));
+    assertNull(router.getUri("/about.html/more"));
+    assertNull(router.getUri("about.html"));
+  }
+
+  public void testTrailingSlashIsIgnored() {
+    router.addRoute("/tags", "/viewTags.action");
+
+    assertEquals("/viewTags.action", router.getUri("/tags"));
+    assertEquals("/viewTags.action", router.getUri("/tags/"));
+    assertNull(router.getUri("/tags//"));
+  }
+
+  public void testLiteralsAreTriedBeforeCaptures() {
+    router.addRoute("/pages/{name}.html", "/page.action?name={name}");
+    router.addRoute("/pages/index.html", "/index.action");
+
+    assertEquals("/index.action", router.getUri("/pages/index.html"));
+    assertEquals("/page.action?name=about", router.getUri("/pages/about.html"));
+  }
+
+  public void testTypedCaptures() {
+    router.addRoute("/archive/{year:int}", "/year.action?year={year}");
+    router.addRoute("/archive/{name}", "/named.action?name={name}");
+    router.addRoute("/help/{name:word}.html", "/help.action?name={name}");
+
+    assertEquals("/year.action?year=2011", router.getUri("/archive/2011"));
+    assertEquals("/named.action?name=latest", router.getUri("/archive/latest"));
+    assertEquals("/help.action?name=plugins_1", router.getUri("/help/plugins_1.html"));
+    assertNull(router.getUri("/help/plug-ins.html"));
+  }
+
+  public void testPathCapturesLeaveRoomForLongerPatterns() {
+    router.addRoute("/categories/{category:path}", "/category.action?category={category}");
+    router.addRoute("/categories/{category:path}/{flavor}.xml", "/feed.action?category={category}&flavor={flavor}");
+
+    assertEquals("/category.action?category=a", router.getUri("/categories/a/"));
+    assertEquals("/category.action?category=a/b", router.getUri("/categories/a/b"));
+    assertEquals("/feed.action?category=a/b&flavor=atom", router.getUri("/categories/a/b/atom.xml"));
+    assertNull(router.getUri("/categories/"));
+  }
+
+  public void testRestCaptureIncludesEverything() {
+    router.addRoute("/images/{name:*}", "/file.action?name=/{name}");
+
+    assertEquals("/file.action?name=/a/b.png", router.getUri("/images/a/b.png"));
+    assertEquals("/file.action?name=/a/", router.getUri("/images/a/"));
+    assertEquals("/file.action?name=/", router.getUri("/images/"));
+    assertNull(router.getUri("/images"));
+  }
+
+  public void testQueryStringIsPassedToRoute() {
+    router.addRoute("/feed.xml", new UriRouter.Route() {
+      public String getUri(Map<String,String> parameters, String queryString) {
+        return "/feed.action?" + queryString;
+      }
+    });
+
+    assertEquals("/feed.action?entry=123", router.getUri("/feed.xml?entry=123"));
+  }
+
+  public void testResultsAreCachedUntilRoutesChange() {
+    final int[] calls = new int[1];
+    router.addRoute("/counted.html", new UriRouter.Route() {
+      public String getUri(Map<String,String> parameters, String queryString) {
+        calls[0]++;
+        return "/counted.action";
+      }
+    });
+
+    router.getUri("/counted.html");
+    router.getUri("/counted.html");
+    assertEquals(1, calls[0]);
+
+    assertNull(router.getUri("/missing.html"));
+    router.addRoute("/missing.html", "/found.action");
+    assertEquals("/found.action", router.getUri("/missing.html"));
+  }
+
+  public void testInvalidPatternsAreRejected() {
+    assertInvalid("no-slash");
+    assertInvalid("/{name:unknown}");
+    assertInvalid("/{rest:*}/more");
+    assertInvalid("/x{rest:*}");
+    assertInvalid("/{a}{b}");
+  }
+
+  private void assertInvalid(String pattern) {
+    try {
+      router.addRoute(pattern, "/x.action");
+      fail(pattern + " should be rejected");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+  }
+
+}
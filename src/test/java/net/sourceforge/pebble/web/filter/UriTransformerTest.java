@@ -188,6 +188,17 @@ public class UriTransformerTest extends SingleBlogTestCase {
     assertEquals("/feed.action?author=sbrown&flavor=atom", transformer.getUri("/authors/sbrown/atom.xml", blog));
   }
 
+  public void testFacetsLink() throws Exception {
+    assertEquals("/viewBlogEntriesByFacet.action", transformer.getUri("/facets/", blog));
+    assertEquals("/viewBlogEntriesByFacet.action", transformer.getUri("/facets", blog));
+  }
+
+  public void testFacetsNewsFeed() throws Exception {
+    assertEquals("/feed.action?facets=true&flavor=rss20", transformer.getUri("/facets/rss.xml", blog));
+    assertEquals("/feed.action?facets=true&flavor=rdf", transformer.getUri("/facets/rdf.xml", blog));
+    assertEquals("/feed.action?facets=true&flavor=atom", transformer.getUri("/facets/atom.xml", blog));
+  }
+
   public void testTodayPage() throws Exception {
     assertEquals("/viewDay.action", transformer.getUri("/today.html", blog));
   }
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2003-2011, Simon Brown
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in
+ *     the documentation and/or other materials provided with the
+ *     distribution.
+ *
+ *   - Neither the name of Pebble nor the names of its contributors may
+ *     be used to endorse or promote products derived from this software
+ *     without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.sourceforge.pebble.web.view;
+
+import net.sourceforge.pebble.Constants;
+import net.sourceforge.pebble.domain.Blog;
+import net.sourceforge.pebble.domain.SingleBlogTestCase;
+import net.sourceforge.pebble.mock.MockHttpServletRequest;
+import net.sourceforge.pebble.mock.MockHttpServletResponse;
+import net.sourceforge.pebble.web.model.Model;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+/**
+ * Tests for the FileView class.
+ *
+ * @author    Simon Brown
+ */
+public class FileViewTest extends SingleBlogTestCase {
+
+  private File file;
+  private FileView view;
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    file = new File(blog.getRoot(), "image.png");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("0123456789abcdefghij".getBytes("ISO-8859-1"));
+    out.close();
+
+    view = new FileView(file);
+    Model model = new Model();
+    model.put(Constants.BLOG_KEY, blog);
+    view.setModel(model);
+
+    request = new MockHttpServletRequest();
+    request.setAttribute(Constants.EXTERNAL_URI, "/images/image.png");
+    response = new MockHttpServletResponse();
+  }
+
+  public void testWholeFileIsSent() throws Exception {
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals("0123456789abcdefghij", new String(response.getContent(), "ISO-8859-1"));
+    assertEquals("20", response.getHeader("Content-Length"));
+    assertEquals(view.getETag(), response.getHeader("ETag"));
+    assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    assertEquals("public, max-age=2592000", response.getHeader("Cache-Control"));
+    assertNotNull(response.getHeader("Last-Modified"));
+  }
+
+  public void testETagChangesWhenFileChanges() throws Exception {
+    String eTag = view.getETag();
+    FileOutputStream out = new FileOutputStream(file, true);
+    out.write('!');
+    out.close();
+    assertFalse(eTag.equals(view.getETag()));
+  }
+
+  public void testMatchingETagGivesNotModified() throws Exception {
+    request.setHeader("If-None-Match", "\"abc\", " + view.getETag());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    assertEquals(0, response.getContent().length);
+    assertEquals(view.getETag(), response.getHeader("ETag"));
+  }
+
+  public void testMatchingGzippedETagGivesNotModified() throws Exception {
+    String gzippedETag = view.getETag().substring(0, view.getETag().length() - 1) + "-gzip\"";
+    request.setHeader("If-None-Match", gzippedETag);
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+    assertEquals(gzippedETag, response.getHeader("ETag"));
+  }
+
+  public void testDifferentETagSendsFileEvenIfNotModifiedSince() throws Exception {
+    request.setHeader("If-None-Match", "\"abc\"");
+    request.setDateHeader("If-Modified-Since", file.lastModified());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(20, response.getContent().length);
+  }
+
+  public void testIfModifiedSinceGivesNotModified() throws Exception {
+    request.setDateHeader("If-Modified-Since", file.lastModified());
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+  }
+
+  public void testSingleRange() throws Exception {
+    request.setHeader("Range", "bytes=5-9");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+    assertEquals("5", response.getHeader("Content-Length"));
+    assertEquals("56789", new String(response.getContent(), "ISO-8859-1"));
+  }
+
+  public void testSuffixRange() throws Exception {
+    request.setHeader("Range", "bytes=-3");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertEquals("bytes 17-19/20", response.getHeader("Content-Range"));
+    assertEquals("hij", new String(response.getContent(), "ISO-8859-1"));
+  }
+
+  public void testMultipleRanges() throws Exception {
+    request.setHeader("Range", "bytes=0-1,18-");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+    assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+
+    String content = new String(response.getContent(), "ISO-8859-1");
+    assertEquals("" + response.getContent().length, response.getHeader("Content-Length"));
+    assertTrue(content.indexOf("Content-Range: bytes 0-1/20\r\n\r\n01\r\n") > -1);
+    assertTrue(content.indexOf("Content-Range: bytes 18-19/20\r\n\r\nij\r\n") > -1);
+  }
+
+  public void testUnsatisfiableRange() throws Exception {
+    request.setHeader("Range", "bytes=50-60");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+    assertEquals("bytes */20", response.getHeader("Content-Range"));
+    assertEquals(0, response.getContent().length);
+  }
+
+  public void testRangeIgnoredWhenIfRangeDoesNotMatch() throws Exception {
+    request.setHeader("Range", "bytes=5-9");
+    request.setHeader("If-Range", "\"abc\"");
+    view.dispatch(request, response, null);
+    assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+    assertEquals(20, response.getContent().length);
+  }
+
+  public void testParseRanges() {
+    List<long[]> ranges = FileView.parseRanges("bytes=0-4, 10-", 20);
+    assertEquals(2, ranges.size());
+    assertEquals(10, ranges.get(1)[0]);
+    assertEquals(19, ranges.get(1)[1]);
+
+    assertNull(FileView.parseRanges("bytes=5-1", 20));
+    assertNull(FileView.parseRanges("items=0-1", 20));
+    assertNull(FileView.parseRanges("bytes=0-10,5-15", 20));
+    assertTrue(FileView.parseRanges("bytes=20-", 20).isEmpty());
+  }
+
+  public void testCacheControlForPrivateBlogs() throws Exception {
+    blog.setProperty(Blog.PRIVATE_KEY, "true");
+    assertEquals("private, max-age=86400", view.getCacheControl("application/pdf"));
+  }
+
+}